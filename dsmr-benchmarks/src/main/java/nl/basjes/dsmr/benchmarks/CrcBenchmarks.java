@@ -0,0 +1,79 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.CheckCRC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Checking the CRC of the DSMR 5.0 telegram, with the regex based implementation as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrcBenchmarks {
+
+    private String telegram;
+    private byte[] telegramBytes;
+
+    @Setup
+    public void setUp() {
+        // The CRC of the example in the specification is wrong
+        telegram      = CheckCRC.fixCrc(Telegrams.DSMR_50);
+        telegramBytes = telegram.getBytes(UTF_8);
+        if (!CheckCRC.crcIsValid(telegram) || !LegacyCheckCRC.crcIsValid(telegram)) {
+            throw new IllegalStateException("The benchmark telegram must have a valid CRC");
+        }
+    }
+
+    @Benchmark
+    public boolean crcIsValid() {
+        return CheckCRC.crcIsValid(telegram);
+    }
+
+    @Benchmark
+    public boolean crcIsValidBytes() {
+        return CheckCRC.crcIsValid(telegramBytes, 0, telegramBytes.length);
+    }
+
+    @Benchmark
+    public int calculatedCrcValueBytes() {
+        return CheckCRC.calculatedCrcValue(telegramBytes, 0, telegramBytes.length);
+    }
+
+    @Benchmark
+    public boolean legacyCrcIsValid() {
+        return LegacyCheckCRC.crcIsValid(telegram);
+    }
+}
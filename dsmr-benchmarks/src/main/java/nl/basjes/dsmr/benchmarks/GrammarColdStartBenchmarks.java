@@ -0,0 +1,65 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first telegram that is parsed with the grammar in a fresh JVM,
+ * with and without ParseDsmrTelegram.warmUp() at startup.
+ * Each fork is a new JVM that measures exactly one call.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class GrammarColdStartBenchmarks {
+
+    @State(Scope.Thread)
+    public static class WarmedUp {
+        @Setup(Level.Trial)
+        public void warmUp() {
+            ParseDsmrTelegram.warmUp();
+        }
+    }
+
+    @Benchmark
+    public DSMRTelegram coldParseWithGrammar() {
+        return ParseDsmrTelegram.parseWithGrammar(Telegrams.DSMR_50);
+    }
+
+    @Benchmark
+    public DSMRTelegram warmedUpParseWithGrammar(WarmedUp warmedUp) {
+        return ParseDsmrTelegram.parseWithGrammar(Telegrams.DSMR_50);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import nl.basjes.dsmr.DSMRKryo;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Kryo round trip of the DSMR 5.0 telegram with the serializers of DSMRKryo
+ * and with the generic FieldSerializer as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KryoBenchmarks {
+
+    private DSMRTelegram telegram;
+    private Kryo         dsmrKryo;
+    private Kryo         fieldSerializerKryo;
+    private Output       output;
+
+    @Setup
+    public void setUp() {
+        telegram = ParseDsmrTelegram.parse(Telegrams.DSMR_50);
+
+        dsmrKryo = new Kryo();
+        DSMRKryo.configureKryo(dsmrKryo);
+
+        fieldSerializerKryo = new Kryo();
+        fieldSerializerKryo.setRegistrationRequired(false);
+
+        output = new Output(4096, -1);
+    }
+
+    private Object roundTrip(Kryo kryo) {
+        output.reset();
+        kryo.writeClassAndObject(output, telegram);
+        return kryo.readClassAndObject(new Input(output.getBuffer(), 0, output.position()));
+    }
+
+    @Benchmark
+    public Object dsmrKryo() {
+        return roundTrip(dsmrKryo);
+    }
+
+    @Benchmark
+    public Object fieldSerializer() {
+        return roundTrip(fieldSerializerKryo);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a stream in which every fifth telegram was damaged on the serial line (like the simulator does),
+ * both in the default lenient mode and in the strict mode that does not parse the telegrams with a wrong CRC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoisyStreamBenchmarks {
+
+    private String[] telegrams;
+
+    @Setup
+    public void setUp() {
+        String telegram = CheckCRC.fixCrc(Telegrams.DSMR_50);
+        telegrams = new String[] {
+            telegram,
+            telegram,
+            telegram,
+            telegram,
+            telegram.replace("*kWh)", "*kW#)"), // Damaged: the CRC is wrong and the fast path gives up
+        };
+    }
+
+    private void parseAll(ParseOptions options, Blackhole blackhole) {
+        for (String telegram : telegrams) {
+            DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(telegram, options);
+            blackhole.consume(dsmrTelegram.isValid());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(5)
+    public void lenient(Blackhole blackhole) {
+        parseAll(ParseOptions.ALL, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(5)
+    public void strict(Blackhole blackhole) {
+        parseAll(ParseOptions.STRICT, blackhole);
+    }
+}
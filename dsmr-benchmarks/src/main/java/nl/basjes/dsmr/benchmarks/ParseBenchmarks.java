@@ -0,0 +1,82 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parsing a single telegram of each of the DSMR versions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmarks {
+
+    @Param({"2.2", "3.0", "4.2", "5.0"})
+    private String dsmrVersion;
+
+    private String       telegram;
+    private byte[]       telegramBytes;
+    private DSMRTelegram target;
+
+    @Setup
+    public void setUp() {
+        telegram      = Telegrams.forVersion(dsmrVersion);
+        telegramBytes = telegram.getBytes(UTF_8);
+        target        = new DSMRTelegram();
+    }
+
+    @Benchmark
+    public DSMRTelegram parse() {
+        return ParseDsmrTelegram.parse(telegram);
+    }
+
+    @Benchmark
+    public DSMRTelegram parseBytes() {
+        return ParseDsmrTelegram.parse(telegramBytes, 0, telegramBytes.length);
+    }
+
+    @Benchmark
+    public DSMRTelegram parseInto() {
+        return ParseDsmrTelegram.parseInto(telegramBytes, 0, telegramBytes.length, target);
+    }
+
+    @Benchmark
+    public DSMRTelegram parseWithGrammar() {
+        return ParseDsmrTelegram.parseWithGrammar(telegram);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.parse.ReadUTF8RecordStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting the raw capture file testfiles/ttyUSB0-raw.txt (567 telegrams) into records.
+ * The file is read into memory first so this does not measure the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordStreamBenchmarks {
+
+    private byte[] captureFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        captureFile = Telegrams.readCaptureFile();
+    }
+
+    @Benchmark
+    public int readAllRecords(Blackhole blackhole) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(captureFile), Telegrams.RECORD_END);
+        int records = 0;
+        String record;
+        while ((record = reader.read()) != null) {
+            blackhole.consume(record);
+            records++;
+        }
+        return records;
+    }
+
+    @Benchmark
+    public int readAllRecordsAsBytes(Blackhole blackhole) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(captureFile), Telegrams.RECORD_END);
+        int records = 0;
+        ByteBuffer record;
+        while ((record = reader.readBytes()) != null) {
+            blackhole.consume(record.remaining());
+            records++;
+        }
+        return records;
+    }
+
+    @Benchmark
+    public int readAllRecordsAsChars(Blackhole blackhole) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(captureFile), Telegrams.RECORD_END);
+        int records = 0;
+        CharSequence record;
+        while ((record = reader.readChars()) != null) {
+            blackhole.consume(record.length());
+            records++;
+        }
+        return records;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The telegrams used in the benchmarks (taken from the unit tests of the dsmr-parser).
+ */
+public final class Telegrams {
+    private Telegrams() {
+    }
+
+    /** A real DSMR 2.2 telegram (no timestamp, no CRC). */
+    public static final String DSMR_22 =
+        "/ISk5\\2MT382-1003\r\n" +
+        "\r\n" +
+        "0-0:96.1.1(5A424556303035313036383434393132)\r\n" +
+        "1-0:1.8.1(16719.940*kWh)\r\n" +
+        "1-0:1.8.2(19403.220*kWh)\r\n" +
+        "1-0:2.8.1(00859.681*kWh)\r\n" +
+        "1-0:2.8.2(01817.057*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(0000.89*kW)\r\n" +
+        "1-0:2.7.0(0000.00*kW)\r\n" +
+        "0-0:17.0.0(0999.00*kW)\r\n" +
+        "0-0:96.3.10(1)\r\n" +
+        "0-0:96.13.1()\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "0-2:24.1.0(3)\r\n" +
+        "0-2:96.1.0(3238303131303038333036343239303133)\r\n" +
+        "0-2:24.3.0(211122210000)(00)(60)(1)(0-2:24.2.1)(m3)\r\n" +
+        "(13368.864)\r\n" +
+        "0-2:24.4.0(1)\r\n" +
+        "!\r\n";
+
+    /** The example from the DSMR 3.0 specification. */
+    public static final String DSMR_30 =
+        "/ISk5\\2MT382-1000\r\n" +
+        "\r\n" +
+        "0-0:96.1.1(4B384547303034303436333935353037)\r\n" +
+        "1-0:1.8.1(12345.678*kWh)\r\n" +
+        "1-0:1.8.2(12345.678*kWh)\r\n" +
+        "1-0:2.8.1(12345.678*kWh)\r\n" +
+        "1-0:2.8.2(12345.678*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(001.19*kW)\r\n" +
+        "1-0:2.7.0(000.00*kW)\r\n" +
+        "0-0:17.0.0(016*A)\r\n" +
+        "0-0:96.3.10(1)\r\n" +
+        "0-0:96.13.1(303132333435363738)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F303132333435363738393A3B3C3D3E3F" +
+        "303132333435363738393A3B3C3D3E3F303132333435363738393A3B3C3D3E3F" +
+        "303132333435363738393A3B3C3D3E3F)\r\n" +
+        "0-1:96.1.0(3232323241424344313233343536373839)\r\n" +
+        "0-1:24.1.0(03)\r\n" +
+        "0-1:24.3.0(090212160000)(00)(60)(1)(0-1:24.2.1)(m3)\r\n" +
+        "(00000.000)\r\n" +
+        "0-1:24.4.0(1)\r\n" +
+        "!\r\n";
+
+    /** The example from the DSMR 4.2 specification. */
+    public static final String DSMR_42 =
+        "/ISk5\\2MT382-1000\r\n" +
+        "1-3:0.2.8(42)\r\n" +
+        "0-0:1.0.0(101209113020W)\r\n" +
+        "0-0:96.1.1(4B384547303034303436333935353037)\r\n" +
+        "1-0:1.8.1(123456.789*kWh)\r\n" +
+        "1-0:1.8.2(123456.789*kWh)\r\n" +
+        "1-0:2.8.1(123456.789*kWh)\r\n" +
+        "1-0:2.8.2(123456.789*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(01.193*kW)\r\n" +
+        "1-0:2.7.0(00.000*kW)\r\n" +
+        "0-0:96.7.21(00004)\r\n" +
+        "0-0:96.7.9(00002)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(101208152415W)(0000000240*s)(101208151004W)(0000000301*s)\r\n" +
+        "1-0:32.32.0(00002)\r\n" +
+        "1-0:52.32.0(00001)\r\n" +
+        "1-0:72:32.0(00000)\r\n" +
+        "1-0:32.36.0(00000)\r\n" +
+        "1-0:52.36.0(00003)\r\n" +
+        "1-0:72.36.0(00000)\r\n" +
+        "0-0:96.13.1(3031203631203831)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F" +
+                    "303132333435363738393A3B3C3D3E3F" +
+                    "303132333435363738393A3B3C3D3E3F" +
+                    "303132333435363738393A3B3C3D3E3F" +
+                    "303132333435363738393A3B3C3D3E3F)\r\n" +
+        "1-0:31.7.0.255(001*A)\r\n" +
+        "1-0:51.7.0.255(002*A)\r\n" +
+        "1-0:71.7.0.255(003*A)\r\n" +
+        "1-0:21.7.0.255(01.111*kW)\r\n" +
+        "1-0:41.7.0.255(02.222*kW)\r\n" +
+        "1-0:61.7.0.255(03.333*kW)\r\n" +
+        "1-0:22.7.0.255(04.444*kW)\r\n" +
+        "1-0:42.7.0.255(05.555*kW)\r\n" +
+        "1-0:62.7.0.255(06.666*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(3232323241424344313233343536373839)\r\n" +
+        "0-1:24.2.1(101209110000W)(12785.123*m3)\r\n" +
+        "!CE7C\r\n";
+
+    /** The example from the DSMR 5.0 specification. */
+    public static final String DSMR_50 =
+        "/ISk5\\2MT382-1000\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(101209113020W)\r\n" +
+        "0-0:96.1.1(4B384547303034303436333935353037)\r\n" +
+        "1-0:1.8.1(123456.789*kWh)\r\n" +
+        "1-0:1.8.2(123456.789*kWh)\r\n" +
+        "1-0:2.8.1(123456.789*kWh)\r\n" +
+        "1-0:2.8.2(123456.789*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(01.193*kW)\r\n" +
+        "1-0:2.7.0(00.000*kW)\r\n" +
+        "0-0:96.7.21(00004)\r\n" +
+        "0-0:96.7.9(00002)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(101208152415W)(0000000240*s)(101208151004W)(0000000301*s)\r\n" +
+        "1-0:32.32.0(00002)\r\n" +
+        "1-0:52.32.0(00001)\r\n" +
+        "1-0:72.32.0(00000)\r\n" +
+        "1-0:32.36.0(00000)\r\n" +
+        "1-0:52.36.0(00003)\r\n" +
+        "1-0:72.36.0(00000)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F303132333435363738393A3B3C3D3E3F30313233343536373839" +
+                    "3A3B3C3D3E3F303132333435363738393A3B3C3D3E3F303132333435363738393A3B3C3D3E3F)\r\n" +
+        "1-0:32.7.0(220.1*V)\r\n" +
+        "1-0:52.7.0(220.2*V)\r\n" +
+        "1-0:72.7.0(220.3*V)\r\n" +
+        "1-0:31.7.0(001*A)\r\n" +
+        "1-0:51.7.0(002*A)\r\n" +
+        "1-0:71.7.0(003*A)\r\n" +
+        "1-0:21.7.0(01.111*kW)\r\n" +
+        "1-0:41.7.0(02.222*kW)\r\n" +
+        "1-0:61.7.0(03.333*kW)\r\n" +
+        "1-0:22.7.0(04.444*kW)\r\n" +
+        "1-0:42.7.0(05.555*kW)\r\n" +
+        "1-0:62.7.0(06.666*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(3232323241424344313233343536373839)\r\n" +
+        "0-1:24.2.1(101209112500W)(12785.123*m3)\r\n" +
+        "!EF2F\r\n";
+
+    /**
+     * @param dsmrVersion "2.2", "3.0", "4.2" or "5.0"
+     * @return The telegram of that version
+     */
+    public static String forVersion(String dsmrVersion) {
+        switch (dsmrVersion) {
+            case "2.2": return DSMR_22;
+            case "3.0": return DSMR_30;
+            case "4.2": return DSMR_42;
+            case "5.0": return DSMR_50;
+            default: throw new IllegalArgumentException("No telegram for DSMR version " + dsmrVersion);
+        }
+    }
+
+    /** The separator of the records in the raw capture file. */
+    public static final String RECORD_END = "\r?\n![0-9A-F]{4}\r?\n";
+
+    /**
+     * The raw capture file testfiles/ttyUSB0-raw.txt is found when running from the root of the project or from
+     * the dsmr-benchmarks directory. The system property dsmr.testfile overrules this.
+     * @return The content of the raw capture file
+     * @throws IOException If the file cannot be read
+     */
+    public static byte[] readCaptureFile() throws IOException {
+        String configured = System.getProperty("dsmr.testfile");
+        if (configured != null) {
+            return Files.readAllBytes(Paths.get(configured));
+        }
+        for (String candidate : new String[]{"testfiles/ttyUSB0-raw.txt", "../testfiles/ttyUSB0-raw.txt"}) {
+            Path path = Paths.get(candidate);
+            if (Files.isReadable(path)) {
+                return Files.readAllBytes(path);
+            }
+        }
+        throw new IOException("Unable to find testfiles/ttyUSB0-raw.txt (use -Ddsmr.testfile=<path> to specify it)");
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.benchmarks;
+
+import nl.basjes.dsmr.TimestampParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parsing a single DSMR timestamp, with the regex based implementation as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampBenchmarks {
+
+    // Winter time, summer time and without an indication (then the zone is Europe/Amsterdam)
+    @Param({"101209113020W", "220528151729S", "211122210000"})
+    private String timestamp;
+
+    private byte[]                timestampBytes;
+    private TimestampParser       timestampParser;
+    private LegacyTimestampParser legacyTimestampParser;
+
+    @Setup
+    public void setUp() {
+        timestampBytes        = timestamp.getBytes(UTF_8);
+        timestampParser       = new TimestampParser();
+        legacyTimestampParser = new LegacyTimestampParser();
+    }
+
+    @Benchmark
+    public ZonedDateTime parse() {
+        return timestampParser.parse(timestamp);
+    }
+
+    @Benchmark
+    public long parseEpochSecond() {
+        return timestampParser.parseEpochSecond(timestamp);
+    }
+
+    @Benchmark
+    public long parseEpochSecondBytes() {
+        return timestampParser.parseEpochSecond(timestampBytes, 0, timestampBytes.length);
+    }
+
+    @Benchmark
+    public ZonedDateTime legacyParse() {
+        return legacyTimestampParser.parse(timestamp);
+    }
+}
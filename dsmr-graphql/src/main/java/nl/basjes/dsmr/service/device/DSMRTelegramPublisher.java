@@ -19,6 +19,7 @@
 package nl.basjes.dsmr.service.device;
 
 import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramBatch;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
@@ -37,4 +38,14 @@ public interface DSMRTelegramPublisher {
     Flux<DSMRTelegram> asFlux();
 
     List<DSMRTelegram> getMeasurements(Long epoch, Integer count);
+
+    /**
+     * The same measurements as getMeasurements in a columnar form for computing aggregates.
+     * @param epoch Only the measurements received since this moment (epoch milliseconds), null for all.
+     * @param count Only the last count measurements, null for all.
+     * @return The measurements
+     */
+    default DSMRTelegramBatch getMeasurementBatch(Long epoch, Integer count) {
+        return DSMRTelegramBatch.of(getMeasurements(epoch, count));
+    }
 }
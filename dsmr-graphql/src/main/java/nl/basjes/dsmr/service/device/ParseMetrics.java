@@ -0,0 +1,77 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.service.device;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import nl.basjes.dsmr.ParseListener;
+import nl.basjes.dsmr.ParseListeners;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the time spent in each stage of parsing the telegrams (dsmr.parse.stage)
+ * and the outcome of each telegram (dsmr.parse.telegrams) as metrics of the service.
+ */
+@Component
+@Log4j2
+public class ParseMetrics implements ParseListener, DisposableBean {
+
+    private final Timer[]   stages   = new Timer[Stage.values().length];
+    private final Counter[] outcomes = new Counter[Outcome.values().length];
+
+    @SuppressWarnings("this-escape")
+    public ParseMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = Timer
+                .builder("dsmr.parse.stage")
+                .description("The time spent in a stage of parsing a DSMR telegram")
+                .tag("stage", stage.name())
+                .register(registry);
+        }
+        for (Outcome outcome : Outcome.values()) {
+            outcomes[outcome.ordinal()] = Counter
+                .builder("dsmr.parse.telegrams")
+                .description("The outcome of parsing the DSMR telegrams")
+                .tag("outcome", outcome.name())
+                .register(registry);
+        }
+        ParseListeners.register(this);
+        log.info("Publishing the DSMR parse metrics");
+    }
+
+    @Override
+    public void onStage(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onOutcome(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    @Override
+    public void destroy() {
+        ParseListeners.unregister(this);
+    }
+}
@@ -184,6 +184,6 @@ field
 
     // =========================
 
-    | COSEMID        ('(' (FLOAT|INT|TIMESTAMP|HEXSTRING) ')')*        #unknownCosemId
+    | cosemId=COSEMID ('(' values+=(FLOAT|INT|TIMESTAMP|HEXSTRING) ')')*  #unknownCosemId
 
     ;
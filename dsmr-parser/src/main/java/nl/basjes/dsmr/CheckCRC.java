@@ -18,15 +18,22 @@
 
 package nl.basjes.dsmr;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * The CRC16 (polynomial 0xA001, i.e. CRC-16/ARC) that is used by DSMR 4 and newer.
+ * The CRC covers the telegram from the '/' (at the start of a line) up to and including the '!'
+ * which is followed by the 4 hex digits of the CRC.
+ */
 public final class CheckCRC {
     private CheckCRC() {
     }
 
+    /** Returned by the int based methods if no telegram with a CRC was found. */
+    public static final int NO_CRC = -1;
+
     private static final int[] CRC_TABLE = {
         0x0000, 0xC0C1, 0xC181, 0x0140, 0xC301, 0x03C0, 0x0280, 0xC241,
         0xC601, 0x06C0, 0x0780, 0xC741, 0x0500, 0xC5C1, 0xC481, 0x0440,
@@ -62,74 +69,438 @@ public final class CheckCRC {
         0x8201, 0x42C0, 0x4380, 0x8341, 0x4100, 0x81C1, 0x8081, 0x4040,
     };
 
-    private static final Pattern EXTRACT_PATTERN = Pattern.compile("(^/[^!]+!)([0-9A-Fa-f]{4})", Pattern.MULTILINE);
+    // Slicing-by-8: SLICE_n[b] is the effect on the CRC of the byte b followed by n zero bytes.
+    // This makes it possible to process 8 bytes per step with 8 independent lookups.
+    private static final int[] SLICE_0 = CRC_TABLE;
+    private static final int[] SLICE_1 = nextSlice(SLICE_0);
+    private static final int[] SLICE_2 = nextSlice(SLICE_1);
+    private static final int[] SLICE_3 = nextSlice(SLICE_2);
+    private static final int[] SLICE_4 = nextSlice(SLICE_3);
+    private static final int[] SLICE_5 = nextSlice(SLICE_4);
+    private static final int[] SLICE_6 = nextSlice(SLICE_5);
+    private static final int[] SLICE_7 = nextSlice(SLICE_6);
 
-    private static int calculatedCrc(byte[] telegramBytes) {
+    private static int[] nextSlice(int[] previous) {
+        int[] slice = new int[256];
+        for (int i = 0; i < 256; i++) {
+            slice[i] = (previous[i] >>> 8) ^ CRC_TABLE[previous[i] & 0xFF];
+        }
+        return slice;
+    }
+
+    /**
+     * The plain CRC16 over a range of bytes.
+     * @param input The bytes
+     * @param offset The first byte to include
+     * @param length The number of bytes to include
+     * @return The CRC16
+     */
+    static int crc16(byte[] input, int offset, int length) {
         int crc = 0x0000;
-        for (byte b : telegramBytes) {
-            crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ b) & 0xff];
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            crc ^= (input[i] & 0xFF) | ((input[i + 1] & 0xFF) << 8);
+            crc = SLICE_7[crc & 0xFF]           ^ SLICE_6[crc >>> 8]               ^
+                  SLICE_5[input[i + 2] & 0xFF]  ^ SLICE_4[input[i + 3] & 0xFF]     ^
+                  SLICE_3[input[i + 4] & 0xFF]  ^ SLICE_2[input[i + 5] & 0xFF]     ^
+                  SLICE_1[input[i + 6] & 0xFF]  ^ SLICE_0[input[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ SLICE_0[(crc ^ input[i]) & 0xFF];
         }
+        return crc;
+    }
 
+    // The plain CRC16 over a range of characters which must all be ASCII (so each character is 1 byte in UTF-8).
+    private static int crc16Ascii(CharSequence input, int start, int end) {
+        int crc = 0x0000;
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            crc ^= input.charAt(i) | (input.charAt(i + 1) << 8);
+            crc = SLICE_7[crc & 0xFF]           ^ SLICE_6[crc >>> 8]               ^
+                  SLICE_5[input.charAt(i + 2)]  ^ SLICE_4[input.charAt(i + 3)]     ^
+                  SLICE_3[input.charAt(i + 4)]  ^ SLICE_2[input.charAt(i + 5)]     ^
+                  SLICE_1[input.charAt(i + 6)]  ^ SLICE_0[input.charAt(i + 7)];
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ SLICE_0[(crc ^ input.charAt(i)) & 0xFF];
+        }
         return crc;
     }
 
-    public static Integer calculatedCrc(String input) {
+    private static int crc16(CharSequence input, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) >= 0x80) {
+                // Rare: the CRC is over the UTF-8 encoded bytes.
+                byte[] bytes = input.subSequence(start, end).toString().getBytes(UTF_8);
+                return crc16(bytes, 0, bytes.length);
+            }
+        }
+        return crc16Ascii(input, start, end);
+    }
+
+    // ------------------------------------------
+    // Locating the telegram.
+    // This is the same part as the regex "(^/[^!]+!)([0-9A-Fa-f]{4})" (in MULTILINE mode) would find.
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static int hexValue(int c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static int hexValue(int c1, int c2, int c3, int c4) {
+        int h1 = hexValue(c1);
+        int h2 = hexValue(c2);
+        int h3 = hexValue(c3);
+        int h4 = hexValue(c4);
+        if ((h1 | h2 | h3 | h4) < 0) {
+            return NO_CRC;
+        }
+        return (h1 << 12) | (h2 << 8) | (h3 << 4) | h4;
+    }
+
+    // The '^' of a MULTILINE pattern: the start of the input or after a line terminator
+    // (\n, \r, and the UTF-8 encoded \u0085, \u2028 and \u2029).
+    private static boolean isStartOfLine(byte[] input, int offset, int index) {
+        if (index == offset) {
+            return true;
+        }
+        byte previous = input[index - 1];
+        if (previous == '\n' || previous == '\r') {
+            return true;
+        }
+        if (previous == (byte) 0x85) {
+            return index - 2 >= offset && input[index - 2] == (byte) 0xC2;
+        }
+        if (previous == (byte) 0xA8 || previous == (byte) 0xA9) {
+            return index - 3 >= offset && input[index - 2] == (byte) 0x80 && input[index - 3] == (byte) 0xE2;
+        }
+        return false;
+    }
+
+    private static boolean isStartOfLine(CharSequence input, int index) {
+        if (index == 0) {
+            return true;
+        }
+        char previous = input.charAt(index - 1);
+        return previous == '\n' || previous == '\r' || previous == '\u0085' || previous == '\u2028' || previous == '\u2029';
+    }
+
+    // The index of the first '!' after the start
+    private static int findMarker(byte[] input, int start, int end) {
+        int marker = start + 1;
+        while (marker < end && input[marker] != '!') {
+            marker++;
+        }
+        return marker;
+    }
+
+    private static int findMarker(CharSequence input, int start) {
+        int end = input.length();
+        int marker = start + 1;
+        while (marker < end && input.charAt(marker) != '!') {
+            marker++;
+        }
+        return marker;
+    }
+
+    // Returns the index of the '/' that starts the part of the telegram that is covered by the CRC
+    // (which runs up to and including the first '!' that is followed by the 4 hex digits of the CRC).
+    // Returns -1 if there is no such part.
+    private static int findStart(byte[] input, int offset, int length) {
+        int end = offset + length;
+        for (int start = offset; start < end; start++) {
+            if (input[start] != '/' || !isStartOfLine(input, offset, start)) {
+                continue;
+            }
+            int marker = findMarker(input, start, end);
+            if (marker > start + 1 &&
+                marker + 4 < end &&
+                hexValue(input[marker + 1], input[marker + 2], input[marker + 3], input[marker + 4]) != NO_CRC) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    private static int findStart(CharSequence input) {
+        int end = input.length();
+        for (int start = 0; start < end; start++) {
+            if (input.charAt(start) != '/' || !isStartOfLine(input, start)) {
+                continue;
+            }
+            int marker = findMarker(input, start);
+            if (marker > start + 1 &&
+                marker + 4 < end &&
+                hexValue(input.charAt(marker + 1), input.charAt(marker + 2), input.charAt(marker + 3), input.charAt(marker + 4)) != NO_CRC) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    // ------------------------------------------
+    // Allocation free
+
+    /**
+     * Calculate the CRC of a telegram.
+     * @param input The telegram
+     * @return The calculated CRC or NO_CRC if the telegram could not be found.
+     */
+    public static int calculatedCrcValue(CharSequence input) {
         if (input == null) {
-            return null;
+            return NO_CRC;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
+        int start = findStart(input);
+        if (start == -1) {
+            return NO_CRC;
+        }
+        return crc16(input, start, findMarker(input, start) + 1);
+    }
 
-        if (!matcher.find()) {
-            return null;
+    /**
+     * Calculate the CRC of a telegram.
+     * @param input The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The calculated CRC or NO_CRC if the telegram could not be found.
+     */
+    public static int calculatedCrcValue(byte[] input, int offset, int length) {
+        if (input == null) {
+            return NO_CRC;
+        }
+        int start = findStart(input, offset, length);
+        if (start == -1) {
+            return NO_CRC;
+        }
+        int marker = findMarker(input, start, offset + length);
+        return crc16(input, start, marker + 1 - start);
+    }
+
+    /**
+     * Get the CRC that is present in the telegram.
+     * @param input The telegram
+     * @return The CRC or NO_CRC if the telegram could not be found.
+     */
+    public static int extractedCrcValue(CharSequence input) {
+        if (input == null) {
+            return NO_CRC;
+        }
+        int start = findStart(input);
+        if (start == -1) {
+            return NO_CRC;
+        }
+        int marker = findMarker(input, start);
+        return hexValue(input.charAt(marker + 1), input.charAt(marker + 2), input.charAt(marker + 3), input.charAt(marker + 4));
+    }
+
+    /**
+     * Get the CRC that is present in the telegram.
+     * @param input The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The CRC or NO_CRC if the telegram could not be found.
+     */
+    public static int extractedCrcValue(byte[] input, int offset, int length) {
+        if (input == null) {
+            return NO_CRC;
+        }
+        int start = findStart(input, offset, length);
+        if (start == -1) {
+            return NO_CRC;
+        }
+        int marker = findMarker(input, start, offset + length);
+        return hexValue(input[marker + 1], input[marker + 2], input[marker + 3], input[marker + 4]);
+    }
+
+    /**
+     * Replace the CRC in the telegram with the correct value (in place).
+     * @param input The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return true if the telegram was found (and the CRC is now valid).
+     */
+    public static boolean fixCrc(byte[] input, int offset, int length) {
+        if (input == null) {
+            return false;
         }
+        int start = findStart(input, offset, length);
+        if (start == -1) {
+            return false;
+        }
+        int marker = findMarker(input, start, offset + length);
+        int crc = crc16(input, start, marker + 1 - start);
+        input[marker + 1] = (byte) HEX_DIGITS[(crc >>> 12) & 0x0F];
+        input[marker + 2] = (byte) HEX_DIGITS[(crc >>>  8) & 0x0F];
+        input[marker + 3] = (byte) HEX_DIGITS[(crc >>>  4) & 0x0F];
+        input[marker + 4] = (byte) HEX_DIGITS[ crc         & 0x0F];
+        return true;
+    }
 
-        String telegram = matcher.group(1);
-        return calculatedCrc(telegram.getBytes(UTF_8));
+    // ------------------------------------------
+    // String
+
+    public static Integer calculatedCrc(String input) {
+        int crc = calculatedCrcValue(input);
+        return crc == NO_CRC ? null : crc;
     }
 
     public static String extractCrcFromTelegram(String input) {
         if (input == null) {
             return null;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
-
-        if (!matcher.find()) {
+        int start = findStart(input);
+        if (start == -1) {
             return null;
         }
-
-        return matcher.group(2);
+        int marker = findMarker(input, start);
+        return input.substring(marker + 1, marker + 5);
     }
 
     public static String fixCrc(String input) {
         if (input == null) {
             return null;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
-
-        if (!matcher.find()) {
+        int start = findStart(input);
+        if (start == -1) {
             return input;
         }
+        int marker = findMarker(input, start);
+        int crc = crc16(input, start, marker + 1);
+        return new StringBuilder(marker + 7 - start)
+            .append(input, start, marker + 1)
+            .append(HEX_DIGITS[(crc >>> 12) & 0x0F])
+            .append(HEX_DIGITS[(crc >>>  8) & 0x0F])
+            .append(HEX_DIGITS[(crc >>>  4) & 0x0F])
+            .append(HEX_DIGITS[ crc         & 0x0F])
+            .append("\r\n")
+            .toString();
+    }
 
-        String telegram = matcher.group(1);
+    public static boolean crcIsValid(String input) {
+        return crcStatus(input) == CRC_VALID;
+    }
+
+    // ------------------------------------------
+    // The outcome of crcStatus
+
+    /** The telegram has no CRC (or could not be found). */
+    static final int CRC_ABSENT   = 0;
+    /** The CRC is valid. */
+    static final int CRC_VALID    = 1;
+    /** The telegram has a CRC which does not match. */
+    static final int CRC_MISMATCH = 2;
 
-        String actualCrc = String.format("%04X", calculatedCrc(telegram.getBytes(UTF_8)));
-        return telegram + actualCrc + "\r\n";
+    /**
+     * Check the CRC of a telegram, also telling the difference between an absent and a wrong CRC.
+     * @param input The telegram (may be null)
+     * @return CRC_ABSENT, CRC_VALID or CRC_MISMATCH
+     */
+    static int crcStatus(String input) {
+        if (input == null) {
+            return CRC_ABSENT;
+        }
+        int start = findStart(input);
+        if (start == -1) {
+            return CRC_ABSENT;
+        }
+        int marker = findMarker(input, start);
+        int expectedCrc = hexValue(input.charAt(marker + 1), input.charAt(marker + 2), input.charAt(marker + 3), input.charAt(marker + 4));
+        return crc16(input, start, marker + 1) == expectedCrc ? CRC_VALID : CRC_MISMATCH;
     }
 
-    public static boolean crcIsValid(String input) {
+    /**
+     * Check the CRC of a telegram, also telling the difference between an absent and a wrong CRC.
+     * @param input The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return CRC_ABSENT, CRC_VALID or CRC_MISMATCH
+     */
+    static int crcStatus(byte[] input, int offset, int length) {
+        int start = findStart(input, offset, length);
+        if (start == -1) {
+            return CRC_ABSENT;
+        }
+        int marker = findMarker(input, start, offset + length);
+        int expectedCrc = hexValue(input[marker + 1], input[marker + 2], input[marker + 3], input[marker + 4]);
+        return crc16(input, start, marker + 1 - start) == expectedCrc ? CRC_VALID : CRC_MISMATCH;
+    }
+
+    // ------------------------------------------
+    // The same checks directly on the bytes as received (i.e. without converting them into a String first).
+
+    /**
+     * Calculate the CRC of a telegram.
+     * @param input The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The calculated CRC or null if the telegram could not be found.
+     */
+    public static Integer calculatedCrc(byte[] input, int offset, int length) {
+        int crc = calculatedCrcValue(input, offset, length);
+        return crc == NO_CRC ? null : crc;
+    }
+
+    /**
+     * Calculate the CRC of a telegram.
+     * @param input The remaining bytes in this buffer contain the telegram (the position of the buffer is not changed).
+     * @return The calculated CRC or null if the telegram could not be found.
+     */
+    public static Integer calculatedCrcOfBuffer(ByteBuffer input) {
         if (input == null) {
-            return false;
+            return null;
         }
-        Matcher matcher = EXTRACT_PATTERN.matcher(input);
+        if (input.hasArray()) {
+            return calculatedCrc(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        }
+        byte[] bytes = toByteArray(input);
+        return calculatedCrc(bytes, 0, bytes.length);
+    }
 
-        if (!matcher.find()) {
+    /**
+     * Check if the CRC of a telegram is valid.
+     * @param input The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return true if the telegram was found and the CRC is valid.
+     */
+    public static boolean crcIsValid(byte[] input, int offset, int length) {
+        if (input == null) {
             return false;
         }
+        return crcStatus(input, offset, length) == CRC_VALID;
+    }
 
-        String telegram = matcher.group(1);
-        String expectedCrc = matcher.group(2);
+    /**
+     * Check if the CRC of a telegram is valid.
+     * @param input The remaining bytes in this buffer contain the telegram (the position of the buffer is not changed).
+     * @return true if the telegram was found and the CRC is valid.
+     */
+    public static boolean crcIsValidInBuffer(ByteBuffer input) {
+        if (input == null) {
+            return false;
+        }
+        if (input.hasArray()) {
+            return crcIsValid(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        }
+        byte[] bytes = toByteArray(input);
+        return crcIsValid(bytes, 0, bytes.length);
+    }
 
-        String actualCrc = String.format("%04X", calculatedCrc(telegram.getBytes(UTF_8)));
-        return expectedCrc.equalsIgnoreCase(actualCrc);
+    static byte[] toByteArray(ByteBuffer input) {
+        byte[] bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+        return bytes;
     }
 }
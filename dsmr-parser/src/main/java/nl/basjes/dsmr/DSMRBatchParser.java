@@ -0,0 +1,281 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses a large number of telegrams (i.e. reprocessing historical captures) using all cores.
+ * <pre>
+ * DSMRBatchParser batchParser = new DSMRBatchParser();
+ * try (Stream&lt;DSMRTelegram&gt; telegrams = batchParser.parse(records)) {
+ *     telegrams.forEach(...);
+ * }
+ * </pre>
+ * The input is read on the calling thread and cut into batches of consecutive telegrams which are parsed
+ * in a ForkJoinPool (each batch with its own DSMRParseSession). Only a limited number of batches is in flight
+ * so the memory usage is bounded, also for an input that does not fit in memory.
+ * In ordered mode the telegrams are returned in the order of the input, in unordered mode each batch is
+ * returned as soon as it is ready.
+ * Null and empty records do not produce a telegram.
+ * This class is thread safe.
+ */
+public final class DSMRBatchParser {
+
+    /** The default number of telegrams in a single batch. */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final ParseOptions options;
+    private final boolean      ordered;
+    private final int          batchSize;
+    private final int          maxBatchesInFlight;
+
+    private final LongAdder    parsedTelegrams = new LongAdder();
+    private final LongAdder    parsedBytes     = new LongAdder();
+    private final LongAdder    elapsedNanos    = new LongAdder();
+
+    /** An ordered batch parser that decodes all fields using the common ForkJoinPool. */
+    public DSMRBatchParser() {
+        this(true);
+    }
+
+    /**
+     * A batch parser that decodes all fields using the common ForkJoinPool.
+     * @param ordered Must the telegrams be returned in the order of the input.
+     */
+    public DSMRBatchParser(boolean ordered) {
+        this(ForkJoinPool.commonPool(), ParseOptions.ALL, ordered, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param pool The pool that does the parsing.
+     * @param options Which fields must be decoded
+     * @param ordered Must the telegrams be returned in the order of the input.
+     * @param batchSize The number of telegrams in a single batch.
+     */
+    public DSMRBatchParser(ForkJoinPool pool, ParseOptions options, boolean ordered, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batchSize of a DSMRBatchParser must be at least 1");
+        }
+        this.pool               = Objects.requireNonNull(pool, "The ForkJoinPool may not be null");
+        this.options            = Objects.requireNonNull(options, "The ParseOptions may not be null");
+        this.ordered            = ordered;
+        this.batchSize          = batchSize;
+        // Enough to keep all threads busy while the caller reads the input and handles the results.
+        this.maxBatchesInFlight = 2 * pool.getParallelism();
+    }
+
+    /**
+     * Parse all telegrams.
+     * @param telegrams The bytes of the telegrams as received from the P1 port.
+     * @return The parsed telegrams.
+     */
+    public List<DSMRTelegram> parseAll(List<byte[]> telegrams) {
+        try (Stream<DSMRTelegram> parsed = parse(telegrams.stream())) {
+            return parsed.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Parse all telegrams. The input is only read as far as the returned stream is consumed.
+     * Closing the returned stream also closes the input stream.
+     * @param telegrams The bytes of the telegrams as received from the P1 port.
+     * @return The parsed telegrams (a sequential stream, the parallelism is inside).
+     */
+    public Stream<DSMRTelegram> parse(Stream<byte[]> telegrams) {
+        BatchIterator iterator = new BatchIterator(telegrams.iterator());
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false)
+            .onClose(iterator::cancel)
+            .onClose(telegrams::close);
+    }
+
+    /** @return The number of telegrams that have been parsed. */
+    public long getParsedTelegrams() {
+        return parsedTelegrams.sum();
+    }
+
+    /** @return The number of bytes of the telegrams that have been parsed. */
+    public long getParsedBytes() {
+        return parsedBytes.sum();
+    }
+
+    /**
+     * @return The total time (in nanoseconds) from starting to read the input until the last telegram was returned
+     * (or the stream was closed before that).
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos.sum();
+    }
+
+    /** @return The average number of telegrams per second (0 if nothing was parsed yet). */
+    public double getTelegramsPerSecond() {
+        long nanos = getElapsedNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return getParsedTelegrams() * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "DSMRBatchParser(" + (ordered ? "ordered" : "unordered") + ", batchSize=" + batchSize +
+            ", parallelism=" + pool.getParallelism() + ", parsedTelegrams=" + getParsedTelegrams() +
+            ", parsedBytes=" + getParsedBytes() + ", telegramsPerSecond=" + Math.round(getTelegramsPerSecond()) + ")";
+    }
+
+    private DSMRTelegram[] parseBatch(byte[][] batch, int size) {
+        DSMRParseSession session = new DSMRParseSession(options);
+        DSMRTelegram[] result = new DSMRTelegram[size];
+        int telegrams = 0;
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            byte[] record = batch[i];
+            if (record == null) {
+                continue;
+            }
+            DSMRTelegram dsmrTelegram = session.parse(record, 0, record.length);
+            if (dsmrTelegram != null) {
+                result[telegrams++] = dsmrTelegram;
+                bytes += record.length;
+            }
+        }
+        parsedTelegrams.add(telegrams);
+        parsedBytes.add(bytes);
+        return telegrams == size ? result : Arrays.copyOf(result, telegrams);
+    }
+
+    private final class BatchIterator implements Iterator<DSMRTelegram> {
+        private final Iterator<byte[]>                 source;
+        // In ordered mode the results are taken in the order the batches were submitted,
+        // in unordered mode in the order the batches were completed.
+        private final Deque<Future<DSMRTelegram[]>>    inFlight = new ArrayDeque<>();
+        private final CompletionService<DSMRTelegram[]> completed = new ExecutorCompletionService<>(pool);
+
+        private DSMRTelegram[] current = new DSMRTelegram[0];
+        private int            index;
+        private long           startNanos = -1;
+        private boolean        finished;
+
+        BatchIterator(Iterator<byte[]> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (index == current.length) {
+                if (finished) {
+                    return false;
+                }
+                if (startNanos < 0) {
+                    startNanos = System.nanoTime();
+                }
+                submitBatches();
+                if (inFlight.isEmpty()) {
+                    finished = true;
+                    stopClock();
+                    return false;
+                }
+                current = takeBatch();
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public DSMRTelegram next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more telegrams");
+            }
+            return current[index++];
+        }
+
+        private void submitBatches() {
+            while (inFlight.size() < maxBatchesInFlight && source.hasNext()) {
+                byte[][] batch = new byte[batchSize][];
+                int size = 0;
+                while (size < batchSize && source.hasNext()) {
+                    batch[size++] = source.next();
+                }
+                int batchLength = size;
+                Callable<DSMRTelegram[]> task = () -> parseBatch(batch, batchLength);
+                inFlight.add(ordered ? pool.submit(task) : completed.submit(task));
+            }
+        }
+
+        private DSMRTelegram[] takeBatch() {
+            try {
+                if (ordered) {
+                    return inFlight.removeFirst().get();
+                }
+                Future<DSMRTelegram[]> done = completed.take();
+                inFlight.remove(done);
+                return done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("Interrupted while waiting for the parsed telegrams", e);
+            } catch (ExecutionException e) {
+                cancel();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Unable to parse the telegrams", e.getCause());
+            }
+        }
+
+        // Counts the elapsed time only once, at the end of the input or when the stream is closed before that.
+        private void stopClock() {
+            if (startNanos >= 0) {
+                elapsedNanos.add(System.nanoTime() - startNanos);
+                startNanos = -1;
+            }
+        }
+
+        void cancel() {
+            finished = true;
+            stopClock();
+            current = new DSMRTelegram[0];
+            index = 0;
+            for (Future<DSMRTelegram[]> future : inFlight) {
+                future.cancel(false);
+            }
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+/**
+ * Kryo serializers for the DSMRTelegram and its nested classes.
+ * <p>
+ * Compared to the generic FieldSerializer these only write the measurements that were present (the presentFields
+ * of the DSMRTelegram are the bitmap), the measurements are written as varlongs of their thousandths, the
+ * timestamps are written as epoch seconds with an index of the (usually Dutch) time zone and the nested events
+ * are written without any class information.
+ * <p>
+ * A LazyDSMRTelegram is completely decoded before it is written and is read back as a normal DSMRTelegram.
+ */
+public final class DSMRKryo {
+
+    private DSMRKryo() {
+    }
+
+    /**
+     * This is used to configure the provided Kryo instance if Kryo serialization is desired.
+     * The expected type here is Object because otherwise the Kryo library becomes
+     * a mandatory dependency on any project that uses the dsmr-parser.
+     * @param kryoInstance The instance of com.esotericsoftware.kryo.Kryo that needs to be configured.
+     */
+    public static void configureKryo(Object kryoInstance) {
+        Kryo kryo = (Kryo) kryoInstance;
+        DSMRTelegramSerializer telegramSerializer = new DSMRTelegramSerializer();
+        kryo.register(DSMRTelegram.class,      telegramSerializer);
+        kryo.register(LazyDSMRTelegram.class,  telegramSerializer);
+        kryo.register(MBusEvent.class,         new MBusEventSerializer());
+        kryo.register(PowerFailureEvent.class, new PowerFailureEventSerializer());
+    }
+
+    // ------------------------------------------
+
+    // The zones that are not one of the TimestampParser.COMMON_ZONES are written as their zone id.
+    private static final int OTHER_ZONE = TimestampParser.COMMON_ZONES.length;
+
+    private static void writeZone(Output output, ZoneId zone) {
+        int index = TimestampParser.commonZoneIndex(zone);
+        if (index >= 0) {
+            output.writeByte(index);
+            return;
+        }
+        output.writeByte(OTHER_ZONE);
+        output.writeString(zone.getId());
+    }
+
+    private static ZoneId readZone(Input input) {
+        int index = input.readByte();
+        if (index == OTHER_ZONE) {
+            return ZoneId.of(input.readString());
+        }
+        return TimestampParser.COMMON_ZONES[index];
+    }
+
+    static void writeTimestamp(Output output, ZonedDateTime timestamp) {
+        if (timestamp == null) {
+            writeZone(output, null);
+            return;
+        }
+        writeZone(output, timestamp.getZone());
+        output.writeVarLong(timestamp.toEpochSecond(), false);
+        output.writeVarInt(timestamp.getNano(), true);
+    }
+
+    static ZonedDateTime readTimestamp(Input input) {
+        ZoneId zone = readZone(input);
+        if (zone == null) {
+            return null;
+        }
+        long epochSecond = input.readVarLong(false);
+        int  nano        = input.readVarInt(true);
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), zone);
+    }
+
+    // The values in a telegram have at most 3 decimals (like 016366.258) so most values are written
+    // as a (usually small) varlong of the value in thousandths. The lowest bit is 1 if the raw double follows.
+    private static final double MAX_DECIMAL = 1e15;
+
+    static void writeDecimal(Output output, double value) {
+        if (Math.abs(value) < MAX_DECIMAL) {
+            long thousandths = Math.round(value * 1000);
+            if (thousandths / 1000.0 == value) {
+                output.writeVarLong(thousandths << 1, false);
+                return;
+            }
+        }
+        output.writeVarLong(1, false);
+        output.writeDouble(value);
+    }
+
+    static double readDecimal(Input input) {
+        long code = input.readVarLong(false);
+        if ((code & 1) != 0) {
+            return input.readDouble();
+        }
+        return (code >> 1) / 1000.0;
+    }
+
+    // ------------------------------------------
+
+    private static final TelegramField[] LONG_FIELDS = {
+        TelegramField.ELECTRICITY_TARIFF_INDICATOR,
+        TelegramField.POWER_FAILURES,
+        TelegramField.LONG_POWER_FAILURES,
+        TelegramField.VOLTAGE_SAGS_PHASE_L1,
+        TelegramField.VOLTAGE_SAGS_PHASE_L2,
+        TelegramField.VOLTAGE_SAGS_PHASE_L3,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L1,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L2,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L3,
+    };
+
+    private static final TelegramField[] DOUBLE_FIELDS = {
+        TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF,
+        TelegramField.ELECTRICITY_RECEIVED_NORMAL_TARIFF,
+        TelegramField.ELECTRICITY_POWER_RECEIVED,
+        TelegramField.ELECTRICITY_RETURNED_LOW_TARIFF,
+        TelegramField.ELECTRICITY_RETURNED_NORMAL_TARIFF,
+        TelegramField.ELECTRICITY_POWER_RETURNED,
+        TelegramField.VOLTAGE_L1,
+        TelegramField.VOLTAGE_L2,
+        TelegramField.VOLTAGE_L3,
+        TelegramField.CURRENT_L1,
+        TelegramField.CURRENT_L2,
+        TelegramField.CURRENT_L3,
+        TelegramField.POWER_RECEIVED_L1,
+        TelegramField.POWER_RECEIVED_L2,
+        TelegramField.POWER_RECEIVED_L3,
+        TelegramField.POWER_RETURNED_L1,
+        TelegramField.POWER_RETURNED_L2,
+        TelegramField.POWER_RETURNED_L3,
+        TelegramField.GAS_M3,
+        TelegramField.SLAVE_E_METER_KWH,
+    };
+
+    // The bits of the flags byte
+    private static final int VALID                       = 0x01;
+    private static final int VALID_CRC                   = 0x02;
+    private static final int POWER_FAILURE_EVENT_LOGSIZE = 0x04;
+    private static final int CUSTOM_VALUES               = 0x08;
+
+    public static final class DSMRTelegramSerializer extends Serializer<DSMRTelegram> {
+        private final MBusEventSerializer         mBusEventSerializer         = new MBusEventSerializer();
+        private final PowerFailureEventSerializer powerFailureEventSerializer = new PowerFailureEventSerializer();
+
+        @Override
+        public void write(Kryo kryo, Output output, DSMRTelegram telegram) {
+            if (telegram instanceof LazyDSMRTelegram) {
+                ((LazyDSMRTelegram) telegram).decodeAll();
+            }
+            long presentFields = telegram.presentFields;
+            output.writeVarLong(presentFields, true);
+
+            boolean hasCustomValues = telegram.customValues != null && !telegram.customValues.isEmpty();
+            output.writeByte(
+                (telegram.valid                            ? VALID                       : 0) |
+                (telegram.validCRC                         ? VALID_CRC                   : 0) |
+                (telegram.powerFailureEventLogSize != null ? POWER_FAILURE_EVENT_LOGSIZE : 0) |
+                (hasCustomValues                           ? CUSTOM_VALUES               : 0));
+
+            output.writeString(telegram.rawIdent);
+            output.writeString(telegram.equipmentBrandTag);
+            output.writeString(telegram.ident);
+            output.writeString(telegram.crc);
+            output.writeString(telegram.p1Version);
+            writeTimestamp(output, telegram.receiveTimestamp);
+            if ((presentFields & TelegramField.TIMESTAMP.mask()) != 0) {
+                writeZone(output, telegram.timestampZone);
+                output.writeVarLong(telegram.timestamp, false);
+            }
+            output.writeString(telegram.equipmentId);
+
+            for (TelegramField field : LONG_FIELDS) {
+                if ((presentFields & field.mask()) != 0) {
+                    output.writeVarLong(telegram.getLong(field), true);
+                }
+            }
+            for (TelegramField field : DOUBLE_FIELDS) {
+                if ((presentFields & field.mask()) != 0) {
+                    writeDecimal(output, telegram.getDouble(field));
+                }
+            }
+
+            if (telegram.powerFailureEventLogSize != null) {
+                output.writeVarLong(telegram.powerFailureEventLogSize, true);
+            }
+            output.writeVarInt(telegram.powerFailureEventLog.size(), true);
+            for (PowerFailureEvent powerFailureEvent : telegram.powerFailureEventLog) {
+                powerFailureEventSerializer.write(kryo, output, powerFailureEvent);
+            }
+
+            output.writeString(telegram.messageCodes);
+            output.writeString(telegram.message);
+
+            output.writeVarInt(telegram.mBusEvents.size(), true);
+            for (Map.Entry<Integer, MBusEvent> mBusEvent : telegram.mBusEvents.entrySet()) {
+                output.writeVarInt(mBusEvent.getKey(), true);
+                mBusEventSerializer.write(kryo, output, mBusEvent.getValue());
+            }
+
+            output.writeString(telegram.gasEquipmentId);
+            writeTimestamp(output, telegram.gasTimestamp);
+            output.writeString(telegram.slaveEMeterEquipmentId);
+            writeTimestamp(output, telegram.slaveEMeterTimestamp);
+
+            if (hasCustomValues) {
+                output.writeVarInt(telegram.customValues.size(), true);
+                for (Map.Entry<String, Object> customValue : telegram.customValues.entrySet()) {
+                    output.writeString(customValue.getKey());
+                    kryo.writeClassAndObject(output, customValue.getValue());
+                }
+            }
+        }
+
+        @Override
+        public DSMRTelegram read(Kryo kryo, Input input, Class<? extends DSMRTelegram> type) {
+            DSMRTelegram telegram = new DSMRTelegram();
+            long presentFields = input.readVarLong(true);
+            int flags = input.readByte();
+            telegram.valid    = (flags & VALID)     != 0;
+            telegram.validCRC = (flags & VALID_CRC) != 0;
+
+            telegram.rawIdent          = input.readString();
+            telegram.equipmentBrandTag = input.readString();
+            telegram.ident             = input.readString();
+            telegram.crc               = input.readString();
+            telegram.p1Version         = input.readString();
+            telegram.receiveTimestamp  = readTimestamp(input);
+            if ((presentFields & TelegramField.TIMESTAMP.mask()) != 0) {
+                ZoneId zone = readZone(input);
+                telegram.setTimestamp(input.readVarLong(false), zone);
+            }
+            telegram.equipmentId       = input.readString();
+
+            for (TelegramField field : LONG_FIELDS) {
+                if ((presentFields & field.mask()) != 0) {
+                    telegram.set(field, input.readVarLong(true));
+                }
+            }
+            for (TelegramField field : DOUBLE_FIELDS) {
+                if ((presentFields & field.mask()) != 0) {
+                    telegram.set(field, readDecimal(input));
+                }
+            }
+
+            telegram.powerFailureEventLogSize = (flags & POWER_FAILURE_EVENT_LOGSIZE) != 0 ? input.readVarLong(true) : null;
+            int powerFailureEvents = input.readVarInt(true);
+            for (int i = 0; i < powerFailureEvents; i++) {
+                telegram.powerFailureEventLog.add(powerFailureEventSerializer.read(kryo, input, PowerFailureEvent.class));
+            }
+
+            telegram.messageCodes = input.readString();
+            telegram.message      = input.readString();
+
+            int mBusEvents = input.readVarInt(true);
+            for (int i = 0; i < mBusEvents; i++) {
+                int channel = input.readVarInt(true);
+                telegram.mBusEvents.put(channel, mBusEventSerializer.read(kryo, input, MBusEvent.class));
+            }
+
+            telegram.gasEquipmentId         = input.readString();
+            telegram.gasTimestamp           = readTimestamp(input);
+            telegram.slaveEMeterEquipmentId = input.readString();
+            telegram.slaveEMeterTimestamp   = readTimestamp(input);
+
+            if ((flags & CUSTOM_VALUES) != 0) {
+                int customValues = input.readVarInt(true);
+                for (int i = 0; i < customValues; i++) {
+                    String name = input.readString();
+                    telegram.putCustomValue(name, kryo.readClassAndObject(input));
+                }
+            }
+
+            // The bits without a value of their own (like EQUIPMENT_ID and MBUS_EVENTS)
+            telegram.presentFields = presentFields;
+            return telegram;
+        }
+
+        @Override
+        public DSMRTelegram copy(Kryo kryo, DSMRTelegram original) {
+            Output output = new Output(1024, -1);
+            write(kryo, output, original);
+            return read(kryo, new Input(output.getBuffer(), 0, output.position()), DSMRTelegram.class);
+        }
+    }
+
+    // The bits of the MBusEvent presence byte
+    private static final int DEVICE_TYPE = 0x01;
+    private static final int VALUE       = 0x02;
+
+    public static final class MBusEventSerializer extends Serializer<MBusEvent> {
+        @Override
+        public void write(Kryo kryo, Output output, MBusEvent mBusEvent) {
+            output.writeByte(
+                (mBusEvent.deviceType != null ? DEVICE_TYPE : 0) |
+                (mBusEvent.value      != null ? VALUE       : 0));
+            if (mBusEvent.deviceType != null) {
+                output.writeVarInt(mBusEvent.deviceType, true);
+            }
+            if (mBusEvent.value != null) {
+                writeDecimal(output, mBusEvent.value);
+            }
+            output.writeString(mBusEvent.equipmentId);
+            output.writeString(mBusEvent.unit);
+            writeTimestamp(output, mBusEvent.timestamp);
+        }
+
+        @Override
+        public MBusEvent read(Kryo kryo, Input input, Class<? extends MBusEvent> type) {
+            MBusEvent mBusEvent = new MBusEvent();
+            int present = input.readByte();
+            if ((present & DEVICE_TYPE) != 0) {
+                mBusEvent.deviceType = input.readVarInt(true);
+            }
+            if ((present & VALUE) != 0) {
+                mBusEvent.value = readDecimal(input);
+            }
+            mBusEvent.equipmentId = input.readString();
+            mBusEvent.unit        = input.readString();
+            mBusEvent.timestamp   = readTimestamp(input);
+            return mBusEvent;
+        }
+
+        @Override
+        public MBusEvent copy(Kryo kryo, MBusEvent original) {
+            MBusEvent mBusEvent = new MBusEvent();
+            mBusEvent.deviceType  = original.deviceType;
+            mBusEvent.equipmentId = original.equipmentId;
+            mBusEvent.value       = original.value;
+            mBusEvent.unit        = original.unit;
+            mBusEvent.timestamp   = original.timestamp;
+            return mBusEvent;
+        }
+    }
+
+    public static final class PowerFailureEventSerializer extends Serializer<PowerFailureEvent> {
+        @Override
+        public void write(Kryo kryo, Output output, PowerFailureEvent powerFailureEvent) {
+            writeTimestamp(output, powerFailureEvent.startTime);
+            writeTimestamp(output, powerFailureEvent.endTime);
+            // The duration in seconds (as in the telegram) plus 1 so 0 means null.
+            output.writeVarLong(powerFailureEvent.duration == null ? 0 : powerFailureEvent.duration.getSeconds() + 1, true);
+        }
+
+        @Override
+        public PowerFailureEvent read(Kryo kryo, Input input, Class<? extends PowerFailureEvent> type) {
+            PowerFailureEvent powerFailureEvent = new PowerFailureEvent();
+            powerFailureEvent.startTime = readTimestamp(input);
+            powerFailureEvent.endTime   = readTimestamp(input);
+            long duration = input.readVarLong(true);
+            powerFailureEvent.duration  = duration == 0 ? null : Duration.ofSeconds(duration - 1);
+            return powerFailureEvent;
+        }
+
+        @Override
+        public PowerFailureEvent copy(Kryo kryo, PowerFailureEvent original) {
+            PowerFailureEvent powerFailureEvent = new PowerFailureEvent();
+            powerFailureEvent.startTime = original.startTime;
+            powerFailureEvent.endTime   = original.endTime;
+            powerFailureEvent.duration  = original.duration;
+            return powerFailureEvent;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parses the consecutive telegrams of a single meter.
+ * Most lines of a telegram (equipment ids, the meter readings, the counters, the gas reading, ...) are
+ * exactly the same as in the previous telegram of the same meter. For such a line the value is taken from
+ * the previous telegram instead of decoding the hex strings, timestamps and numbers again.
+ * The CRC and the syntax of the entire telegram are still checked so the result is exactly the same as
+ * when using ParseDsmrTelegram.parse.
+ * <p>
+ * The last returned telegram is used as the source of the unchanged values. If that telegram is refilled
+ * (ParseDsmrTelegram.parseInto or DSMRTelegramPool.release) this is detected and the next telegram is parsed completely.
+ * <p>
+ * This class is NOT thread safe: use one instance per meter.
+ */
+public final class DSMRParseSession {
+
+    private final ParseOptions options;
+
+    // The bytes of the previous telegram and where its lines (which were parsed by the fast path) are.
+    private byte[]        previousInput    = new byte[0];
+    private long[]        previousCosemIds = new long[64];
+    private int[]         previousStarts   = new int[64];
+    private int[]         previousLengths  = new int[64];
+    private int           previousLines;
+    private int           nextPreviousLine;
+    DSMRTelegram          previousTelegram;
+    // Used to detect that the previous telegram was refilled by someone else.
+    private ZonedDateTime previousReceiveTimestamp;
+
+    // The lines of the telegram that is being parsed.
+    private long[]        cosemIds = new long[64];
+    private int[]         starts   = new int[64];
+    private int[]         lengths  = new int[64];
+    private int           lines;
+
+    private long          reusedLines;
+    private long          parsedLines;
+
+    /** A session that decodes all fields. */
+    public DSMRParseSession() {
+        this(ParseOptions.ALL);
+    }
+
+    /**
+     * @param options Which fields must be decoded
+     */
+    public DSMRParseSession(ParseOptions options) {
+        this.options = Objects.requireNonNull(options, "The ParseOptions may not be null");
+    }
+
+    /**
+     * Parse the next telegram of this meter.
+     * @param telegram The telegram as received from the P1 port
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public DSMRTelegram parse(String telegram) {
+        if (telegram == null || telegram.isEmpty()) {
+            return null;
+        }
+        byte[] bytes = telegram.getBytes(UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse the next telegram of this meter.
+     * @param telegram The bytes that contain the telegram as received from the P1 port
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public DSMRTelegram parse(byte[] telegram, int offset, int length) {
+        if (telegram == null || length == 0) {
+            return null;
+        }
+        Objects.checkFromIndexSize(offset, length, telegram.length);
+        if (previousTelegram != null && previousTelegram.receiveTimestamp != previousReceiveTimestamp) {
+            reset();
+        }
+
+        DSMRTelegram dsmrTelegram = new DSMRTelegram();
+        lines = 0;
+        nextPreviousLine = 0;
+        if (!FastParseDsmrTelegram.parseInto(telegram, offset, length, options, dsmrTelegram, this)) {
+            // Something unusual: the next telegram is parsed completely.
+            reset();
+            return ParseDsmrTelegram.parseWithGrammar(telegram, offset, length, options, dsmrTelegram);
+        }
+        if (dsmrTelegram.rawIdent == null) {
+            // Rejected by the strict mode (wrong CRC): this cannot be used as the previous telegram.
+            reset();
+            return dsmrTelegram;
+        }
+        remember(telegram, offset, length, dsmrTelegram);
+        return dsmrTelegram;
+    }
+
+    /**
+     * Forget the previous telegram so the next one is parsed completely.
+     */
+    public void reset() {
+        previousLines            = 0;
+        previousTelegram         = null;
+        previousReceiveTimestamp = null;
+    }
+
+    /** @return The number of lines that were taken from the previous telegram. */
+    public long getReusedLines() {
+        return reusedLines;
+    }
+
+    /** @return The number of lines that were actually parsed. */
+    public long getParsedLines() {
+        return parsedLines;
+    }
+
+    private void remember(byte[] telegram, int offset, int length, DSMRTelegram dsmrTelegram) {
+        if (previousInput.length < length) {
+            previousInput = new byte[Math.max(length, previousInput.length * 2)];
+        }
+        System.arraycopy(telegram, offset, previousInput, 0, length);
+
+        // Swap the line administration
+        long[] swapCosemIds = previousCosemIds;
+        int[]  swapStarts   = previousStarts;
+        int[]  swapLengths  = previousLengths;
+        previousCosemIds   = cosemIds;
+        previousStarts     = starts;
+        previousLengths    = lengths;
+        cosemIds           = swapCosemIds;
+        starts             = swapStarts;
+        lengths            = swapLengths;
+        previousLines = lines;
+
+        previousTelegram         = dsmrTelegram;
+        previousReceiveTimestamp = dsmrTelegram.receiveTimestamp;
+    }
+
+    /**
+     * Find the same line in the previous telegram.
+     * @param cosemId The packed cosem id of the line
+     * @param input The telegram that is being parsed
+     * @param start Where the line starts in the input
+     * @param end The end of the telegram
+     * @return The length of the line if the previous telegram had exactly the same bytes at the start, -1 otherwise.
+     */
+    int unchangedLength(long cosemId, byte[] input, int start, int end) {
+        if (previousTelegram == null) {
+            return -1;
+        }
+        // The lines are nearly always in the same order as in the previous telegram.
+        int line = -1;
+        for (int i = nextPreviousLine; i < previousLines; i++) {
+            if (previousCosemIds[i] == cosemId) {
+                line = i;
+                break;
+            }
+        }
+        if (line < 0) {
+            for (int i = 0; i < nextPreviousLine && i < previousLines; i++) {
+                if (previousCosemIds[i] == cosemId) {
+                    line = i;
+                    break;
+                }
+            }
+        }
+        if (line < 0) {
+            return -1;
+        }
+        nextPreviousLine = line + 1;
+
+        int length = previousLengths[line];
+        int previousStart = previousStarts[line];
+        if (end - start < length ||
+            !Arrays.equals(input, start, start + length, previousInput, previousStart, previousStart + length)) {
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Set the identification from the (ASCII) bytes of the ident line.
+     * If it is the same as in the previous telegram of this meter the existing Strings are reused.
+     * @param dsmrTelegram The telegram that is being parsed
+     * @param input The bytes of the telegram
+     * @param start Where the ident line starts in the input
+     * @param end Where the ident line ends in the input
+     */
+    void setIdent(DSMRTelegram dsmrTelegram, byte[] input, int start, int end) {
+        String previousIdent = previousTelegram == null ? null : previousTelegram.rawIdent;
+        if (previousIdent != null && previousIdent.length() == end - start) {
+            int i = start;
+            while (i < end && previousIdent.charAt(i - start) == input[i]) {
+                i++;
+            }
+            if (i == end) {
+                dsmrTelegram.rawIdent          = previousIdent;
+                dsmrTelegram.equipmentBrandTag = previousTelegram.equipmentBrandTag;
+                dsmrTelegram.ident             = previousTelegram.ident;
+                return;
+            }
+        }
+        ParseDsmrTelegram.setIdent(dsmrTelegram, input, start, end);
+    }
+
+    /**
+     * Record where a line of the current telegram is.
+     * @param cosemId The packed cosem id of the line
+     * @param start The start of the line relative to the start of the telegram
+     * @param length The length of the line
+     * @param reused Was the value taken from the previous telegram
+     */
+    void addLine(long cosemId, int start, int length, boolean reused) {
+        if (lines == cosemIds.length) {
+            cosemIds = Arrays.copyOf(cosemIds, lines * 2);
+            starts   = Arrays.copyOf(starts,   lines * 2);
+            lengths  = Arrays.copyOf(lengths,  lines * 2);
+        }
+        cosemIds[lines] = cosemId;
+        starts[lines]   = start;
+        lengths[lines]  = length;
+        lines++;
+        if (reused) {
+            reusedLines++;
+        } else {
+            parsedLines++;
+        }
+    }
+}
@@ -18,12 +18,16 @@
 
 package nl.basjes.dsmr;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,6 +36,13 @@ import java.util.stream.Collectors;
 @Getter
 @ToString
 public class DSMRTelegram {
+    /**
+     * Which of the TelegramFields were present (one bit per TelegramField).
+     * The measurements are stored as primitives and the getters return null if they were not present.
+     */
+    @ToString.Exclude
+    long presentFields;
+
     /** Is this record classified as a valid record. I.e. do we think you can use this data. */
     boolean valid;
     /** Does this record have a CRC and is it valid. Always false on DSMR 2.2 records. */
@@ -48,32 +59,35 @@ public class DSMRTelegram {
     /** P1 Version information. Is null on DSMR 2.2 records. */
     String p1Version;
     /** Timestamp of the measurement as recorded by the clock in the meter (which are usually quite inaccurate). */
-    ZonedDateTime timestamp;
+    long timestamp; // Epoch seconds
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    ZoneId timestampZone;
     /** Timestamp when the measurement was received by the server (usually very accurate because of NTP). */
     ZonedDateTime receiveTimestamp;
     /** Equipment identifier   */
     String equipmentId;
 
     /** Tariff indicator electricity */
-    Long   electricityTariffIndicator;
+    long   electricityTariffIndicator;
     /** Meter Reading electricity delivered to client (low tariff) in 0,001 kWh */
-    Double electricityReceivedLowTariff;
+    double electricityReceivedLowTariff;
     /** Meter Reading electricity delivered to client (normal tariff) in 0,001 kWh */
-    Double electricityReceivedNormalTariff;
+    double electricityReceivedNormalTariff;
     /** Actual electricity power delivered (+P) in 1 Watt resolution (value in kW) */
-    Double electricityPowerReceived;
+    double electricityPowerReceived;
 
     /** Meter Reading electricity returned by client (low tariff) in 0,001 kWh */
-    Double electricityReturnedLowTariff;
+    double electricityReturnedLowTariff;
     /** Meter Reading electricity returned by client (normal tariff) in 0,001 kWh */
-    Double electricityReturnedNormalTariff;
+    double electricityReturnedNormalTariff;
     /** Actual electricity power returned (-P) in 1 Watt resolution (value in kW) */
-    Double electricityPowerReturned;
+    double electricityPowerReturned;
 
     /** Number of power failures in any phases */
-    Long powerFailures;
+    long powerFailures;
     /** Number of long power failures in any phases */
-    Long longPowerFailures;
+    long longPowerFailures;
 
     @Getter
     @ToString
@@ -86,35 +100,58 @@ public class DSMRTelegram {
     Long powerFailureEventLogSize = 0L;      // Power failure event log size (as indicated in the output)
     List<PowerFailureEvent> powerFailureEventLog = new ArrayList<>(); // Power failure event log
 
-    /** Number of voltage sags in phase L1    */ Long voltageSagsPhaseL1;
-    /** Number of voltage sags in phase L2    */ Long voltageSagsPhaseL2;
-    /** Number of voltage sags in phase L3    */ Long voltageSagsPhaseL3;
+    /** Number of voltage sags in phase L1    */ long voltageSagsPhaseL1;
+    /** Number of voltage sags in phase L2    */ long voltageSagsPhaseL2;
+    /** Number of voltage sags in phase L3    */ long voltageSagsPhaseL3;
 
-    /** Number of voltage swells in phase L1  */ Long voltageSwellsPhaseL1;
-    /** Number of voltage swells in phase L2  */ Long voltageSwellsPhaseL2;
-    /** Number of voltage swells in phase L3  */ Long voltageSwellsPhaseL3;
+    /** Number of voltage swells in phase L1  */ long voltageSwellsPhaseL1;
+    /** Number of voltage swells in phase L2  */ long voltageSwellsPhaseL2;
+    /** Number of voltage swells in phase L3  */ long voltageSwellsPhaseL3;
 
-    /** Instantaneous voltage L1              */ Double voltageL1;
-    /** Instantaneous voltage L2              */ Double voltageL2;
-    /** Instantaneous voltage L3              */ Double voltageL3;
+    /** Instantaneous voltage L1              */ double voltageL1;
+    /** Instantaneous voltage L2              */ double voltageL2;
+    /** Instantaneous voltage L3              */ double voltageL3;
 
-    /** Instantaneous current L1              */ Double currentL1;
-    /** Instantaneous current L2              */ Double currentL2;
-    /** Instantaneous current L3              */ Double currentL3;
+    /** Instantaneous current L1              */ double currentL1;
+    /** Instantaneous current L2              */ double currentL2;
+    /** Instantaneous current L3              */ double currentL3;
 
-    /** Instantaneous active power L1 (+P)    */ Double powerReceivedL1;
-    /** Instantaneous active power L2 (+P)    */ Double powerReceivedL2;
-    /** Instantaneous active power L3 (+P)    */ Double powerReceivedL3;
+    /** Instantaneous active power L1 (+P)    */ double powerReceivedL1;
+    /** Instantaneous active power L2 (+P)    */ double powerReceivedL2;
+    /** Instantaneous active power L3 (+P)    */ double powerReceivedL3;
 
-    /** Instantaneous active power L1 (-P)    */ Double powerReturnedL1;
-    /** Instantaneous active power L2 (-P)    */ Double powerReturnedL2;
-    /** Instantaneous active power L3 (-P)    */ Double powerReturnedL3;
+    /** Instantaneous active power L1 (-P)    */ double powerReturnedL1;
+    /** Instantaneous active power L2 (-P)    */ double powerReturnedL2;
+    /** Instantaneous active power L3 (-P)    */ double powerReturnedL3;
 
     /** Text message codes: numeric 8 digits. */ String messageCodes;
     /** Text message max 1024 characters.     */ String message;
 
+    /** The values of the additional OBIS codes (see ObisRegistry.register) as stored by their decoders. */
+    @Getter(AccessLevel.NONE)
+    Map<String, Object> customValues; // Only created if needed
+
     final Map<Integer, MBusEvent> mBusEvents = new TreeMap<>();
 
+    /**
+     * @return The values of the additional OBIS codes (see ObisRegistry.register), never null.
+     */
+    public Map<String, Object> getCustomValues() {
+        return customValues == null ? Collections.emptyMap() : Collections.unmodifiableMap(customValues);
+    }
+
+    /**
+     * Store a value of an additional OBIS code, intended to be used by an ObisRegistry.Decoder.
+     * @param name  The name of the value
+     * @param value The value
+     */
+    public void putCustomValue(String name, Object value) {
+        if (customValues == null) {
+            customValues = new TreeMap<>();
+        }
+        customValues.put(name, value);
+    }
+
     /** Also expose the mBusEvents as a List instead of a Map */
     @SuppressWarnings("unused") // Use via reflection by the GraphQL service
     public List<MBusEventEntry> getMBusEventList() {
@@ -130,10 +167,381 @@ public class DSMRTelegram {
     // Gas
     /** Gas measurement device id             */ String        gasEquipmentId;
     /** Gas measurement timestamp             */ ZonedDateTime gasTimestamp;
-    /** Gas consumption in cubic meters       */ Double        gasM3;
+    /** Gas consumption in cubic meters       */ double        gasM3;
 
     // Electricity via a slave
     /** Slave e-meter device id               */ String        slaveEMeterEquipmentId;
     /** Slave e-meter measurement timestamp   */ ZonedDateTime slaveEMeterTimestamp;
-    /** Slave e-meter consumption in kWh      */ Double        slaveEMeterkWh;
+    /** Slave e-meter consumption in kWh      */ double        slaveEMeterkWh;
+
+    // The nested instances of the previous telegram that can be reused when this instance is reset.
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final List<PowerFailureEvent> sparePowerFailureEvents = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final List<MBusEvent> spareMBusEvents = new ArrayList<>();
+
+    // ------------------------------------------
+
+    /** @return Was this field present in the telegram. */
+    public boolean isPresent(TelegramField field) {
+        return (presentFields & field.mask()) != 0;
+    }
+
+    /** Timestamp of the measurement as recorded by the clock in the meter (which are usually quite inaccurate). */
+    public ZonedDateTime getTimestamp() {
+        if (!isPresent(TelegramField.TIMESTAMP)) {
+            return null;
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), timestampZone);
+    }
+
+    /** @return The timestamp in seconds since the epoch or TimestampParser.NO_TIMESTAMP if not present. */
+    public long getTimestampEpochSecond() {
+        return isPresent(TelegramField.TIMESTAMP) ? timestamp : TimestampParser.NO_TIMESTAMP;
+    }
+
+    void markPresent(TelegramField field) {
+        presentFields |= field.mask();
+    }
+
+    void setTimestamp(long epochSecond, ZoneId zone) {
+        timestamp = epochSecond;
+        timestampZone = zone;
+        presentFields |= TelegramField.TIMESTAMP.mask();
+    }
+
+    void setTimestamp(ZonedDateTime value) {
+        if (value == null) {
+            presentFields &= ~TelegramField.TIMESTAMP.mask();
+            timestampZone = null;
+            return;
+        }
+        timestamp = value.toEpochSecond();
+        timestampZone = value.getZone();
+        presentFields |= TelegramField.TIMESTAMP.mask();
+    }
+
+    public Long getElectricityTariffIndicator() {
+        return isPresent(TelegramField.ELECTRICITY_TARIFF_INDICATOR) ? electricityTariffIndicator : null;
+    }
+
+    public Double getElectricityReceivedLowTariff() {
+        return isPresent(TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF) ? electricityReceivedLowTariff : null;
+    }
+
+    public Double getElectricityReceivedNormalTariff() {
+        return isPresent(TelegramField.ELECTRICITY_RECEIVED_NORMAL_TARIFF) ? electricityReceivedNormalTariff : null;
+    }
+
+    public Double getElectricityPowerReceived() {
+        return isPresent(TelegramField.ELECTRICITY_POWER_RECEIVED) ? electricityPowerReceived : null;
+    }
+
+    public Double getElectricityReturnedLowTariff() {
+        return isPresent(TelegramField.ELECTRICITY_RETURNED_LOW_TARIFF) ? electricityReturnedLowTariff : null;
+    }
+
+    public Double getElectricityReturnedNormalTariff() {
+        return isPresent(TelegramField.ELECTRICITY_RETURNED_NORMAL_TARIFF) ? electricityReturnedNormalTariff : null;
+    }
+
+    public Double getElectricityPowerReturned() {
+        return isPresent(TelegramField.ELECTRICITY_POWER_RETURNED) ? electricityPowerReturned : null;
+    }
+
+    public Long getPowerFailures() {
+        return isPresent(TelegramField.POWER_FAILURES) ? powerFailures : null;
+    }
+
+    public Long getLongPowerFailures() {
+        return isPresent(TelegramField.LONG_POWER_FAILURES) ? longPowerFailures : null;
+    }
+
+    public Long getVoltageSagsPhaseL1() {
+        return isPresent(TelegramField.VOLTAGE_SAGS_PHASE_L1) ? voltageSagsPhaseL1 : null;
+    }
+
+    public Long getVoltageSagsPhaseL2() {
+        return isPresent(TelegramField.VOLTAGE_SAGS_PHASE_L2) ? voltageSagsPhaseL2 : null;
+    }
+
+    public Long getVoltageSagsPhaseL3() {
+        return isPresent(TelegramField.VOLTAGE_SAGS_PHASE_L3) ? voltageSagsPhaseL3 : null;
+    }
+
+    public Long getVoltageSwellsPhaseL1() {
+        return isPresent(TelegramField.VOLTAGE_SWELLS_PHASE_L1) ? voltageSwellsPhaseL1 : null;
+    }
+
+    public Long getVoltageSwellsPhaseL2() {
+        return isPresent(TelegramField.VOLTAGE_SWELLS_PHASE_L2) ? voltageSwellsPhaseL2 : null;
+    }
+
+    public Long getVoltageSwellsPhaseL3() {
+        return isPresent(TelegramField.VOLTAGE_SWELLS_PHASE_L3) ? voltageSwellsPhaseL3 : null;
+    }
+
+    public Double getVoltageL1() {
+        return isPresent(TelegramField.VOLTAGE_L1) ? voltageL1 : null;
+    }
+
+    public Double getVoltageL2() {
+        return isPresent(TelegramField.VOLTAGE_L2) ? voltageL2 : null;
+    }
+
+    public Double getVoltageL3() {
+        return isPresent(TelegramField.VOLTAGE_L3) ? voltageL3 : null;
+    }
+
+    public Double getCurrentL1() {
+        return isPresent(TelegramField.CURRENT_L1) ? currentL1 : null;
+    }
+
+    public Double getCurrentL2() {
+        return isPresent(TelegramField.CURRENT_L2) ? currentL2 : null;
+    }
+
+    public Double getCurrentL3() {
+        return isPresent(TelegramField.CURRENT_L3) ? currentL3 : null;
+    }
+
+    public Double getPowerReceivedL1() {
+        return isPresent(TelegramField.POWER_RECEIVED_L1) ? powerReceivedL1 : null;
+    }
+
+    public Double getPowerReceivedL2() {
+        return isPresent(TelegramField.POWER_RECEIVED_L2) ? powerReceivedL2 : null;
+    }
+
+    public Double getPowerReceivedL3() {
+        return isPresent(TelegramField.POWER_RECEIVED_L3) ? powerReceivedL3 : null;
+    }
+
+    public Double getPowerReturnedL1() {
+        return isPresent(TelegramField.POWER_RETURNED_L1) ? powerReturnedL1 : null;
+    }
+
+    public Double getPowerReturnedL2() {
+        return isPresent(TelegramField.POWER_RETURNED_L2) ? powerReturnedL2 : null;
+    }
+
+    public Double getPowerReturnedL3() {
+        return isPresent(TelegramField.POWER_RETURNED_L3) ? powerReturnedL3 : null;
+    }
+
+    public Double getGasM3() {
+        return isPresent(TelegramField.GAS_M3) ? gasM3 : null;
+    }
+
+    public Double getSlaveEMeterkWh() {
+        return isPresent(TelegramField.SLAVE_E_METER_KWH) ? slaveEMeterkWh : null;
+    }
+
+    void set(TelegramField field, long value) {
+        switch (field) {
+            case ELECTRICITY_TARIFF_INDICATOR:       electricityTariffIndicator      = value; break;
+            case POWER_FAILURES:                     powerFailures                   = value; break;
+            case LONG_POWER_FAILURES:                longPowerFailures               = value; break;
+            case VOLTAGE_SAGS_PHASE_L1:              voltageSagsPhaseL1              = value; break;
+            case VOLTAGE_SAGS_PHASE_L2:              voltageSagsPhaseL2              = value; break;
+            case VOLTAGE_SAGS_PHASE_L3:              voltageSagsPhaseL3              = value; break;
+            case VOLTAGE_SWELLS_PHASE_L1:            voltageSwellsPhaseL1            = value; break;
+            case VOLTAGE_SWELLS_PHASE_L2:            voltageSwellsPhaseL2            = value; break;
+            case VOLTAGE_SWELLS_PHASE_L3:            voltageSwellsPhaseL3            = value; break;
+            default: throw new IllegalArgumentException("The field " + field + " is not a long");
+        }
+        presentFields |= field.mask();
+    }
+
+    void set(TelegramField field, double value) {
+        switch (field) {
+            case ELECTRICITY_RECEIVED_LOW_TARIFF:    electricityReceivedLowTariff    = value; break;
+            case ELECTRICITY_RECEIVED_NORMAL_TARIFF: electricityReceivedNormalTariff = value; break;
+            case ELECTRICITY_POWER_RECEIVED:         electricityPowerReceived        = value; break;
+            case ELECTRICITY_RETURNED_LOW_TARIFF:    electricityReturnedLowTariff    = value; break;
+            case ELECTRICITY_RETURNED_NORMAL_TARIFF: electricityReturnedNormalTariff = value; break;
+            case ELECTRICITY_POWER_RETURNED:         electricityPowerReturned        = value; break;
+            case VOLTAGE_L1:                         voltageL1                       = value; break;
+            case VOLTAGE_L2:                         voltageL2                       = value; break;
+            case VOLTAGE_L3:                         voltageL3                       = value; break;
+            case CURRENT_L1:                         currentL1                       = value; break;
+            case CURRENT_L2:                         currentL2                       = value; break;
+            case CURRENT_L3:                         currentL3                       = value; break;
+            case POWER_RECEIVED_L1:                  powerReceivedL1                 = value; break;
+            case POWER_RECEIVED_L2:                  powerReceivedL2                 = value; break;
+            case POWER_RECEIVED_L3:                  powerReceivedL3                 = value; break;
+            case POWER_RETURNED_L1:                  powerReturnedL1                 = value; break;
+            case POWER_RETURNED_L2:                  powerReturnedL2                 = value; break;
+            case POWER_RETURNED_L3:                  powerReturnedL3                 = value; break;
+            case GAS_M3:                             gasM3                           = value; break;
+            case SLAVE_E_METER_KWH:                  slaveEMeterkWh                  = value; break;
+            default: throw new IllegalArgumentException("The field " + field + " is not a double");
+        }
+        presentFields |= field.mask();
+    }
+
+    long getLong(TelegramField field) {
+        switch (field) {
+            case ELECTRICITY_TARIFF_INDICATOR:       return electricityTariffIndicator;
+            case POWER_FAILURES:                     return powerFailures;
+            case LONG_POWER_FAILURES:                return longPowerFailures;
+            case VOLTAGE_SAGS_PHASE_L1:              return voltageSagsPhaseL1;
+            case VOLTAGE_SAGS_PHASE_L2:              return voltageSagsPhaseL2;
+            case VOLTAGE_SAGS_PHASE_L3:              return voltageSagsPhaseL3;
+            case VOLTAGE_SWELLS_PHASE_L1:            return voltageSwellsPhaseL1;
+            case VOLTAGE_SWELLS_PHASE_L2:            return voltageSwellsPhaseL2;
+            case VOLTAGE_SWELLS_PHASE_L3:            return voltageSwellsPhaseL3;
+            default: throw new IllegalArgumentException("The field " + field + " is not a long");
+        }
+    }
+
+    double getDouble(TelegramField field) {
+        switch (field) {
+            case ELECTRICITY_RECEIVED_LOW_TARIFF:    return electricityReceivedLowTariff;
+            case ELECTRICITY_RECEIVED_NORMAL_TARIFF: return electricityReceivedNormalTariff;
+            case ELECTRICITY_POWER_RECEIVED:         return electricityPowerReceived;
+            case ELECTRICITY_RETURNED_LOW_TARIFF:    return electricityReturnedLowTariff;
+            case ELECTRICITY_RETURNED_NORMAL_TARIFF: return electricityReturnedNormalTariff;
+            case ELECTRICITY_POWER_RETURNED:         return electricityPowerReturned;
+            case VOLTAGE_L1:                         return voltageL1;
+            case VOLTAGE_L2:                         return voltageL2;
+            case VOLTAGE_L3:                         return voltageL3;
+            case CURRENT_L1:                         return currentL1;
+            case CURRENT_L2:                         return currentL2;
+            case CURRENT_L3:                         return currentL3;
+            case POWER_RECEIVED_L1:                  return powerReceivedL1;
+            case POWER_RECEIVED_L2:                  return powerReceivedL2;
+            case POWER_RECEIVED_L3:                  return powerReceivedL3;
+            case POWER_RETURNED_L1:                  return powerReturnedL1;
+            case POWER_RETURNED_L2:                  return powerReturnedL2;
+            case POWER_RETURNED_L3:                  return powerReturnedL3;
+            case GAS_M3:                             return gasM3;
+            case SLAVE_E_METER_KWH:                  return slaveEMeterkWh;
+            default: throw new IllegalArgumentException("The field " + field + " is not a double");
+        }
+    }
+
+    /**
+     * Copy the value (and if it was present) of a single field from an other telegram.
+     * The MBus events are not handled here because they are stored per channel.
+     */
+    void copyField(DSMRTelegram from, TelegramField field) {
+        switch (field) {
+            case TIMESTAMP:
+                timestamp     = from.timestamp;
+                timestampZone = from.timestampZone;
+                break;
+            case EQUIPMENT_ID:                       equipmentId                     = from.equipmentId; break;
+            case MESSAGE_CODES:                      messageCodes                    = from.messageCodes; break;
+            case MESSAGE:                            message                         = from.message; break;
+            case POWER_FAILURE_EVENT_LOG:
+                powerFailureEventLogSize = from.powerFailureEventLogSize;
+                powerFailureEventLog.clear();
+                // Copied so reusing the other telegram (see reset) does not change this one.
+                for (PowerFailureEvent event : from.powerFailureEventLog) {
+                    PowerFailureEvent copy = newPowerFailureEvent();
+                    copy.startTime = event.startTime;
+                    copy.endTime   = event.endTime;
+                    copy.duration  = event.duration;
+                    powerFailureEventLog.add(copy);
+                }
+                break;
+            case ELECTRICITY_TARIFF_INDICATOR:       electricityTariffIndicator      = from.electricityTariffIndicator; break;
+            case POWER_FAILURES:                     powerFailures                   = from.powerFailures; break;
+            case LONG_POWER_FAILURES:                longPowerFailures               = from.longPowerFailures; break;
+            case VOLTAGE_SAGS_PHASE_L1:              voltageSagsPhaseL1              = from.voltageSagsPhaseL1; break;
+            case VOLTAGE_SAGS_PHASE_L2:              voltageSagsPhaseL2              = from.voltageSagsPhaseL2; break;
+            case VOLTAGE_SAGS_PHASE_L3:              voltageSagsPhaseL3              = from.voltageSagsPhaseL3; break;
+            case VOLTAGE_SWELLS_PHASE_L1:            voltageSwellsPhaseL1            = from.voltageSwellsPhaseL1; break;
+            case VOLTAGE_SWELLS_PHASE_L2:            voltageSwellsPhaseL2            = from.voltageSwellsPhaseL2; break;
+            case VOLTAGE_SWELLS_PHASE_L3:            voltageSwellsPhaseL3            = from.voltageSwellsPhaseL3; break;
+            case ELECTRICITY_RECEIVED_LOW_TARIFF:    electricityReceivedLowTariff    = from.electricityReceivedLowTariff; break;
+            case ELECTRICITY_RECEIVED_NORMAL_TARIFF: electricityReceivedNormalTariff = from.electricityReceivedNormalTariff; break;
+            case ELECTRICITY_POWER_RECEIVED:         electricityPowerReceived        = from.electricityPowerReceived; break;
+            case ELECTRICITY_RETURNED_LOW_TARIFF:    electricityReturnedLowTariff    = from.electricityReturnedLowTariff; break;
+            case ELECTRICITY_RETURNED_NORMAL_TARIFF: electricityReturnedNormalTariff = from.electricityReturnedNormalTariff; break;
+            case ELECTRICITY_POWER_RETURNED:         electricityPowerReturned        = from.electricityPowerReturned; break;
+            case VOLTAGE_L1:                         voltageL1                       = from.voltageL1; break;
+            case VOLTAGE_L2:                         voltageL2                       = from.voltageL2; break;
+            case VOLTAGE_L3:                         voltageL3                       = from.voltageL3; break;
+            case CURRENT_L1:                         currentL1                       = from.currentL1; break;
+            case CURRENT_L2:                         currentL2                       = from.currentL2; break;
+            case CURRENT_L3:                         currentL3                       = from.currentL3; break;
+            case POWER_RECEIVED_L1:                  powerReceivedL1                 = from.powerReceivedL1; break;
+            case POWER_RECEIVED_L2:                  powerReceivedL2                 = from.powerReceivedL2; break;
+            case POWER_RECEIVED_L3:                  powerReceivedL3                 = from.powerReceivedL3; break;
+            case POWER_RETURNED_L1:                  powerReturnedL1                 = from.powerReturnedL1; break;
+            case POWER_RETURNED_L2:                  powerReturnedL2                 = from.powerReturnedL2; break;
+            case POWER_RETURNED_L3:                  powerReturnedL3                 = from.powerReturnedL3; break;
+            case GAS_M3:                             gasM3                           = from.gasM3; break;
+            case SLAVE_E_METER_KWH:                  slaveEMeterkWh                  = from.slaveEMeterkWh; break;
+            default: throw new IllegalArgumentException("The field " + field + " cannot be copied");
+        }
+        presentFields = (presentFields & ~field.mask()) | (from.presentFields & field.mask());
+    }
+
+    /**
+     * Clear everything so this instance can be filled again (see ParseDsmrTelegram.parseInto).
+     * The collections, the PowerFailureEvents and the MBusEvents are retained for reuse.
+     */
+    void reset() {
+        presentFields                   = 0;
+        valid                           = false;
+        validCRC                        = false;
+        rawIdent                        = null;
+        equipmentBrandTag               = null;
+        ident                           = null;
+        crc                             = null;
+        p1Version                       = null;
+        timestampZone                   = null;
+        receiveTimestamp                = null;
+        equipmentId                     = null;
+        powerFailureEventLogSize        = 0L;
+        messageCodes                    = null;
+        message                         = null;
+        gasEquipmentId                  = null;
+        gasTimestamp                    = null;
+        slaveEMeterEquipmentId          = null;
+        slaveEMeterTimestamp            = null;
+        if (customValues != null) {
+            customValues.clear();
+        }
+
+        // Plain loops because addAll would allocate a temporary array.
+        for (PowerFailureEvent powerFailureEvent : powerFailureEventLog) {
+            sparePowerFailureEvents.add(powerFailureEvent);
+        }
+        powerFailureEventLog.clear();
+        for (MBusEvent mBusEvent : mBusEvents.values()) {
+            spareMBusEvents.add(mBusEvent);
+        }
+        mBusEvents.clear();
+    }
+
+    PowerFailureEvent newPowerFailureEvent() {
+        if (sparePowerFailureEvents.isEmpty()) {
+            return new PowerFailureEvent();
+        }
+        return sparePowerFailureEvents.remove(sparePowerFailureEvents.size() - 1);
+    }
+
+    MBusEvent getMBusEvent(int channel) {
+        MBusEvent mBusEvent = mBusEvents.get(channel);
+        if (mBusEvent == null) {
+            if (spareMBusEvents.isEmpty()) {
+                mBusEvent = new MBusEvent();
+            } else {
+                mBusEvent = spareMBusEvents.remove(spareMBusEvents.size() - 1);
+                mBusEvent.deviceType  = null;
+                mBusEvent.equipmentId = null;
+                mBusEvent.value       = null;
+                mBusEvent.unit        = null;
+                mBusEvent.timestamp   = null;
+            }
+            mBusEvents.put(channel, mBusEvent);
+        }
+        return mBusEvent;
+    }
 }
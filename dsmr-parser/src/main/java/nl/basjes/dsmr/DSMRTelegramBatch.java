@@ -0,0 +1,513 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * The numerical values of many telegrams stored per field in primitive arrays (i.e. columnar).
+ * <p>
+ * Aggregating a single field over a day of telegrams then runs over a single array instead of
+ * following a pointer to a telegram (and a boxed value) for every row.
+ * For each field a bitset records in which rows it was present. An absent value is stored as 0 so a sum
+ * needs no checks at all and the other aggregates only check the bitset if the field was not always present.
+ * <p>
+ * Only the timestamps, the numerical fields (see getLong and getDouble) and their presence are retained;
+ * the identifiers, messages, power failure event log and the MBus events are not.
+ * <p>
+ * The aggregates over a time range (see between) assume the rows were appended in the order of their timestamp.
+ * So appendParsed skips the telegrams that are invalid (like a damaged one) or do not have a timestamp.
+ * <p>
+ * A DSMRTelegramBatch is NOT thread safe.
+ */
+public final class DSMRTelegramBatch {
+
+    private static final TelegramField[] LONG_FIELDS = {
+        TelegramField.ELECTRICITY_TARIFF_INDICATOR,
+        TelegramField.POWER_FAILURES,
+        TelegramField.LONG_POWER_FAILURES,
+        TelegramField.VOLTAGE_SAGS_PHASE_L1,
+        TelegramField.VOLTAGE_SAGS_PHASE_L2,
+        TelegramField.VOLTAGE_SAGS_PHASE_L3,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L1,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L2,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L3,
+    };
+
+    private static final TelegramField[] DOUBLE_FIELDS = {
+        TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF,
+        TelegramField.ELECTRICITY_RECEIVED_NORMAL_TARIFF,
+        TelegramField.ELECTRICITY_POWER_RECEIVED,
+        TelegramField.ELECTRICITY_RETURNED_LOW_TARIFF,
+        TelegramField.ELECTRICITY_RETURNED_NORMAL_TARIFF,
+        TelegramField.ELECTRICITY_POWER_RETURNED,
+        TelegramField.VOLTAGE_L1,
+        TelegramField.VOLTAGE_L2,
+        TelegramField.VOLTAGE_L3,
+        TelegramField.CURRENT_L1,
+        TelegramField.CURRENT_L2,
+        TelegramField.CURRENT_L3,
+        TelegramField.POWER_RECEIVED_L1,
+        TelegramField.POWER_RECEIVED_L2,
+        TelegramField.POWER_RECEIVED_L3,
+        TelegramField.POWER_RETURNED_L1,
+        TelegramField.POWER_RETURNED_L2,
+        TelegramField.POWER_RETURNED_L3,
+        TelegramField.GAS_M3,
+        TelegramField.SLAVE_E_METER_KWH,
+    };
+
+    // Per TelegramField (ordinal) the index in longs or doubles, -1 if it is not that kind of field.
+    private static final int[] LONG_COLUMN   = new int[TelegramField.values().length];
+    private static final int[] DOUBLE_COLUMN = new int[TelegramField.values().length];
+
+    static {
+        Arrays.fill(LONG_COLUMN, -1);
+        Arrays.fill(DOUBLE_COLUMN, -1);
+        for (int i = 0; i < LONG_FIELDS.length; i++) {
+            LONG_COLUMN[LONG_FIELDS[i].ordinal()] = i;
+        }
+        for (int i = 0; i < DOUBLE_FIELDS.length; i++) {
+            DOUBLE_COLUMN[DOUBLE_FIELDS[i].ordinal()] = i;
+        }
+    }
+
+    private static final long NO_RECEIVE_TIMESTAMP = Long.MIN_VALUE;
+
+    // A slice shares the arrays of the batch it was taken from and only sees the rows [offset, offset + size).
+    private final boolean    isSlice;
+    private final int        offset;
+    private       int        size;
+    private       int        capacity;
+
+    private       long[]     epochSeconds;
+    private       long[]     receiveEpochMillis;
+    // The columns are only created when the first value for them is appended.
+    private       long[][]   longs   = new long[LONG_FIELDS.length][];
+    private       double[][] doubles = new double[DOUBLE_FIELDS.length][];
+    // Per TelegramField a bitset of the rows in which it was present (null if it was never present).
+    private       long[][]   present = new long[TelegramField.values().length][];
+
+    // Reused when parsing telegrams directly into this batch.
+    private       DSMRTelegram parsed;
+    private       ParseOptions parseOptions;
+    private       ParseOptions parseOptionsWithTimestamp;
+
+    /** An empty batch. */
+    public DSMRTelegramBatch() {
+        this(1024);
+    }
+
+    /**
+     * An empty batch.
+     * @param initialCapacity The number of rows before the arrays need to grow (a day of 1 telegram per second is 86400).
+     */
+    public DSMRTelegramBatch(int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("The initial capacity of a DSMRTelegramBatch must be at least 1");
+        }
+        isSlice            = false;
+        offset             = 0;
+        capacity           = initialCapacity;
+        epochSeconds       = new long[initialCapacity];
+        receiveEpochMillis = new long[initialCapacity];
+    }
+
+    private DSMRTelegramBatch(DSMRTelegramBatch source, int offset, int size) {
+        isSlice            = true;
+        this.offset        = offset;
+        this.size          = size;
+        capacity           = source.capacity;
+        epochSeconds       = source.epochSeconds;
+        receiveEpochMillis = source.receiveEpochMillis;
+        longs              = source.longs.clone();
+        doubles            = source.doubles.clone();
+        present            = source.present.clone();
+    }
+
+    /**
+     * @param telegrams The telegrams in the order of their timestamp.
+     * @return A batch with the values of these telegrams.
+     */
+    public static DSMRTelegramBatch of(Collection<? extends DSMRTelegram> telegrams) {
+        DSMRTelegramBatch batch = new DSMRTelegramBatch(Math.max(1, telegrams.size()));
+        for (DSMRTelegram telegram : telegrams) {
+            batch.append(telegram);
+        }
+        return batch;
+    }
+
+    /** @return The number of rows. */
+    public int size() {
+        return size;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Append the values of a telegram as a new row.
+     * @param telegram The telegram (which is not retained)
+     * @throws UnsupportedOperationException If this is a slice
+     */
+    public void append(DSMRTelegram telegram) {
+        if (isSlice) {
+            throw new UnsupportedOperationException("A slice of a DSMRTelegramBatch cannot be appended to");
+        }
+        if (telegram instanceof LazyDSMRTelegram) {
+            ((LazyDSMRTelegram) telegram).decodeAll();
+        }
+        if (size == capacity) {
+            grow();
+        }
+        int row = size++;
+        long presentFields = telegram.presentFields;
+        epochSeconds[row]       = telegram.getTimestampEpochSecond();
+        receiveEpochMillis[row] = telegram.receiveTimestamp == null ? NO_RECEIVE_TIMESTAMP : telegram.receiveTimestamp.toInstant().toEpochMilli();
+        while (presentFields != 0) {
+            int ordinal = Long.numberOfTrailingZeros(presentFields);
+            presentFields &= presentFields - 1;
+            long[] bits = present[ordinal];
+            if (bits == null) {
+                bits = new long[bitsetWords(capacity)];
+                present[ordinal] = bits;
+            }
+            bits[row >>> 6] |= 1L << row;
+            setValue(row, ordinal, telegram);
+        }
+    }
+
+    private void setValue(int row, int ordinal, DSMRTelegram telegram) {
+        int column = LONG_COLUMN[ordinal];
+        if (column >= 0) {
+            if (longs[column] == null) {
+                longs[column] = new long[capacity];
+            }
+            longs[column][row] = telegram.getLong(LONG_FIELDS[column]);
+            return;
+        }
+        column = DOUBLE_COLUMN[ordinal];
+        if (column >= 0) {
+            if (doubles[column] == null) {
+                doubles[column] = new double[capacity];
+            }
+            doubles[column][row] = telegram.getDouble(DOUBLE_FIELDS[column]);
+        }
+    }
+
+    /**
+     * Parse a telegram directly into a new row.
+     * @param telegram The telegram as received from the P1 port
+     * @return true if a row was appended, false if the input was null or empty, invalid or did not have a timestamp.
+     */
+    public boolean appendParsed(String telegram) {
+        return appendIfParsed(ParseDsmrTelegram.parseInto(telegram, parsedTelegram()));
+    }
+
+    /**
+     * Parse a telegram directly into a new row and only decode the selected fields (the others are absent).
+     * The timestamp is always decoded.
+     * @param telegram The bytes that contain the telegram
+     * @param start Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param options Which fields must be decoded
+     * @return true if a row was appended, false if the input was null or empty, invalid or did not have a timestamp.
+     */
+    public boolean appendParsed(byte[] telegram, int start, int length, ParseOptions options) {
+        if (options != parseOptions) {
+            parseOptions              = options;
+            parseOptionsWithTimestamp = options.including(TelegramField.TIMESTAMP);
+        }
+        return appendIfParsed(ParseDsmrTelegram.parseInto(telegram, start, length, parseOptionsWithTimestamp, parsedTelegram()));
+    }
+
+    private DSMRTelegram parsedTelegram() {
+        if (parsed == null) {
+            parsed = new DSMRTelegram();
+        }
+        return parsed;
+    }
+
+    private boolean appendIfParsed(DSMRTelegram telegram) {
+        // A row without a timestamp would break the order of the rows that between relies on.
+        if (telegram == null || !telegram.isValid() || telegram.getTimestampEpochSecond() == TimestampParser.NO_TIMESTAMP) {
+            return false;
+        }
+        append(telegram);
+        return true;
+    }
+
+    private static int bitsetWords(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    private void grow() {
+        capacity           = capacity + (capacity >> 1) + 1;
+        epochSeconds       = Arrays.copyOf(epochSeconds, capacity);
+        receiveEpochMillis = Arrays.copyOf(receiveEpochMillis, capacity);
+        for (int i = 0; i < longs.length; i++) {
+            if (longs[i] != null) {
+                longs[i] = Arrays.copyOf(longs[i], capacity);
+            }
+        }
+        for (int i = 0; i < doubles.length; i++) {
+            if (doubles[i] != null) {
+                doubles[i] = Arrays.copyOf(doubles[i], capacity);
+            }
+        }
+        for (int i = 0; i < present.length; i++) {
+            if (present[i] != null) {
+                present[i] = Arrays.copyOf(present[i], bitsetWords(capacity));
+            }
+        }
+    }
+
+    // ------------------------------------------
+
+    private int checkRow(int row) {
+        return offset + Objects.checkIndex(row, size);
+    }
+
+    /**
+     * @param row The row (0 .. size-1)
+     * @return The timestamp of the telegram (in epoch seconds) or TimestampParser.NO_TIMESTAMP if it did not have one.
+     */
+    public long getEpochSecond(int row) {
+        return epochSeconds[checkRow(row)];
+    }
+
+    /**
+     * @param row The row (0 .. size-1)
+     * @return When the telegram was received (in epoch milliseconds) or Long.MIN_VALUE if that is not known.
+     */
+    public long getReceiveEpochMilli(int row) {
+        return receiveEpochMillis[checkRow(row)];
+    }
+
+    /**
+     * @param row The row (0 .. size-1)
+     * @param field The field
+     * @return If the field was present in the telegram of this row.
+     */
+    public boolean isPresent(int row, TelegramField field) {
+        return isSet(present[field.ordinal()], checkRow(row));
+    }
+
+    /**
+     * @param row The row (0 .. size-1)
+     * @param field One of the fields with a whole number value (like POWER_FAILURES)
+     * @return The value or 0 if the field was absent.
+     */
+    public long getLong(int row, TelegramField field) {
+        long[] column = longs[longColumn(field)];
+        int index = checkRow(row);
+        return column == null ? 0 : column[index];
+    }
+
+    /**
+     * @param row The row (0 .. size-1)
+     * @param field One of the fields with a decimal value (like ELECTRICITY_POWER_RECEIVED)
+     * @return The value or 0 if the field was absent.
+     */
+    public double getDouble(int row, TelegramField field) {
+        double[] column = doubles[doubleColumn(field)];
+        int index = checkRow(row);
+        return column == null ? 0 : column[index];
+    }
+
+    private static int longColumn(TelegramField field) {
+        int column = LONG_COLUMN[field.ordinal()];
+        if (column < 0) {
+            throw new IllegalArgumentException("The field " + field + " is not a long");
+        }
+        return column;
+    }
+
+    private static int doubleColumn(TelegramField field) {
+        int column = DOUBLE_COLUMN[field.ordinal()];
+        if (column < 0) {
+            throw new IllegalArgumentException("The field " + field + " is not a double");
+        }
+        return column;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return bits != null && (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * A view on a range of the rows, the values are not copied.
+     * Rows that are appended to this batch later are not part of the slice.
+     * @param fromRow The first row (inclusive)
+     * @param toRow The last row (exclusive)
+     * @return The slice (which cannot be appended to)
+     */
+    public DSMRTelegramBatch slice(int fromRow, int toRow) {
+        Objects.checkFromToIndex(fromRow, toRow, size);
+        return new DSMRTelegramBatch(this, offset + fromRow, toRow - fromRow);
+    }
+
+    /**
+     * The rows with a timestamp in a time range (the rows must have been appended in the order of their timestamp).
+     * @param fromEpochSecond The start of the range (inclusive)
+     * @param toEpochSecond The end of the range (exclusive)
+     * @return A slice with the rows in this range
+     */
+    public DSMRTelegramBatch between(long fromEpochSecond, long toEpochSecond) {
+        int fromRow = firstRowAtOrAfter(fromEpochSecond);
+        int toRow   = Math.max(fromRow, firstRowAtOrAfter(toEpochSecond));
+        return slice(fromRow, toRow);
+    }
+
+    // Binary search; the rows without a timestamp (NO_TIMESTAMP is Long.MIN_VALUE) sort before everything else.
+    private int firstRowAtOrAfter(long epochSecond) {
+        int low  = offset;
+        int high = offset + size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochSeconds[middle] < epochSecond) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - offset;
+    }
+
+    // ------------------------------------------
+
+    /**
+     * @param field The field
+     * @return In how many rows the field was present.
+     */
+    public int count(TelegramField field) {
+        long[] bits = present[field.ordinal()];
+        if (bits == null || size == 0) {
+            return 0;
+        }
+        int end       = offset + size;
+        int firstWord = offset >>> 6;
+        int lastWord  = (end - 1) >>> 6;
+        long firstMask = -1L << offset;      // Shifts are modulo 64
+        long lastMask  = -1L >>> -end;
+        if (firstWord == lastWord) {
+            return Long.bitCount(bits[firstWord] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(bits[firstWord] & firstMask) + Long.bitCount(bits[lastWord] & lastMask);
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            count += Long.bitCount(bits[word]);
+        }
+        return count;
+    }
+
+    /**
+     * @param field A field with a numerical value
+     * @return The sum of the values (0 if there are none).
+     */
+    public double sum(TelegramField field) {
+        int end = offset + size;
+        int column = DOUBLE_COLUMN[field.ordinal()];
+        if (column >= 0) {
+            double[] values = doubles[column];
+            double sum = 0;
+            if (values != null) {
+                // Absent values are 0 so no need to look at the bitset
+                for (int row = offset; row < end; row++) {
+                    sum += values[row];
+                }
+            }
+            return sum;
+        }
+        long[] values = longs[longColumn(field)];
+        long sum = 0;
+        if (values != null) {
+            for (int row = offset; row < end; row++) {
+                sum += values[row];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param field A field with a numerical value
+     * @return The average of the values that were present (NaN if there are none).
+     */
+    public double mean(TelegramField field) {
+        int count = count(field);
+        return count == 0 ? Double.NaN : sum(field) / count;
+    }
+
+    /**
+     * @param field A field with a numerical value
+     * @return The lowest value that was present (NaN if there are none).
+     */
+    public double min(TelegramField field) {
+        return extreme(field, true);
+    }
+
+    /**
+     * @param field A field with a numerical value
+     * @return The highest value that was present (NaN if there are none).
+     */
+    public double max(TelegramField field) {
+        return extreme(field, false);
+    }
+
+    private double extreme(TelegramField field, boolean min) {
+        int count = count(field);
+        if (count == 0) {
+            return Double.NaN;
+        }
+        int end = offset + size;
+        long[] bits = present[field.ordinal()];
+        int column = DOUBLE_COLUMN[field.ordinal()];
+        double[] values = column >= 0 ? doubles[column] : toDoubles(longs[longColumn(field)]);
+        double result = min ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        if (count == size) {
+            // Present in all rows: a plain loop over the array that the JIT can unroll and vectorize.
+            if (min) {
+                for (int row = offset; row < end; row++) {
+                    result = Math.min(result, values[row]);
+                }
+            } else {
+                for (int row = offset; row < end; row++) {
+                    result = Math.max(result, values[row]);
+                }
+            }
+            return result;
+        }
+        for (int row = offset; row < end; row++) {
+            if ((bits[row >>> 6] & (1L << row)) != 0) {
+                result = min ? Math.min(result, values[row]) : Math.max(result, values[row]);
+            }
+        }
+        return result;
+    }
+
+    // The few whole number fields are counters, converting them is simpler than a second copy of the loops.
+    private double[] toDoubles(long[] values) {
+        double[] result = new double[values.length];
+        for (int row = offset; row < offset + size; row++) {
+            result[row] = values[row];
+        }
+        return result;
+    }
+}
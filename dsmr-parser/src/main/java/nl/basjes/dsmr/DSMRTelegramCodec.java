@@ -0,0 +1,1314 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A compact binary format for the consecutive telegrams of a single meter.
+ * <p>
+ * The first telegram (and every keyframeInterval-th telegram after that) is a keyframe that contains everything.
+ * All other telegrams only contain what changed since the previous telegram:
+ * <ul>
+ *     <li>The measurements as varint deltas in fixed point units (Wh for the meter readings, W for the power,
+ *     0.1 V for the voltage, A for the current and dm3 for the gas). Values that cannot be represented
+ *     in these units are stored as is.</li>
+ *     <li>The timestamps as the difference with the predicted time (the previous time plus the previous interval)
+ *     so a meter that sends a telegram every second does not need any bytes for its timestamp.</li>
+ *     <li>Everything else (identifiers, messages, the power failure event log, MBus events) only when it changed.</li>
+ * </ul>
+ * The decoded telegrams are the same as the encoded ones (the same toString()), unless the Encoder was told to
+ * truncate the receive timestamps or to drop the CRC of valid telegrams.
+ * The custom values (see ObisRegistry) can only be Strings, Longs, Integers, Doubles and Booleans.
+ * <p>
+ * Each telegram is a separate record that starts with its length so a Decoder can skip to any telegram while only
+ * decoding the telegrams since the last keyframe before it.
+ * <p>
+ * Encoders and Decoders are NOT thread safe.
+ */
+public final class DSMRTelegramCodec {
+
+    private DSMRTelegramCodec() {
+    }
+
+    /** By default a keyframe is written every 3600 telegrams (i.e. every hour at 1 telegram per second). */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 3600;
+
+    // "DSMRC" followed by the version of the format
+    private static final byte[] MAGIC = {'D', 'S', 'M', 'R', 'C', 1};
+
+    private static final byte KEYFRAME = 'K';
+    private static final byte DELTA    = 'D';
+
+    /**
+     * Encode a list of telegrams of a single meter.
+     * @param telegrams The telegrams
+     * @return The encoded telegrams
+     */
+    public static byte[] encode(Collection<? extends DSMRTelegram> telegrams) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Encoder encoder = new Encoder(output)) {
+            for (DSMRTelegram telegram : telegrams) {
+                encoder.write(telegram);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen with a ByteArrayOutputStream
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decode all telegrams.
+     * @param encoded The output of encode (or an Encoder)
+     * @return The telegrams
+     * @throws IOException If the data is not valid
+     */
+    public static List<DSMRTelegram> decode(byte[] encoded) throws IOException {
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        try (Decoder decoder = new Decoder(new ByteArrayInputStream(encoded))) {
+            DSMRTelegram telegram;
+            while ((telegram = decoder.read()) != null) {
+                telegrams.add(telegram);
+            }
+        }
+        return telegrams;
+    }
+
+    // ------------------------------------------
+
+    /** Writes the telegrams of a single meter to an OutputStream. */
+    public static final class Encoder implements Flushable, Closeable {
+        private final OutputStream output;
+        private final int          keyframeInterval;
+        private final State        state   = new State();
+        private final Bytes        record  = new Bytes();
+        private final Bytes        length  = new Bytes();
+        private       long         telegrams;
+        private       long         bytes;
+
+        /**
+         * An Encoder that writes a keyframe every DEFAULT_KEYFRAME_INTERVAL telegrams.
+         * @param output Where the encoded telegrams are written to
+         * @throws IOException If writing the header fails
+         */
+        public Encoder(OutputStream output) throws IOException {
+            this(output, DEFAULT_KEYFRAME_INTERVAL);
+        }
+
+        /**
+         * @param output Where the encoded telegrams are written to
+         * @param keyframeInterval A keyframe is written every this many telegrams
+         * @throws IOException If writing the header fails
+         */
+        public Encoder(OutputStream output, int keyframeInterval) throws IOException {
+            if (keyframeInterval < 1) {
+                throw new IllegalArgumentException("The keyframe interval must be at least 1");
+            }
+            this.output           = Objects.requireNonNull(output, "The output may not be null");
+            this.keyframeInterval = keyframeInterval;
+            output.write(MAGIC);
+            bytes = MAGIC.length;
+        }
+
+        /**
+         * Append a telegram.
+         * @param telegram The telegram, a LazyDSMRTelegram is decoded completely.
+         * @throws IOException If writing fails
+         * @throws IllegalArgumentException If a custom value has an unsupported type.
+         */
+        public void write(DSMRTelegram telegram) throws IOException {
+            Objects.requireNonNull(telegram, "The telegram may not be null");
+            if (telegram instanceof LazyDSMRTelegram) {
+                ((LazyDSMRTelegram) telegram).decodeAll();
+            }
+            // Before the state is changed so a rejected telegram does not break the telegrams after it.
+            State.checkCustomValues(telegram);
+            record.clear();
+            if (telegrams % keyframeInterval == 0) {
+                state.clear();
+                record.writeByte(KEYFRAME);
+            } else {
+                record.writeByte(DELTA);
+            }
+            state.encode(telegram, record);
+
+            length.clear();
+            length.writeVarLong(record.limit);
+            output.write(length.data, 0, length.limit);
+            output.write(record.data, 0, record.limit);
+            bytes += length.limit + record.limit;
+            telegrams++;
+        }
+
+        /**
+         * Store the receive timestamps truncated to the unit (SECONDS, MILLIS, ...) instead of with nanosecond precision.
+         * The receive timestamps of a meter that sends a telegram every second then usually need no bytes at all.
+         * @param unit The unit to truncate to, at most SECONDS.
+         * @return This Encoder
+         */
+        public Encoder truncateReceiveTimestampTo(ChronoUnit unit) {
+            long nanos = Objects.requireNonNull(unit, "The unit may not be null").getDuration().toNanos();
+            if (nanos > NANOS_PER_SECOND || NANOS_PER_SECOND % nanos != 0) {
+                throw new IllegalArgumentException("Unable to truncate the receive timestamp to " + unit);
+            }
+            state.receiveResolution = nanos;
+            return this;
+        }
+
+        /**
+         * Do not store the CRC of telegrams with a valid CRC (they are decoded with a null CRC and validCRC true).
+         * @return This Encoder
+         */
+        public Encoder dropValidCrc() {
+            state.keepValidCrc = false;
+            return this;
+        }
+
+        /** @return The number of written telegrams. */
+        public long getTelegrams() {
+            return telegrams;
+        }
+
+        /** @return The number of written bytes (including the header). */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    // ------------------------------------------
+
+    /** Reads the telegrams that were written by an Encoder. */
+    public static final class Decoder implements Closeable {
+        private final InputStream input;
+        private final State       state  = new State();
+        private final Bytes       record = new Bytes();
+
+        /**
+         * @param input The encoded telegrams
+         * @throws IOException If this is not the start of encoded telegrams
+         */
+        public Decoder(InputStream input) throws IOException {
+            Objects.requireNonNull(input, "The input may not be null");
+            this.input = input instanceof BufferedInputStream || input instanceof ByteArrayInputStream ?
+                input : new BufferedInputStream(input);
+            byte[] magic = new byte[MAGIC.length];
+            if (this.input.readNBytes(magic, 0, magic.length) != magic.length || !Arrays.equals(MAGIC, magic)) {
+                throw new IOException("This is not a stream of encoded DSMR telegrams");
+            }
+        }
+
+        /**
+         * @return The next telegram or null at the end of the input.
+         * @throws IOException If reading fails or the data is not valid
+         */
+        public DSMRTelegram read() throws IOException {
+            return readInto(new DSMRTelegram());
+        }
+
+        /**
+         * Read the next telegram into an existing instance (see ParseDsmrTelegram.parseInto).
+         * @param target The telegram that is refilled.
+         * @return The target or null at the end of the input (then the target is unchanged).
+         * @throws IOException If reading fails or the data is not valid
+         */
+        public DSMRTelegram readInto(DSMRTelegram target) throws IOException {
+            Objects.requireNonNull(target, "The target may not be null");
+            if (!readRecord()) {
+                return null;
+            }
+            decodeRecord();
+            target.reset();
+            state.fill(target);
+            return target;
+        }
+
+        /**
+         * Skip telegrams. Only the telegrams since the last keyframe before the next telegram are decoded.
+         * @param count The number of telegrams to skip
+         * @return The number of skipped telegrams (less than count at the end of the input).
+         * @throws IOException If reading fails or the data is not valid
+         */
+        public long skip(long count) throws IOException {
+            List<byte[]> sinceKeyframe = new ArrayList<>();
+            long skipped = 0;
+            while (skipped < count && readRecord()) {
+                if (record.data[0] == KEYFRAME) {
+                    sinceKeyframe.clear();
+                }
+                sinceKeyframe.add(Arrays.copyOf(record.data, record.limit));
+                skipped++;
+            }
+            for (byte[] skippedRecord : sinceKeyframe) {
+                record.clear();
+                record.write(skippedRecord, 0, skippedRecord.length);
+                decodeRecord();
+            }
+            return skipped;
+        }
+
+        private boolean readRecord() throws IOException {
+            long length = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = input.read();
+                if (b < 0) {
+                    if (shift == 0) {
+                        return false;
+                    }
+                    throw new EOFException("Truncated record length");
+                }
+                length |= (long) (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    break;
+                }
+                if (shift > 28) {
+                    throw new IOException("Invalid record length");
+                }
+            }
+            if (length < 1 || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid record length: " + length);
+            }
+            record.clear();
+            record.ensureCapacity((int) length);
+            if (input.readNBytes(record.data, 0, (int) length) != length) {
+                throw new EOFException("Truncated record");
+            }
+            record.limit = (int) length;
+            return true;
+        }
+
+        private void decodeRecord() throws IOException {
+            byte type = record.readByte();
+            if (type == KEYFRAME) {
+                state.clear();
+            } else if (type != DELTA) {
+                throw new IOException("Invalid record type: " + type);
+            }
+            try {
+                state.decode(record);
+            } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | DateTimeException e) {
+                throw new IOException("Invalid record", e);
+            }
+            if (record.pos != record.limit) {
+                throw new IOException("Invalid record: " + (record.limit - record.pos) + " bytes were not used.");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    // ------------------------------------------
+
+    // A growable byte array with the primitives of the format.
+    private static final class Bytes {
+        private byte[] data = new byte[256];
+        private int    limit; // Where writing continues
+        private int    pos;   // Where reading continues
+
+        void clear() {
+            limit = 0;
+            pos   = 0;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(limit + 1);
+            data[limit++] = (byte) value;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(limit + length);
+            System.arraycopy(bytes, offset, data, limit, length);
+            limit += length;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(limit + 10);
+            while ((value & ~0x7FL) != 0) {
+                data[limit++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[limit++] = (byte) value;
+        }
+
+        // Small negative values are small as well
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            ensureCapacity(limit + 8);
+            for (int i = 0; i < 8; i++) {
+                data[limit++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        byte readByte() {
+            if (pos >= limit) {
+                throw new ArrayIndexOutOfBoundsException("Read beyond the end of the record");
+            }
+            return data[pos++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Invalid varint");
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (readByte() & 0xFFL) << (i * 8);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            if (length - 1 > limit - pos) {
+                throw new ArrayIndexOutOfBoundsException("String beyond the end of the record");
+            }
+            String value = new String(data, pos, (int) (length - 1), UTF_8);
+            pos += (int) (length - 1);
+            return value;
+        }
+
+        // The zones that are not one of the TimestampParser.COMMON_ZONES are written as their zone id.
+        void writeZone(ZoneId zone) {
+            int index = TimestampParser.commonZoneIndex(zone);
+            if (index >= 0) {
+                writeVarLong(index);
+                return;
+            }
+            writeVarLong(TimestampParser.COMMON_ZONES.length);
+            writeString(zone.getId());
+        }
+
+        ZoneId readZone() {
+            int index = (int) readVarLong();
+            if (index == TimestampParser.COMMON_ZONES.length) {
+                return ZoneId.of(readString());
+            }
+            return TimestampParser.COMMON_ZONES[index];
+        }
+
+        // A nullable timestamp as the difference in seconds with an earlier timestamp.
+        void writeTimestamp(ZonedDateTime timestamp, long previousEpochSecond) {
+            if (timestamp == null) {
+                writeZone(null);
+                return;
+            }
+            writeZone(timestamp.getZone());
+            writeZigZag(timestamp.toEpochSecond() - previousEpochSecond);
+            writeVarLong(timestamp.getNano());
+        }
+
+        ZonedDateTime readTimestamp(long previousEpochSecond) {
+            ZoneId zone = readZone();
+            if (zone == null) {
+                return null;
+            }
+            long epochSecond = previousEpochSecond + readZigZag();
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, readVarLong()), zone);
+        }
+    }
+
+    // ------------------------------------------
+
+    private static final TelegramField[] LONG_FIELDS = {
+        TelegramField.ELECTRICITY_TARIFF_INDICATOR,
+        TelegramField.POWER_FAILURES,
+        TelegramField.LONG_POWER_FAILURES,
+        TelegramField.VOLTAGE_SAGS_PHASE_L1,
+        TelegramField.VOLTAGE_SAGS_PHASE_L2,
+        TelegramField.VOLTAGE_SAGS_PHASE_L3,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L1,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L2,
+        TelegramField.VOLTAGE_SWELLS_PHASE_L3,
+    };
+
+    // The fields that are stored in a fixed point unit and how many of those units go in the unit of the field.
+    // The ones that change in almost every telegram come first so their bits in the changed slots are the lowest.
+    private static final Object[][] DOUBLE_FIELDS = {
+        {TelegramField.ELECTRICITY_POWER_RECEIVED,         1000}, // W
+        {TelegramField.ELECTRICITY_POWER_RETURNED,         1000}, // W
+        {TelegramField.VOLTAGE_L1,                           10}, // 0.1 V
+        {TelegramField.VOLTAGE_L2,                           10}, // 0.1 V
+        {TelegramField.VOLTAGE_L3,                           10}, // 0.1 V
+        {TelegramField.POWER_RECEIVED_L1,                  1000}, // W
+        {TelegramField.POWER_RECEIVED_L2,                  1000}, // W
+        {TelegramField.POWER_RECEIVED_L3,                  1000}, // W
+        {TelegramField.CURRENT_L1,                            1}, // A
+        {TelegramField.CURRENT_L2,                            1}, // A
+        {TelegramField.CURRENT_L3,                            1}, // A
+        {TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF,    1000}, // Wh
+        {TelegramField.ELECTRICITY_RECEIVED_NORMAL_TARIFF, 1000}, // Wh
+        {TelegramField.ELECTRICITY_RETURNED_LOW_TARIFF,    1000}, // Wh
+        {TelegramField.ELECTRICITY_RETURNED_NORMAL_TARIFF, 1000}, // Wh
+        {TelegramField.POWER_RETURNED_L1,                  1000}, // W
+        {TelegramField.POWER_RETURNED_L2,                  1000}, // W
+        {TelegramField.POWER_RETURNED_L3,                  1000}, // W
+        {TelegramField.GAS_M3,                             1000}, // dm3
+        {TelegramField.SLAVE_E_METER_KWH,                  1000}, // Wh
+    };
+
+    // The MBus values (usually m3 or kWh)
+    private static final int MBUS_VALUE_UNITS = 1000;
+
+    // The values that are not a whole number of units are stored as is.
+    private static final double MAX_FIXED_POINT = 1e15;
+
+    private static long toFixedPoint(double value, int units) {
+        if (Math.abs(value) < MAX_FIXED_POINT) {
+            long fixedPoint = Math.round(value * units);
+            if (Double.doubleToLongBits(fixedPoint / (double) units) == Double.doubleToLongBits(value)) {
+                return fixedPoint;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    // The fixed point values are written as (delta << 1), the odd codes are special
+    private static final long RAW_DOUBLE = 1;
+    private static final long NULL_VALUE = 3;
+
+    // ------------------------------------------
+
+    // What changed in a telegram: one bit per slot.
+    private static final int SLOT_PRESENT_FIELDS           = 0;
+    private static final int SLOT_FLAGS                    = 1;
+    private static final int SLOT_IDENT                    = 2;
+    private static final int SLOT_CRC                      = 3;
+    private static final int SLOT_P1_VERSION               = 4;
+    private static final int SLOT_TIMESTAMP                = 5;
+    private static final int SLOT_TIMESTAMP_ZONE           = 6;
+    private static final int SLOT_RECEIVE_TIMESTAMP        = 7;
+    private static final int SLOT_RECEIVE_ZONE             = 8;
+    private static final int SLOT_EQUIPMENT_ID             = 9;
+    private static final int SLOT_POWER_FAILURE_EVENT_LOG  = 10;
+    private static final int SLOT_MESSAGE_CODES            = 11;
+    private static final int SLOT_MESSAGE                  = 12;
+    private static final int SLOT_MBUS_EVENTS              = 13;
+    private static final int SLOT_GAS_EQUIPMENT_ID         = 14;
+    private static final int SLOT_GAS_TIMESTAMP            = 15;
+    private static final int SLOT_SLAVE_EQUIPMENT_ID       = 16;
+    private static final int SLOT_SLAVE_TIMESTAMP          = 17;
+    private static final int SLOT_CUSTOM_VALUES            = 18;
+    private static final int SLOT_LONG_FIELDS              = 19;
+    private static final int SLOT_DOUBLE_FIELDS            = SLOT_LONG_FIELDS + LONG_FIELDS.length;
+
+    private static final int VALID     = 0x01;
+    private static final int VALID_CRC = 0x02;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // The bits of the changed fields of an MBus event
+    private static final int MBUS_DEVICE_TYPE  = 0x01;
+    private static final int MBUS_EQUIPMENT_ID = 0x02;
+    private static final int MBUS_VALUE        = 0x04;
+    private static final int MBUS_UNIT         = 0x08;
+    private static final int MBUS_TIMESTAMP    = 0x10;
+
+    // The last known values of an MBus channel
+    private static final class MBusState {
+        Integer       deviceType;
+        String        equipmentId;
+        Double        value;
+        long          fixedPointValue;
+        String        unit;
+        ZonedDateTime timestamp;
+
+        boolean sameAs(MBusEvent mBusEvent) {
+            return Objects.equals(deviceType, mBusEvent.deviceType) && Objects.equals(equipmentId, mBusEvent.equipmentId) &&
+                   Objects.equals(value, mBusEvent.value) && Objects.equals(unit, mBusEvent.unit) &&
+                   Objects.equals(timestamp, mBusEvent.timestamp);
+        }
+    }
+
+    // The values of the previous telegram, the Encoder and the Decoder update this in exactly the same way.
+    private static final class State {
+        long            presentFields;
+        int             flags;
+        String          rawIdent;
+        String          equipmentBrandTag;
+        String          ident;
+        String          crc;
+        String          p1Version;
+        long            timestamp;
+        long            timestampInterval;
+        ZoneId          timestampZone;
+        long            receiveNanos;
+        long            receiveInterval;
+        ZoneId          receiveZone;
+        String          equipmentId;
+        final long[]    longs            = new long[LONG_FIELDS.length];
+        final double[]  doubles          = new double[DOUBLE_FIELDS.length];
+        final long[]    fixedPoints      = new long[DOUBLE_FIELDS.length];
+        Long            powerFailureEventLogSize;
+        final List<PowerFailureEvent> powerFailureEventLog = new ArrayList<>();
+        String          messageCodes;
+        String          message;
+        final Map<Integer, MBusState> mBusEvents = new TreeMap<>();
+        String          gasEquipmentId;
+        ZonedDateTime   gasTimestamp;
+        String          slaveEMeterEquipmentId;
+        ZonedDateTime   slaveEMeterTimestamp;
+        final Map<String, Object> customValues = new TreeMap<>();
+
+        // Only used when encoding: the resolution (in nanoseconds) of the receive timestamps and if the CRC of valid telegrams is kept.
+        long            receiveResolution = 1;
+        boolean         keepValidCrc      = true;
+
+        void clear() {
+            presentFields            = 0;
+            flags                    = 0;
+            rawIdent                 = null;
+            equipmentBrandTag        = null;
+            ident                    = null;
+            crc                      = null;
+            p1Version                = null;
+            timestamp                = 0;
+            timestampInterval        = 0;
+            timestampZone            = null;
+            receiveNanos             = 0;
+            receiveInterval          = 0;
+            receiveZone              = null;
+            equipmentId              = null;
+            Arrays.fill(longs, 0);
+            Arrays.fill(doubles, 0);
+            Arrays.fill(fixedPoints, 0);
+            powerFailureEventLogSize = 0L;
+            powerFailureEventLog.clear();
+            messageCodes             = null;
+            message                  = null;
+            mBusEvents.clear();
+            gasEquipmentId           = null;
+            gasTimestamp             = null;
+            slaveEMeterEquipmentId   = null;
+            slaveEMeterTimestamp     = null;
+            customValues.clear();
+        }
+
+        // ------------------------------------------
+
+        private static int flagsOf(DSMRTelegram telegram) {
+            return (telegram.valid ? VALID : 0) | (telegram.validCRC ? VALID_CRC : 0);
+        }
+
+        private long receiveNanosOf(ZonedDateTime receiveTimestamp) {
+            long nanos = receiveTimestamp.toEpochSecond() * NANOS_PER_SECOND + receiveTimestamp.getNano();
+            return nanos - Math.floorMod(nanos, receiveResolution);
+        }
+
+        private String crcOf(DSMRTelegram telegram) {
+            return keepValidCrc || !telegram.validCRC ? telegram.crc : null;
+        }
+
+        private static ZoneId zoneOf(ZonedDateTime timestamp) {
+            return timestamp == null ? null : timestamp.getZone();
+        }
+
+        private static boolean isPresent(long presentFields, TelegramField field) {
+            return (presentFields & field.mask()) != 0;
+        }
+
+        private boolean samePowerFailureEventLog(DSMRTelegram telegram) {
+            if (!Objects.equals(powerFailureEventLogSize, telegram.powerFailureEventLogSize) ||
+                powerFailureEventLog.size() != telegram.powerFailureEventLog.size()) {
+                return false;
+            }
+            for (int i = 0; i < powerFailureEventLog.size(); i++) {
+                PowerFailureEvent event = powerFailureEventLog.get(i);
+                PowerFailureEvent other = telegram.powerFailureEventLog.get(i);
+                if (!Objects.equals(event.startTime, other.startTime) || !Objects.equals(event.endTime, other.endTime) ||
+                    !Objects.equals(event.duration, other.duration)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean sameMBusEvents(DSMRTelegram telegram) {
+            if (mBusEvents.size() != telegram.mBusEvents.size()) {
+                return false;
+            }
+            for (Map.Entry<Integer, MBusEvent> entry : telegram.mBusEvents.entrySet()) {
+                MBusState mBusState = mBusEvents.get(entry.getKey());
+                if (mBusState == null || !mBusState.sameAs(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Which slots changed compared to this state
+        private long changedSlots(DSMRTelegram telegram) {
+            long changed = 0;
+            long present = telegram.presentFields;
+            if (present != presentFields) {
+                changed |= 1L << SLOT_PRESENT_FIELDS;
+            }
+            if (flagsOf(telegram) != flags) {
+                changed |= 1L << SLOT_FLAGS;
+            }
+            if (!Objects.equals(telegram.rawIdent, rawIdent) || !Objects.equals(telegram.equipmentBrandTag, equipmentBrandTag) ||
+                !Objects.equals(telegram.ident, ident)) {
+                changed |= 1L << SLOT_IDENT;
+            }
+            if (!Objects.equals(crcOf(telegram), crc)) {
+                changed |= 1L << SLOT_CRC;
+            }
+            if (!Objects.equals(telegram.p1Version, p1Version)) {
+                changed |= 1L << SLOT_P1_VERSION;
+            }
+            if (isPresent(present, TelegramField.TIMESTAMP) && telegram.timestamp != timestamp + timestampInterval) {
+                changed |= 1L << SLOT_TIMESTAMP;
+            }
+            if (!Objects.equals(telegram.timestampZone, timestampZone)) {
+                changed |= 1L << SLOT_TIMESTAMP_ZONE;
+            }
+            if (telegram.receiveTimestamp != null && receiveNanosOf(telegram.receiveTimestamp) != receiveNanos + receiveInterval) {
+                changed |= 1L << SLOT_RECEIVE_TIMESTAMP;
+            }
+            if (!Objects.equals(zoneOf(telegram.receiveTimestamp), receiveZone)) {
+                changed |= 1L << SLOT_RECEIVE_ZONE;
+            }
+            if (!Objects.equals(telegram.equipmentId, equipmentId)) {
+                changed |= 1L << SLOT_EQUIPMENT_ID;
+            }
+            if (!samePowerFailureEventLog(telegram)) {
+                changed |= 1L << SLOT_POWER_FAILURE_EVENT_LOG;
+            }
+            if (!Objects.equals(telegram.messageCodes, messageCodes)) {
+                changed |= 1L << SLOT_MESSAGE_CODES;
+            }
+            if (!Objects.equals(telegram.message, message)) {
+                changed |= 1L << SLOT_MESSAGE;
+            }
+            if (!sameMBusEvents(telegram)) {
+                changed |= 1L << SLOT_MBUS_EVENTS;
+            }
+            if (!Objects.equals(telegram.gasEquipmentId, gasEquipmentId)) {
+                changed |= 1L << SLOT_GAS_EQUIPMENT_ID;
+            }
+            if (!Objects.equals(telegram.gasTimestamp, gasTimestamp)) {
+                changed |= 1L << SLOT_GAS_TIMESTAMP;
+            }
+            if (!Objects.equals(telegram.slaveEMeterEquipmentId, slaveEMeterEquipmentId)) {
+                changed |= 1L << SLOT_SLAVE_EQUIPMENT_ID;
+            }
+            if (!Objects.equals(telegram.slaveEMeterTimestamp, slaveEMeterTimestamp)) {
+                changed |= 1L << SLOT_SLAVE_TIMESTAMP;
+            }
+            if (!telegram.getCustomValues().equals(customValues)) {
+                changed |= 1L << SLOT_CUSTOM_VALUES;
+            }
+            for (int i = 0; i < LONG_FIELDS.length; i++) {
+                if (isPresent(present, LONG_FIELDS[i]) && telegram.getLong(LONG_FIELDS[i]) != longs[i]) {
+                    changed |= 1L << (SLOT_LONG_FIELDS + i);
+                }
+            }
+            for (int i = 0; i < DOUBLE_FIELDS.length; i++) {
+                TelegramField field = (TelegramField) DOUBLE_FIELDS[i][0];
+                if (isPresent(present, field) &&
+                    Double.doubleToLongBits(telegram.getDouble(field)) != Double.doubleToLongBits(doubles[i])) {
+                    changed |= 1L << (SLOT_DOUBLE_FIELDS + i);
+                }
+            }
+            return changed;
+        }
+
+        // The changed slots are written with the double fields in the lowest bits (the rest is shifted above them)
+        // so a telegram where only some measurements changed needs a 2 or 3 byte varint instead of 7.
+        private static long toWrittenSlots(long changed) {
+            return (changed >>> SLOT_DOUBLE_FIELDS) | ((changed & ((1L << SLOT_DOUBLE_FIELDS) - 1)) << DOUBLE_FIELDS.length);
+        }
+
+        private static long fromWrittenSlots(long written) {
+            return (written >>> DOUBLE_FIELDS.length) | ((written & ((1L << DOUBLE_FIELDS.length) - 1)) << SLOT_DOUBLE_FIELDS);
+        }
+
+        // ------------------------------------------
+
+        void encode(DSMRTelegram telegram, Bytes output) {
+            long changed = changedSlots(telegram);
+            output.writeVarLong(toWrittenSlots(changed));
+            // Also when unchanged the predicted timestamps move on.
+            if (isPresent(telegram.presentFields, TelegramField.TIMESTAMP)) {
+                long predicted = timestamp + timestampInterval;
+                if ((changed & (1L << SLOT_TIMESTAMP)) != 0) {
+                    output.writeZigZag(telegram.timestamp - predicted);
+                }
+                timestampInterval = telegram.timestamp - timestamp;
+                timestamp         = telegram.timestamp;
+            }
+            if (telegram.receiveTimestamp != null) {
+                long nanos = receiveNanosOf(telegram.receiveTimestamp);
+                long predicted = receiveNanos + receiveInterval;
+                if ((changed & (1L << SLOT_RECEIVE_TIMESTAMP)) != 0) {
+                    output.writeZigZag(nanos - predicted);
+                }
+                receiveInterval = nanos - receiveNanos;
+                receiveNanos    = nanos;
+            }
+            if (changed == 0) {
+                return;
+            }
+
+            if ((changed & (1L << SLOT_PRESENT_FIELDS)) != 0) {
+                presentFields = telegram.presentFields;
+                output.writeVarLong(presentFields);
+            }
+            if ((changed & (1L << SLOT_FLAGS)) != 0) {
+                flags = flagsOf(telegram);
+                output.writeVarLong(flags);
+            }
+            if ((changed & (1L << SLOT_IDENT)) != 0) {
+                rawIdent          = telegram.rawIdent;
+                equipmentBrandTag = telegram.equipmentBrandTag;
+                ident             = telegram.ident;
+                output.writeString(rawIdent);
+                output.writeString(equipmentBrandTag);
+                output.writeString(ident);
+            }
+            if ((changed & (1L << SLOT_CRC)) != 0) {
+                crc = crcOf(telegram);
+                writeCrc(output, crc);
+            }
+            if ((changed & (1L << SLOT_P1_VERSION)) != 0) {
+                p1Version = telegram.p1Version;
+                output.writeString(p1Version);
+            }
+            if ((changed & (1L << SLOT_TIMESTAMP_ZONE)) != 0) {
+                timestampZone = telegram.timestampZone;
+                output.writeZone(timestampZone);
+            }
+            if ((changed & (1L << SLOT_RECEIVE_ZONE)) != 0) {
+                receiveZone = zoneOf(telegram.receiveTimestamp);
+                output.writeZone(receiveZone);
+            }
+            if ((changed & (1L << SLOT_EQUIPMENT_ID)) != 0) {
+                equipmentId = telegram.equipmentId;
+                output.writeString(equipmentId);
+            }
+            if ((changed & (1L << SLOT_POWER_FAILURE_EVENT_LOG)) != 0) {
+                encodePowerFailureEventLog(telegram, output);
+            }
+            if ((changed & (1L << SLOT_MESSAGE_CODES)) != 0) {
+                messageCodes = telegram.messageCodes;
+                output.writeString(messageCodes);
+            }
+            if ((changed & (1L << SLOT_MESSAGE)) != 0) {
+                message = telegram.message;
+                output.writeString(message);
+            }
+            if ((changed & (1L << SLOT_MBUS_EVENTS)) != 0) {
+                encodeMBusEvents(telegram, output);
+            }
+            if ((changed & (1L << SLOT_GAS_EQUIPMENT_ID)) != 0) {
+                gasEquipmentId = telegram.gasEquipmentId;
+                output.writeString(gasEquipmentId);
+            }
+            if ((changed & (1L << SLOT_GAS_TIMESTAMP)) != 0) {
+                output.writeTimestamp(telegram.gasTimestamp, epochSecondOf(gasTimestamp));
+                gasTimestamp = telegram.gasTimestamp;
+            }
+            if ((changed & (1L << SLOT_SLAVE_EQUIPMENT_ID)) != 0) {
+                slaveEMeterEquipmentId = telegram.slaveEMeterEquipmentId;
+                output.writeString(slaveEMeterEquipmentId);
+            }
+            if ((changed & (1L << SLOT_SLAVE_TIMESTAMP)) != 0) {
+                output.writeTimestamp(telegram.slaveEMeterTimestamp, epochSecondOf(slaveEMeterTimestamp));
+                slaveEMeterTimestamp = telegram.slaveEMeterTimestamp;
+            }
+            if ((changed & (1L << SLOT_CUSTOM_VALUES)) != 0) {
+                encodeCustomValues(telegram, output);
+            }
+            for (int i = 0; i < LONG_FIELDS.length; i++) {
+                if ((changed & (1L << (SLOT_LONG_FIELDS + i))) != 0) {
+                    long value = telegram.getLong(LONG_FIELDS[i]);
+                    output.writeZigZag(value - longs[i]);
+                    longs[i] = value;
+                }
+            }
+            for (int i = 0; i < DOUBLE_FIELDS.length; i++) {
+                if ((changed & (1L << (SLOT_DOUBLE_FIELDS + i))) != 0) {
+                    double value = telegram.getDouble((TelegramField) DOUBLE_FIELDS[i][0]);
+                    fixedPoints[i] = writeFixedPoint(output, value, (int) DOUBLE_FIELDS[i][1], fixedPoints[i]);
+                    doubles[i] = value;
+                }
+            }
+        }
+
+        void decode(Bytes input) {
+            long changed = fromWrittenSlots(input.readVarLong());
+            // The presence of the timestamps is determined by the new presentFields and receiveZone.
+            long newPresentFields = presentFields;
+            ZoneId newReceiveZone = receiveZone;
+            long timestampDelta = (changed & (1L << SLOT_TIMESTAMP)) != 0 ? input.readZigZag() : 0;
+            long receiveDelta   = (changed & (1L << SLOT_RECEIVE_TIMESTAMP)) != 0 ? input.readZigZag() : 0;
+
+            if ((changed & (1L << SLOT_PRESENT_FIELDS)) != 0) {
+                newPresentFields = input.readVarLong();
+            }
+            if (isPresent(newPresentFields, TelegramField.TIMESTAMP)) {
+                long newTimestamp = timestamp + timestampInterval + timestampDelta;
+                timestampInterval = newTimestamp - timestamp;
+                timestamp         = newTimestamp;
+            } else if ((changed & (1L << SLOT_TIMESTAMP)) != 0) {
+                throw new IllegalArgumentException("A timestamp delta for a telegram without a timestamp");
+            }
+            presentFields = newPresentFields;
+
+            if ((changed & (1L << SLOT_FLAGS)) != 0) {
+                flags = (int) input.readVarLong();
+            }
+            if ((changed & (1L << SLOT_IDENT)) != 0) {
+                rawIdent          = input.readString();
+                equipmentBrandTag = input.readString();
+                ident             = input.readString();
+            }
+            if ((changed & (1L << SLOT_CRC)) != 0) {
+                crc = readCrc(input);
+            }
+            if ((changed & (1L << SLOT_P1_VERSION)) != 0) {
+                p1Version = input.readString();
+            }
+            if ((changed & (1L << SLOT_TIMESTAMP_ZONE)) != 0) {
+                timestampZone = input.readZone();
+            }
+            if ((changed & (1L << SLOT_RECEIVE_ZONE)) != 0) {
+                newReceiveZone = input.readZone();
+            }
+            if (newReceiveZone != null) {
+                long nanos = receiveNanos + receiveInterval + receiveDelta;
+                receiveInterval = nanos - receiveNanos;
+                receiveNanos    = nanos;
+            }
+            receiveZone = newReceiveZone;
+            if ((changed & (1L << SLOT_EQUIPMENT_ID)) != 0) {
+                equipmentId = input.readString();
+            }
+            if ((changed & (1L << SLOT_POWER_FAILURE_EVENT_LOG)) != 0) {
+                decodePowerFailureEventLog(input);
+            }
+            if ((changed & (1L << SLOT_MESSAGE_CODES)) != 0) {
+                messageCodes = input.readString();
+            }
+            if ((changed & (1L << SLOT_MESSAGE)) != 0) {
+                message = input.readString();
+            }
+            if ((changed & (1L << SLOT_MBUS_EVENTS)) != 0) {
+                decodeMBusEvents(input);
+            }
+            if ((changed & (1L << SLOT_GAS_EQUIPMENT_ID)) != 0) {
+                gasEquipmentId = input.readString();
+            }
+            if ((changed & (1L << SLOT_GAS_TIMESTAMP)) != 0) {
+                gasTimestamp = input.readTimestamp(epochSecondOf(gasTimestamp));
+            }
+            if ((changed & (1L << SLOT_SLAVE_EQUIPMENT_ID)) != 0) {
+                slaveEMeterEquipmentId = input.readString();
+            }
+            if ((changed & (1L << SLOT_SLAVE_TIMESTAMP)) != 0) {
+                slaveEMeterTimestamp = input.readTimestamp(epochSecondOf(slaveEMeterTimestamp));
+            }
+            if ((changed & (1L << SLOT_CUSTOM_VALUES)) != 0) {
+                decodeCustomValues(input);
+            }
+            for (int i = 0; i < LONG_FIELDS.length; i++) {
+                if ((changed & (1L << (SLOT_LONG_FIELDS + i))) != 0) {
+                    longs[i] += input.readZigZag();
+                }
+            }
+            for (int i = 0; i < DOUBLE_FIELDS.length; i++) {
+                if ((changed & (1L << (SLOT_DOUBLE_FIELDS + i))) != 0) {
+                    int units = (int) DOUBLE_FIELDS[i][1];
+                    long code = input.readZigZag();
+                    if (code == RAW_DOUBLE) {
+                        doubles[i] = input.readDouble();
+                    } else if ((code & 1) == 0) {
+                        fixedPoints[i] += code >> 1;
+                        doubles[i] = fixedPoints[i] / (double) units;
+                    } else {
+                        throw new IllegalArgumentException("Invalid value code: " + code);
+                    }
+                }
+            }
+        }
+
+        // Put the state in a (reset) telegram
+        void fill(DSMRTelegram telegram) {
+            telegram.valid                  = (flags & VALID) != 0;
+            telegram.validCRC               = (flags & VALID_CRC) != 0;
+            telegram.rawIdent               = rawIdent;
+            telegram.equipmentBrandTag      = equipmentBrandTag;
+            telegram.ident                  = ident;
+            telegram.crc                    = crc;
+            telegram.p1Version              = p1Version;
+            telegram.timestamp              = timestamp;
+            telegram.timestampZone          = timestampZone;
+            if (receiveZone != null) {
+                telegram.receiveTimestamp = ZonedDateTime.ofInstant(
+                    Instant.ofEpochSecond(Math.floorDiv(receiveNanos, NANOS_PER_SECOND), Math.floorMod(receiveNanos, NANOS_PER_SECOND)),
+                    receiveZone);
+            }
+            telegram.equipmentId            = equipmentId;
+            for (int i = 0; i < LONG_FIELDS.length; i++) {
+                if (isPresent(presentFields, LONG_FIELDS[i])) {
+                    telegram.set(LONG_FIELDS[i], longs[i]);
+                }
+            }
+            for (int i = 0; i < DOUBLE_FIELDS.length; i++) {
+                TelegramField field = (TelegramField) DOUBLE_FIELDS[i][0];
+                if (isPresent(presentFields, field)) {
+                    telegram.set(field, doubles[i]);
+                }
+            }
+            telegram.powerFailureEventLogSize = powerFailureEventLogSize;
+            for (PowerFailureEvent event : powerFailureEventLog) {
+                PowerFailureEvent copy = telegram.newPowerFailureEvent();
+                copy.startTime = event.startTime;
+                copy.endTime   = event.endTime;
+                copy.duration  = event.duration;
+                telegram.powerFailureEventLog.add(copy);
+            }
+            telegram.messageCodes           = messageCodes;
+            telegram.message                = message;
+            for (Map.Entry<Integer, MBusState> entry : mBusEvents.entrySet()) {
+                MBusState mBusState = entry.getValue();
+                MBusEvent mBusEvent = telegram.getMBusEvent(entry.getKey());
+                mBusEvent.deviceType  = mBusState.deviceType;
+                mBusEvent.equipmentId = mBusState.equipmentId;
+                mBusEvent.value       = mBusState.value;
+                mBusEvent.unit        = mBusState.unit;
+                mBusEvent.timestamp   = mBusState.timestamp;
+            }
+            telegram.gasEquipmentId         = gasEquipmentId;
+            telegram.gasTimestamp           = gasTimestamp;
+            telegram.slaveEMeterEquipmentId = slaveEMeterEquipmentId;
+            telegram.slaveEMeterTimestamp   = slaveEMeterTimestamp;
+            for (Map.Entry<String, Object> customValue : customValues.entrySet()) {
+                telegram.putCustomValue(customValue.getKey(), customValue.getValue());
+            }
+            // Also the bits without a value of their own (like EQUIPMENT_ID and MBUS_EVENTS)
+            telegram.presentFields          = presentFields;
+        }
+
+        // ------------------------------------------
+
+        private static long epochSecondOf(ZonedDateTime timestamp) {
+            return timestamp == null ? 0 : timestamp.toEpochSecond();
+        }
+
+        // Returns the new fixed point value
+        private static long writeFixedPoint(Bytes output, Double value, int units, long previousFixedPoint) {
+            if (value == null) {
+                output.writeZigZag(NULL_VALUE);
+                return previousFixedPoint;
+            }
+            long fixedPoint = toFixedPoint(value, units);
+            if (fixedPoint == Long.MIN_VALUE) {
+                output.writeZigZag(RAW_DOUBLE);
+                output.writeDouble(value);
+                return previousFixedPoint;
+            }
+            output.writeZigZag((fixedPoint - previousFixedPoint) << 1);
+            return fixedPoint;
+        }
+
+        // The CRC is 4 hex digits (stored as value + 1) and anything else (which the parsers never produce) is a String.
+        private static void writeCrc(Bytes output, String crc) {
+            if (crc == null) {
+                output.writeVarLong(0);
+                return;
+            }
+            if (crc.length() == 4 && crc.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F'))) {
+                output.writeVarLong(Integer.parseInt(crc, 16) + 1L);
+                return;
+            }
+            output.writeVarLong(0x10001);
+            output.writeString(crc);
+        }
+
+        private static String readCrc(Bytes input) {
+            long code = input.readVarLong();
+            if (code == 0) {
+                return null;
+            }
+            if (code == 0x10001) {
+                return input.readString();
+            }
+            String hex = Long.toHexString(code - 1).toUpperCase(Locale.ROOT);
+            return "0000".substring(hex.length()) + hex;
+        }
+
+        private void encodePowerFailureEventLog(DSMRTelegram telegram, Bytes output) {
+            powerFailureEventLogSize = telegram.powerFailureEventLogSize;
+            output.writeVarLong(powerFailureEventLogSize == null ? 0 : powerFailureEventLogSize + 1);
+            powerFailureEventLog.clear();
+            output.writeVarLong(telegram.powerFailureEventLog.size());
+            for (PowerFailureEvent event : telegram.powerFailureEventLog) {
+                // Copied because the telegram may be reused
+                PowerFailureEvent copy = new PowerFailureEvent();
+                copy.startTime = event.startTime;
+                copy.endTime   = event.endTime;
+                copy.duration  = event.duration;
+                powerFailureEventLog.add(copy);
+                output.writeTimestamp(event.endTime, 0);
+                output.writeTimestamp(event.startTime, epochSecondOf(event.endTime));
+                output.writeVarLong(event.duration == null ? 0 : event.duration.getSeconds() + 1);
+            }
+        }
+
+        private void decodePowerFailureEventLog(Bytes input) {
+            long size = input.readVarLong();
+            powerFailureEventLogSize = size == 0 ? null : size - 1;
+            powerFailureEventLog.clear();
+            long events = input.readVarLong();
+            for (long i = 0; i < events; i++) {
+                PowerFailureEvent event = new PowerFailureEvent();
+                event.endTime   = input.readTimestamp(0);
+                event.startTime = input.readTimestamp(epochSecondOf(event.endTime));
+                long duration   = input.readVarLong();
+                event.duration  = duration == 0 ? null : Duration.ofSeconds(duration - 1);
+                powerFailureEventLog.add(event);
+            }
+        }
+
+        private void encodeMBusEvents(DSMRTelegram telegram, Bytes output) {
+            mBusEvents.keySet().retainAll(telegram.mBusEvents.keySet());
+            output.writeVarLong(telegram.mBusEvents.size());
+            for (Map.Entry<Integer, MBusEvent> entry : telegram.mBusEvents.entrySet()) {
+                MBusEvent mBusEvent = entry.getValue();
+                MBusState mBusState = mBusEvents.computeIfAbsent(entry.getKey(), channel -> new MBusState());
+                int changed =
+                    (Objects.equals(mBusState.deviceType,  mBusEvent.deviceType)  ? 0 : MBUS_DEVICE_TYPE) |
+                    (Objects.equals(mBusState.equipmentId, mBusEvent.equipmentId) ? 0 : MBUS_EQUIPMENT_ID) |
+                    (Objects.equals(mBusState.value,       mBusEvent.value)       ? 0 : MBUS_VALUE) |
+                    (Objects.equals(mBusState.unit,        mBusEvent.unit)        ? 0 : MBUS_UNIT) |
+                    (Objects.equals(mBusState.timestamp,   mBusEvent.timestamp)   ? 0 : MBUS_TIMESTAMP);
+                output.writeVarLong(entry.getKey());
+                output.writeByte(changed);
+                if ((changed & MBUS_DEVICE_TYPE) != 0) {
+                    mBusState.deviceType = mBusEvent.deviceType;
+                    output.writeVarLong(mBusEvent.deviceType == null ? 0 : mBusEvent.deviceType + 1L);
+                }
+                if ((changed & MBUS_EQUIPMENT_ID) != 0) {
+                    mBusState.equipmentId = mBusEvent.equipmentId;
+                    output.writeString(mBusEvent.equipmentId);
+                }
+                if ((changed & MBUS_VALUE) != 0) {
+                    mBusState.value = mBusEvent.value;
+                    mBusState.fixedPointValue = writeFixedPoint(output, mBusEvent.value, MBUS_VALUE_UNITS, mBusState.fixedPointValue);
+                }
+                if ((changed & MBUS_UNIT) != 0) {
+                    mBusState.unit = mBusEvent.unit;
+                    output.writeString(mBusEvent.unit);
+                }
+                if ((changed & MBUS_TIMESTAMP) != 0) {
+                    output.writeTimestamp(mBusEvent.timestamp, epochSecondOf(mBusState.timestamp));
+                    mBusState.timestamp = mBusEvent.timestamp;
+                }
+            }
+        }
+
+        private void decodeMBusEvents(Bytes input) {
+            Map<Integer, MBusState> previous = new TreeMap<>(mBusEvents);
+            mBusEvents.clear();
+            long channels = input.readVarLong();
+            for (long i = 0; i < channels; i++) {
+                int channel = (int) input.readVarLong();
+                MBusState mBusState = previous.get(channel);
+                if (mBusState == null) {
+                    mBusState = new MBusState();
+                }
+                mBusEvents.put(channel, mBusState);
+                int changed = input.readByte();
+                if ((changed & MBUS_DEVICE_TYPE) != 0) {
+                    long deviceType = input.readVarLong();
+                    mBusState.deviceType = deviceType == 0 ? null : (int) (deviceType - 1);
+                }
+                if ((changed & MBUS_EQUIPMENT_ID) != 0) {
+                    mBusState.equipmentId = input.readString();
+                }
+                if ((changed & MBUS_VALUE) != 0) {
+                    long code = input.readZigZag();
+                    if (code == NULL_VALUE) {
+                        mBusState.value = null;
+                    } else if (code == RAW_DOUBLE) {
+                        mBusState.value = input.readDouble();
+                    } else if ((code & 1) == 0) {
+                        mBusState.fixedPointValue += code >> 1;
+                        mBusState.value = mBusState.fixedPointValue / (double) MBUS_VALUE_UNITS;
+                    } else {
+                        throw new IllegalArgumentException("Invalid value code: " + code);
+                    }
+                }
+                if ((changed & MBUS_UNIT) != 0) {
+                    mBusState.unit = input.readString();
+                }
+                if ((changed & MBUS_TIMESTAMP) != 0) {
+                    mBusState.timestamp = input.readTimestamp(epochSecondOf(mBusState.timestamp));
+                }
+            }
+        }
+
+        // The types of the custom values that can be stored
+        private static final int CUSTOM_NULL    = 0;
+        private static final int CUSTOM_STRING  = 1;
+        private static final int CUSTOM_LONG    = 2;
+        private static final int CUSTOM_INTEGER = 3;
+        private static final int CUSTOM_DOUBLE  = 4;
+        private static final int CUSTOM_BOOLEAN = 5;
+
+        private void encodeCustomValues(DSMRTelegram telegram, Bytes output) {
+            customValues.clear();
+            Map<String, Object> values = telegram.getCustomValues();
+            output.writeVarLong(values.size());
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                Object value = entry.getValue();
+                output.writeString(entry.getKey());
+                if (value == null) {
+                    output.writeByte(CUSTOM_NULL);
+                } else if (value instanceof String) {
+                    output.writeByte(CUSTOM_STRING);
+                    output.writeString((String) value);
+                } else if (value instanceof Long) {
+                    output.writeByte(CUSTOM_LONG);
+                    output.writeZigZag((Long) value);
+                } else if (value instanceof Integer) {
+                    output.writeByte(CUSTOM_INTEGER);
+                    output.writeZigZag((Integer) value);
+                } else if (value instanceof Double) {
+                    output.writeByte(CUSTOM_DOUBLE);
+                    output.writeDouble((Double) value);
+                } else if (value instanceof Boolean) {
+                    output.writeByte(CUSTOM_BOOLEAN);
+                    output.writeByte((Boolean) value ? 1 : 0);
+                } else {
+                    throw unsupportedCustomValue(entry);
+                }
+                customValues.put(entry.getKey(), value);
+            }
+        }
+
+        static void checkCustomValues(DSMRTelegram telegram) {
+            for (Map.Entry<String, Object> entry : telegram.getCustomValues().entrySet()) {
+                Object value = entry.getValue();
+                if (!(value == null || value instanceof String || value instanceof Long || value instanceof Integer ||
+                      value instanceof Double || value instanceof Boolean)) {
+                    throw unsupportedCustomValue(entry);
+                }
+            }
+        }
+
+        private static IllegalArgumentException unsupportedCustomValue(Map.Entry<String, Object> entry) {
+            return new IllegalArgumentException("Unable to encode the custom value " + entry.getKey() + " of type " +
+                entry.getValue().getClass().getName());
+        }
+
+        private void decodeCustomValues(Bytes input) {
+            customValues.clear();
+            long values = input.readVarLong();
+            for (long i = 0; i < values; i++) {
+                String name = input.readString();
+                int type = input.readByte();
+                switch (type) {
+                    case CUSTOM_NULL:    customValues.put(name, null); break;
+                    case CUSTOM_STRING:  customValues.put(name, input.readString()); break;
+                    case CUSTOM_LONG:    customValues.put(name, input.readZigZag()); break;
+                    case CUSTOM_INTEGER: customValues.put(name, (int) input.readZigZag()); break;
+                    case CUSTOM_DOUBLE:  customValues.put(name, input.readDouble()); break;
+                    case CUSTOM_BOOLEAN: customValues.put(name, input.readByte() != 0); break;
+                    default: throw new IllegalArgumentException("Invalid custom value type: " + type);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+/**
+ * A small pool of DSMRTelegram instances for consumers that handle one telegram at a time.
+ * <pre>
+ * DSMRTelegram telegram = pool.parse(bytes, 0, length);
+ * ... use the telegram ...
+ * pool.release(telegram);
+ * </pre>
+ * A released telegram (and everything obtained from it like the power failure event log) is reused for a later
+ * telegram, so it must no longer be used after it was released.
+ * This class is thread safe.
+ */
+public final class DSMRTelegramPool {
+
+    private final DSMRTelegram[] available;
+    private int                  size;
+
+    /** A pool that retains at most 16 telegrams. */
+    public DSMRTelegramPool() {
+        this(16);
+    }
+
+    /**
+     * @param capacity The maximum number of released telegrams that are retained.
+     */
+    public DSMRTelegramPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of a DSMRTelegramPool must be at least 1");
+        }
+        available = new DSMRTelegram[capacity];
+    }
+
+    /**
+     * @return A telegram from the pool or a new one if the pool is empty.
+     */
+    public synchronized DSMRTelegram acquire() {
+        if (size == 0) {
+            return new DSMRTelegram();
+        }
+        DSMRTelegram telegram = available[--size];
+        available[size] = null;
+        return telegram;
+    }
+
+    /**
+     * Return a telegram to the pool. If the pool is full the telegram is left to the garbage collector.
+     * @param telegram The telegram that is no longer used (null is ignored).
+     */
+    public void release(DSMRTelegram telegram) {
+        if (telegram == null || telegram instanceof LazyDSMRTelegram) {
+            return;
+        }
+        telegram.reset(); // Do not retain the values of the telegram while it is in the pool
+        synchronized (this) {
+            if (size < available.length) {
+                available[size++] = telegram;
+            }
+        }
+    }
+
+    /**
+     * @return The number of telegrams that are available in the pool.
+     */
+    public synchronized int available() {
+        return size;
+    }
+
+    /**
+     * Parse a telegram into an instance from the pool.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The parsed telegram (which should be released when done), or null if the input was null or empty.
+     */
+    public DSMRTelegram parse(byte[] telegram, int offset, int length) {
+        return parse(telegram, offset, length, ParseOptions.ALL);
+    }
+
+    /**
+     * Parse a telegram into an instance from the pool and only decode the selected fields.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param options Which fields must be decoded
+     * @return The parsed telegram (which should be released when done), or null if the input was null or empty.
+     */
+    public DSMRTelegram parse(byte[] telegram, int offset, int length, ParseOptions options) {
+        DSMRTelegram target = acquire();
+        DSMRTelegram result = ParseDsmrTelegram.parseInto(telegram, offset, length, options, target);
+        if (result == null) {
+            release(target);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,1153 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.ParseDsmrTelegram.EUROPE_AMSTERDAM;
+
+/**
+ * A single pass scanner over the bytes of a telegram that fills the DSMRTelegram directly.
+ * It only accepts a telegram if it is certain the ANTLR grammar (Dsmr.g4) would produce exactly the same result.
+ * For anything else (unusual spacing, unsupported constructs, syntax errors, ...) it gives up
+ * so the caller can fall back to the full grammar.
+ */
+// CHECKSTYLE.OFF: LineLength
+public final class FastParseDsmrTelegram {
+
+    /**
+     * Parse a single DSMR telegram if it only uses the common constructs.
+     * @param telegram The telegram as received from the P1 port
+     * @return The parsed telegram or null if the fast path cannot handle this input.
+     */
+    public static DSMRTelegram parse(String telegram) {
+        if (telegram == null || telegram.isEmpty()) {
+            return null;
+        }
+        // Anything that is not ASCII becomes a '?' which is never accepted.
+        byte[] bytes = telegram.getBytes(US_ASCII);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse a single DSMR telegram if it only uses the common constructs.
+     * @param telegram The telegram as received from the P1 port
+     * @param options Which fields must be decoded
+     * @return The parsed telegram or null if the fast path cannot handle this input.
+     */
+    public static DSMRTelegram parse(String telegram, ParseOptions options) {
+        if (telegram == null || telegram.isEmpty()) {
+            return null;
+        }
+        if (options.isStrict() && !isAscii(telegram)) {
+            // The CRC must be checked on the real characters, not on the '?' that replaced them.
+            return null;
+        }
+        // Anything that is not ASCII becomes a '?' which is never accepted.
+        byte[] bytes = telegram.getBytes(US_ASCII);
+        return parse(bytes, 0, bytes.length, options);
+    }
+
+    private static boolean isAscii(String telegram) {
+        for (int i = 0; i < telegram.length(); i++) {
+            if (telegram.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a single DSMR telegram if it only uses the common constructs.
+     * @param telegram The bytes that contain the telegram as received from the P1 port
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The parsed telegram or null if the fast path cannot handle this input.
+     */
+    public static DSMRTelegram parse(byte[] telegram, int offset, int length) {
+        return parse(telegram, offset, length, ParseOptions.ALL);
+    }
+
+    /**
+     * Parse a single DSMR telegram if it only uses the common constructs.
+     * @param telegram The bytes that contain the telegram as received from the P1 port
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param options Which fields must be decoded
+     * @return The parsed telegram or null if the fast path cannot handle this input.
+     */
+    public static DSMRTelegram parse(byte[] telegram, int offset, int length, ParseOptions options) {
+        if (telegram == null || length == 0) {
+            return null;
+        }
+        Objects.checkFromIndexSize(offset, length, telegram.length);
+        DSMRTelegram dsmrTelegram = new DSMRTelegram();
+        if (!parseInto(telegram, offset, length, options, dsmrTelegram)) {
+            return null;
+        }
+        return dsmrTelegram;
+    }
+
+    /**
+     * Reset the target and fill it with the parsed telegram if it only uses the common constructs.
+     * @param telegram The bytes that contain the telegram as received from the P1 port (not null and not empty)
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param options Which fields must be decoded
+     * @param target The instance that is filled
+     * @return true if the telegram was parsed, false if the fast path cannot handle this input (the target is then incomplete).
+     */
+    static boolean parseInto(byte[] telegram, int offset, int length, ParseOptions options, DSMRTelegram target) {
+        return parseInto(telegram, offset, length, options, target, null);
+    }
+
+    /**
+     * Same as parseInto but the lines that are the same as in the previous telegram of the session are not decoded again.
+     */
+    static boolean parseInto(byte[] telegram, int offset, int length, ParseOptions options, DSMRTelegram target, DSMRParseSession session) {
+        ParseListener listener = ParseListeners.current();
+        long start = listener == null ? 0 : System.nanoTime();
+        target.reset();
+        FastParseDsmrTelegram parser = new FastParseDsmrTelegram(telegram, offset, length, target, null, options, session);
+        parser.listener = listener;
+        if (options.isStrict()) {
+            // Fail fast: a telegram with a wrong CRC is not parsed at all.
+            int crcStatus = CheckCRC.crcStatus(telegram, offset, length);
+            if (listener != null) {
+                parser.crcNanos = System.nanoTime() - start;
+            }
+            if (crcStatus == CheckCRC.CRC_MISMATCH) {
+                ParseDsmrTelegram.rejectTelegram(target, listener, parser.crcNanos);
+                return true;
+            }
+            parser.crcIsValid = crcStatus == CheckCRC.CRC_VALID;
+        }
+        if (!parser.parseTelegram()) {
+            if (listener != null) {
+                // The time of a failed attempt is reported as well, the grammar then reports the rest.
+                listener.onStage(ParseListener.Stage.FAST_PATH, System.nanoTime() - start - parser.crcNanos);
+            }
+            return false;
+        }
+        target.receiveTimestamp = ZonedDateTime.now(EUROPE_AMSTERDAM);
+        target.validCRC = parser.validCRC;
+        // A wrong unit in an MBus event makes the telegram invalid, also if the MBus events were not decoded.
+        boolean skippedMBusHasWrongUnit = parser.skippedMBusEvents != null &&
+            ParseDsmrTelegram.fillMBusDataToAttributes(parser.skippedMBusEvents, null);
+        boolean invalidSyntax = ParseDsmrTelegram.finishTelegram(target, skippedMBusHasWrongUnit);
+        if (listener != null) {
+            listener.onStage(ParseListener.Stage.FAST_PATH, System.nanoTime() - start - parser.crcNanos);
+            listener.onStage(ParseListener.Stage.CRC, parser.crcNanos);
+            ParseListeners.telegramParsed(listener, target, invalidSyntax, parser.unknownCosemIds);
+        }
+        return true;
+    }
+
+    /**
+     * Check the entire telegram exactly like parse does but only record where the fields are.
+     * @return false if the fast path cannot handle this input.
+     */
+    static boolean index(LazyDSMRTelegram lazyTelegram, byte[] telegram, int offset, int length) {
+        FastParseDsmrTelegram parser = new FastParseDsmrTelegram(telegram, offset, length, lazyTelegram, lazyTelegram, ParseOptions.ALL, null);
+        if (!parser.parseTelegram()) {
+            return false;
+        }
+        lazyTelegram.validCRC = parser.validCRC;
+        return true;
+    }
+
+    /**
+     * Decode a single field (that was found by index) into the telegram.
+     */
+    static void decodeField(LazyDSMRTelegram lazyTelegram, byte[] telegram, int fieldStart, int end) {
+        FastParseDsmrTelegram parser = new FastParseDsmrTelegram(telegram, fieldStart, end - fieldStart, lazyTelegram, null, ParseOptions.ALL, null);
+        if (!parser.parseField()) {
+            throw new IllegalStateException("Unable to decode a field that was accepted before");
+        }
+    }
+
+    enum Field {
+        P1_VERSION,
+        TIMESTAMP,
+        EQUIPMENT_ID,
+        ELECTRICITY_TARIFF_INDICATOR,
+        ELECTRICITY_RECEIVED_LOW_TARIFF("kWh"),
+        ELECTRICITY_RECEIVED_NORMAL_TARIFF("kWh"),
+        ELECTRICITY_RETURNED_LOW_TARIFF("kWh"),
+        ELECTRICITY_RETURNED_NORMAL_TARIFF("kWh"),
+        ELECTRICITY_POWER_RECEIVED("kW"),
+        ELECTRICITY_POWER_RETURNED("kW"),
+        POWER_FAILURES,
+        LONG_POWER_FAILURES,
+        POWER_FAILURE_EVENT_LOG,
+        VOLTAGE_SAGS_PHASE_L1,
+        VOLTAGE_SAGS_PHASE_L2,
+        VOLTAGE_SAGS_PHASE_L3,
+        VOLTAGE_SWELLS_PHASE_L1,
+        VOLTAGE_SWELLS_PHASE_L2,
+        VOLTAGE_SWELLS_PHASE_L3,
+        VOLTAGE_L1("V"),
+        VOLTAGE_L2("V"),
+        VOLTAGE_L3("V"),
+        CURRENT_L1("A"),
+        CURRENT_L2("A"),
+        CURRENT_L3("A"),
+        POWER_RECEIVED_L1("kW"),
+        POWER_RECEIVED_L2("kW"),
+        POWER_RECEIVED_L3("kW"),
+        POWER_RETURNED_L1("kW"),
+        POWER_RETURNED_L2("kW"),
+        POWER_RETURNED_L3("kW"),
+        SWITCH_SETTING,
+        MESSAGE_CODES,
+        MESSAGE,
+        ELECTRICITY_THRESHOLD,
+        MBUS_TYPE,
+        MBUS_EQUIPMENT_ID,
+        MBUS_USAGE,
+        MBUS_PROFILE_GENERIC,
+        MBUS_GAS_VALVE_POSITION,
+        // A literal token in the grammar that cannot start a field
+        NOT_A_FIELD;
+
+        // The required unit of the numerical fields
+        private final String unit;
+
+        Field() {
+            this(null);
+        }
+
+        Field(String unit) {
+            this.unit = unit;
+        }
+    }
+
+    // The TelegramField of each Field (null if there is none)
+    private static final TelegramField[] TELEGRAM_FIELDS = new TelegramField[Field.values().length];
+
+    static {
+        for (TelegramField telegramField : TelegramField.values()) {
+            for (Field field : Field.values()) {
+                if (field.name().equals(telegramField.name())) {
+                    TELEGRAM_FIELDS[field.ordinal()] = telegramField;
+                }
+            }
+        }
+    }
+
+    private final byte[]          input;
+    private final int             begin;
+    private final int             end;
+    private       int             pos;
+
+    // The content between the '(' and ')' of the last read group.
+    private       int             valueStart;
+    private       int             valueEnd;
+
+    private       boolean         validCRC;
+
+    // Null if nothing is measured (the lazy telegrams are never measured).
+    private       ParseListener   listener;
+    private       long            crcNanos;
+    // The CRC was already found to be valid by the strict mode so it does not need to be calculated again.
+    private       boolean         crcIsValid;
+    private       int             unknownCosemIds;
+
+    private final DSMRTelegram     dsmrTelegram;
+    // If present only the positions of the fields are recorded and nothing is decoded.
+    private final LazyDSMRTelegram lazyTelegram;
+    private final boolean          indexOnly;
+    private final ParseOptions     options;
+    // Must the value of the current field be decoded
+    private       boolean          decode;
+    // Has no state so it can be shared
+    private static final TimestampParser TIMESTAMP_PARSER = new TimestampParser();
+
+    // If present the unchanged lines are copied from the previous telegram of this session.
+    private final DSMRParseSession session;
+
+    // If the MBus events are not decoded only what is needed to check their units is retained here.
+    private       Map<Integer, MBusEvent> skippedMBusEvents;
+
+    private FastParseDsmrTelegram(byte[] input, int offset, int length, DSMRTelegram dsmrTelegram, LazyDSMRTelegram lazyTelegram,
+                                  ParseOptions options, DSMRParseSession session) {
+        this.input        = input;
+        this.begin        = offset;
+        this.pos          = offset;
+        this.end          = offset + length;
+        this.dsmrTelegram = dsmrTelegram;
+        this.lazyTelegram = lazyTelegram;
+        this.indexOnly    = lazyTelegram != null;
+        this.options      = options;
+        this.session      = session;
+    }
+
+    // ------------------------------------------
+
+    private boolean parseTelegram() {
+        skipSpaces();
+        int identStart = pos;
+        if (!parseIdent()) {
+            return false;
+        }
+
+        int fields = 0;
+        while (true) {
+            skipSpaces();
+            if (pos >= end) {
+                return false; // No end of the telegram
+            }
+            if (input[pos] == '!') {
+                break;
+            }
+            if (!parseField()) {
+                return false;
+            }
+            fields++;
+        }
+        if (fields == 0) {
+            return false;
+        }
+
+        // The end is either a CRC token or the literal '!\r\n'
+        if (pos + 4 < end &&
+            isUpperHex(input[pos + 1]) && isUpperHex(input[pos + 2]) &&
+            isUpperHex(input[pos + 3]) && isUpperHex(input[pos + 4])) {
+            if (!indexOnly) {
+                dsmrTelegram.crc = ascii(pos + 1, pos + 5);
+            } else {
+                lazyTelegram.crcStart = pos + 1;
+            }
+            // Same as CheckCRC.crcIsValid: The CRC covers everything from the '/' (at the start of a line) up to and including the '!'
+            int expectedCrc = (hexValue(input[pos + 1]) << 12) | (hexValue(input[pos + 2]) << 8) |
+                              (hexValue(input[pos + 3]) <<  4) |  hexValue(input[pos + 4]);
+            boolean identAtStartOfLine = identStart == begin || input[identStart - 1] == '\n' || input[identStart - 1] == '\r';
+            if (crcIsValid) {
+                validCRC = identAtStartOfLine;
+            } else if (listener == null) {
+                validCRC = identAtStartOfLine && CheckCRC.crc16(input, identStart, pos + 1 - identStart) == expectedCrc;
+            } else {
+                long start = System.nanoTime();
+                validCRC = identAtStartOfLine && CheckCRC.crc16(input, identStart, pos + 1 - identStart) == expectedCrc;
+                crcNanos = System.nanoTime() - start;
+            }
+            pos += 5;
+        } else if (pos + 2 < end && input[pos + 1] == '\r' && input[pos + 2] == '\n') {
+            dsmrTelegram.crc = null;
+            pos += 3;
+        } else {
+            return false;
+        }
+
+        // Trailing garbage may or may not trigger a syntax error so we leave that to the grammar.
+        skipSpaces();
+        return pos == end;
+    }
+
+    // IDENT : '/' [a-zA-Z0-9][a-zA-Z0-9][a-zA-Z0-9] '5' [ \\a-zA-Z0-9_.-]+ ;
+    private boolean parseIdent() {
+        int start = pos;
+        if (end - pos < 6 ||
+            input[pos] != '/' ||
+            !isAlphaNumeric(input[pos + 1]) ||
+            !isAlphaNumeric(input[pos + 2]) ||
+            !isAlphaNumeric(input[pos + 3]) ||
+            input[pos + 4] != '5') {
+            return false;
+        }
+        pos += 5;
+        while (pos < end && isIdentCharacter(input[pos])) {
+            pos++;
+        }
+        if (pos == start + 5) {
+            return false;
+        }
+        if (indexOnly) {
+            lazyTelegram.identStart = start;
+            lazyTelegram.identEnd   = pos;
+        } else if (session != null) {
+            session.setIdent(dsmrTelegram, input, start, pos);
+        } else {
+            ParseDsmrTelegram.setIdent(dsmrTelegram, input, start, pos);
+        }
+        return true;
+    }
+
+    private boolean parseField() {
+        int fieldStart = pos;
+        long cosemId = packCosemId();
+        if (cosemId == ObisRegistry.NOT_AN_OBIS_CODE || pos >= end || input[pos] != '(') {
+            return false;
+        }
+
+        ObisRegistry.Entry entry = ObisRegistry.lookup(cosemId);
+        if (entry == null) {
+            unknownCosemIds++;
+            return parseUnknownCosemId(null);
+        }
+        Field field = entry.field;
+        if (field == null) {
+            return parseUnknownCosemId(entry);
+        }
+        if (indexOnly) {
+            lazyTelegram.addField(field, fieldStart);
+        }
+        decode = !indexOnly && options.decodes(field);
+
+        int mBusChannel = ObisRegistry.mBusChannel(cosemId);
+
+        if (session == null) {
+            return parseFieldValue(field, mBusChannel);
+        }
+        if (reuseUnchangedLine(field, cosemId, fieldStart, mBusChannel)) {
+            session.addLine(cosemId, fieldStart - begin, pos - fieldStart, true);
+            return true;
+        }
+        if (!parseFieldValue(field, mBusChannel)) {
+            return false;
+        }
+        session.addLine(cosemId, fieldStart - begin, pos - fieldStart, false);
+        return true;
+    }
+
+    // If this line is exactly the same as in the previous telegram of the session the value is copied from there.
+    private boolean reuseUnchangedLine(Field field, long cosemId, int fieldStart, int mBusChannel) {
+        // The P1 version is changed afterwards (see ParseDsmrTelegram.finishTelegram)
+        // and for the skipped MBus events the unit must still be recorded.
+        if (field == Field.P1_VERSION || (!decode && isMBus(field))) {
+            return false;
+        }
+        int length = session.unchangedLength(cosemId, input, fieldStart, end);
+        if (length < 0) {
+            return false;
+        }
+        // A field may have more groups than in the previous telegram (possibly on the next line).
+        int groupStart = pos;
+        pos = fieldStart + length;
+        skipSpaces();
+        boolean moreGroups = pos < end && input[pos] == '(';
+        pos = groupStart;
+        if (moreGroups) {
+            return false;
+        }
+
+        if (decode) {
+            DSMRTelegram previous = session.previousTelegram;
+            if (isMBus(field)) {
+                MBusEvent previousMBusEvent = previous.mBusEvents.get(mBusChannel);
+                if (previousMBusEvent == null) {
+                    return false;
+                }
+                MBusEvent mBusEvent = getMBusEvent(mBusChannel);
+                if (field == Field.MBUS_TYPE) {
+                    mBusEvent.deviceType = previousMBusEvent.deviceType;
+                } else if (field == Field.MBUS_EQUIPMENT_ID) {
+                    mBusEvent.equipmentId = previousMBusEvent.equipmentId;
+                } else {
+                    mBusEvent.timestamp = previousMBusEvent.timestamp;
+                    mBusEvent.value     = previousMBusEvent.value;
+                    mBusEvent.unit      = previousMBusEvent.unit;
+                }
+            } else {
+                dsmrTelegram.copyField(previous, TELEGRAM_FIELDS[field.ordinal()]);
+            }
+        }
+        pos = fieldStart + length;
+        return true;
+    }
+
+    private static boolean isMBus(Field field) {
+        return field == Field.MBUS_TYPE || field == Field.MBUS_EQUIPMENT_ID ||
+               field == Field.MBUS_USAGE || field == Field.MBUS_PROFILE_GENERIC;
+    }
+
+    private boolean parseFieldValue(Field field, int mBusChannel) {
+        switch (field) {
+            case P1_VERSION:
+                if (!readGroup(INT)) {
+                    return false;
+                }
+                if (decode) {
+                    dsmrTelegram.p1Version = ascii(valueStart, valueEnd);
+                }
+                return true;
+
+            case TIMESTAMP:
+                if (!readGroup(TIMESTAMP)) {
+                    return false;
+                }
+                if (decode) {
+                    // Stored without creating a ZonedDateTime
+                    long packed = TimestampParser.decode(input, valueStart, valueEnd - valueStart);
+                    if (packed != TimestampParser.NOT_DECODED) {
+                        dsmrTelegram.setTimestamp(TimestampParser.toEpochSecond(packed), TimestampParser.toZone(packed));
+                    }
+                }
+                return true;
+
+            case EQUIPMENT_ID:
+                if (!readGroup(HEXSTRING)) {
+                    return false;
+                }
+                if (decode) {
+                    dsmrTelegram.equipmentId = hexToString(valueStart, valueEnd).trim();
+                    dsmrTelegram.markPresent(TelegramField.EQUIPMENT_ID);
+                }
+                return true;
+
+            case MESSAGE_CODES:
+                if (!readOptionalHexGroup()) {
+                    return false;
+                }
+                if (decode) {
+                    dsmrTelegram.messageCodes = hexToString(valueStart, valueEnd);
+                    dsmrTelegram.markPresent(TelegramField.MESSAGE_CODES);
+                }
+                return true;
+
+            case MESSAGE:
+                if (!readOptionalHexGroup()) {
+                    return false;
+                }
+                if (decode) {
+                    dsmrTelegram.message = hexToString(valueStart, valueEnd);
+                    dsmrTelegram.markPresent(TelegramField.MESSAGE);
+                }
+                return true;
+
+            case ELECTRICITY_TARIFF_INDICATOR:
+            case POWER_FAILURES:
+            case LONG_POWER_FAILURES:
+            case VOLTAGE_SAGS_PHASE_L1:
+            case VOLTAGE_SAGS_PHASE_L2:
+            case VOLTAGE_SAGS_PHASE_L3:
+            case VOLTAGE_SWELLS_PHASE_L1:
+            case VOLTAGE_SWELLS_PHASE_L2:
+            case VOLTAGE_SWELLS_PHASE_L3:
+                return readGroup(INT) && (!decode || setLong(field, toLong(valueStart, valueEnd)));
+
+            case ELECTRICITY_RECEIVED_LOW_TARIFF:
+            case ELECTRICITY_RECEIVED_NORMAL_TARIFF:
+            case ELECTRICITY_RETURNED_LOW_TARIFF:
+            case ELECTRICITY_RETURNED_NORMAL_TARIFF:
+            case ELECTRICITY_POWER_RECEIVED:
+            case ELECTRICITY_POWER_RETURNED:
+            case VOLTAGE_L1:
+            case VOLTAGE_L2:
+            case VOLTAGE_L3:
+            case CURRENT_L1:
+            case CURRENT_L2:
+            case CURRENT_L3:
+            case POWER_RECEIVED_L1:
+            case POWER_RECEIVED_L2:
+            case POWER_RECEIVED_L3:
+            case POWER_RETURNED_L1:
+            case POWER_RETURNED_L2:
+            case POWER_RETURNED_L3:
+                return readNumberGroup(field.unit) && (!decode || setDouble(field, toDouble(valueStart, valueEnd)));
+
+            case POWER_FAILURE_EVENT_LOG:
+                return parsePowerFailureEventLog();
+
+            // These are in the grammar but are not stored
+            case SWITCH_SETTING:
+            case MBUS_GAS_VALVE_POSITION:
+                return readGroup(INT);
+
+            case ELECTRICITY_THRESHOLD:
+                return readNumberGroup("kW") || readNumberGroup("A");
+
+            case MBUS_TYPE:
+                if (!readGroup(INT)) {
+                    return false;
+                }
+                long type = toLong(valueStart, valueEnd);
+                if (type > Integer.MAX_VALUE) {
+                    return false; // Let the grammar based parser fail on this one.
+                }
+                if (decode) {
+                    getMBusEvent(mBusChannel).deviceType = (int) type;
+                } else if (!indexOnly) {
+                    getSkippedMBusEvent(mBusChannel).deviceType = (int) type;
+                }
+                return true;
+
+            case MBUS_EQUIPMENT_ID:
+                if (!readGroup(HEXSTRING)) {
+                    return false;
+                }
+                if (decode) {
+                    getMBusEvent(mBusChannel).equipmentId = hexToString(valueStart, valueEnd);
+                } else if (!indexOnly) {
+                    getSkippedMBusEvent(mBusChannel).equipmentId = ""; // Only used to see that it is present
+                }
+                return true;
+
+            case MBUS_USAGE:
+                return parseMBusUsage(mBusChannel);
+
+            case MBUS_PROFILE_GENERIC:
+                return parseMBusProfileGeneric(mBusChannel);
+
+            case NOT_A_FIELD:
+            default:
+                return false;
+        }
+    }
+
+    private boolean setLong(Field field, long value) {
+        switch (field) {
+            case ELECTRICITY_TARIFF_INDICATOR:        dsmrTelegram.set(TelegramField.ELECTRICITY_TARIFF_INDICATOR, value); break;
+            case POWER_FAILURES:                      dsmrTelegram.set(TelegramField.POWER_FAILURES, value); break;
+            case LONG_POWER_FAILURES:                 dsmrTelegram.set(TelegramField.LONG_POWER_FAILURES, value); break;
+            case VOLTAGE_SAGS_PHASE_L1:               dsmrTelegram.set(TelegramField.VOLTAGE_SAGS_PHASE_L1, value); break;
+            case VOLTAGE_SAGS_PHASE_L2:               dsmrTelegram.set(TelegramField.VOLTAGE_SAGS_PHASE_L2, value); break;
+            case VOLTAGE_SAGS_PHASE_L3:               dsmrTelegram.set(TelegramField.VOLTAGE_SAGS_PHASE_L3, value); break;
+            case VOLTAGE_SWELLS_PHASE_L1:             dsmrTelegram.set(TelegramField.VOLTAGE_SWELLS_PHASE_L1, value); break;
+            case VOLTAGE_SWELLS_PHASE_L2:             dsmrTelegram.set(TelegramField.VOLTAGE_SWELLS_PHASE_L2, value); break;
+            case VOLTAGE_SWELLS_PHASE_L3:             dsmrTelegram.set(TelegramField.VOLTAGE_SWELLS_PHASE_L3, value); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    private boolean setDouble(Field field, double value) {
+        switch (field) {
+            case ELECTRICITY_RECEIVED_LOW_TARIFF:     dsmrTelegram.set(TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF, value); break;
+            case ELECTRICITY_RECEIVED_NORMAL_TARIFF:  dsmrTelegram.set(TelegramField.ELECTRICITY_RECEIVED_NORMAL_TARIFF, value); break;
+            case ELECTRICITY_RETURNED_LOW_TARIFF:     dsmrTelegram.set(TelegramField.ELECTRICITY_RETURNED_LOW_TARIFF, value); break;
+            case ELECTRICITY_RETURNED_NORMAL_TARIFF:  dsmrTelegram.set(TelegramField.ELECTRICITY_RETURNED_NORMAL_TARIFF, value); break;
+            case ELECTRICITY_POWER_RECEIVED:          dsmrTelegram.set(TelegramField.ELECTRICITY_POWER_RECEIVED, value); break;
+            case ELECTRICITY_POWER_RETURNED:          dsmrTelegram.set(TelegramField.ELECTRICITY_POWER_RETURNED, value); break;
+            case VOLTAGE_L1:                          dsmrTelegram.set(TelegramField.VOLTAGE_L1, value); break;
+            case VOLTAGE_L2:                          dsmrTelegram.set(TelegramField.VOLTAGE_L2, value); break;
+            case VOLTAGE_L3:                          dsmrTelegram.set(TelegramField.VOLTAGE_L3, value); break;
+            case CURRENT_L1:                          dsmrTelegram.set(TelegramField.CURRENT_L1, value); break;
+            case CURRENT_L2:                          dsmrTelegram.set(TelegramField.CURRENT_L2, value); break;
+            case CURRENT_L3:                          dsmrTelegram.set(TelegramField.CURRENT_L3, value); break;
+            case POWER_RECEIVED_L1:                   dsmrTelegram.set(TelegramField.POWER_RECEIVED_L1, value); break;
+            case POWER_RECEIVED_L2:                   dsmrTelegram.set(TelegramField.POWER_RECEIVED_L2, value); break;
+            case POWER_RECEIVED_L3:                   dsmrTelegram.set(TelegramField.POWER_RECEIVED_L3, value); break;
+            case POWER_RETURNED_L1:                   dsmrTelegram.set(TelegramField.POWER_RETURNED_L1, value); break;
+            case POWER_RETURNED_L2:                   dsmrTelegram.set(TelegramField.POWER_RETURNED_L2, value); break;
+            case POWER_RETURNED_L3:                   dsmrTelegram.set(TelegramField.POWER_RETURNED_L3, value); break;
+            default: return false;
+        }
+        return true;
+    }
+
+    // '1-0:99.97.0' '(' count=INT ')' '(' eventTypeId='0-0:96.7.19' ')' ( '(' eventTime=TIMESTAMP ')' '(' eventDuration=INT '*' 's' ')' )*
+    private boolean parsePowerFailureEventLog() {
+        if (!readGroup(INT)) {
+            return false;
+        }
+        long count = toLong(valueStart, valueEnd);
+        if (!nextGroup() || !readGroup() || !valueIs("0-0:96.7.19")) {
+            return false;
+        }
+        if (decode) {
+            dsmrTelegram.powerFailureEventLogSize = count;
+            dsmrTelegram.powerFailureEventLog.clear();
+            dsmrTelegram.markPresent(TelegramField.POWER_FAILURE_EVENT_LOG);
+        }
+
+        while (nextGroup()) {
+            if (!readGroup(TIMESTAMP)) {
+                return false;
+            }
+            int endTimeStart = valueStart;
+            int endTimeEnd   = valueEnd;
+
+            if (!nextGroup() || !readNumberGroup("s") || tokenType(valueStart, valueEnd) != INT) {
+                return false;
+            }
+            if (!decode) {
+                continue;
+            }
+            PowerFailureEvent powerFailureEvent = dsmrTelegram.newPowerFailureEvent();
+            // The provided timestamp is the end of the failure
+            powerFailureEvent.endTime = timestamp(endTimeStart, endTimeEnd);
+            powerFailureEvent.duration  = Duration.ofSeconds(toLong(valueStart, valueEnd));
+            // For convenience, we calculate the start time
+            powerFailureEvent.startTime = powerFailureEvent.endTime.minus(powerFailureEvent.duration);
+            dsmrTelegram.powerFailureEventLog.add(powerFailureEvent);
+        }
+        return true;
+    }
+
+    // '0-n:24.2.1' '(' timestamp=TIMESTAMP ')' '(' value=(FLOAT|INT) ('*' unit=('m3'|'GJ'|'kWh'))? ')'
+    private boolean parseMBusUsage(int mBusChannel) {
+        if (!readGroup(TIMESTAMP)) {
+            return false;
+        }
+        int timestampStart = valueStart;
+        int timestampEnd   = valueEnd;
+        if (!nextGroup() || !readGroup()) {
+            return false;
+        }
+
+        String unit;
+        int star = indexOf('*', valueStart, valueEnd);
+        if (star < 0) {
+            unit = "";
+        } else {
+            unit = mBusUnit(star + 1, valueEnd);
+            if (unit == null) {
+                return false;
+            }
+            valueEnd = star;
+        }
+        if (!isNumber(valueStart, valueEnd)) {
+            return false;
+        }
+        if (decode) {
+            setMBusUsage(mBusChannel, timestampStart, timestampEnd, toDouble(valueStart, valueEnd), unit);
+        } else if (!indexOnly) {
+            getSkippedMBusEvent(mBusChannel).unit = unit;
+        }
+        return true;
+    }
+
+    // '0-n:24.3.0' '(' timestamp=TIMESTAMP ')' '(' profileStatus=INT ')' '(' recordingPeriod=INT ')' '(' numberMeasurementValues=INT ')'
+    //              ( '(0-n:24.2.' INT ')' '(' unit=('m3'|'GJ'|'kWh') ')' ) ( '(' value=(FLOAT|INT) ')' )+
+    private boolean parseMBusProfileGeneric(int mBusChannel) {
+        if (!readGroup(TIMESTAMP)) {
+            return false;
+        }
+        int timestampStart = valueStart;
+        int timestampEnd   = valueEnd;
+
+        for (int i = 0; i < 3; i++) {
+            if (!nextGroup() || !readGroup(INT)) {
+                return false;
+            }
+        }
+
+        if (!nextGroup() || !readGroup() ||
+            valueEnd - valueStart < 10 ||
+            !valueStartsWith("0-" + mBusChannel + ":24.2.") ||
+            tokenType(valueStart + 9, valueEnd) != INT) {
+            return false;
+        }
+
+        if (!nextGroup() || !readGroup()) {
+            return false;
+        }
+        String unit = mBusUnit(valueStart, valueEnd);
+        if (unit == null) {
+            return false;
+        }
+
+        // One or more values, the last one is retained.
+        double value = 0;
+        int values = 0;
+        while (nextGroup()) {
+            if (!readGroup() || !isNumber(valueStart, valueEnd)) {
+                return false;
+            }
+            value = toDouble(valueStart, valueEnd);
+            values++;
+        }
+        if (values == 0) {
+            return false;
+        }
+        if (decode) {
+            setMBusUsage(mBusChannel, timestampStart, timestampEnd, value, unit);
+        } else if (!indexOnly) {
+            getSkippedMBusEvent(mBusChannel).unit = unit;
+        }
+        return true;
+    }
+
+    // COSEMID ('(' (FLOAT|INT|TIMESTAMP|HEXSTRING) ')')*
+    // The values of a registered OBIS code are passed to its decoder, for any other code they are only checked.
+    private boolean parseUnknownCosemId(ObisRegistry.Entry entry) {
+        List<String> values = entry == null ? null : new ArrayList<>();
+        while (nextGroup()) {
+            if (!readGroup() || tokenType(valueStart, valueEnd) == NONE) {
+                return false;
+            }
+            if (values != null) {
+                values.add(ascii(valueStart, valueEnd));
+            }
+        }
+        if (values != null) {
+            entry.decoder.decode(dsmrTelegram, entry.name, values);
+        }
+        return true;
+    }
+
+    private MBusEvent getMBusEvent(int index) {
+        return dsmrTelegram.getMBusEvent(index);
+    }
+
+    private MBusEvent getSkippedMBusEvent(int index) {
+        if (skippedMBusEvents == null) {
+            skippedMBusEvents = new TreeMap<>();
+        }
+        return skippedMBusEvents.computeIfAbsent(index, i -> new MBusEvent());
+    }
+
+    private void setMBusUsage(int index, int timestampStart, int timestampEnd, double value, String unit) {
+        MBusEvent mBusEvent = getMBusEvent(index);
+        mBusEvent.timestamp = timestamp(timestampStart, timestampEnd);
+        mBusEvent.value     = value;
+        mBusEvent.unit      = unit;
+    }
+
+    private String mBusUnit(int start, int stop) {
+        switch (stop - start) {
+            case 2:
+                if (input[start] == 'm' && input[start + 1] == '3') {
+                    return "m3";
+                }
+                if (input[start] == 'G' && input[start + 1] == 'J') {
+                    return "GJ";
+                }
+                return null;
+            case 3:
+                if (input[start] == 'k' && input[start + 1] == 'W' && input[start + 2] == 'h') {
+                    return "kWh";
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    // ------------------------------------------
+    // Low level scanning
+
+    // SPACES: [ \t\r\n]+ -> skip;
+    private void skipSpaces() {
+        while (pos < end) {
+            byte b = input[pos];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    // Spaces between the groups of a single field are skipped (i.e. the value is allowed to be on the next line).
+    // Returns true if the next thing is a '('.
+    private boolean nextGroup() {
+        skipSpaces();
+        return pos < end && input[pos] == '(';
+    }
+
+    // Reads '(' ... ')' without anything in between that is part of the surrounding syntax.
+    private boolean readGroup() {
+        if (pos >= end || input[pos] != '(') {
+            return false;
+        }
+        int start = pos + 1;
+        for (int i = start; i < end; i++) {
+            switch (input[i]) {
+                case ')':
+                    valueStart = start;
+                    valueEnd   = i;
+                    pos        = i + 1;
+                    return true;
+                case '(':
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                    return false;
+                default:
+                    // Continue
+            }
+        }
+        return false;
+    }
+
+    private boolean readGroup(int expectedTokenType) {
+        return readGroup() && tokenType(valueStart, valueEnd) == expectedTokenType;
+    }
+
+    private boolean readOptionalHexGroup() {
+        return readGroup() && (valueStart == valueEnd || tokenType(valueStart, valueEnd) == HEXSTRING);
+    }
+
+    // '(' value=(FLOAT|INT) '*' unit=<unit> ')'
+    // On success the value range is only the number.
+    private boolean readNumberGroup(String unit) {
+        int groupStart = pos;
+        if (!readGroup()) {
+            return false;
+        }
+        int star = valueEnd - unit.length() - 1;
+        if (star > valueStart && input[star] == '*') {
+            boolean unitMatches = true;
+            for (int i = 0; i < unit.length(); i++) {
+                if (input[star + 1 + i] != unit.charAt(i)) {
+                    unitMatches = false;
+                    break;
+                }
+            }
+            if (unitMatches && isNumber(valueStart, star)) {
+                valueEnd = star;
+                return true;
+            }
+        }
+        pos = groupStart; // Allow trying a different unit
+        return false;
+    }
+
+    private boolean isNumber(int start, int stop) {
+        int tokenType = tokenType(start, stop);
+        return tokenType == INT || tokenType == FLOAT;
+    }
+
+    private boolean valueIs(String expected) {
+        return valueEnd - valueStart == expected.length() && valueStartsWith(expected);
+    }
+
+    private boolean valueStartsWith(String expected) {
+        if (valueEnd - valueStart < expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (input[valueStart + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int start, int stop) {
+        for (int i = start; i < stop; i++) {
+            if (input[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // COSEMID : [01] '-' [0-9] ':' [0-9][0-9]? '.' [0-9][0-9]? '.' [0-9][0-9]? ;
+    // Packs a COSEM id into an int. Each of the last 3 parts is stored in a byte.
+    // The ones with 2 digits have the high bit set so "9" and "09" (which is a different token) are different.
+    // Returns -1 if this is not a COSEM id.
+    // Same layout as ObisRegistry.pack
+    private long packCosemId() {
+        if (end - pos < 9) {
+            return ObisRegistry.NOT_AN_OBIS_CODE;
+        }
+        byte a = input[pos];
+        byte b = input[pos + 2];
+        if ((a != '0' && a != '1') || input[pos + 1] != '-' || !isDigit(b) || input[pos + 3] != ':') {
+            return ObisRegistry.NOT_AN_OBIS_CODE;
+        }
+        pos += 4;
+        int c = packCosemIdPart();
+        if (c < 0 || pos >= end || input[pos++] != '.') {
+            return ObisRegistry.NOT_AN_OBIS_CODE;
+        }
+        int d = packCosemIdPart();
+        if (d < 0 || pos >= end || input[pos++] != '.') {
+            return ObisRegistry.NOT_AN_OBIS_CODE;
+        }
+        int e = packCosemIdPart();
+        if (e < 0) {
+            return ObisRegistry.NOT_AN_OBIS_CODE;
+        }
+        return ((long) (a - '0') << 32) | ((b - '0') << 24) | (c << 16) | (d << 8) | e;
+    }
+
+    private int packCosemIdPart() {
+        if (pos >= end || !isDigit(input[pos])) {
+            return -1;
+        }
+        int value = input[pos++] - '0';
+        if (pos < end && isDigit(input[pos])) {
+            return 0x80 | (value * 10 + (input[pos++] - '0'));
+        }
+        return value;
+    }
+
+    // ------------------------------------------
+    // The token types of the grammar that can appear as a value.
+    private static final int NONE      = 0;
+    private static final int INT       = 1;
+    private static final int FLOAT     = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int HEXSTRING = 4;
+
+    /*
+     * Determines which single token the ANTLR lexer would produce for the entire range.
+     * Returns NONE if the lexer would produce something else (i.e. more than one token or an error).
+     * The lexer takes the longest match and on equal length the rule defined first in the grammar.
+     *   TIMESTAMP : [0-9][0-9] [01][0-9] [0-3][0-9] [0-2][0-9] [0-5][0-9] [0-5][0-9]  ('S'|'W')?;
+     *   HEXSTRING : HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT HEXDIGIT+; (with HEXDIGIT being 2 hex characters)
+     *   FLOAT     : DIGIT1_6 '.' DIGIT1_3 ;
+     *   INT       : DIGIT1_10;
+     */
+    private int tokenType(int start, int stop) {
+        int length = stop - start;
+        if (length == 0) {
+            return NONE;
+        }
+
+        int digits = 0;
+        int hexLetters = 0;
+        int dot = -1;
+        for (int i = start; i < stop; i++) {
+            byte b = input[i];
+            if (isDigit(b)) {
+                digits++;
+            } else if (isHexLetter(b)) {
+                hexLetters++;
+            } else if (b == '.' && dot == -1) {
+                dot = i;
+            } else if (i == stop - 1 && length == 13 && (b == 'S' || b == 'W')) {
+                return isTimestamp(start) ? TIMESTAMP : NONE;
+            } else {
+                return NONE;
+            }
+        }
+
+        if (dot != -1) {
+            int before = dot - start;
+            int after  = stop - dot - 1;
+            if (hexLetters == 0 && before >= 1 && before <= 6 && after >= 1 && after <= 3) {
+                return FLOAT;
+            }
+            return NONE;
+        }
+
+        if (length == 12 && hexLetters == 0 && isTimestamp(start)) {
+            return TIMESTAMP;
+        }
+        if (length >= 12 && length % 2 == 0) {
+            return HEXSTRING;
+        }
+        if (hexLetters == 0 && length <= 10) {
+            return INT;
+        }
+        return NONE;
+    }
+
+    private boolean isTimestamp(int start) {
+        return  isDigit(input[start])      && isDigit(input[start + 1])   &&
+                isRange(input[start +  2], '0', '1') && isDigit(input[start +  3]) &&
+                isRange(input[start +  4], '0', '3') && isDigit(input[start +  5]) &&
+                isRange(input[start +  6], '0', '2') && isDigit(input[start +  7]) &&
+                isRange(input[start +  8], '0', '5') && isDigit(input[start +  9]) &&
+                isRange(input[start + 10], '0', '5') && isDigit(input[start + 11]);
+    }
+
+    private static boolean isRange(byte b, char first, char last) {
+        return b >= first && b <= last;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isHexLetter(byte b) {
+        return (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f');
+    }
+
+    private static boolean isUpperHex(byte b) {
+        return isDigit(b) || (b >= 'A' && b <= 'F');
+    }
+
+    private static boolean isAlphaNumeric(byte b) {
+        return isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isIdentCharacter(byte b) {
+        return isAlphaNumeric(b) || b == ' ' || b == '\\' || b == '_' || b == '.' || b == '-';
+    }
+
+    // ------------------------------------------
+    // Value conversions
+
+    private static final double[] POWERS_OF_TEN = {1.0, 10.0, 100.0, 1000.0};
+
+    private String ascii(int start, int stop) {
+        return new String(input, start, stop - start, US_ASCII);
+    }
+
+    // Only called on an INT token (at most 10 digits)
+    private long toLong(int start, int stop) {
+        long value = 0;
+        for (int i = start; i < stop; i++) {
+            value = value * 10 + (input[i] - '0');
+        }
+        return value;
+    }
+
+    // Only called on an INT or FLOAT token (at most 10 digits in total).
+    // Both the digits and the power of ten are exact as a double so the single
+    // division is rounded exactly like Double.valueOf(String) does.
+    private double toDouble(int start, int stop) {
+        long digits = 0;
+        int decimals = -1;
+        for (int i = start; i < stop; i++) {
+            byte b = input[i];
+            if (b == '.') {
+                decimals = 0;
+                continue;
+            }
+            digits = digits * 10 + (b - '0');
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (decimals <= 0) {
+            return digits;
+        }
+        return digits / POWERS_OF_TEN[decimals];
+    }
+
+    private ZonedDateTime timestamp(int start, int stop) {
+        return TIMESTAMP_PARSER.parse(input, start, stop - start);
+    }
+
+    private static int hexValue(byte b) {
+        if (b <= '9') {
+            return b - '0';
+        }
+        if (b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return b - 'a' + 10;
+    }
+
+    // Only called on a HEXSTRING token (or an empty range).
+    private String hexToString(int start, int stop) {
+        byte[] data = new byte[(stop - start) / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((hexValue(input[start + 2 * i]) << 4) + hexValue(input[start + 2 * i + 1]));
+        }
+        return new String(data, UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Turns everything reported to a ParseListener into Java Flight Recorder events.
+ * The events are disabled by default, enable them in the recording settings (or with
+ * -XX:StartFlightRecording:settings=...) using the names nl.basjes.dsmr.ParseStage and nl.basjes.dsmr.ParseOutcome.
+ * <pre>
+ * ParseListeners.register(new JfrParseListener());
+ * </pre>
+ */
+public class JfrParseListener implements ParseListener {
+
+    @Name("nl.basjes.dsmr.ParseStage")
+    @Label("DSMR Parse Stage")
+    @Description("The time spent in a single stage of parsing a DSMR telegram")
+    @Category("DSMR")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class ParseStageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("nl.basjes.dsmr.ParseOutcome")
+    @Label("DSMR Parse Outcome")
+    @Description("The outcome of parsing a DSMR telegram")
+    @Category("DSMR")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class ParseOutcomeEvent extends Event {
+        @Label("Outcome")
+        String outcome;
+    }
+
+    // Checking this first avoids creating the events if they are not recorded.
+    private static final ParseStageEvent   STAGE_PROBE   = new ParseStageEvent();
+    private static final ParseOutcomeEvent OUTCOME_PROBE = new ParseOutcomeEvent();
+
+    @Override
+    public void onStage(Stage stage, long nanos) {
+        if (!STAGE_PROBE.isEnabled()) {
+            return;
+        }
+        ParseStageEvent event = new ParseStageEvent();
+        event.stage = stage.name();
+        event.nanos = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void onOutcome(Outcome outcome) {
+        if (!OUTCOME_PROBE.isEnabled()) {
+            return;
+        }
+        ParseOutcomeEvent event = new ParseOutcomeEvent();
+        event.outcome = outcome.name();
+        event.commit();
+    }
+}
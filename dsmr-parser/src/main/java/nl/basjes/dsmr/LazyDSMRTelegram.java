@@ -0,0 +1,492 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.FastParseDsmrTelegram.Field;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static nl.basjes.dsmr.ParseDsmrTelegram.EUROPE_AMSTERDAM;
+
+/**
+ * A DSMRTelegram that only decodes a value when it is first requested.
+ * When created the entire telegram is checked (CRC and syntax) in a single pass which only records where each field is.
+ * All getters behave exactly the same as on a normally parsed DSMRTelegram.
+ * <p>
+ * The fields that are needed to determine if the telegram is valid (the P1 version, the CRC and the MBus events)
+ * are decoded together the first time one of them (or isValid()) is requested.
+ */
+public final class LazyDSMRTelegram extends DSMRTelegram {
+
+    /**
+     * Index a single DSMR telegram if it only uses the common constructs.
+     * @param telegram The telegram as received from the P1 port
+     * @return The lazy telegram or null if the fast path cannot handle this input.
+     */
+    public static LazyDSMRTelegram parse(String telegram) {
+        if (telegram == null || telegram.isEmpty()) {
+            return null;
+        }
+        // Anything that is not ASCII becomes a '?' which is never accepted.
+        return index(telegram.getBytes(US_ASCII));
+    }
+
+    /**
+     * Index a single DSMR telegram if it only uses the common constructs.
+     * The bytes are copied so the input can be reused afterwards.
+     * @param telegram The bytes that contain the telegram as received from the P1 port
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The lazy telegram or null if the fast path cannot handle this input.
+     */
+    public static LazyDSMRTelegram parse(byte[] telegram, int offset, int length) {
+        if (telegram == null || length == 0) {
+            return null;
+        }
+        Objects.checkFromIndexSize(offset, length, telegram.length);
+        return index(Arrays.copyOfRange(telegram, offset, offset + length));
+    }
+
+    private static LazyDSMRTelegram index(byte[] telegram) {
+        LazyDSMRTelegram lazyTelegram = new LazyDSMRTelegram(telegram);
+        if (!FastParseDsmrTelegram.index(lazyTelegram, telegram, 0, telegram.length)) {
+            return null;
+        }
+        lazyTelegram.receiveTimestamp = ZonedDateTime.now(EUROPE_AMSTERDAM);
+        return lazyTelegram;
+    }
+
+    // ------------------------------------------
+
+    private static final int NOT_PRESENT = -1;
+
+    private final byte[] telegram;
+
+    // Where each field starts (NOT_PRESENT if absent). The MBus fields can occur several times so those are kept separately.
+    private final int[]  fieldStarts = new int[Field.values().length];
+    private       int[]  mBusFieldStarts = new int[8];
+    private       int    mBusFields = 0;
+
+    // Set by the indexing
+    int identStart = NOT_PRESENT;
+    int identEnd   = NOT_PRESENT;
+    int crcStart   = NOT_PRESENT;
+
+    // One bit per Field that has been decoded
+    private long    decodedFields = 0;
+    private boolean decodedIdent  = false;
+    private boolean finished      = false;
+
+    private LazyDSMRTelegram(byte[] telegram) {
+        this.telegram = telegram;
+        Arrays.fill(fieldStarts, NOT_PRESENT);
+    }
+
+    void addField(Field field, int fieldStart) {
+        switch (field) {
+            case MBUS_TYPE:
+            case MBUS_EQUIPMENT_ID:
+            case MBUS_USAGE:
+            case MBUS_PROFILE_GENERIC:
+                if (mBusFields == mBusFieldStarts.length) {
+                    mBusFieldStarts = Arrays.copyOf(mBusFieldStarts, mBusFields * 2);
+                }
+                mBusFieldStarts[mBusFields++] = fieldStart;
+                break;
+            default:
+                // If a field occurs multiple times the last one wins (same as the parsers do).
+                fieldStarts[field.ordinal()] = fieldStart;
+        }
+    }
+
+    private synchronized void decode(Field field) {
+        long bit = 1L << field.ordinal();
+        if ((decodedFields & bit) != 0) {
+            return;
+        }
+        int fieldStart = fieldStarts[field.ordinal()];
+        if (fieldStart != NOT_PRESENT) {
+            FastParseDsmrTelegram.decodeField(this, telegram, fieldStart, telegram.length);
+        }
+        decodedFields |= bit;
+    }
+
+    private synchronized void decodeIdent() {
+        if (decodedIdent) {
+            return;
+        }
+        ParseDsmrTelegram.setIdent(this, telegram, identStart, identEnd);
+        decodedIdent = true;
+    }
+
+    // Everything that is needed to determine if the telegram is valid.
+    private synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        if (crcStart != NOT_PRESENT) {
+            crc = new String(telegram, crcStart, 4, US_ASCII);
+        }
+        decode(Field.P1_VERSION);
+        for (int i = 0; i < mBusFields; i++) {
+            FastParseDsmrTelegram.decodeField(this, telegram, mBusFieldStarts[i], telegram.length);
+        }
+        ParseDsmrTelegram.finishTelegram(this, false);
+        finished = true;
+    }
+
+    /** Decode everything that has not been decoded yet. */
+    public void decodeAll() {
+        decodeIdent();
+        finish();
+        for (Field field: Field.values()) {
+            decode(field);
+        }
+    }
+
+    private static Field toField(TelegramField telegramField) {
+        switch (telegramField) {
+            case GAS_M3:
+            case SLAVE_E_METER_KWH:
+            case MBUS_EVENTS:
+                return null; // These come from the MBus events
+            default:
+                return Field.valueOf(telegramField.name());
+        }
+    }
+
+    private static final Field[] TELEGRAM_FIELDS = Arrays.stream(TelegramField.values()).map(LazyDSMRTelegram::toField).toArray(Field[]::new);
+
+    // ------------------------------------------
+
+    @Override
+    public boolean isValid() {
+        finish();
+        return super.isValid();
+    }
+
+    @Override
+    public String getRawIdent() {
+        decodeIdent();
+        return super.getRawIdent();
+    }
+
+    @Override
+    public String getEquipmentBrandTag() {
+        decodeIdent();
+        return super.getEquipmentBrandTag();
+    }
+
+    @Override
+    public String getIdent() {
+        decodeIdent();
+        return super.getIdent();
+    }
+
+    @Override
+    public String getCrc() {
+        finish();
+        return super.getCrc();
+    }
+
+    @Override
+    public String getP1Version() {
+        finish();
+        return super.getP1Version();
+    }
+
+    @Override
+    public ZonedDateTime getTimestamp() {
+        decode(Field.TIMESTAMP);
+        return super.getTimestamp();
+    }
+
+    @Override
+    public long getTimestampEpochSecond() {
+        decode(Field.TIMESTAMP);
+        return super.getTimestampEpochSecond();
+    }
+
+    @Override
+    public String getEquipmentId() {
+        decode(Field.EQUIPMENT_ID);
+        return super.getEquipmentId();
+    }
+
+    @Override
+    public boolean isPresent(TelegramField telegramField) {
+        Field field = TELEGRAM_FIELDS[telegramField.ordinal()];
+        if (field == null) {
+            finish();
+        } else {
+            decode(field);
+        }
+        return super.isPresent(telegramField);
+    }
+
+    @Override
+    public long getPresentFields() {
+        decodeAll();
+        return super.getPresentFields();
+    }
+
+    @Override
+    public Long getElectricityTariffIndicator() {
+        decode(Field.ELECTRICITY_TARIFF_INDICATOR);
+        return super.getElectricityTariffIndicator();
+    }
+
+    @Override
+    public Double getElectricityReceivedLowTariff() {
+        decode(Field.ELECTRICITY_RECEIVED_LOW_TARIFF);
+        return super.getElectricityReceivedLowTariff();
+    }
+
+    @Override
+    public Double getElectricityReceivedNormalTariff() {
+        decode(Field.ELECTRICITY_RECEIVED_NORMAL_TARIFF);
+        return super.getElectricityReceivedNormalTariff();
+    }
+
+    @Override
+    public Double getElectricityPowerReceived() {
+        decode(Field.ELECTRICITY_POWER_RECEIVED);
+        return super.getElectricityPowerReceived();
+    }
+
+    @Override
+    public Double getElectricityReturnedLowTariff() {
+        decode(Field.ELECTRICITY_RETURNED_LOW_TARIFF);
+        return super.getElectricityReturnedLowTariff();
+    }
+
+    @Override
+    public Double getElectricityReturnedNormalTariff() {
+        decode(Field.ELECTRICITY_RETURNED_NORMAL_TARIFF);
+        return super.getElectricityReturnedNormalTariff();
+    }
+
+    @Override
+    public Double getElectricityPowerReturned() {
+        decode(Field.ELECTRICITY_POWER_RETURNED);
+        return super.getElectricityPowerReturned();
+    }
+
+    @Override
+    public Long getPowerFailures() {
+        decode(Field.POWER_FAILURES);
+        return super.getPowerFailures();
+    }
+
+    @Override
+    public Long getLongPowerFailures() {
+        decode(Field.LONG_POWER_FAILURES);
+        return super.getLongPowerFailures();
+    }
+
+    @Override
+    public Long getVoltageSagsPhaseL1() {
+        decode(Field.VOLTAGE_SAGS_PHASE_L1);
+        return super.getVoltageSagsPhaseL1();
+    }
+
+    @Override
+    public Long getVoltageSagsPhaseL2() {
+        decode(Field.VOLTAGE_SAGS_PHASE_L2);
+        return super.getVoltageSagsPhaseL2();
+    }
+
+    @Override
+    public Long getVoltageSagsPhaseL3() {
+        decode(Field.VOLTAGE_SAGS_PHASE_L3);
+        return super.getVoltageSagsPhaseL3();
+    }
+
+    @Override
+    public Long getVoltageSwellsPhaseL1() {
+        decode(Field.VOLTAGE_SWELLS_PHASE_L1);
+        return super.getVoltageSwellsPhaseL1();
+    }
+
+    @Override
+    public Long getVoltageSwellsPhaseL2() {
+        decode(Field.VOLTAGE_SWELLS_PHASE_L2);
+        return super.getVoltageSwellsPhaseL2();
+    }
+
+    @Override
+    public Long getVoltageSwellsPhaseL3() {
+        decode(Field.VOLTAGE_SWELLS_PHASE_L3);
+        return super.getVoltageSwellsPhaseL3();
+    }
+
+    @Override
+    public Double getVoltageL1() {
+        decode(Field.VOLTAGE_L1);
+        return super.getVoltageL1();
+    }
+
+    @Override
+    public Double getVoltageL2() {
+        decode(Field.VOLTAGE_L2);
+        return super.getVoltageL2();
+    }
+
+    @Override
+    public Double getVoltageL3() {
+        decode(Field.VOLTAGE_L3);
+        return super.getVoltageL3();
+    }
+
+    @Override
+    public Double getCurrentL1() {
+        decode(Field.CURRENT_L1);
+        return super.getCurrentL1();
+    }
+
+    @Override
+    public Double getCurrentL2() {
+        decode(Field.CURRENT_L2);
+        return super.getCurrentL2();
+    }
+
+    @Override
+    public Double getCurrentL3() {
+        decode(Field.CURRENT_L3);
+        return super.getCurrentL3();
+    }
+
+    @Override
+    public Double getPowerReceivedL1() {
+        decode(Field.POWER_RECEIVED_L1);
+        return super.getPowerReceivedL1();
+    }
+
+    @Override
+    public Double getPowerReceivedL2() {
+        decode(Field.POWER_RECEIVED_L2);
+        return super.getPowerReceivedL2();
+    }
+
+    @Override
+    public Double getPowerReceivedL3() {
+        decode(Field.POWER_RECEIVED_L3);
+        return super.getPowerReceivedL3();
+    }
+
+    @Override
+    public Double getPowerReturnedL1() {
+        decode(Field.POWER_RETURNED_L1);
+        return super.getPowerReturnedL1();
+    }
+
+    @Override
+    public Double getPowerReturnedL2() {
+        decode(Field.POWER_RETURNED_L2);
+        return super.getPowerReturnedL2();
+    }
+
+    @Override
+    public Double getPowerReturnedL3() {
+        decode(Field.POWER_RETURNED_L3);
+        return super.getPowerReturnedL3();
+    }
+
+    @Override
+    public Long getPowerFailureEventLogSize() {
+        decode(Field.POWER_FAILURE_EVENT_LOG);
+        return super.getPowerFailureEventLogSize();
+    }
+
+    @Override
+    public List<PowerFailureEvent> getPowerFailureEventLog() {
+        decode(Field.POWER_FAILURE_EVENT_LOG);
+        return super.getPowerFailureEventLog();
+    }
+
+    @Override
+    public String getMessageCodes() {
+        decode(Field.MESSAGE_CODES);
+        return super.getMessageCodes();
+    }
+
+    @Override
+    public String getMessage() {
+        decode(Field.MESSAGE);
+        return super.getMessage();
+    }
+
+    @Override
+    public Map<Integer, MBusEvent> getMBusEvents() {
+        finish();
+        return super.getMBusEvents();
+    }
+
+    @Override
+    public List<MBusEventEntry> getMBusEventList() {
+        finish();
+        return super.getMBusEventList();
+    }
+
+    @Override
+    public String getGasEquipmentId() {
+        finish();
+        return super.getGasEquipmentId();
+    }
+
+    @Override
+    public ZonedDateTime getGasTimestamp() {
+        finish();
+        return super.getGasTimestamp();
+    }
+
+    @Override
+    public Double getGasM3() {
+        finish();
+        return super.getGasM3();
+    }
+
+    @Override
+    public String getSlaveEMeterEquipmentId() {
+        finish();
+        return super.getSlaveEMeterEquipmentId();
+    }
+
+    @Override
+    public ZonedDateTime getSlaveEMeterTimestamp() {
+        finish();
+        return super.getSlaveEMeterTimestamp();
+    }
+
+    @Override
+    public Double getSlaveEMeterkWh() {
+        finish();
+        return super.getSlaveEMeterkWh();
+    }
+
+    @Override
+    public String toString() {
+        decodeAll();
+        return super.toString();
+    }
+}
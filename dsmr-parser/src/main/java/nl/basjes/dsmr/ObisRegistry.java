@@ -0,0 +1,324 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.FastParseDsmrTelegram.Field;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Maps the OBIS codes (like 1-0:1.8.1) that can occur in a telegram to what must be done with their values.
+ * <p>
+ * The OBIS codes are packed into a long (see pack) and are looked up in a collision free hash table
+ * so finding out what a line of a telegram is costs a single multiplication and array access.
+ * <p>
+ * The codes that are part of the DSMR specification are always present.
+ * Additional (vendor specific) codes can be registered at runtime with a Decoder that stores the values in
+ * the DSMRTelegram (see putCustomValue). Without a registered Decoder such lines are checked and then ignored.
+ * <p>
+ * The registry is shared by all parsers and can be changed at any time: each change creates a new table.
+ */
+public final class ObisRegistry {
+
+    private ObisRegistry() {
+    }
+
+    /** Is returned by pack if the input is not an OBIS code as allowed in a telegram. */
+    public static final long NOT_AN_OBIS_CODE = -1L;
+
+    /**
+     * Handles the values of a registered OBIS code.
+     * The decoder is called by the parsing thread and must not throw exceptions.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        /**
+         * @param telegram The telegram that is being parsed.
+         * @param obisCode The OBIS code of the line (as it was registered).
+         * @param values   The content of each of the '(...)' groups of the line.
+         */
+        void decode(DSMRTelegram telegram, String obisCode, List<String> values);
+    }
+
+    // What is known about a single OBIS code: either a field of the specification or a registered decoder.
+    static final class Entry {
+        final long    obisCode;
+        final String  name;
+        final Field   field;
+        final Decoder decoder;
+
+        private Entry(long obisCode, String name, Field field, Decoder decoder) {
+            this.obisCode = obisCode;
+            this.name     = name;
+            this.field    = field;
+            this.decoder  = decoder;
+        }
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Pack an OBIS code into a long.
+     * The format is the one of a COSEM id in a telegram: [01] '-' [0-9] ':' [0-9][0-9]? '.' [0-9][0-9]? '.' [0-9][0-9]?
+     * @param obisCode The OBIS code (like 1-0:1.8.1)
+     * @return The packed OBIS code or NOT_AN_OBIS_CODE.
+     */
+    public static long pack(CharSequence obisCode) {
+        if (obisCode == null || obisCode.length() < 9 || obisCode.length() > 12) {
+            return NOT_AN_OBIS_CODE;
+        }
+        char a = obisCode.charAt(0);
+        char b = obisCode.charAt(2);
+        if ((a != '0' && a != '1') || obisCode.charAt(1) != '-' || !isDigit(b) || obisCode.charAt(3) != ':') {
+            return NOT_AN_OBIS_CODE;
+        }
+        long packed = ((a - '0') << 8) | (b - '0');
+        int pos = 4;
+        for (int part = 0; part < 3; part++) {
+            if (part > 0) {
+                if (pos >= obisCode.length() || obisCode.charAt(pos) != '.') {
+                    return NOT_AN_OBIS_CODE;
+                }
+                pos++;
+            }
+            if (pos >= obisCode.length() || !isDigit(obisCode.charAt(pos))) {
+                return NOT_AN_OBIS_CODE;
+            }
+            int value = obisCode.charAt(pos++) - '0';
+            if (pos < obisCode.length() && isDigit(obisCode.charAt(pos))) {
+                value = 0x80 | (value * 10 + (obisCode.charAt(pos++) - '0'));
+            }
+            packed = (packed << 8) | value;
+        }
+        return pos == obisCode.length() ? packed : NOT_AN_OBIS_CODE;
+    }
+
+    // The layout of a packed OBIS code is [A:8][B:8][C:8][D:8][E:8] where two digit values are flagged with 0x80
+    // because "1-0:01.8.1" is not the same code as "1-0:1.8.1" in a telegram.
+    // NOTE: FastParseDsmrTelegram.packCosemId produces the same layout directly from the bytes.
+
+    static int mBusChannel(long obisCode) {
+        return (int) (obisCode >>> 24) & 0x0F;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // ------------------------------------------
+
+    // The codes of the DSMR specification and their fields.
+    private static final Object[][] SPECIFICATION = {
+        {"1-3:0.2.8",   Field.P1_VERSION                         }, // P1 Version information
+        {"0-0:1.0.0",   Field.TIMESTAMP                          }, // Timestamp
+        {"0-0:96.1.1",  Field.EQUIPMENT_ID                       }, // Equipment identifier
+        {"0-0:96.14.0", Field.ELECTRICITY_TARIFF_INDICATOR       }, // Tariff indicator electricity
+        {"1-0:1.8.1",   Field.ELECTRICITY_RECEIVED_LOW_TARIFF    }, // Meter Reading electricity delivered to client (low tariff) in 0,001 kWh
+        {"1-0:1.8.2",   Field.ELECTRICITY_RECEIVED_NORMAL_TARIFF }, // Meter Reading electricity delivered to client (normal tariff) in 0,001 kWh
+        {"1-0:2.8.1",   Field.ELECTRICITY_RETURNED_LOW_TARIFF    }, // Meter Reading electricity delivered by client (low tariff) in 0,001 kWh
+        {"1-0:2.8.2",   Field.ELECTRICITY_RETURNED_NORMAL_TARIFF }, // Meter Reading electricity delivered by client (normal tariff) in 0,001 kWh
+        {"1-0:1.7.0",   Field.ELECTRICITY_POWER_RECEIVED         }, // Actual electricity power delivered (+P) in 1 Watt resolution
+        {"1-0:2.7.0",   Field.ELECTRICITY_POWER_RETURNED         }, // Actual electricity power received (-P) in 1 Watt resolution
+        {"0-0:96.7.21", Field.POWER_FAILURES                     }, // Number of power failures in any phases
+        {"0-0:96.7.9",  Field.LONG_POWER_FAILURES                }, // Number of long power failures in any phases
+        {"1-0:99.97.0", Field.POWER_FAILURE_EVENT_LOG            }, // Power failure event log
+        {"1-0:32.32.0", Field.VOLTAGE_SAGS_PHASE_L1              }, // Number of voltage sags in phase L1
+        {"1-0:52.32.0", Field.VOLTAGE_SAGS_PHASE_L2              }, // Number of voltage sags in phase L2
+        {"1-0:72.32.0", Field.VOLTAGE_SAGS_PHASE_L3              }, // Number of voltage sags in phase L3
+        {"1-0:32.36.0", Field.VOLTAGE_SWELLS_PHASE_L1            }, // Number of voltage swells in phase L1
+        {"1-0:52.36.0", Field.VOLTAGE_SWELLS_PHASE_L2            }, // Number of voltage swells in phase L2
+        {"1-0:72.36.0", Field.VOLTAGE_SWELLS_PHASE_L3            }, // Number of voltage swells in phase L3
+        {"1-0:32.7.0",  Field.VOLTAGE_L1                         }, // Instantaneous voltage L1
+        {"1-0:52.7.0",  Field.VOLTAGE_L2                         }, // Instantaneous voltage L2
+        {"1-0:72.7.0",  Field.VOLTAGE_L3                         }, // Instantaneous voltage L3
+        {"1-0:31.7.0",  Field.CURRENT_L1                         }, // Instantaneous current L1
+        {"1-0:51.7.0",  Field.CURRENT_L2                         }, // Instantaneous current L2
+        {"1-0:71.7.0",  Field.CURRENT_L3                         }, // Instantaneous current L3
+        {"1-0:21.7.0",  Field.POWER_RECEIVED_L1                  }, // Instantaneous active power L1 (+P)
+        {"1-0:41.7.0",  Field.POWER_RECEIVED_L2                  }, // Instantaneous active power L2 (+P)
+        {"1-0:61.7.0",  Field.POWER_RECEIVED_L3                  }, // Instantaneous active power L3 (+P)
+        {"1-0:22.7.0",  Field.POWER_RETURNED_L1                  }, // Instantaneous active power L1 (-P)
+        {"1-0:42.7.0",  Field.POWER_RETURNED_L2                  }, // Instantaneous active power L2 (-P)
+        {"1-0:62.7.0",  Field.POWER_RETURNED_L3                  }, // Instantaneous active power L3 (-P)
+        {"0-0:96.3.10", Field.SWITCH_SETTING                     }, // Actual switch position Electricity (in/out/enabled).
+        {"0-0:96.13.1", Field.MESSAGE_CODES                      }, // Text message codes: numeric 8 digits.
+        {"0-0:96.13.0", Field.MESSAGE                            }, // Text message max 1024 characters.
+        {"0-0:17.0.0",  Field.ELECTRICITY_THRESHOLD              }, // The actual threshold Electricity in kW or Ampere
+        {"0-0:96.7.19", Field.NOT_A_FIELD                        }, // Only valid inside the power failure event log
+        {"0-1:24.1.0",  Field.MBUS_TYPE                          }, // Device type.
+        {"0-1:96.1.0",  Field.MBUS_EQUIPMENT_ID                  }, // Equipment Identifier.
+        {"0-1:24.2.1",  Field.MBUS_USAGE                         }, // Last 5 minute reading.
+        {"0-1:24.3.0",  Field.MBUS_PROFILE_GENERIC               }, // Last hourly reading (DSMR 2.2 and 3.0)
+        {"0-1:24.4.0",  Field.MBUS_GAS_VALVE_POSITION            }, // Valve position gas (on/off/released).
+        {"0-2:24.1.0",  Field.MBUS_TYPE                          },
+        {"0-2:96.1.0",  Field.MBUS_EQUIPMENT_ID                  },
+        {"0-2:24.2.1",  Field.MBUS_USAGE                         },
+        {"0-2:24.3.0",  Field.MBUS_PROFILE_GENERIC               },
+        {"0-2:24.4.0",  Field.MBUS_GAS_VALVE_POSITION            },
+        {"0-3:24.1.0",  Field.MBUS_TYPE                          },
+        {"0-3:96.1.0",  Field.MBUS_EQUIPMENT_ID                  },
+        {"0-3:24.2.1",  Field.MBUS_USAGE                         },
+        {"0-3:24.3.0",  Field.MBUS_PROFILE_GENERIC               },
+        {"0-3:24.4.0",  Field.MBUS_GAS_VALVE_POSITION            },
+        {"0-4:24.1.0",  Field.MBUS_TYPE                          },
+        {"0-4:96.1.0",  Field.MBUS_EQUIPMENT_ID                  },
+        {"0-4:24.2.1",  Field.MBUS_USAGE                         },
+        {"0-4:24.3.0",  Field.MBUS_PROFILE_GENERIC               },
+        {"0-4:24.4.0",  Field.MBUS_GAS_VALVE_POSITION            },
+    };
+
+    // ------------------------------------------
+
+    // An immutable table in which each entry is at the position determined by its hash (i.e. a perfect hash).
+    private static final class Table {
+        private final Entry[] slots;
+        private final int     shift;
+        private final int     size;
+
+        private Table(Entry[] slots, int shift, int size) {
+            this.slots = slots;
+            this.shift = shift;
+            this.size  = size;
+        }
+
+        private Entry get(long obisCode) {
+            Entry entry = slots[slot(obisCode, shift)];
+            return entry != null && entry.obisCode == obisCode ? entry : null;
+        }
+
+        private List<Entry> entries() {
+            List<Entry> entries = new ArrayList<>(size);
+            for (Entry entry : slots) {
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        }
+    }
+
+    // Fibonacci hashing: the high bits of the product depend on all bits of the packed code.
+    private static int slot(long obisCode, int shift) {
+        return (int) ((obisCode * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    // No more than 64K slots
+    private static final int MAX_TABLE_BITS = 16;
+
+    private static Table buildTable(List<Entry> entries) {
+        // Start with a table that is at least twice as large as needed and grow it until there are no collisions.
+        int bits = 1;
+        while ((1 << bits) < entries.size() * 2) {
+            bits++;
+        }
+        for (; bits <= MAX_TABLE_BITS; bits++) {
+            int shift = Long.SIZE - bits;
+            Entry[] slots = new Entry[1 << bits];
+            boolean collisionFree = true;
+            for (Entry entry : entries) {
+                int slot = slot(entry.obisCode, shift);
+                if (slots[slot] != null) {
+                    collisionFree = false;
+                    break;
+                }
+                slots[slot] = entry;
+            }
+            if (collisionFree) {
+                return new Table(slots, shift, entries.size());
+            }
+        }
+        throw new IllegalStateException("Unable to create a collision free table for " + entries.size() + " OBIS codes");
+    }
+
+    private static volatile Table table;
+
+    static {
+        List<Entry> entries = new ArrayList<>(SPECIFICATION.length);
+        for (Object[] specified : SPECIFICATION) {
+            String name = (String) specified[0];
+            entries.add(new Entry(pack(name), name, (Field) specified[1], null));
+        }
+        table = buildTable(entries);
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Register an additional OBIS code. If it was registered before the decoder is replaced.
+     * @param obisCode The OBIS code (like 0-0:96.50.68)
+     * @param decoder What must be done with the values of the lines with this code.
+     * @throws IllegalArgumentException If this is not a valid OBIS code or if it is one of the DSMR specification.
+     */
+    public static synchronized void register(String obisCode, Decoder decoder) {
+        Objects.requireNonNull(decoder, "The decoder may not be null");
+        long packed = checkCustomCode(obisCode);
+        List<Entry> entries = table.entries();
+        entries.removeIf(entry -> entry.obisCode == packed);
+        entries.add(new Entry(packed, obisCode, null, decoder));
+        table = buildTable(entries);
+    }
+
+    /**
+     * Remove a registered OBIS code, after this the lines with this code are ignored again.
+     * @param obisCode The OBIS code (like 0-0:96.50.68)
+     * @return true if it was registered.
+     * @throws IllegalArgumentException If this is not a valid OBIS code or if it is one of the DSMR specification.
+     */
+    public static synchronized boolean unregister(String obisCode) {
+        long packed = checkCustomCode(obisCode);
+        List<Entry> entries = table.entries();
+        if (!entries.removeIf(entry -> entry.obisCode == packed)) {
+            return false;
+        }
+        table = buildTable(entries);
+        return true;
+    }
+
+    /**
+     * @param obisCode The OBIS code (like 1-0:1.8.1)
+     * @return true if this code is part of the DSMR specification or has been registered.
+     */
+    public static boolean isKnown(String obisCode) {
+        return lookup(pack(obisCode)) != null;
+    }
+
+    private static long checkCustomCode(String obisCode) {
+        long packed = pack(obisCode);
+        if (packed == NOT_AN_OBIS_CODE) {
+            throw new IllegalArgumentException("Not a valid OBIS code: \"" + obisCode + "\"");
+        }
+        Entry entry = table.get(packed);
+        if (entry != null && entry.field != null) {
+            throw new IllegalArgumentException("The OBIS code " + obisCode + " is part of the DSMR specification");
+        }
+        return packed;
+    }
+
+    /**
+     * @param obisCode The packed OBIS code
+     * @return The entry or null if this code is unknown.
+     */
+    static Entry lookup(long obisCode) {
+        if (obisCode == NOT_AN_OBIS_CODE) {
+            return null;
+        }
+        return table.get(obisCode);
+    }
+}
@@ -73,26 +73,37 @@ import nl.basjes.dsmr.parse.DsmrParser.VoltageSwellsPhaseL1Context;
 import nl.basjes.dsmr.parse.DsmrParser.VoltageSwellsPhaseL2Context;
 import nl.basjes.dsmr.parse.DsmrParser.VoltageSwellsPhaseL3Context;
 import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CodePointCharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 // CHECKSTYLE.OFF: LineLength
@@ -124,22 +135,324 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
         // Ignore this type of problem
     }
 
-    public static synchronized DSMRTelegram parse(String telegram) {
-        return new ParseDsmrTelegram(telegram).parse();
+    /**
+     * Parse a single DSMR telegram.
+     * This is thread safe: all state of a single parse lives in a private instance
+     * and the caches inside the ANTLR runtime are shared safely between threads.
+     * Common telegrams are handled by a fast byte level scanner, anything it does not
+     * understand is parsed using the full ANTLR grammar.
+     * @param telegram The telegram as received from the P1 port
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parse(String telegram) {
+        DSMRTelegram dsmrTelegram = FastParseDsmrTelegram.parse(telegram);
+        if (dsmrTelegram != null) {
+            return dsmrTelegram;
+        }
+        return parseWithGrammar(telegram);
+    }
+
+    /**
+     * Parse a single DSMR telegram directly from the bytes as received from the P1 port.
+     * Common telegrams are parsed without ever creating a String of the entire telegram.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parse(byte[] telegram, int offset, int length) {
+        DSMRTelegram dsmrTelegram = FastParseDsmrTelegram.parse(telegram, offset, length);
+        if (dsmrTelegram != null) {
+            return dsmrTelegram;
+        }
+        if (telegram == null) {
+            return null;
+        }
+        return parseWithGrammar(new String(telegram, offset, length, UTF_8));
+    }
+
+    /**
+     * Parse a single DSMR telegram directly from the bytes as received from the P1 port.
+     * @param telegram The remaining bytes in this buffer are the telegram (the position of the buffer is not changed).
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseBuffer(ByteBuffer telegram) {
+        if (telegram == null) {
+            return null;
+        }
+        if (telegram.hasArray()) {
+            return parse(telegram.array(), telegram.arrayOffset() + telegram.position(), telegram.remaining());
+        }
+        byte[] bytes = CheckCRC.toByteArray(telegram);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse a single DSMR telegram and only decode the selected fields.
+     * The telegram is still checked completely so the validity is the same as when all fields are decoded.
+     * @param telegram The telegram as received from the P1 port
+     * @param options Which fields must be decoded
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parse(String telegram, ParseOptions options) {
+        DSMRTelegram dsmrTelegram = FastParseDsmrTelegram.parse(telegram, options);
+        if (dsmrTelegram != null) {
+            return dsmrTelegram;
+        }
+        return new ParseDsmrTelegram(telegram, options, new DSMRTelegram()).parse();
+    }
+
+    /**
+     * Parse a single DSMR telegram directly from the bytes as received from the P1 port and only decode the selected fields.
+     * The telegram is still checked completely so the validity is the same as when all fields are decoded.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param options Which fields must be decoded
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parse(byte[] telegram, int offset, int length, ParseOptions options) {
+        DSMRTelegram dsmrTelegram = FastParseDsmrTelegram.parse(telegram, offset, length, options);
+        if (dsmrTelegram != null) {
+            return dsmrTelegram;
+        }
+        if (telegram == null) {
+            return null;
+        }
+        return parseWithGrammar(telegram, offset, length, options, new DSMRTelegram());
     }
 
-    private final String          telegramString;
-    private final DSMRTelegram    dsmrTelegram;
-    private final TimestampParser timestampParser = new TimestampParser();
+    /**
+     * Parse a single DSMR telegram into an existing instance which is reset first.
+     * This avoids creating a new DSMRTelegram (and its nested collections) for every telegram
+     * which makes sense when the previous telegram is no longer needed (see also DSMRTelegramPool).
+     * @param telegram The telegram as received from the P1 port
+     * @param target The instance that is reset and filled (must not be a LazyDSMRTelegram)
+     * @return The target, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseInto(String telegram, DSMRTelegram target) {
+        if (telegram == null || telegram.isEmpty()) {
+            return null;
+        }
+        byte[] bytes = telegram.getBytes(UTF_8);
+        return parseInto(bytes, 0, bytes.length, ParseOptions.ALL, target);
+    }
 
-    private static final ZoneId EUROPE_AMSTERDAM = ZoneId.of("Europe/Amsterdam");
+    /**
+     * Parse a single DSMR telegram into an existing instance which is reset first.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param target The instance that is reset and filled (must not be a LazyDSMRTelegram)
+     * @return The target, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseInto(byte[] telegram, int offset, int length, DSMRTelegram target) {
+        return parseInto(telegram, offset, length, ParseOptions.ALL, target);
+    }
 
-    private ParseDsmrTelegram(String telegram) {
+    /**
+     * Parse a single DSMR telegram into an existing instance which is reset first and only decode the selected fields.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @param options Which fields must be decoded
+     * @param target The instance that is reset and filled (must not be a LazyDSMRTelegram)
+     * @return The target, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseInto(byte[] telegram, int offset, int length, ParseOptions options, DSMRTelegram target) {
+        if (target instanceof LazyDSMRTelegram) {
+            throw new IllegalArgumentException("A LazyDSMRTelegram cannot be used as the target of parseInto");
+        }
+        if (telegram == null || length == 0) {
+            return null;
+        }
+        Objects.checkFromIndexSize(offset, length, telegram.length);
+        if (FastParseDsmrTelegram.parseInto(telegram, offset, length, options, target)) {
+            return target;
+        }
+        return parseWithGrammar(telegram, offset, length, options, target);
+    }
+
+    /**
+     * Parse a single DSMR telegram where the fields are only decoded when they are requested (see LazyDSMRTelegram).
+     * Anything the fast path does not understand is parsed completely using the full ANTLR grammar.
+     * @param telegram The telegram as received from the P1 port
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseLazy(String telegram) {
+        DSMRTelegram dsmrTelegram = LazyDSMRTelegram.parse(telegram);
+        if (dsmrTelegram != null) {
+            return dsmrTelegram;
+        }
+        return parseWithGrammar(telegram);
+    }
+
+    /**
+     * Parse a single DSMR telegram where the fields are only decoded when they are requested (see LazyDSMRTelegram).
+     * Anything the fast path does not understand is parsed completely using the full ANTLR grammar.
+     * @param telegram The bytes that contain the telegram
+     * @param offset Where the telegram starts in the input
+     * @param length The length of the telegram
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseLazy(byte[] telegram, int offset, int length) {
+        DSMRTelegram dsmrTelegram = LazyDSMRTelegram.parse(telegram, offset, length);
+        if (dsmrTelegram != null) {
+            return dsmrTelegram;
+        }
+        if (telegram == null) {
+            return null;
+        }
+        return parseWithGrammar(new String(telegram, offset, length, UTF_8));
+    }
+
+    /**
+     * Parse a single DSMR telegram using only the ANTLR grammar (i.e. never the fast path).
+     * @param telegram The telegram as received from the P1 port
+     * @return The parsed telegram, or null if the input was null or empty.
+     */
+    public static DSMRTelegram parseWithGrammar(String telegram) {
+        return new ParseDsmrTelegram(telegram, ParseOptions.ALL, new DSMRTelegram()).parse();
+    }
+
+    // Telegrams that together use all constructs of the grammar (also a syntax error so the LL stage is used).
+    private static final String[] WARM_UP_TELEGRAMS = {
+        CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n\r\n" +
+            "1-3:0.2.8(50)\r\n0-0:1.0.0(220528151729S)\r\n0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+            "1-0:1.8.1(016366.258*kWh)\r\n1-0:1.8.2(013315.593*kWh)\r\n1-0:2.8.1(002435.025*kWh)\r\n1-0:2.8.2(006153.962*kWh)\r\n" +
+            "0-0:96.14.0(0001)\r\n1-0:1.7.0(00.000*kW)\r\n1-0:2.7.0(00.098*kW)\r\n0-0:96.7.21(00005)\r\n0-0:96.7.9(00004)\r\n" +
+            "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+            "1-0:32.32.0(00004)\r\n1-0:52.32.0(00003)\r\n1-0:72.32.0(00003)\r\n" +
+            "1-0:32.36.0(00001)\r\n1-0:52.36.0(00001)\r\n1-0:72.36.0(00001)\r\n0-0:96.13.0()\r\n" +
+            "1-0:32.7.0(238.3*V)\r\n1-0:52.7.0(232.2*V)\r\n1-0:72.7.0(233.3*V)\r\n" +
+            "1-0:31.7.0(000*A)\r\n1-0:51.7.0(002*A)\r\n1-0:71.7.0(003*A)\r\n" +
+            "1-0:21.7.0(00.054*kW)\r\n1-0:41.7.0(00.412*kW)\r\n1-0:61.7.0(00.613*kW)\r\n" +
+            "1-0:22.7.0(00.000*kW)\r\n1-0:42.7.0(00.000*kW)\r\n1-0:62.7.0(00.000*kW)\r\n" +
+            "0-1:24.1.0(003)\r\n0-1:96.1.0(4730303339303031363532303530323136)\r\n0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+            "0-2:24.1.0(002)\r\n0-2:96.1.0(4730303339303031363532303530323137)\r\n0-2:24.2.1(220528151500S)(00123.456*kWh)\r\n" +
+            "!0000\r\n"),
+        "/ISk5\\2MT382-1000\r\n\r\n" +
+            "0-0:96.1.1(4B384547303034303436333935353037)\r\n1-0:1.8.1(12345.678*kWh)\r\n1-0:2.8.1(12345.678*kWh)\r\n" +
+            "0-0:96.14.0(0002)\r\n1-0:1.7.0(001.19*kW)\r\n1-0:2.7.0(000.00*kW)\r\n0-0:17.0.0(016*A)\r\n0-0:96.3.10(1)\r\n" +
+            "0-0:96.13.1(303132333435363738)\r\n0-0:96.13.0(303132333435363738393A3B3C3D3E3F)\r\n" +
+            "0-1:96.1.0(3232323241424344313233343536373839)\r\n0-1:24.1.0(03)\r\n" +
+            "0-1:24.3.0(090212160000)(00)(60)(1)(0-1:24.2.1)(m3)\r\n(00000.000)\r\n0-1:24.4.0(1)\r\n" +
+            "!\r\n",
+        "/ISk5\\2MT382-1000\r\n\r\n" +
+            "1-3:0.2.8(42)\r\n0-0:1.0.0(101209113020W)\r\n1-0:1.8.1(123456.789*kW)\r\n1-0:99.1.0(1)(2.5)\r\n" +
+            "0-1:24.1.0(003)\r\n0-1:24.2.1(101209110000W)(12785.123*m3)\r\n" +
+            "!CE7C\r\n",
+    };
+
+    /**
+     * Parse a few example telegrams (using all constructs of the supported DSMR versions) both with the fast path
+     * and with the ANTLR grammar. This fills the (shared) DFA cache of the ANTLR parser and gives the JIT something
+     * to compile so the first real telegrams after startup are not a lot slower than the rest.
+     * Calling this more than once is harmless.
+     */
+    public static void warmUp() {
+        warmUp(20);
+    }
+
+    /**
+     * Same as warmUp() with the number of times the example telegrams are parsed.
+     * @param rounds The number of times the example telegrams are parsed.
+     */
+    public static void warmUp(int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            for (String telegram : WARM_UP_TELEGRAMS) {
+                parse(telegram);
+                parseWithGrammar(telegram);
+            }
+        }
+    }
+
+    /**
+     * Parse a single DSMR telegram into the target (which is reset first) using only the ANTLR grammar.
+     */
+    static DSMRTelegram parseWithGrammar(byte[] telegram, int offset, int length, ParseOptions options, DSMRTelegram target) {
+        return new ParseDsmrTelegram(new String(telegram, offset, length, UTF_8), options, target).parse();
+    }
+
+    private final String                  telegramString;
+    private final DSMRTelegram            dsmrTelegram;
+    private final ParseOptions            options;
+    // Where the MBus events go. If these are not needed they are only used to check the units.
+    private final Map<Integer, MBusEvent> mBusEvents;
+    private final TimestampParser         timestampParser = new TimestampParser();
+    private final ZonedDateTime           receiveTimestamp;
+    private final boolean                 validCRC;
+    // Strict mode with a wrong CRC: nothing is parsed.
+    private final boolean                 rejected;
+    // Null if nothing is measured.
+    private final ParseListener           listener;
+    // The time spent in the visitor and the ignored lines (only if there is a listener).
+    private       long                    visitNanos;
+    private       int                     unknownCosemIds;
+    // The power failure events are added as they are parsed, the ones before this index belong to an earlier log.
+    private       int                     powerFailureEventsOfEarlierLogs;
+
+    static final ZoneId EUROPE_AMSTERDAM = ZoneId.of("Europe/Amsterdam");
+
+    private ParseDsmrTelegram(String telegram, ParseOptions options, DSMRTelegram target) {
         telegramString = telegram;
-        dsmrTelegram = new DSMRTelegram();
-        dsmrTelegram.receiveTimestamp = ZonedDateTime.now(EUROPE_AMSTERDAM);
-        dsmrTelegram.validCRC = CheckCRC.crcIsValid(telegramString);
-        dsmrTelegram.valid = dsmrTelegram.validCRC;
+        this.options = options;
+        dsmrTelegram = target;
+        mBusEvents = options.includesMBus() ? dsmrTelegram.mBusEvents : new TreeMap<>();
+        receiveTimestamp = ZonedDateTime.now(EUROPE_AMSTERDAM);
+        listener = ParseListeners.current();
+        long start = listener == null ? 0 : System.nanoTime();
+        int crcStatus = CheckCRC.crcStatus(telegramString);
+        validCRC = crcStatus == CheckCRC.CRC_VALID;
+        rejected = options.isStrict() && crcStatus == CheckCRC.CRC_MISMATCH;
+        if (listener != null && !rejected) {
+            listener.onStage(ParseListener.Stage.CRC, System.nanoTime() - start);
+        }
+        startTelegram();
+        if (rejected) {
+            rejectTelegram(dsmrTelegram, listener, listener == null ? 0 : System.nanoTime() - start);
+        }
+    }
+
+    // (Re)start filling the telegram.
+    private void startTelegram() {
+        dsmrTelegram.reset();
+        mBusEvents.clear();
+        powerFailureEventsOfEarlierLogs = 0;
+        unknownCosemIds = 0;
+        dsmrTelegram.receiveTimestamp = receiveTimestamp;
+        dsmrTelegram.validCRC = validCRC;
+        dsmrTelegram.valid = validCRC && !hasSyntaxError;
+    }
+
+    /**
+     * The ANTLR parser without a parse tree: the fields are extracted (by the visitor) as soon as the rule
+     * has been parsed. This avoids building the tree and creating a node for every token.
+     */
+    private static final class FieldExtractingParser extends DsmrParser {
+        private final ParseDsmrTelegram visitor;
+
+        FieldExtractingParser(TokenStream input, ParseDsmrTelegram visitor) {
+            super(input);
+            this.visitor = visitor;
+            setBuildParseTree(false);
+        }
+
+        @Override
+        public void exitRule() {
+            ParserRuleContext ctx = getContext();
+            super.exitRule();
+            // If the SLL stage gives up the unfinished rules are ignored (the LL stage parses everything again).
+            if (ctx.exception == null || !(getErrorHandler() instanceof BailErrorStrategy)) {
+                if (visitor.listener == null) {
+                    ctx.accept(visitor);
+                } else {
+                    long start = System.nanoTime();
+                    ctx.accept(visitor);
+                    visitor.visitNanos += System.nanoTime() - start;
+                }
+            }
+        }
     }
 
     private DSMRTelegram parse() {
@@ -147,33 +460,99 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
             dsmrTelegram.valid = false;
             return null;
         }
+        if (rejected) {
+            return dsmrTelegram;
+        }
 
         CodePointCharStream input = CharStreams.fromString(telegramString);
         DsmrLexer           lexer = new DsmrLexer(input);
-
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-        DsmrParser parser = new DsmrParser(tokens);
-
         lexer.removeErrorListeners();
-        parser.removeErrorListeners();
         lexer.addErrorListener(this);
-        parser.addErrorListener(this);
 
-        TelegramContext telegramContext = parser.telegram();
+        CommonTokenStream     tokens = new CommonTokenStream(lexer);
+        long                  start  = 0;
+        if (listener != null) {
+            // Normally the parser pulls the tokens from the lexer, this separates the time of both.
+            start = System.nanoTime();
+            tokens.fill();
+            long lexed = System.nanoTime();
+            listener.onStage(ParseListener.Stage.LEX, lexed - start);
+            start = lexed;
+        }
+        FieldExtractingParser parser = new FieldExtractingParser(tokens, this);
+        parser.removeErrorListeners();
+
+        // Stage 1: The fast SLL prediction which gives up at the first syntax error.
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        TelegramContext telegramContext;
+        try {
+            telegramContext = parser.telegram();
+        } catch (ParseCancellationException e) {
+            // Stage 2: The full LL prediction with the normal error reporting and recovery.
+            startTelegram();
+            parser.reset();
+            parser.addErrorListener(this);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            telegramContext = parser.telegram();
+        }
 
         if (telegramContext.ident == null) {
-            return dsmrTelegram; // Unparsable
+            startTelegram(); // Unparsable: Nothing of the partially parsed fields is retained.
+            if (listener != null) {
+                reportParsed(start, true);
+            }
+            return dsmrTelegram;
         }
 
-        this.visitTelegram(telegramContext);
+        boolean skippedMBusHasWrongUnit = mBusEvents != dsmrTelegram.mBusEvents && fillMBusDataToAttributes(mBusEvents, null);
+        boolean invalidSyntax = finishTelegram(dsmrTelegram, hasSyntaxError || skippedMBusHasWrongUnit);
+        if (listener != null) {
+            reportParsed(start, invalidSyntax);
+        }
+        return dsmrTelegram;
+    }
+
+    private void reportParsed(long parseStart, boolean invalidSyntax) {
+        listener.onStage(ParseListener.Stage.PARSE, System.nanoTime() - parseStart - visitNanos);
+        listener.onStage(ParseListener.Stage.VISIT, visitNanos);
+        ParseListeners.telegramParsed(listener, dsmrTelegram, invalidSyntax, unknownCosemIds);
+    }
 
+    /**
+     * A telegram with a wrong CRC in strict mode: the target only gets the receive timestamp and is invalid.
+     * @param dsmrTelegram The telegram (is reset)
+     * @param listener The listener or null
+     * @param crcNanos The time it took to check the CRC
+     */
+    static void rejectTelegram(DSMRTelegram dsmrTelegram, ParseListener listener, long crcNanos) {
+        dsmrTelegram.reset();
+        dsmrTelegram.receiveTimestamp = ZonedDateTime.now(EUROPE_AMSTERDAM);
+        if (listener != null) {
+            listener.onStage(ParseListener.Stage.CRC, crcNanos);
+            listener.onOutcome(ParseListener.Outcome.CRC_FAILURE);
+        }
+    }
+
+    private static final Pattern P1_VERSION_PATTERN = Pattern.compile("([0-9])([0-9]+)");
+
+    /**
+     * The final steps that are the same for all ways of parsing a telegram.
+     * @param dsmrTelegram The telegram with all fields extracted from the input.
+     * @param hasSyntaxError If a syntax error was found while extracting the fields.
+     * @return true if the telegram is invalid because of a syntax error or a wrong unit.
+     */
+    static boolean finishTelegram(DSMRTelegram dsmrTelegram, boolean hasSyntaxError) {
         // Final step cross map the MBus events into usable attributes.
-        fillMBusDataToAttributes(dsmrTelegram);
+        boolean hasWrongUnit = fillMBusDataToAttributes(dsmrTelegram.mBusEvents, dsmrTelegram);
+        if (!dsmrTelegram.mBusEvents.isEmpty()) {
+            dsmrTelegram.markPresent(TelegramField.MBUS_EVENTS);
+        }
 
         // Really old records do not have a P1 version AND do not have a CRC.
         // which makes these records valid.
-        if (hasSyntaxError) {
+        if (hasSyntaxError || hasWrongUnit) {
             dsmrTelegram.valid = false;
         } else {
             if ((dsmrTelegram.crc == null || dsmrTelegram.crc.isEmpty()) &&
@@ -188,20 +567,46 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
         if (dsmrTelegram.p1Version == null || dsmrTelegram.p1Version.isEmpty()) {
             dsmrTelegram.p1Version = "2.2";
         } else {
-            dsmrTelegram.p1Version = dsmrTelegram.p1Version.replaceAll("([0-9])([0-9]+)", "$1.$2");
+            dsmrTelegram.p1Version = sanitizeP1Version(dsmrTelegram.p1Version);
         }
+        return hasSyntaxError || hasWrongUnit;
+    }
 
-        return dsmrTelegram;
+    // All versions with two digits ("50" --> "5.0") so the common case does not need the regex.
+    private static final String[] P1_VERSIONS = new String[100];
+
+    static {
+        for (int version = 0; version < P1_VERSIONS.length; version++) {
+            P1_VERSIONS[version] = (version / 10) + "." + (version % 10);
+        }
     }
 
-    private void mustHaveUnit(MBusEvent mBusEvent, String unit) {
-        if (mBusEvent.unit != null && !mBusEvent.unit.isEmpty() && !unit.equals(mBusEvent.unit)) {
-            hasSyntaxError = true;
+    private static String sanitizeP1Version(String p1Version) {
+        if (p1Version.length() == 2) {
+            char major = p1Version.charAt(0);
+            char minor = p1Version.charAt(1);
+            if (major >= '0' && major <= '9' && minor >= '0' && minor <= '9') {
+                return P1_VERSIONS[(major - '0') * 10 + (minor - '0')];
+            }
         }
+        return P1_VERSION_PATTERN.matcher(p1Version).replaceAll("$1.$2");
     }
 
-    private void fillMBusDataToAttributes(DSMRTelegram telegram) {
-        for (Map.Entry<Integer, MBusEvent> mBusEventEntry: telegram.mBusEvents.entrySet()) {
+    private static boolean hasWrongUnit(MBusEvent mBusEvent, String unit) {
+        return mBusEvent.unit != null && !mBusEvent.unit.isEmpty() && !unit.equals(mBusEvent.unit);
+    }
+
+    /**
+     * Map the first gas and slave e-meter MBus devices to the attributes of the telegram.
+     * @param mBusEvents The MBus events by channel.
+     * @param telegram Where the attributes are stored. If null the units are only checked.
+     * @return true if an MBus event has a unit that is wrong for the type of device.
+     */
+    static boolean fillMBusDataToAttributes(Map<Integer, MBusEvent> mBusEvents, DSMRTelegram telegram) {
+        boolean hasWrongUnit = false;
+        boolean slaveEMeterFound = false;
+        boolean gasFound = false;
+        for (Map.Entry<Integer, MBusEvent> mBusEventEntry: mBusEvents.entrySet()) {
             MBusEvent mBusEvent = mBusEventEntry.getValue();
 
             // This mapping is based on the documentation found on http://www.m-bus.com/
@@ -209,20 +614,30 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 //                   0x00: // Other                                                                 0000 0000  00
 //                   0x01: // Oil                                                                   0000 0001  01
                 case 0x02: // Electricity via a slave                                               0000 0010  02
-                    if (telegram.slaveEMeterEquipmentId == null) {
-                        telegram.slaveEMeterEquipmentId         = mBusEvent.equipmentId;
-                        telegram.slaveEMeterTimestamp           = mBusEvent.timestamp;
-                        telegram.slaveEMeterkWh                 = mBusEvent.value;
-                        mustHaveUnit(mBusEvent, "kWh");
+                    if (!slaveEMeterFound) {
+                        slaveEMeterFound = mBusEvent.equipmentId != null;
+                        if (telegram != null) {
+                            telegram.slaveEMeterEquipmentId     = mBusEvent.equipmentId;
+                            telegram.slaveEMeterTimestamp       = mBusEvent.timestamp;
+                            if (mBusEvent.value != null) {
+                                telegram.set(TelegramField.SLAVE_E_METER_KWH, mBusEvent.value);
+                            }
+                        }
+                        hasWrongUnit |= hasWrongUnit(mBusEvent, "kWh");
                     }
                     break;
 
                 case 0x03: // Gas                                                                   0000 0011  03
-                    if (telegram.gasEquipmentId== null) {
-                        telegram.gasEquipmentId                 = mBusEvent.equipmentId;
-                        telegram.gasTimestamp                   = mBusEvent.timestamp;
-                        telegram.gasM3                          = mBusEvent.value;
-                        mustHaveUnit(mBusEvent, "m3");
+                    if (!gasFound) {
+                        gasFound = mBusEvent.equipmentId != null;
+                        if (telegram != null) {
+                            telegram.gasEquipmentId             = mBusEvent.equipmentId;
+                            telegram.gasTimestamp               = mBusEvent.timestamp;
+                            if (mBusEvent.value != null) {
+                                telegram.set(TelegramField.GAS_M3, mBusEvent.value);
+                            }
+                        }
+                        hasWrongUnit |= hasWrongUnit(mBusEvent, "m3");
                     }
                     break;
 
@@ -248,6 +663,7 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
                 default: // We simply do not map the ones we do not understand
             }
         }
+        return hasWrongUnit;
     }
 
     // https://stackoverflow.com/questions/50712987/hex-string-to-byte-array-conversion-java
@@ -266,9 +682,15 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
     private static final Pattern IDENT_PATTERN = Pattern.compile("^/([a-zA-Z0-9][a-zA-Z0-9][a-zA-Z0-9])5(.*)$");
 
-    @Override
-    public Void visitTelegram(TelegramContext ctx) {
-        dsmrTelegram.rawIdent = ctx.ident.getText();
+    /**
+     * Set the identification from the (ASCII) bytes of the ident line.
+     */
+    static void setIdent(DSMRTelegram dsmrTelegram, byte[] input, int start, int end) {
+        setIdent(dsmrTelegram, new String(input, start, end - start, US_ASCII));
+    }
+
+    static void setIdent(DSMRTelegram dsmrTelegram, String rawIdent) {
+        dsmrTelegram.rawIdent = rawIdent;
         Matcher identMatcher = IDENT_PATTERN.matcher(dsmrTelegram.rawIdent);
         if (identMatcher.find()) {
             dsmrTelegram.equipmentBrandTag = identMatcher.group(1).toUpperCase(Locale.ROOT);
@@ -287,12 +709,21 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
             // If it does not match the expected pattern just use the entire thing.
             dsmrTelegram.ident = dsmrTelegram.rawIdent;
         }
-        if (ctx.crc == null || ctx.crc.getText().isEmpty()) {
+    }
+
+    @Override
+    public Void visitTelegram(TelegramContext ctx) {
+        if (ctx.ident == null) {
+            return null; // Unparsable
+        }
+        setIdent(dsmrTelegram, ctx.ident.getText());
+        String crc = ctx.crc == null ? "" : ctx.crc.getText();
+        if (crc.isEmpty()) {
             dsmrTelegram.crc = null;
         } else {
-            dsmrTelegram.crc = ctx.crc.getText().substring(1); // Skip the '!' at the start
+            dsmrTelegram.crc = crc.substring(1); // Skip the '!' at the start
         }
-        return visitChildren(ctx);
+        return null;
     }
 
     @Override
@@ -303,41 +734,60 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
     @Override
     public Void visitTimestamp   (TimestampContext   ctx) {
-        dsmrTelegram.timestamp   = timestampParser.parse(ctx.timestamp.getText());
+        if (options.includes(TelegramField.TIMESTAMP)) {
+            dsmrTelegram.setTimestamp(timestampParser.parse(ctx.timestamp.getText()));
+        }
         return null;
     }
 
     @Override
     public Void visitEquipmentId (EquipmentIdContext ctx) {
-        dsmrTelegram.equipmentId = hexStringToString(ctx.id.getText()).trim();
+        if (options.includes(TelegramField.EQUIPMENT_ID)) {
+            dsmrTelegram.equipmentId = hexStringToString(ctx.id.getText()).trim();
+            dsmrTelegram.markPresent(TelegramField.EQUIPMENT_ID);
+        }
         return null;
     }
 
     @Override
     public Void visitMessageCodes(MessageCodesContext ctx) {
-        // Text message codes: numeric 8 digits.
-        dsmrTelegram.messageCodes = (ctx.text == null) ? "" : hexStringToString(ctx.text.getText());
+        if (options.includes(TelegramField.MESSAGE_CODES)) {
+            // Text message codes: numeric 8 digits.
+            dsmrTelegram.messageCodes = (ctx.text == null) ? "" : hexStringToString(ctx.text.getText());
+            dsmrTelegram.markPresent(TelegramField.MESSAGE_CODES);
+        }
         return null;
     }
 
     @Override
     public Void visitMessage     (MessageContext     ctx) {
-        // Text message max 1024 characters.
-        dsmrTelegram.message     = (ctx.text == null) ? "" : hexStringToString(ctx.text.getText());
+        if (options.includes(TelegramField.MESSAGE)) {
+            // Text message max 1024 characters.
+            dsmrTelegram.message     = (ctx.text == null) ? "" : hexStringToString(ctx.text.getText());
+            dsmrTelegram.markPresent(TelegramField.MESSAGE);
+        }
         return null;
     }
 
     @Override
     public Void visitPowerFailureEventLog(PowerFailureEventLogContext ctx) {
+        if (!options.includes(TelegramField.POWER_FAILURE_EVENT_LOG)) {
+            return null;
+        }
+        dsmrTelegram.markPresent(TelegramField.POWER_FAILURE_EVENT_LOG);
         dsmrTelegram.powerFailureEventLogSize =  Long.valueOf(ctx.count.getText());
-        dsmrTelegram.powerFailureEventLog = new ArrayList<>();
-        visitChildren(ctx);
+        // The events of this log have already been added (they are parsed first). Only the last log is retained.
+        dsmrTelegram.powerFailureEventLog.subList(0, powerFailureEventsOfEarlierLogs).clear();
+        powerFailureEventsOfEarlierLogs = dsmrTelegram.powerFailureEventLog.size();
         return null;
     }
 
     @Override
     public Void visitPowerFailureEvent(DsmrParser.PowerFailureEventContext ctx) {
-        PowerFailureEvent powerFailureEvent = new PowerFailureEvent();
+        if (!options.includes(TelegramField.POWER_FAILURE_EVENT_LOG)) {
+            return null;
+        }
+        PowerFailureEvent powerFailureEvent = dsmrTelegram.newPowerFailureEvent();
 
         // The provided timestamp is the end of the failure
         powerFailureEvent.endTime = timestampParser.parse(ctx.eventTime.getText());
@@ -352,38 +802,53 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
         return null;
     }
 
-    @Override public Void visitElectricityTariffIndicator       (ElectricityTariffIndicatorContext       ctx) { dsmrTelegram.electricityTariffIndicator      = Long.valueOf(ctx.value.getText()); return null; } // Tariff indicator electricity
-    @Override public Void visitElectricityReceivedLowTariff     (ElectricityReceivedLowTariffContext     ctx) { dsmrTelegram.electricityReceivedLowTariff    = Double.valueOf(ctx.value.getText()); return null; } // Meter Reading electricity delivered to client (low tariff) in 0,001 kWh
-    @Override public Void visitElectricityReceivedNormalTariff  (ElectricityReceivedNormalTariffContext  ctx) { dsmrTelegram.electricityReceivedNormalTariff = Double.valueOf(ctx.value.getText()); return null; } // Meter Reading electricity delivered to client (normal tariff) in 0,001 kWh
-    @Override public Void visitElectricityReturnedLowTariff     (ElectricityReturnedLowTariffContext     ctx) { dsmrTelegram.electricityReturnedLowTariff    = Double.valueOf(ctx.value.getText()); return null; } // Meter Reading electricity delivered by client (low tariff) in 0,001 kWh
-    @Override public Void visitElectricityReturnedNormalTariff  (ElectricityReturnedNormalTariffContext  ctx) { dsmrTelegram.electricityReturnedNormalTariff = Double.valueOf(ctx.value.getText()); return null; } // Meter Reading electricity delivered by client (normal tariff) in 0,001 kWh
-    @Override public Void visitElectricityPowerReceived         (ElectricityPowerReceivedContext         ctx) { dsmrTelegram.electricityPowerReceived        = Double.valueOf(ctx.value.getText()); return null; } // Actual electricity power delivered (+P) in 1 Watt resolution
-    @Override public Void visitElectricityPowerReturned         (ElectricityPowerReturnedContext         ctx) { dsmrTelegram.electricityPowerReturned        = Double.valueOf(ctx.value.getText()); return null; } // Actual electricity power received (-P) in 1 Watt resolution
-
-    @Override public Void visitPowerFailures                    (PowerFailuresContext                    ctx) { dsmrTelegram.powerFailures                   = Long.valueOf(ctx.count.getText());   return null; } // Number of power failures in any phases
-    @Override public Void visitLongPowerFailures                (LongPowerFailuresContext                ctx) { dsmrTelegram.longPowerFailures               = Long.valueOf(ctx.count.getText());   return null; } // Number of long power failures in any phases
-
-    @Override public Void visitVoltageSagsPhaseL1               (VoltageSagsPhaseL1Context               ctx) { dsmrTelegram.voltageSagsPhaseL1              = Long.valueOf(ctx.count.getText());   return null; } // Number of voltage sags in phase L1
-    @Override public Void visitVoltageSagsPhaseL2               (VoltageSagsPhaseL2Context               ctx) { dsmrTelegram.voltageSagsPhaseL2              = Long.valueOf(ctx.count.getText());   return null; } // Number of voltage sags in phase L2
-    @Override public Void visitVoltageSagsPhaseL3               (VoltageSagsPhaseL3Context               ctx) { dsmrTelegram.voltageSagsPhaseL3              = Long.valueOf(ctx.count.getText());   return null; } // Number of voltage sags in phase L3
-    @Override public Void visitVoltageSwellsPhaseL1             (VoltageSwellsPhaseL1Context             ctx) { dsmrTelegram.voltageSwellsPhaseL1            = Long.valueOf(ctx.count.getText());   return null; } // Number of voltage swells in phase L1
-    @Override public Void visitVoltageSwellsPhaseL2             (VoltageSwellsPhaseL2Context             ctx) { dsmrTelegram.voltageSwellsPhaseL2            = Long.valueOf(ctx.count.getText());   return null; } // Number of voltage swells in phase L2
-    @Override public Void visitVoltageSwellsPhaseL3             (VoltageSwellsPhaseL3Context             ctx) { dsmrTelegram.voltageSwellsPhaseL3            = Long.valueOf(ctx.count.getText());   return null; } // Number of voltage swells in phase L3
-    @Override public Void visitVoltageL1                        (VoltageL1Context                        ctx) { dsmrTelegram.voltageL1                       = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous voltage L1
-    @Override public Void visitVoltageL2                        (VoltageL2Context                        ctx) { dsmrTelegram.voltageL2                       = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous voltage L2
-    @Override public Void visitVoltageL3                        (VoltageL3Context                        ctx) { dsmrTelegram.voltageL3                       = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous voltage L3
-    @Override public Void visitCurrentL1                        (CurrentL1Context                        ctx) { dsmrTelegram.currentL1                       = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous current L1
-    @Override public Void visitCurrentL2                        (CurrentL2Context                        ctx) { dsmrTelegram.currentL2                       = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous current L2
-    @Override public Void visitCurrentL3                        (CurrentL3Context                        ctx) { dsmrTelegram.currentL3                       = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous current L3
-    @Override public Void visitPowerReceivedL1                  (PowerReceivedL1Context                  ctx) { dsmrTelegram.powerReceivedL1                 = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous active power L1 (+P)
-    @Override public Void visitPowerReceivedL2                  (PowerReceivedL2Context                  ctx) { dsmrTelegram.powerReceivedL2                 = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous active power L2 (+P)
-    @Override public Void visitPowerReceivedL3                  (PowerReceivedL3Context                  ctx) { dsmrTelegram.powerReceivedL3                 = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous active power L3 (+P)
-    @Override public Void visitPowerReturnedL1                  (PowerReturnedL1Context                  ctx) { dsmrTelegram.powerReturnedL1                 = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous active power L1 (-P)
-    @Override public Void visitPowerReturnedL2                  (PowerReturnedL2Context                  ctx) { dsmrTelegram.powerReturnedL2                 = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous active power L2 (-P)
-    @Override public Void visitPowerReturnedL3                  (PowerReturnedL3Context                  ctx) { dsmrTelegram.powerReturnedL3                 = Double.valueOf(ctx.value.getText()); return null; } // Instantaneous active power L3 (-P)
+    private void setLong(TelegramField field, Token value) {
+        if (options.includes(field)) {
+            dsmrTelegram.set(field, Long.parseLong(value.getText()));
+        }
+    }
+
+    private void setDouble(TelegramField field, Token value) {
+        if (options.includes(field)) {
+            dsmrTelegram.set(field, Double.parseDouble(value.getText()));
+        }
+    }
+
+    @Override public Void visitElectricityTariffIndicator       (ElectricityTariffIndicatorContext       ctx) { setLong  (TelegramField.ELECTRICITY_TARIFF_INDICATOR,       ctx.value); return null; } // Tariff indicator electricity
+    @Override public Void visitElectricityReceivedLowTariff     (ElectricityReceivedLowTariffContext     ctx) { setDouble(TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF,    ctx.value); return null; } // Meter Reading electricity delivered to client (low tariff) in 0,001 kWh
+    @Override public Void visitElectricityReceivedNormalTariff  (ElectricityReceivedNormalTariffContext  ctx) { setDouble(TelegramField.ELECTRICITY_RECEIVED_NORMAL_TARIFF, ctx.value); return null; } // Meter Reading electricity delivered to client (normal tariff) in 0,001 kWh
+    @Override public Void visitElectricityReturnedLowTariff     (ElectricityReturnedLowTariffContext     ctx) { setDouble(TelegramField.ELECTRICITY_RETURNED_LOW_TARIFF,    ctx.value); return null; } // Meter Reading electricity delivered by client (low tariff) in 0,001 kWh
+    @Override public Void visitElectricityReturnedNormalTariff  (ElectricityReturnedNormalTariffContext  ctx) { setDouble(TelegramField.ELECTRICITY_RETURNED_NORMAL_TARIFF, ctx.value); return null; } // Meter Reading electricity delivered by client (normal tariff) in 0,001 kWh
+    @Override public Void visitElectricityPowerReceived         (ElectricityPowerReceivedContext         ctx) { setDouble(TelegramField.ELECTRICITY_POWER_RECEIVED,         ctx.value); return null; } // Actual electricity power delivered (+P) in 1 Watt resolution
+    @Override public Void visitElectricityPowerReturned         (ElectricityPowerReturnedContext         ctx) { setDouble(TelegramField.ELECTRICITY_POWER_RETURNED,         ctx.value); return null; } // Actual electricity power received (-P) in 1 Watt resolution
+
+    @Override public Void visitPowerFailures                    (PowerFailuresContext                    ctx) { setLong  (TelegramField.POWER_FAILURES,                     ctx.count); return null; } // Number of power failures in any phases
+    @Override public Void visitLongPowerFailures                (LongPowerFailuresContext                ctx) { setLong  (TelegramField.LONG_POWER_FAILURES,                ctx.count); return null; } // Number of long power failures in any phases
+
+    @Override public Void visitVoltageSagsPhaseL1               (VoltageSagsPhaseL1Context               ctx) { setLong  (TelegramField.VOLTAGE_SAGS_PHASE_L1,              ctx.count); return null; } // Number of voltage sags in phase L1
+    @Override public Void visitVoltageSagsPhaseL2               (VoltageSagsPhaseL2Context               ctx) { setLong  (TelegramField.VOLTAGE_SAGS_PHASE_L2,              ctx.count); return null; } // Number of voltage sags in phase L2
+    @Override public Void visitVoltageSagsPhaseL3               (VoltageSagsPhaseL3Context               ctx) { setLong  (TelegramField.VOLTAGE_SAGS_PHASE_L3,              ctx.count); return null; } // Number of voltage sags in phase L3
+    @Override public Void visitVoltageSwellsPhaseL1             (VoltageSwellsPhaseL1Context             ctx) { setLong  (TelegramField.VOLTAGE_SWELLS_PHASE_L1,            ctx.count); return null; } // Number of voltage swells in phase L1
+    @Override public Void visitVoltageSwellsPhaseL2             (VoltageSwellsPhaseL2Context             ctx) { setLong  (TelegramField.VOLTAGE_SWELLS_PHASE_L2,            ctx.count); return null; } // Number of voltage swells in phase L2
+    @Override public Void visitVoltageSwellsPhaseL3             (VoltageSwellsPhaseL3Context             ctx) { setLong  (TelegramField.VOLTAGE_SWELLS_PHASE_L3,            ctx.count); return null; } // Number of voltage swells in phase L3
+    @Override public Void visitVoltageL1                        (VoltageL1Context                        ctx) { setDouble(TelegramField.VOLTAGE_L1,                         ctx.value); return null; } // Instantaneous voltage L1
+    @Override public Void visitVoltageL2                        (VoltageL2Context                        ctx) { setDouble(TelegramField.VOLTAGE_L2,                         ctx.value); return null; } // Instantaneous voltage L2
+    @Override public Void visitVoltageL3                        (VoltageL3Context                        ctx) { setDouble(TelegramField.VOLTAGE_L3,                         ctx.value); return null; } // Instantaneous voltage L3
+    @Override public Void visitCurrentL1                        (CurrentL1Context                        ctx) { setDouble(TelegramField.CURRENT_L1,                         ctx.value); return null; } // Instantaneous current L1
+    @Override public Void visitCurrentL2                        (CurrentL2Context                        ctx) { setDouble(TelegramField.CURRENT_L2,                         ctx.value); return null; } // Instantaneous current L2
+    @Override public Void visitCurrentL3                        (CurrentL3Context                        ctx) { setDouble(TelegramField.CURRENT_L3,                         ctx.value); return null; } // Instantaneous current L3
+    @Override public Void visitPowerReceivedL1                  (PowerReceivedL1Context                  ctx) { setDouble(TelegramField.POWER_RECEIVED_L1,                  ctx.value); return null; } // Instantaneous active power L1 (+P)
+    @Override public Void visitPowerReceivedL2                  (PowerReceivedL2Context                  ctx) { setDouble(TelegramField.POWER_RECEIVED_L2,                  ctx.value); return null; } // Instantaneous active power L2 (+P)
+    @Override public Void visitPowerReceivedL3                  (PowerReceivedL3Context                  ctx) { setDouble(TelegramField.POWER_RECEIVED_L3,                  ctx.value); return null; } // Instantaneous active power L3 (+P)
+    @Override public Void visitPowerReturnedL1                  (PowerReturnedL1Context                  ctx) { setDouble(TelegramField.POWER_RETURNED_L1,                  ctx.value); return null; } // Instantaneous active power L1 (-P)
+    @Override public Void visitPowerReturnedL2                  (PowerReturnedL2Context                  ctx) { setDouble(TelegramField.POWER_RETURNED_L2,                  ctx.value); return null; } // Instantaneous active power L2 (-P)
+    @Override public Void visitPowerReturnedL3                  (PowerReturnedL3Context                  ctx) { setDouble(TelegramField.POWER_RETURNED_L3,                  ctx.value); return null; } // Instantaneous active power L3 (-P)
 
     private MBusEvent getMBusEvent(int index) {
-        return dsmrTelegram.mBusEvents.computeIfAbsent(index, i -> new MBusEvent());
+        if (mBusEvents == dsmrTelegram.mBusEvents) {
+            return dsmrTelegram.getMBusEvent(index);
+        }
+        return mBusEvents.computeIfAbsent(index, i -> new MBusEvent());
     }
 
     private void setMBusType(int index, int type) {
@@ -425,7 +890,20 @@ public final class ParseDsmrTelegram extends DsmrBaseVisitor<Void> implements AN
 
     @Override
     public Void visitUnknownCosemId(DsmrParser.UnknownCosemIdContext ctx) {
-        // Ignore
+        // Ignored unless a decoder was registered for it
+        ObisRegistry.Entry entry = ObisRegistry.lookup(ObisRegistry.pack(ctx.cosemId.getText()));
+        if (entry == null) {
+            unknownCosemIds++;
+            return null;
+        }
+        if (entry.decoder == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(ctx.values.size());
+        for (Token value : ctx.values) {
+            values.add(value.getText());
+        }
+        entry.decoder.decode(dsmrTelegram, entry.name, values);
         return null;
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+/**
+ * Is told where the time goes while parsing telegrams and what the outcome was.
+ * <p>
+ * A listener is registered with ParseListeners.register and is called by the parsing threads (concurrently if
+ * telegrams are parsed by several threads) so it must be thread safe, fast and must not throw exceptions.
+ * If no listener is registered the parsers do not even read the clock.
+ */
+public interface ParseListener {
+
+    /** The stages of parsing a single telegram. */
+    enum Stage {
+        /**
+         * Finding the telegram in the input stream, only reported by the code that splits the stream
+         * (like the read loop of FeedToInfluxDB). This includes waiting for the input to arrive.
+         */
+        SPLIT,
+        /** The byte level scanner that handles the common telegrams (excluding the CRC check). */
+        FAST_PATH,
+        /** Checking the CRC of the telegram. */
+        CRC,
+        /** Turning the telegram into tokens with the ANTLR lexer (only if the fast path could not handle it). */
+        LEX,
+        /** Parsing the tokens with the ANTLR parser (excluding the visitor). */
+        PARSE,
+        /** Extracting the fields from the parsed rules. */
+        VISIT,
+    }
+
+    /** What happened to a telegram (UNKNOWN_COSEM_ID is reported once for every line that was ignored). */
+    enum Outcome {
+        /** The telegram is valid. */
+        VALID,
+        /** The telegram is syntactically correct but the CRC does not match. */
+        CRC_FAILURE,
+        /** The telegram has a syntax error (or a wrong unit) and is invalid. */
+        SYNTAX_ERROR,
+        /** A line with an OBIS code that is not part of the specification and has not been registered in the ObisRegistry. */
+        UNKNOWN_COSEM_ID,
+    }
+
+    /**
+     * A stage of parsing a telegram has completed.
+     * A telegram that is not handled by the fast path reports both FAST_PATH and the stages of the grammar.
+     * @param stage The stage
+     * @param nanos The time it took in nanoseconds
+     */
+    default void onStage(Stage stage, long nanos) {
+        // Ignored by default
+    }
+
+    /**
+     * A telegram has been parsed: this is called once with VALID, CRC_FAILURE or SYNTAX_ERROR
+     * followed by UNKNOWN_COSEM_ID for every ignored line.
+     * @param outcome The outcome
+     */
+    default void onOutcome(Outcome outcome) {
+        // Ignored by default
+    }
+}
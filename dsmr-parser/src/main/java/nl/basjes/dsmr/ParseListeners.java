@@ -0,0 +1,135 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.ParseListener.Outcome;
+import nl.basjes.dsmr.ParseListener.Stage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The ParseListeners that are called by all parsers.
+ * <p>
+ * The parsers only read a single volatile field per telegram to find out that there is nothing to report.
+ */
+public final class ParseListeners {
+
+    private ParseListeners() {
+    }
+
+    // Null if nothing is registered, the only listener or a Multicast of all of them.
+    private static volatile ParseListener current;
+
+    private static final List<ParseListener> REGISTERED = new ArrayList<>();
+
+    /**
+     * Register a listener. Registering the same listener twice makes it receive everything twice.
+     * @param listener The listener
+     */
+    public static synchronized void register(ParseListener listener) {
+        Objects.requireNonNull(listener, "The listener may not be null");
+        REGISTERED.add(listener);
+        update();
+    }
+
+    /**
+     * Remove a registered listener.
+     * @param listener The listener
+     * @return true if it was registered.
+     */
+    public static synchronized boolean unregister(ParseListener listener) {
+        if (!REGISTERED.remove(listener)) {
+            return false;
+        }
+        update();
+        return true;
+    }
+
+    private static void update() {
+        switch (REGISTERED.size()) {
+            case 0:
+                current = null;
+                break;
+            case 1:
+                current = REGISTERED.get(0);
+                break;
+            default:
+                current = new Multicast(REGISTERED.toArray(new ParseListener[0]));
+        }
+    }
+
+    /**
+     * The code that splits a stream into telegrams (which does not know about this library) can report the
+     * SPLIT stage to what this returns.
+     * @return The listener that receives everything or null if no listener is registered.
+     */
+    public static ParseListener current() {
+        return current;
+    }
+
+    /**
+     * Report the outcome of a parsed telegram.
+     * @param listener The listener (not null)
+     * @param telegram The parsed telegram
+     * @param hasSyntaxError If the telegram is invalid because of a syntax error or a wrong unit
+     * @param unknownCosemIds The number of lines that were ignored
+     */
+    static void telegramParsed(ParseListener listener, DSMRTelegram telegram, boolean hasSyntaxError, int unknownCosemIds) {
+        if (telegram.valid) {
+            listener.onOutcome(Outcome.VALID);
+        } else if (hasSyntaxError) {
+            listener.onOutcome(Outcome.SYNTAX_ERROR);
+        } else {
+            listener.onOutcome(Outcome.CRC_FAILURE);
+        }
+        for (int i = 0; i < unknownCosemIds; i++) {
+            listener.onOutcome(Outcome.UNKNOWN_COSEM_ID);
+        }
+    }
+
+    private static final class Multicast implements ParseListener {
+        private final ParseListener[] listeners;
+
+        private Multicast(ParseListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void onStage(Stage stage, long nanos) {
+            for (ParseListener listener : listeners) {
+                listener.onStage(stage, nanos);
+            }
+        }
+
+        @Override
+        public void onOutcome(Outcome outcome) {
+            for (ParseListener listener : listeners) {
+                listener.onOutcome(outcome);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Multicast" + Arrays.toString(listeners);
+        }
+    }
+}
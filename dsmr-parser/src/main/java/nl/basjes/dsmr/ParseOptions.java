@@ -0,0 +1,220 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+import nl.basjes.dsmr.FastParseDsmrTelegram.Field;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Which fields of a telegram must be decoded.
+ * All other fields are still checked (so the validity of the telegram is the same) but their values are skipped
+ * which avoids most of the work and object creation for consumers that only need a few fields.
+ * <p>
+ * The identification, the P1 version and the CRC are always decoded.
+ * The gas and slave e-meter fields (GAS_M3, SLAVE_E_METER_KWH) need all MBus events to be decoded.
+ */
+public final class ParseOptions {
+
+    // NOTE: Must be initialized before ALL is created.
+    private static final long MBUS_MASK = TelegramField.GAS_M3.mask() | TelegramField.SLAVE_E_METER_KWH.mask() | TelegramField.MBUS_EVENTS.mask();
+
+    /** Decode everything. */
+    public static final ParseOptions ALL = new ParseOptions(-1L, false);
+
+    /** Decode everything but only if the CRC is not wrong (see strict()). */
+    public static final ParseOptions STRICT = ALL.strict();
+
+    /**
+     * @param fields The fields that must be decoded.
+     * @return ParseOptions for only these fields.
+     */
+    public static ParseOptions only(TelegramField... fields) {
+        return only(Arrays.asList(fields));
+    }
+
+    /**
+     * @param fields The fields that must be decoded.
+     * @return ParseOptions for only these fields.
+     */
+    public static ParseOptions only(Collection<TelegramField> fields) {
+        long mask = 0;
+        for (TelegramField field : fields) {
+            mask |= field.mask();
+        }
+        return new ParseOptions(mask, false);
+    }
+
+    /**
+     * Determine the ParseOptions from the names of the needed fields.
+     * A name can be the name of a TelegramField (VOLTAGE_L1) or the name of the getter/attribute (voltageL1, gasTimestamp).
+     * Names of the things that are always decoded (like p1Version and crc) are allowed.
+     * @param names The names of the fields that must be decoded.
+     * @return ParseOptions for only these fields.
+     * @throws IllegalArgumentException if a name is unknown.
+     */
+    public static ParseOptions forNames(Collection<String> names) {
+        long mask = 0;
+        for (String name : names) {
+            String key = normalize(name);
+            if (key.isEmpty() || ALWAYS_DECODED.contains(key)) {
+                continue;
+            }
+            TelegramField field = FIELD_NAMES.get(key);
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown DSMR field name: \"" + name + "\"");
+            }
+            mask |= field.mask();
+        }
+        return new ParseOptions(mask, false);
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Collection<String> ALWAYS_DECODED = Arrays.asList(
+        "valid", "validcrc", "rawident", "equipmentbrandtag", "ident", "crc", "p1version", "receivetimestamp");
+
+    private static final Map<String, TelegramField> FIELD_NAMES = new HashMap<>();
+
+    static {
+        for (TelegramField field : TelegramField.values()) {
+            FIELD_NAMES.put(normalize(field.name()), field);
+        }
+        // The other getters that depend on one of the fields
+        FIELD_NAMES.put(normalize("gasEquipmentId"),           TelegramField.GAS_M3);
+        FIELD_NAMES.put(normalize("gasTimestamp"),             TelegramField.GAS_M3);
+        FIELD_NAMES.put(normalize("slaveEMeterEquipmentId"),   TelegramField.SLAVE_E_METER_KWH);
+        FIELD_NAMES.put(normalize("slaveEMeterTimestamp"),     TelegramField.SLAVE_E_METER_KWH);
+        FIELD_NAMES.put(normalize("timestampEpochSecond"),     TelegramField.TIMESTAMP);
+        FIELD_NAMES.put(normalize("powerFailureEventLogSize"), TelegramField.POWER_FAILURE_EVENT_LOG);
+        FIELD_NAMES.put(normalize("mBusEventList"),            TelegramField.MBUS_EVENTS);
+    }
+
+    // ------------------------------------------
+
+    private final long    fields;
+    // One bit per FastParseDsmrTelegram.Field that must be decoded.
+    private final long    decodedFields;
+    private final boolean strict;
+
+    private ParseOptions(long fields, boolean strict) {
+        this.fields = fields;
+        this.strict = strict;
+        long decoded = 0;
+        for (Field field : Field.values()) {
+            if (decodes(fields, field)) {
+                decoded |= 1L << field.ordinal();
+            }
+        }
+        this.decodedFields = decoded;
+    }
+
+    private static boolean decodes(long fields, Field field) {
+        switch (field) {
+            case P1_VERSION:
+                return true;
+            case MBUS_TYPE:
+            case MBUS_EQUIPMENT_ID:
+            case MBUS_USAGE:
+            case MBUS_PROFILE_GENERIC:
+                return (fields & MBUS_MASK) != 0;
+            case SWITCH_SETTING:
+            case ELECTRICITY_THRESHOLD:
+            case MBUS_GAS_VALVE_POSITION:
+            case NOT_A_FIELD:
+                return false; // These are never stored
+            default:
+                return (fields & TelegramField.valueOf(field.name()).mask()) != 0;
+        }
+    }
+
+    /**
+     * @param field The field
+     * @return If this field will be decoded.
+     */
+    public boolean includes(TelegramField field) {
+        return (fields & field.mask()) != 0;
+    }
+
+    /**
+     * @return If the MBus events (and thus the gas and slave e-meter fields) will be decoded.
+     */
+    public boolean includesMBus() {
+        return (fields & MBUS_MASK) != 0;
+    }
+
+    /**
+     * The same fields in strict mode: the CRC is checked before anything else and a telegram with a wrong CRC
+     * is not parsed at all. Such a telegram is returned as an invalid DSMRTelegram (with validCRC false) that only has
+     * the receive timestamp. Telegrams without a CRC (DSMR 2.2) are parsed as usual.
+     * This saves a lot of work on noisy input (like a bad serial line) and the CRC is calculated only once.
+     * @return ParseOptions in strict mode.
+     */
+    public ParseOptions strict() {
+        return strict ? this : new ParseOptions(fields, true);
+    }
+
+    /**
+     * The same fields in lenient mode: a telegram with a wrong CRC is still parsed as well as possible (the default).
+     * @return ParseOptions in lenient mode.
+     */
+    public ParseOptions lenient() {
+        return strict ? new ParseOptions(fields, false) : this;
+    }
+
+    // The same options that also decode this field.
+    ParseOptions including(TelegramField field) {
+        return includes(field) ? this : new ParseOptions(fields | field.mask(), strict);
+    }
+
+    /**
+     * @return If a telegram with a wrong CRC is not parsed.
+     */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    boolean decodes(Field field) {
+        return (decodedFields & (1L << field.ordinal())) != 0;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "ParseOptions(", ")");
+        if (fields == -1L) {
+            joiner.add("ALL");
+        } else {
+            for (TelegramField field : TelegramField.values()) {
+                if (includes(field)) {
+                    joiner.add(field.name());
+                }
+            }
+        }
+        if (strict) {
+            joiner.add("STRICT");
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr;
+
+/**
+ * The fields of a DSMRTelegram that can be selected with ParseOptions.
+ * The DSMRTelegram records in a bitmask which of these were present in the telegram.
+ */
+public enum TelegramField {
+    TIMESTAMP,
+    ELECTRICITY_TARIFF_INDICATOR,
+    ELECTRICITY_RECEIVED_LOW_TARIFF,
+    ELECTRICITY_RECEIVED_NORMAL_TARIFF,
+    ELECTRICITY_POWER_RECEIVED,
+    ELECTRICITY_RETURNED_LOW_TARIFF,
+    ELECTRICITY_RETURNED_NORMAL_TARIFF,
+    ELECTRICITY_POWER_RETURNED,
+    POWER_FAILURES,
+    LONG_POWER_FAILURES,
+    VOLTAGE_SAGS_PHASE_L1,
+    VOLTAGE_SAGS_PHASE_L2,
+    VOLTAGE_SAGS_PHASE_L3,
+    VOLTAGE_SWELLS_PHASE_L1,
+    VOLTAGE_SWELLS_PHASE_L2,
+    VOLTAGE_SWELLS_PHASE_L3,
+    VOLTAGE_L1,
+    VOLTAGE_L2,
+    VOLTAGE_L3,
+    CURRENT_L1,
+    CURRENT_L2,
+    CURRENT_L3,
+    POWER_RECEIVED_L1,
+    POWER_RECEIVED_L2,
+    POWER_RECEIVED_L3,
+    POWER_RETURNED_L1,
+    POWER_RETURNED_L2,
+    POWER_RETURNED_L3,
+    GAS_M3,
+    SLAVE_E_METER_KWH,
+    EQUIPMENT_ID,
+    POWER_FAILURE_EVENT_LOG,
+    MESSAGE_CODES,
+    MESSAGE,
+    MBUS_EVENTS;
+
+    private final long mask = 1L << ordinal();
+
+    /** @return The bit of this field in DSMRTelegram.getPresentFields() */
+    public long mask() {
+        return mask;
+    }
+}
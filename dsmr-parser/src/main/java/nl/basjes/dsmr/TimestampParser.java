@@ -18,13 +18,20 @@
 
 package nl.basjes.dsmr;
 
-import java.time.Instant;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoField;
+import java.time.zone.ZoneRules;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
 public class TimestampParser {
     // YYMMDDhhmmssX ASCII presentation of Time stamp
     // Year, Month, Day, Hour, Minute, Second, and an indication whether
@@ -40,47 +47,287 @@ public class TimestampParser {
 
     private static final Pattern DATE_TIME_PATTERN = Pattern.compile(TIME_FORMAT);
 
+    private static final ZoneOffset SUMMER_TIME      = ZoneOffset.ofHours(2); // Dutch Summertime
+    private static final ZoneOffset WINTER_TIME      = ZoneOffset.ofHours(1); // Dutch Wintertime
+    private static final ZoneId     EUROPE_AMSTERDAM = ZoneId.of("Europe/Amsterdam");
+    private static final ZoneRules  AMSTERDAM_RULES  = EUROPE_AMSTERDAM.getRules();
+
+    // The zones of practically all timestamps, the binary formats (DSMRKryo, DSMRTelegramCodec) write these as a single byte.
+    // Index 0 is used for 'no timestamp'. NEVER change the existing entries as that breaks the stored data.
+    static final ZoneId[] COMMON_ZONES = {null, WINTER_TIME, SUMMER_TIME, EUROPE_AMSTERDAM, ZoneOffset.UTC};
+
+    /**
+     * @param zone The zone (may be null)
+     * @return The index in COMMON_ZONES or -1 if it is not one of those.
+     */
+    static int commonZoneIndex(ZoneId zone) {
+        for (int i = 0; i < COMMON_ZONES.length; i++) {
+            if (Objects.equals(COMMON_ZONES[i], zone)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returned by parseEpochSecond if the input does not contain a timestamp. */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    // The decoded fields of a timestamp are packed into a single long (so decoding does not allocate anything):
+    //   bits 37-44: The S/s/W/w (or 0 if absent)
+    //   bits 17-36: YYMMDD as a decimal number
+    //   bits 12-16: hour
+    //   bits  6-11: minute
+    //   bits  0- 5: second
+    static final long NOT_DECODED = -1;
+
+    private static long pack(int year, int month, int day, int hour, int minute, int second, int zone) {
+        return ((long) zone << 37) | ((long) (year * 10000 + month * 100 + day) << 17) | (hour << 12) | (minute << 6) | second;
+    }
+
+    private static int packedZone(long packed) {
+        return (int) (packed >>> 37);
+    }
+
+    private static int packedDate(long packed) {
+        return (int) (packed >>> 17) & 0xFFFFF;
+    }
+
+    private static int packedHour(long packed) {
+        return (int) (packed >>> 12) & 0x1F;
+    }
+
+    private static int packedMinute(long packed) {
+        return (int) (packed >>> 6) & 0x3F;
+    }
+
+    private static int packedSecond(long packed) {
+        return (int) packed & 0x3F;
+    }
+
+    // ------------------------------------------
+
+    // The value of two digits where the first digit is at most maxFirst, -1 if this is not the case.
+    private static int twoDigits(int first, char maxFirst, int second) {
+        if (first < '0' || first > maxFirst || second < '0' || second > '9') {
+            return -1;
+        }
+        return (first - '0') * 10 + (second - '0');
+    }
+
+    private static boolean isZone(int c) {
+        return c == 'S' || c == 's' || c == 'W' || c == 'w';
+    }
+
+    // The common case is exactly "YYMMDDhhmmss" with an optional S/W at fixed positions.
+    // Anything else is left to the regex.
+    private static long decode(CharSequence dsmrTimestamp) {
+        int length = dsmrTimestamp.length();
+        int zone = length == 13 ? dsmrTimestamp.charAt(12) : 0;
+        if (length == 12 || (length == 13 && isZone(zone))) {
+            int year   = twoDigits(dsmrTimestamp.charAt(0),  '9', dsmrTimestamp.charAt(1));
+            int month  = twoDigits(dsmrTimestamp.charAt(2),  '1', dsmrTimestamp.charAt(3));
+            int day    = twoDigits(dsmrTimestamp.charAt(4),  '3', dsmrTimestamp.charAt(5));
+            int hour   = twoDigits(dsmrTimestamp.charAt(6),  '2', dsmrTimestamp.charAt(7));
+            int minute = twoDigits(dsmrTimestamp.charAt(8),  '5', dsmrTimestamp.charAt(9));
+            int second = twoDigits(dsmrTimestamp.charAt(10), '5', dsmrTimestamp.charAt(11));
+            if ((year | month | day | hour | minute | second) >= 0) {
+                return pack(year, month, day, hour, minute, second, zone);
+            }
+        }
+        return decodeWithRegex(dsmrTimestamp);
+    }
+
+    // Package private so a parser can store the epoch second and the zone without creating a ZonedDateTime.
+    static long decode(byte[] bytes, int offset, int length) {
+        int zone = length == 13 ? bytes[offset + 12] : 0;
+        if (length == 12 || (length == 13 && isZone(zone))) {
+            int year   = twoDigits(bytes[offset],      '9', bytes[offset + 1]);
+            int month  = twoDigits(bytes[offset + 2],  '1', bytes[offset + 3]);
+            int day    = twoDigits(bytes[offset + 4],  '3', bytes[offset + 5]);
+            int hour   = twoDigits(bytes[offset + 6],  '2', bytes[offset + 7]);
+            int minute = twoDigits(bytes[offset + 8],  '5', bytes[offset + 9]);
+            int second = twoDigits(bytes[offset + 10], '5', bytes[offset + 11]);
+            if ((year | month | day | hour | minute | second) >= 0) {
+                return pack(year, month, day, hour, minute, second, zone);
+            }
+        }
+        return decodeWithRegex(new String(bytes, offset, length, ISO_8859_1));
+    }
+
+    // Anything else: the first thing in the input that looks like a timestamp.
+    private static long decodeWithRegex(CharSequence dsmrTimestamp) {
+        Matcher matcher = DATE_TIME_PATTERN.matcher(dsmrTimestamp);
+        if (!matcher.find()) {
+            return NOT_DECODED;
+        }
+        String zone = matcher.group(7);
+        return pack(
+            Integer.parseInt(matcher.group(1)),
+            Integer.parseInt(matcher.group(2)),
+            Integer.parseInt(matcher.group(3)),
+            Integer.parseInt(matcher.group(4)),
+            Integer.parseInt(matcher.group(5)),
+            Integer.parseInt(matcher.group(6)),
+            zone.isEmpty() ? 0 : zone.charAt(0));
+    }
+
+    // ------------------------------------------
+
+    // Consecutive telegrams are almost always on the same day so the last date is retained (shared over all threads).
+    private static final class CachedDate {
+        private final int       packedDate;
+        private final LocalDate localDate;
+        private final long      epochSecond; // Of the start of this day in UTC
+
+        private CachedDate(int packedDate) {
+            this.packedDate  = packedDate;
+            this.localDate   = LocalDate.of(2000 + packedDate / 10000, (packedDate / 100) % 100, packedDate % 100);
+            this.epochSecond = localDate.toEpochDay() * 86400L;
+        }
+    }
+
+    private static volatile CachedDate lastDate;
+
+    private static CachedDate getDate(int packedDate) {
+        CachedDate cachedDate = lastDate;
+        if (cachedDate == null || cachedDate.packedDate != packedDate) {
+            cachedDate = new CachedDate(packedDate); // Throws if the date is invalid
+            lastDate = cachedDate;
+        }
+        return cachedDate;
+    }
+
+    private static ZonedDateTime toZonedDateTime(long packed) {
+        CachedDate date = getDate(packedDate(packed));
+        LocalDateTime localDateTime = LocalDateTime.of(
+            date.localDate.getYear(), date.localDate.getMonth(), date.localDate.getDayOfMonth(),
+            packedHour(packed), packedMinute(packed), packedSecond(packed));
+
+        switch (packedZone(packed)) {
+            case 'S':
+            case 's':
+                return ZonedDateTime.of(localDateTime, SUMMER_TIME);
+
+            case 'W':
+            case 'w':
+                return ZonedDateTime.of(localDateTime, WINTER_TIME);
+
+            default:
+                return ZonedDateTime.ofLocal(localDateTime, EUROPE_AMSTERDAM, ZoneOffset.UTC);
+        }
+    }
+
+    static ZoneId toZone(long packed) {
+        switch (packedZone(packed)) {
+            case 'S':
+            case 's':
+                return SUMMER_TIME;
+
+            case 'W':
+            case 'w':
+                return WINTER_TIME;
+
+            default:
+                return EUROPE_AMSTERDAM;
+        }
+    }
+
+    static long toEpochSecond(long packed) {
+        CachedDate date = getDate(packedDate(packed));
+        int hour = packedHour(packed);
+        ChronoField.HOUR_OF_DAY.checkValidValue(hour);
+        long localEpochSecond = date.epochSecond + hour * 3600L + packedMinute(packed) * 60L + packedSecond(packed);
+
+        switch (packedZone(packed)) {
+            case 'S':
+            case 's':
+                return localEpochSecond - SUMMER_TIME.getTotalSeconds();
+
+            case 'W':
+            case 'w':
+                return localEpochSecond - WINTER_TIME.getTotalSeconds();
+
+            default:
+                // In a gap this is the offset before the transition which makes it the same instant as the ZonedDateTime.
+                ZoneOffset offset = AMSTERDAM_RULES.getOffset(
+                    LocalDateTime.of(date.localDate.getYear(), date.localDate.getMonth(), date.localDate.getDayOfMonth(),
+                        hour, packedMinute(packed), packedSecond(packed)));
+                return localEpochSecond - offset.getTotalSeconds();
+        }
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Parse a DSMR timestamp.
+     * @param dsmrTimestamp The timestamp (YYMMDDhhmmssX)
+     * @return The timestamp or null if the input does not contain a timestamp.
+     * @throws DateTimeException if a field (like the month or hour) is out of range.
+     */
     public ZonedDateTime parse(String dsmrTimestamp) {
         if (dsmrTimestamp == null || dsmrTimestamp.isEmpty()) {
             return null;
         }
+        long packed = decode(dsmrTimestamp);
+        if (packed == NOT_DECODED) {
+            return null;
+        }
+        return toZonedDateTime(packed);
+    }
 
-        Matcher matcher = DATE_TIME_PATTERN.matcher(dsmrTimestamp);
-
-        if (!matcher.find()) {
+    /**
+     * Parse a DSMR timestamp.
+     * @param bytes The bytes that contain the timestamp (YYMMDDhhmmssX)
+     * @param offset Where the timestamp starts
+     * @param length The length of the timestamp
+     * @return The timestamp or null if the input does not contain a timestamp.
+     * @throws DateTimeException if a field (like the month or hour) is out of range.
+     */
+    public ZonedDateTime parse(byte[] bytes, int offset, int length) {
+        if (bytes == null || length == 0) {
             return null;
         }
-        // CHECKSTYLE.OFF: ParenPad
-        Instant baseInstant = Instant.ofEpochSecond(0);
-        ZonedDateTime zonedDateTime = ZonedDateTime
-            .ofInstant(baseInstant, ZoneOffset.UTC)
-            .withYear(2000 +  Integer.parseInt(matcher.group(1)) )
-            .withMonth(       Integer.parseInt(matcher.group(2)) )
-            .withDayOfMonth(  Integer.parseInt(matcher.group(3)) )
-            .withHour(        Integer.parseInt(matcher.group(4)) )
-            .withMinute(      Integer.parseInt(matcher.group(5)) )
-            .withSecond(      Integer.parseInt(matcher.group(6)) );
-
-        ZoneId zoneId;
-
-        switch(matcher.group(7)) {
-            case "S": // Dutch Summertime
-            case "s":
-                zoneId = ZoneOffset.of("+02:00");
-                break;
-
-            case "W": // Dutch Wintertime
-            case "w":
-                zoneId = ZoneOffset.of("+01:00");
-                break;
+        long packed = decode(bytes, offset, length);
+        if (packed == NOT_DECODED) {
+            return null;
+        }
+        return toZonedDateTime(packed);
+    }
 
-            default:
-                zoneId = ZoneId.of("Europe/Amsterdam");
-                break;
+    /**
+     * Parse a DSMR timestamp into the number of seconds since the epoch (without creating any objects).
+     * @param dsmrTimestamp The timestamp (YYMMDDhhmmssX)
+     * @return The seconds since 1970-01-01T00:00:00Z or NO_TIMESTAMP if the input does not contain a timestamp.
+     * @throws DateTimeException if a field (like the month or hour) is out of range.
+     */
+    public long parseEpochSecond(CharSequence dsmrTimestamp) {
+        if (dsmrTimestamp == null || dsmrTimestamp.length() == 0) {
+            return NO_TIMESTAMP;
+        }
+        long packed = decode(dsmrTimestamp);
+        if (packed == NOT_DECODED) {
+            return NO_TIMESTAMP;
         }
-        zonedDateTime = zonedDateTime.withZoneSameLocal(zoneId);
+        return toEpochSecond(packed);
+    }
 
-        return zonedDateTime;
+    /**
+     * Parse a DSMR timestamp into the number of seconds since the epoch (without creating any objects).
+     * @param bytes The bytes that contain the timestamp (YYMMDDhhmmssX)
+     * @param offset Where the timestamp starts
+     * @param length The length of the timestamp
+     * @return The seconds since 1970-01-01T00:00:00Z or NO_TIMESTAMP if the input does not contain a timestamp.
+     * @throws DateTimeException if a field (like the month or hour) is out of range.
+     */
+    public long parseEpochSecond(byte[] bytes, int offset, int length) {
+        if (bytes == null || length == 0) {
+            return NO_TIMESTAMP;
+        }
+        long packed = decode(bytes, offset, length);
+        if (packed == NOT_DECODED) {
+            return NO_TIMESTAMP;
+        }
+        return toEpochSecond(packed);
     }
 
 }
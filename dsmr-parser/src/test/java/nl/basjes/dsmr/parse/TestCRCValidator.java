@@ -22,9 +22,22 @@ package nl.basjes.dsmr.parse;
 import nl.basjes.dsmr.CheckCRC;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.CheckCRC.NO_CRC;
 import static nl.basjes.dsmr.CheckCRC.calculatedCrc;
+import static nl.basjes.dsmr.CheckCRC.calculatedCrcOfBuffer;
+import static nl.basjes.dsmr.CheckCRC.calculatedCrcValue;
 import static nl.basjes.dsmr.CheckCRC.crcIsValid;
+import static nl.basjes.dsmr.CheckCRC.crcIsValidInBuffer;
 import static nl.basjes.dsmr.CheckCRC.extractCrcFromTelegram;
+import static nl.basjes.dsmr.CheckCRC.extractedCrcValue;
 import static nl.basjes.dsmr.CheckCRC.fixCrc;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -138,5 +151,134 @@ class TestCRCValidator {
 
     }
 
+    // The implementation as it was before it was optimized; used as the reference.
+    private static final Pattern LEGACY_EXTRACT_PATTERN = Pattern.compile("(^/[^!]+!)([0-9A-Fa-f]{4})", Pattern.MULTILINE);
+
+    private static Integer legacyCalculatedCrc(String input) {
+        Matcher matcher = LEGACY_EXTRACT_PATTERN.matcher(input);
+        if (!matcher.find()) {
+            return null;
+        }
+        return bitwiseCrc16(matcher.group(1).getBytes(UTF_8));
+    }
+
+    private static String legacyExtractCrcFromTelegram(String input) {
+        Matcher matcher = LEGACY_EXTRACT_PATTERN.matcher(input);
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.group(2);
+    }
+
+    private static String legacyFixCrc(String input) {
+        Matcher matcher = LEGACY_EXTRACT_PATTERN.matcher(input);
+        if (!matcher.find()) {
+            return input;
+        }
+        return matcher.group(1) + String.format("%04X", bitwiseCrc16(matcher.group(1).getBytes(UTF_8))) + "\r\n";
+    }
+
+    private static boolean legacyCrcIsValid(String input) {
+        Matcher matcher = LEGACY_EXTRACT_PATTERN.matcher(input);
+        if (!matcher.find()) {
+            return false;
+        }
+        return matcher.group(2).equalsIgnoreCase(String.format("%04X", bitwiseCrc16(matcher.group(1).getBytes(UTF_8))));
+    }
+
+    // CRC-16/ARC calculated one bit at a time (i.e. without any tables).
+    private static int bitwiseCrc16(byte[] bytes) {
+        int crc = 0;
+        for (byte b : bytes) {
+            crc ^= b & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) == 0 ? crc >>> 1 : (crc >>> 1) ^ 0xA001;
+            }
+        }
+        return crc;
+    }
+
+    private void assertSameAsString(String input) {
+        assertEquals(legacyCalculatedCrc(input),          calculatedCrc(input));
+        assertEquals(legacyExtractCrcFromTelegram(input), extractCrcFromTelegram(input));
+        assertEquals(legacyFixCrc(input),                 fixCrc(input));
+        assertEquals(legacyCrcIsValid(input),             crcIsValid(input));
+
+        byte[] bytes = input.getBytes(UTF_8);
+        // Put the telegram in the middle of a larger buffer
+        byte[] buffer = new byte[bytes.length + 20];
+        Arrays.fill(buffer, (byte) '!');
+        System.arraycopy(bytes, 0, buffer, 10, bytes.length);
+
+        assertEquals(calculatedCrc(input), calculatedCrc(bytes, 0, bytes.length));
+        assertEquals(calculatedCrc(input), calculatedCrc(buffer, 10, bytes.length));
+        assertEquals(calculatedCrc(input), calculatedCrcOfBuffer(ByteBuffer.wrap(buffer, 10, bytes.length)));
+        assertEquals(calculatedCrc(input), calculatedCrcOfBuffer(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()));
+
+        assertEquals(crcIsValid(input), crcIsValid(bytes, 0, bytes.length));
+        assertEquals(crcIsValid(input), crcIsValid(buffer, 10, bytes.length));
+        assertEquals(crcIsValid(input), crcIsValidInBuffer(ByteBuffer.wrap(buffer, 10, bytes.length)));
+        assertEquals(crcIsValid(input), crcIsValidInBuffer(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()));
+
+        String extracted = extractCrcFromTelegram(input);
+        int extractedValue = extracted == null ? NO_CRC : Integer.parseInt(extracted, 16);
+        assertEquals(extractedValue, extractedCrcValue(input));
+        assertEquals(extractedValue, extractedCrcValue(buffer, 10, bytes.length));
+
+        Integer calculated = calculatedCrc(input);
+        int calculatedValue = calculated == null ? NO_CRC : calculated;
+        assertEquals(calculatedValue, calculatedCrcValue(input));
+        assertEquals(calculatedValue, calculatedCrcValue(buffer, 10, bytes.length));
+
+        // In place repair
+        assertEquals(calculated != null, fixCrc(buffer, 10, bytes.length));
+        if (calculated != null) {
+            assertTrue(crcIsValid(buffer, 10, bytes.length));
+            assertEquals(calculatedValue, extractedCrcValue(buffer, 10, bytes.length));
+        }
+    }
+
+    @Test
+    void testSlicing() {
+        // All lengths around the 8 byte steps
+        Random random = new Random(42);
+        for (int length = 1; length < 100; length++) {
+            StringBuilder telegram = new StringBuilder("/");
+            for (int i = 0; i < length; i++) {
+                telegram.append((char) (' ' + random.nextInt(0x7F - ' ')));
+            }
+            String body = telegram.toString().replace('!', '?') + "!";
+            byte[] bytes = body.getBytes(UTF_8);
+            int expected = bitwiseCrc16(bytes);
+            assertEquals(expected, calculatedCrcValue(body + "0000"));
+            assertEquals(expected, calculatedCrcValue((body + "0000").getBytes(UTF_8), 0, bytes.length + 4));
+        }
+    }
+
+    @Test
+    void testBytes() {
+        assertTrue(crcIsValid(DSMR_TELEGRAM.getBytes(UTF_8), 0, DSMR_TELEGRAM.length()));
+        assertSameAsString(DSMR_TELEGRAM);
+        assertSameAsString(DSMR_TELEGRAM.toLowerCase(Locale.ROOT));
+        assertSameAsString("Garbage\r\n" + DSMR_TELEGRAM);
+        assertSameAsString("Garbage" + DSMR_TELEGRAM);
+        assertSameAsString("/Garbage\r\n" + DSMR_TELEGRAM);
+        assertSameAsString("/Garbage\r\n!" + DSMR_TELEGRAM);
+        assertSameAsString("/!\r\n" + DSMR_TELEGRAM);
+        assertSameAsString("Garbage\u2028" + DSMR_TELEGRAM);
+        assertSameAsString("Garbage\u0085" + DSMR_TELEGRAM);
+        assertSameAsString(DSMR_TELEGRAM.replace("!", "!\r\n"));
+        assertSameAsString("");
+        assertSameAsString("Bla");
+        assertSameAsString("/Bla!12");
+        assertSameAsString("/Bla!12345");
+        assertSameAsString("/Bl\u00e9\u2028/!12345");
+
+        assertNull(calculatedCrc((byte[]) null, 0, 0));
+        assertNull(calculatedCrcOfBuffer(null));
+        assertFalse(crcIsValid((byte[]) null, 0, 0));
+        assertFalse(crcIsValidInBuffer(null));
+    }
+
 
 }
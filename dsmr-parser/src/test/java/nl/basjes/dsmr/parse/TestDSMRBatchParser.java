@@ -0,0 +1,127 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.DSMRBatchParser;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDSMRBatchParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDSMRBatchParser.class);
+
+    private static final List<byte[]> RECORDS = new ArrayList<>();
+    private static final List<String> EXPECTED = new ArrayList<>();
+
+    @BeforeAll
+    static void readRecords() throws IOException {
+        for (String value : readCaptureRecords()) {
+            RECORDS.add(value.getBytes(UTF_8));
+            EXPECTED.add(withoutReceiveTimestamp(ParseDsmrTelegram.parse(value)));
+        }
+        assertTrue(RECORDS.size() > 100);
+    }
+
+    private static List<String> describe(List<DSMRTelegram> telegrams) {
+        return telegrams.stream().map(Utils::withoutReceiveTimestamp).collect(Collectors.toList());
+    }
+
+    @Test
+    void ordered() {
+        DSMRBatchParser batchParser = new DSMRBatchParser(new ForkJoinPool(4), ParseOptions.ALL, true, 10);
+        assertEquals(EXPECTED, describe(batchParser.parseAll(RECORDS)));
+        assertEquals(RECORDS.size(), batchParser.getParsedTelegrams());
+        LOG.info("{}", batchParser);
+
+        // Null and empty records are skipped
+        List<byte[]> withEmpty = new ArrayList<>(RECORDS.subList(0, 5));
+        withEmpty.add(2, new byte[0]);
+        withEmpty.add(null);
+        assertEquals(EXPECTED.subList(0, 5), describe(batchParser.parseAll(withEmpty)));
+        assertEquals(0, batchParser.parseAll(List.of()).size());
+    }
+
+    @Test
+    void unordered() {
+        DSMRBatchParser batchParser = new DSMRBatchParser(new ForkJoinPool(4), ParseOptions.ALL, false, 7);
+        List<String> actual = describe(batchParser.parseAll(RECORDS));
+        List<String> expected = new ArrayList<>(EXPECTED);
+        actual.sort(null);
+        expected.sort(null);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void boundedAndClosed() {
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        DSMRBatchParser batchParser = new DSMRBatchParser(pool, ParseOptions.ALL, true, 5);
+        Stream<byte[]> input = RECORDS.stream().peek(r -> read.incrementAndGet()).onClose(closed::incrementAndGet);
+        try (Stream<DSMRTelegram> telegrams = batchParser.parse(input)) {
+            assertEquals(3, telegrams.limit(3).count());
+        }
+        // At most 2 * parallelism batches are read ahead
+        assertTrue(read.get() <= 2 * 2 * 5, "Read too many records: " + read.get());
+        assertEquals(1, closed.get());
+        // Also a stream that was closed early has a time for the throughput.
+        assertTrue(batchParser.getElapsedNanos() > 0, "No elapsed time after closing early");
+        assertTrue(batchParser.getTelegramsPerSecond() > 0);
+
+        assertThrows(IllegalArgumentException.class, () -> new DSMRBatchParser(pool, ParseOptions.ALL, true, 0));
+    }
+
+    @Test
+    void throughput() {
+        DSMRBatchParser batchParser = new DSMRBatchParser();
+        List<byte[]> many = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            many.addAll(RECORDS);
+        }
+        long start = System.nanoTime();
+        for (byte[] record : many) {
+            ParseDsmrTelegram.parse(record, 0, record.length);
+        }
+        long serial = System.nanoTime() - start;
+        assertEquals(many.size(), batchParser.parseAll(many).size());
+        LOG.info("Parsing {} records: serial {} ms, batch {} ms ({} telegrams/second)",
+            many.size(), serial / 1_000_000, batchParser.getElapsedNanos() / 1_000_000, Math.round(batchParser.getTelegramsPerSecond()));
+        assertTrue(batchParser.getTelegramsPerSecond() > 0);
+        assertTrue(batchParser.getParsedBytes() > many.size() * 100L);
+    }
+}
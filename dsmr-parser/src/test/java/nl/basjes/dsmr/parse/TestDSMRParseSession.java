@@ -0,0 +1,192 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRParseSession;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.TelegramField;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDSMRParseSession {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDSMRParseSession.class);
+
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.8.2(013315.593*kWh)\r\n" +
+        "1-0:2.8.1(002435.025*kWh)\r\n" +
+        "1-0:2.8.2(006153.962*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:2.7.0(00.098*kW)\r\n" +
+        "0-0:96.7.21(00005)\r\n" +
+        "0-0:96.7.9(00004)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "1-0:32.32.0(00004)\r\n" +
+        "1-0:32.36.0(00001)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(238.3*V)\r\n" +
+        "1-0:31.7.0(000*A)\r\n" +
+        "1-0:21.7.0(00.054*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!0000\r\n");
+
+    private static void assertSameAsParse(DSMRParseSession session, String telegram) {
+        assertEquals(
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(telegram)),
+            withoutReceiveTimestamp(session.parse(telegram)));
+    }
+
+    @Test
+    void changedLines() {
+        DSMRParseSession session = new DSMRParseSession();
+        assertSameAsParse(session, TELEGRAM);
+        assertEquals(0, session.getReusedLines());
+
+        // Only the timestamp and the power have changed
+        String next = CheckCRC.fixCrc(TELEGRAM
+            .replace("(220528151729S)", "(220528151739S)")
+            .replace("1-0:2.7.0(00.098*kW)", "1-0:2.7.0(00.123*kW)"));
+        assertSameAsParse(session, next);
+        assertEquals(20, session.getReusedLines());
+        // The P1 version is always parsed
+        assertEquals(23 + 3, session.getParsedLines());
+
+        // More groups in the power failure event log, also on the next line.
+        assertSameAsParse(session, CheckCRC.fixCrc(next.replace("(0000002936*s)", "(0000002936*s)(220601094346S)(0000000010*s)")));
+        assertSameAsParse(session, next);
+        assertSameAsParse(session, CheckCRC.fixCrc(next.replace("(0000002936*s)", "(0000002936*s)\r\n(220601094346S)(0000000010*s)")));
+        assertSameAsParse(session, next);
+
+        // A different gas reading and a different device type
+        assertSameAsParse(session, CheckCRC.fixCrc(next.replace("(04029.917*m3)", "(04030.001*m3)")));
+        assertSameAsParse(session, CheckCRC.fixCrc(next.replace("0-1:24.1.0(003)", "0-1:24.1.0(007)")));
+
+        // Lines that moved, disappeared or are unusual
+        String moved = next.replace("1-0:32.7.0(238.3*V)\r\n", "").replace("0-0:96.13.0()", "1-0:32.7.0(238.3*V)\r\n0-0:96.13.0()");
+        assertSameAsParse(session, CheckCRC.fixCrc(moved));
+        assertSameAsParse(session, CheckCRC.fixCrc(next.replace("1-0:31.7.0(000*A)\r\n", "")));
+        assertSameAsParse(session, next.replace("1-0:1.8.1(", "1-0:1.8.1 ("));
+        assertSameAsParse(session, next);
+
+        // An invalid CRC is still detected
+        assertSameAsParse(session, next.replace("1-0:1.8.2(013315.593*kWh)", "1-0:1.8.2(013315.594*kWh)"));
+
+        assertNull(session.parse((String) null));
+        assertNull(session.parse(""));
+    }
+
+    @Test
+    void sameIdent() {
+        DSMRParseSession session = new DSMRParseSession();
+        DSMRTelegram first  = session.parse(TELEGRAM);
+        DSMRTelegram second = session.parse(TELEGRAM);
+        assertSame(first.getRawIdent(), second.getRawIdent());
+        assertSame(first.getEquipmentBrandTag(), second.getEquipmentBrandTag());
+        assertSame(first.getIdent(), second.getIdent());
+
+        // Another meter with an ident of the same length
+        String other = CheckCRC.fixCrc(TELEGRAM.replace("/ISK5\\2M550T-1012", "/KFM5\\2M550T-1012"));
+        assertSameAsParse(session, other);
+        assertEquals("KFM", session.parse(other).getEquipmentBrandTag());
+    }
+
+    @Test
+    void refilledPreviousTelegram() {
+        DSMRParseSession session = new DSMRParseSession();
+        DSMRTelegram first = session.parse(TELEGRAM);
+        ParseDsmrTelegram.parseInto(TELEGRAM.replace("(016366.258*kWh)", "(000000.001*kWh)"), first);
+        long reused = session.getReusedLines();
+        assertSameAsParse(session, TELEGRAM);
+        assertEquals(reused, session.getReusedLines(), "A refilled telegram must not be used");
+    }
+
+    @Test
+    void onlySelectedFields() {
+        ParseOptions options = ParseOptions.only(TelegramField.ELECTRICITY_POWER_RECEIVED, TelegramField.GAS_M3);
+        DSMRParseSession session = new DSMRParseSession(options);
+        for (String telegram : List.of(TELEGRAM, TELEGRAM, CheckCRC.fixCrc(TELEGRAM.replace("(04029.917*m3)", "(04030.001*GJ)")))) {
+            assertEquals(
+                withoutReceiveTimestamp(ParseDsmrTelegram.parse(telegram, options)),
+                withoutReceiveTimestamp(session.parse(telegram)));
+        }
+    }
+
+    @Test
+    void sameResultsOnRealData() throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        for (String value : readCaptureRecords()) {
+            records.add(value.getBytes(UTF_8));
+        }
+        assertTrue(records.size() > 100);
+
+        DSMRParseSession session = new DSMRParseSession();
+        for (byte[] record : records) {
+            assertEquals(
+                withoutReceiveTimestamp(ParseDsmrTelegram.parse(record, 0, record.length)),
+                withoutReceiveTimestamp(session.parse(record, 0, record.length)));
+        }
+        long reused = session.getReusedLines();
+        long parsed = session.getParsedLines();
+        LOG.info("Of the {} lines {} were taken from the previous telegram.", reused + parsed, reused);
+        assertTrue(reused > parsed, "Most lines should be unchanged");
+
+        // A rough indication of the speed difference
+        for (int warmup = 0; warmup < 5; warmup++) {
+            for (byte[] record : records) {
+                ParseDsmrTelegram.parse(record, 0, record.length);
+                session.parse(record, 0, record.length);
+            }
+        }
+        long start = System.nanoTime();
+        for (byte[] record : records) {
+            ParseDsmrTelegram.parse(record, 0, record.length);
+        }
+        long parse = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (byte[] record : records) {
+            session.parse(record, 0, record.length);
+        }
+        long sessionParse = System.nanoTime() - start;
+        LOG.info("Parsing {} records: parse {} us, session {} us", records.size(), parse / 1000, sessionParse / 1000);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramBatch;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.TelegramField;
+import nl.basjes.dsmr.TimestampParser;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDSMRTelegramBatch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDSMRTelegramBatch.class);
+
+    // The capture file lost the '\r' of each line so the CRCs only match after restoring them.
+    private static List<String> readTestFile() throws IOException {
+        List<String> records = readCaptureRecords();
+        records.replaceAll(record -> record.replace("\n", "\r\n"));
+        return records;
+    }
+
+    // The straightforward way over the list of telegrams
+    private static List<Double> values(List<DSMRTelegram> telegrams, long fromEpochSecond, long toEpochSecond, TelegramField field) {
+        List<Double> values = new ArrayList<>();
+        for (DSMRTelegram telegram : telegrams) {
+            long epochSecond = telegram.getTimestampEpochSecond();
+            if (epochSecond < fromEpochSecond || epochSecond >= toEpochSecond || !telegram.isPresent(field)) {
+                continue;
+            }
+            switch (field) {
+                case ELECTRICITY_POWER_RECEIVED: values.add(telegram.getElectricityPowerReceived()); break;
+                case VOLTAGE_L1:                 values.add(telegram.getVoltageL1()); break;
+                case POWER_FAILURES:             values.add(telegram.getPowerFailures().doubleValue()); break;
+                default: throw new IllegalArgumentException("Not in this test: " + field);
+            }
+        }
+        return values;
+    }
+
+    private static void assertAggregates(List<Double> expected, DSMRTelegramBatch batch, TelegramField field) {
+        assertEquals(expected.size(), batch.count(field));
+        if (expected.isEmpty()) {
+            assertEquals(0, batch.sum(field));
+            assertTrue(Double.isNaN(batch.mean(field)));
+            assertTrue(Double.isNaN(batch.min(field)));
+            assertTrue(Double.isNaN(batch.max(field)));
+            return;
+        }
+        double sum = expected.stream().mapToDouble(Double::doubleValue).sum();
+        assertEquals(sum, batch.sum(field), 0.0001);
+        assertEquals(sum / expected.size(), batch.mean(field), 0.0001);
+        assertEquals(expected.stream().mapToDouble(Double::doubleValue).min().orElseThrow(), batch.min(field));
+        assertEquals(expected.stream().mapToDouble(Double::doubleValue).max().orElseThrow(), batch.max(field));
+    }
+
+    @Test
+    void sameAsTheTelegrams() throws IOException {
+        List<String> records = readTestFile();
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        // Only the valid telegrams with a timestamp are parsed into the batch.
+        List<DSMRTelegram> usable = new ArrayList<>();
+        DSMRTelegramBatch parsed = new DSMRTelegramBatch(10);
+        for (String record : records) {
+            DSMRTelegram telegram = ParseDsmrTelegram.parse(record);
+            telegrams.add(telegram);
+            boolean isUsable = telegram.isValid() && telegram.getTimestampEpochSecond() != TimestampParser.NO_TIMESTAMP;
+            if (isUsable) {
+                usable.add(telegram);
+            }
+            assertEquals(isUsable, parsed.appendParsed(record));
+        }
+        assertFalse(parsed.appendParsed(""));
+        DSMRTelegramBatch batch = DSMRTelegramBatch.of(telegrams);
+        assertEquals(telegrams.size(), batch.size());
+        assertEquals(usable.size(), parsed.size());
+        assertEquals(telegrams.size() - 1, usable.size()); // Only the cut off first record
+
+        for (int row = 0; row < telegrams.size(); row++) {
+            DSMRTelegram telegram = telegrams.get(row);
+            assertEquals(telegram.getTimestampEpochSecond(), batch.getEpochSecond(row));
+            assertEquals(telegram.getReceiveTimestamp().toInstant().toEpochMilli(), batch.getReceiveEpochMilli(row));
+            for (TelegramField field : TelegramField.values()) {
+                assertEquals(telegram.isPresent(field), batch.isPresent(row, field), field.name());
+            }
+            assertEquals(Objects.requireNonNullElse(telegram.getVoltageL1(), 0.0), batch.getDouble(row, TelegramField.VOLTAGE_L1));
+            assertEquals(Objects.requireNonNullElse(telegram.getPowerFailures(), 0L), batch.getLong(row, TelegramField.POWER_FAILURES));
+        }
+        for (int row = 0; row < usable.size(); row++) {
+            DSMRTelegram telegram = usable.get(row);
+            assertEquals(telegram.getTimestampEpochSecond(), parsed.getEpochSecond(row));
+            for (TelegramField field : TelegramField.values()) {
+                assertEquals(telegram.isPresent(field), parsed.isPresent(row, field), field.name());
+            }
+        }
+
+        // The first record is cut off so it has no timestamp.
+        assertEquals(TimestampParser.NO_TIMESTAMP, batch.getEpochSecond(0));
+        long first = batch.getEpochSecond(1);
+        long last  = batch.getEpochSecond(batch.size() - 1);
+        long[][] ranges = {
+            {Long.MIN_VALUE, Long.MAX_VALUE},
+            {first, last + 1},
+            {first + 100, first + 200},
+            {first + 100, first + 101},
+            {last + 1, last + 100},
+            {first + 200, first + 100},
+        };
+        for (long[] range : ranges) {
+            DSMRTelegramBatch slice = batch.between(range[0], range[1]);
+            for (TelegramField field : new TelegramField[]{
+                TelegramField.ELECTRICITY_POWER_RECEIVED, TelegramField.VOLTAGE_L1, TelegramField.POWER_FAILURES}) {
+                assertAggregates(values(telegrams, range[0], range[1], field), slice, field);
+            }
+        }
+
+        // A field that is never present
+        assertAggregates(List.of(), batch, TelegramField.SLAVE_E_METER_KWH);
+    }
+
+    @Test
+    void sliceAndAppend() {
+        DSMRTelegramBatch batch = new DSMRTelegramBatch(1);
+        ParseOptions options = ParseOptions.only(TelegramField.ELECTRICITY_POWER_RECEIVED);
+        for (int i = 0; i < 200; i++) {
+            // Only present in the even rows
+            String text = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n\r\n" +
+                String.format(Locale.ROOT, "0-0:1.0.0(22052815%02d%02dS)\r\n", i / 60, i % 60) +
+                (i % 2 == 0 ? "1-0:1.7.0(" + String.format(Locale.ROOT, "%06.3f", i / 100.0) + "*kW)\r\n" : "") +
+                "!0000\r\n");
+            byte[] bytes = text.getBytes(UTF_8);
+            assertTrue(batch.appendParsed(bytes, 0, bytes.length, options));
+            assertEquals(i + 1, batch.size());
+            assertEquals(i % 2 == 0, batch.isPresent(i, TelegramField.ELECTRICITY_POWER_RECEIVED));
+            // The timestamp is always decoded
+            assertTrue(batch.isPresent(i, TelegramField.TIMESTAMP));
+            assertFalse(batch.isPresent(i, TelegramField.ELECTRICITY_RECEIVED_LOW_TARIFF));
+        }
+        assertEquals(100, batch.count(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(0.000, batch.min(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(1.98, batch.max(TelegramField.ELECTRICITY_POWER_RECEIVED));
+
+        DSMRTelegramBatch slice = batch.slice(63, 130);
+        assertEquals(67, slice.size());
+        assertEquals(33, slice.count(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(0.64, slice.min(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(1.28, slice.max(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(1, slice.slice(1, 2).count(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(0.64, slice.slice(1, 2).sum(TelegramField.ELECTRICITY_POWER_RECEIVED));
+        assertEquals(0, slice.slice(2, 2).count(TelegramField.ELECTRICITY_POWER_RECEIVED));
+
+        assertThrows(UnsupportedOperationException.class, () -> slice.append(new DSMRTelegram()));
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.getEpochSecond(67));
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.slice(10, 201));
+        assertThrows(IllegalArgumentException.class, () -> batch.sum(TelegramField.MESSAGE));
+        assertThrows(IllegalArgumentException.class, () -> batch.getLong(0, TelegramField.VOLTAGE_L1));
+
+        // Appending to the batch does not change the slice
+        batch.append(new DSMRTelegram());
+        assertEquals(67, slice.size());
+        assertEquals(201, batch.size());
+    }
+
+    @Test
+    void damagedTelegramsAreSkipped() throws IOException {
+        List<String> records = readTestFile();
+        // Damage a telegram in the middle (the CRC no longer matches).
+        int damaged = records.size() / 2;
+        records.set(damaged, records.get(damaged).replace("1-0:1.7.0(", "1-0:1.7.0(9"));
+
+        List<DSMRTelegram> valid = new ArrayList<>();
+        for (String record : records) {
+            DSMRTelegram telegram = ParseDsmrTelegram.parse(record);
+            if (telegram.isValid() && telegram.getTimestampEpochSecond() != TimestampParser.NO_TIMESTAMP) {
+                valid.add(telegram);
+            }
+        }
+
+        for (ParseOptions options : new ParseOptions[]{ParseOptions.ALL, ParseOptions.STRICT}) {
+            DSMRTelegramBatch batch = new DSMRTelegramBatch();
+            for (int i = 0; i < records.size(); i++) {
+                byte[] bytes = records.get(i).getBytes(UTF_8);
+                boolean appended = batch.appendParsed(bytes, 0, bytes.length, options);
+                assertEquals(i != 0 && i != damaged, appended, "Record " + i + " with " + options);
+            }
+            assertEquals(valid.size(), batch.size());
+
+            // The rows are still in the order of their timestamp so all ranges are right.
+            long first = batch.getEpochSecond(0);
+            long middle = batch.getEpochSecond(damaged - 1);
+            for (long[] range : new long[][]{{first, middle}, {middle - 50, middle + 50}, {middle, Long.MAX_VALUE}}) {
+                DSMRTelegramBatch slice = batch.between(range[0], range[1]);
+                assertAggregates(values(valid, range[0], range[1], TelegramField.ELECTRICITY_POWER_RECEIVED),
+                    slice, TelegramField.ELECTRICITY_POWER_RECEIVED);
+            }
+        }
+    }
+
+    @Test
+    void performance() throws IOException {
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        for (String record : readTestFile()) {
+            telegrams.add(ParseDsmrTelegram.parse(record));
+        }
+        // Roughly a day of telegrams
+        List<DSMRTelegram> day = new ArrayList<>();
+        while (day.size() < 86400) {
+            day.addAll(telegrams);
+        }
+        DSMRTelegramBatch batch = DSMRTelegramBatch.of(day);
+
+        // A rough indication of the speed difference
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            double listSum = 0;
+            for (DSMRTelegram telegram : day) {
+                Double value = telegram.getElectricityPowerReceived();
+                if (value != null) {
+                    listSum += value;
+                }
+            }
+            long list = System.nanoTime() - start;
+            start = System.nanoTime();
+            double batchSum = batch.sum(TelegramField.ELECTRICITY_POWER_RECEIVED);
+            long columnar = System.nanoTime() - start;
+            assertEquals(listSum, batchSum, 0.0001);
+            LOG.info("Sum over {} telegrams: List<DSMRTelegram> {} us, DSMRTelegramBatch {} us", day.size(), list / 1000, columnar / 1000);
+        }
+    }
+}
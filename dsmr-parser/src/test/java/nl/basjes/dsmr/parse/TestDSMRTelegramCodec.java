@@ -0,0 +1,263 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramCodec;
+import nl.basjes.dsmr.ObisRegistry;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.CAPTURE_FILE;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDSMRTelegramCodec {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDSMRTelegramCodec.class);
+
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F)\r\n" +
+        "0-0:96.50.68(12.5)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "0-2:24.1.0(002)\r\n" +
+        "0-2:96.1.0(4530303434303037313331363530363138)\r\n" +
+        "0-2:24.2.1(220528151500W)(00123.456*kWh)\r\n" +
+        "!0000\r\n");
+
+    private static List<DSMRTelegram> readTestFile() throws IOException {
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        for (String value : readCaptureRecords()) {
+            telegrams.add(ParseDsmrTelegram.parse(value));
+        }
+        return telegrams;
+    }
+
+    private static void assertSameTelegram(DSMRTelegram expected, DSMRTelegram actual) {
+        assertEquals(DSMRTelegram.class, actual.getClass());
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getPresentFields(), actual.getPresentFields());
+        assertEquals(expected.getReceiveTimestamp(), actual.getReceiveTimestamp());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+
+    private static void assertSameTelegrams(List<DSMRTelegram> expected, List<DSMRTelegram> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameTelegram(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        ObisRegistry.register("0-0:96.50.68", (telegram, obisCode, values) -> telegram.putCustomValue(obisCode, Double.valueOf(values.get(0))));
+        try {
+            DSMRTelegram telegram = ParseDsmrTelegram.parse(TELEGRAM);
+            assertTrue(telegram.isValid());
+            assertEquals(1, telegram.getCustomValues().size());
+
+            // Different telegrams that all change a lot
+            List<DSMRTelegram> telegrams = Arrays.asList(
+                telegram,
+                new DSMRTelegram(),
+                ParseDsmrTelegram.parse(TELEGRAM.replace("016366.258*kWh", "016366.2581*kWh")),
+                ParseDsmrTelegram.parse(TELEGRAM.replace("00.000*kW", "-0.000*kW")),
+                ParseDsmrTelegram.parseLazy(TELEGRAM.replace("220528151729S", "220528151731S")),
+                ParseDsmrTelegram.parse(TELEGRAM.replace("0-2:24.2.1(220528151500W)(00123.456*kWh)\r\n", "")),
+                ParseDsmrTelegram.parse(TELEGRAM.replace("(2)(0-0:96.7.19)(180417201458S)(0000000236*s)", "(1)(0-0:96.7.19)")),
+                telegram);
+            assertSameTelegrams(telegrams, DSMRTelegramCodec.decode(DSMRTelegramCodec.encode(telegrams)));
+            assertSameTelegrams(Collections.emptyList(), DSMRTelegramCodec.decode(DSMRTelegramCodec.encode(Collections.emptyList())));
+        } finally {
+            ObisRegistry.unregister("0-0:96.50.68");
+        }
+    }
+
+    @Test
+    void unsupported() {
+        DSMRTelegram telegram = new DSMRTelegram();
+        telegram.putCustomValue("Something", new Object());
+        List<DSMRTelegram> telegrams = Collections.singletonList(telegram);
+        assertThrows(IllegalArgumentException.class, () -> DSMRTelegramCodec.encode(telegrams));
+
+        assertThrows(IOException.class, () -> DSMRTelegramCodec.decode("Not encoded telegrams".getBytes(UTF_8)));
+        byte[] encoded = DSMRTelegramCodec.encode(Collections.singletonList(ParseDsmrTelegram.parse(TELEGRAM)));
+        assertThrows(IOException.class, () -> DSMRTelegramCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+
+        // A keyframe with only a changed timestamp zone (slot 6, written as bit 26) that is not a valid zone id.
+        byte[] invalidZone = {'D', 'S', 'M', 'R', 'C', 1, 10, 'K', (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20, 5, 4, 'X', '/', 'Y'};
+        assertThrows(IOException.class, () -> DSMRTelegramCodec.decode(invalidZone));
+    }
+
+    @Test
+    void writeAfterUnsupported() throws IOException {
+        DSMRTelegram first  = ParseDsmrTelegram.parse(TELEGRAM);
+        DSMRTelegram third  = ParseDsmrTelegram.parse(TELEGRAM.replace("220528151729S", "220528151731S"));
+        DSMRTelegram second = ParseDsmrTelegram.parse(TELEGRAM.replace("220528151729S", "220528151730S"));
+        second.putCustomValue("Something", new Object());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DSMRTelegramCodec.Encoder encoder = new DSMRTelegramCodec.Encoder(output)) {
+            encoder.write(first);
+            assertThrows(IllegalArgumentException.class, () -> encoder.write(second));
+            encoder.write(third);
+            assertEquals(2, encoder.getTelegrams());
+        }
+        assertSameTelegrams(Arrays.asList(first, third), DSMRTelegramCodec.decode(output.toByteArray()));
+    }
+
+    @Test
+    void keyframesAndSkipping() throws IOException {
+        List<DSMRTelegram> telegrams = readTestFile();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DSMRTelegramCodec.Encoder encoder = new DSMRTelegramCodec.Encoder(output, 100)) {
+            for (DSMRTelegram telegram : telegrams) {
+                encoder.write(telegram);
+            }
+            assertEquals(telegrams.size(), encoder.getTelegrams());
+            assertEquals(output.size(), encoder.getBytes());
+        }
+        byte[] encoded = output.toByteArray();
+
+        for (int start : new int[]{0, 1, 99, 100, 101, 250, telegrams.size() - 1}) {
+            try (DSMRTelegramCodec.Decoder decoder = new DSMRTelegramCodec.Decoder(new ByteArrayInputStream(encoded))) {
+                assertEquals(start, decoder.skip(start));
+                DSMRTelegram target = new DSMRTelegram();
+                for (int i = start; i < telegrams.size(); i++) {
+                    assertSame(target, decoder.readInto(target));
+                    assertSameTelegram(telegrams.get(i), target);
+                }
+                assertNull(decoder.readInto(target));
+                assertEquals(0, decoder.skip(10));
+            }
+        }
+
+        // Skipping beyond the end
+        try (DSMRTelegramCodec.Decoder decoder = new DSMRTelegramCodec.Decoder(new ByteArrayInputStream(encoded))) {
+            assertEquals(telegrams.size(), decoder.skip(telegrams.size() + 10L));
+            assertNull(decoder.read());
+        }
+    }
+
+    @Test
+    void compression() throws IOException {
+        List<DSMRTelegram> telegrams = readTestFile();
+        long textSize = Files.size(Paths.get(CAPTURE_FILE));
+
+        byte[] encoded = DSMRTelegramCodec.encode(telegrams);
+        assertSameTelegrams(telegrams, DSMRTelegramCodec.decode(encoded));
+        LOG.info("Encoded {} telegrams ({} bytes of text) into {} bytes ({} bytes per telegram).",
+            telegrams.size(), textSize, encoded.length, String.format("%.1f", encoded.length / (double) telegrams.size()));
+        assertTrue(encoded.length * 10L < textSize, "Expected at least 10x smaller: " + encoded.length + " vs " + textSize);
+
+        // A rough indication of the speed
+        for (int round = 0; round < 5; round++) {
+            DSMRTelegram target = new DSMRTelegram();
+            long start = System.nanoTime();
+            int decoded = 0;
+            for (int i = 0; i < 20; i++) {
+                try (DSMRTelegramCodec.Decoder decoder = new DSMRTelegramCodec.Decoder(new ByteArrayInputStream(encoded))) {
+                    while (decoder.readInto(target) != null) {
+                        decoded++;
+                    }
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            LOG.info("Decoded {} telegrams in {} ms ({} telegrams per second)",
+                decoded, nanos / 1_000_000, decoded * 1_000_000_000L / Math.max(1, nanos));
+        }
+    }
+
+    private static byte[] encode(List<DSMRTelegram> telegrams, boolean compact) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DSMRTelegramCodec.Encoder encoder = new DSMRTelegramCodec.Encoder(output)) {
+            if (compact) {
+                encoder.truncateReceiveTimestampTo(ChronoUnit.SECONDS).dropValidCrc();
+            }
+            for (DSMRTelegram telegram : telegrams) {
+                encoder.write(telegram);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    @Test
+    void compactEncoding() throws IOException {
+        // The capture lost the '\r' of each line, restoring them makes the CRCs valid.
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        for (String value : readCaptureRecords()) {
+            telegrams.add(ParseDsmrTelegram.parse(value.replaceAll("\r?\n", "\r\n")));
+        }
+        assertTrue(telegrams.get(1).isValidCRC());
+
+        byte[] lossless = encode(telegrams, false);
+        byte[] compact  = encode(telegrams, true);
+        for (byte[] encoded : Arrays.asList(lossless, compact)) {
+            LOG.info("Encoded {} telegrams into {} bytes ({} bytes per telegram, about {} KB per day at 1 telegram per second).",
+                telegrams.size(), encoded.length, String.format("%.1f", encoded.length / (double) telegrams.size()),
+                encoded.length * 86400L / telegrams.size() / 1024);
+        }
+        assertTrue(compact.length < lossless.length, "Expected smaller: " + compact.length + " vs " + lossless.length);
+
+        assertSameTelegrams(telegrams, DSMRTelegramCodec.decode(lossless));
+        List<DSMRTelegram> decoded = DSMRTelegramCodec.decode(compact);
+        assertEquals(telegrams.size(), decoded.size());
+        for (int i = 0; i < telegrams.size(); i++) {
+            DSMRTelegram expected = telegrams.get(i);
+            DSMRTelegram actual   = decoded.get(i);
+            assertEquals(expected.getReceiveTimestamp().truncatedTo(ChronoUnit.SECONDS), actual.getReceiveTimestamp());
+            assertEquals(expected.isValidCRC(), actual.isValidCRC());
+            assertEquals(expected.isValidCRC() ? null : expected.getCrc(), actual.getCrc());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getElectricityReceivedLowTariff(), actual.getElectricityReceivedLowTariff());
+        }
+
+        DSMRTelegramCodec.Encoder encoder = new DSMRTelegramCodec.Encoder(new ByteArrayOutputStream());
+        assertThrows(IllegalArgumentException.class, () -> encoder.truncateReceiveTimestampTo(ChronoUnit.MINUTES));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.DSMRTelegramPool;
+import nl.basjes.dsmr.LazyDSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.TelegramField;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TestDSMRTelegramPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDSMRTelegramPool.class);
+
+    private static final String TELEGRAM = "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F)\r\n" +
+        "1-0:32.7.0(238.3*V)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "0-2:24.1.0(002)\r\n" +
+        "0-2:96.1.0(4730303339303031363532303530323137)\r\n" +
+        "0-2:24.2.1(220528151500S)(00012.345*kWh)\r\n" +
+        "!60EF\r\n";
+
+    private void assertSameAsParse(String telegram, DSMRTelegram target) {
+        assertSame(target, ParseDsmrTelegram.parseInto(telegram, target));
+        assertEquals(withoutReceiveTimestamp(ParseDsmrTelegram.parse(telegram)), withoutReceiveTimestamp(target));
+    }
+
+    @Test
+    void reusedTargetIsCompletelyReset() throws IOException {
+        DSMRTelegram target = new DSMRTelegram();
+
+        // Alternate between a telegram with everything and much smaller ones, also via the grammar.
+        List<String> telegrams = new ArrayList<>();
+        telegrams.add(TELEGRAM);
+        telegrams.add(TELEGRAM.replace("1-0:1.8.1(", "1-0:1.8.1 (")); // Needs the grammar
+        telegrams.add(TELEGRAM);
+        telegrams.addAll(readCaptureRecords());
+        telegrams.add(TELEGRAM);
+        telegrams.add("/ISK5\\2M550T-1012\r\n\r\n1-3:0.2.8(50)\r\n!60EF\r\n");
+        telegrams.add(TELEGRAM.replace("*m3)", "*GJ)"));
+        telegrams.add("Not a telegram");
+
+        for (String telegram : telegrams) {
+            assertSameAsParse(telegram, target);
+        }
+
+        assertNull(ParseDsmrTelegram.parseInto((String) null, target));
+        assertNull(ParseDsmrTelegram.parseInto("", target));
+        assertThrows(IllegalArgumentException.class, () -> ParseDsmrTelegram.parseInto(TELEGRAM, LazyDSMRTelegram.parse(TELEGRAM)));
+    }
+
+    @Test
+    void parseIntoWithOptions() {
+        DSMRTelegram target = new DSMRTelegram();
+        byte[] bytes = TELEGRAM.getBytes(UTF_8);
+        ParseDsmrTelegram.parseInto(bytes, 0, bytes.length, target);
+        ParseDsmrTelegram.parseInto(bytes, 0, bytes.length, ParseOptions.only(TelegramField.VOLTAGE_L1), target);
+        assertEquals(
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(bytes, 0, bytes.length, ParseOptions.only(TelegramField.VOLTAGE_L1))),
+            withoutReceiveTimestamp(target));
+        assertTrue(target.getMBusEvents().isEmpty());
+        assertTrue(target.getPowerFailureEventLog().isEmpty());
+    }
+
+    @Test
+    void pool() {
+        DSMRTelegramPool pool = new DSMRTelegramPool(2);
+        byte[] bytes = TELEGRAM.getBytes(UTF_8);
+
+        DSMRTelegram first = pool.parse(bytes, 0, bytes.length);
+        DSMRTelegram second = pool.parse(bytes, 0, bytes.length);
+        assertNotSame(first, second);
+        assertEquals(withoutReceiveTimestamp(first), withoutReceiveTimestamp(second));
+        assertEquals(0, pool.available());
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(new DSMRTelegram()); // Pool is full
+        assertEquals(2, pool.available());
+
+        // A released telegram is reused
+        DSMRTelegram third = pool.parse(bytes, 0, bytes.length);
+        assertSame(second, third);
+        assertEquals(withoutReceiveTimestamp(ParseDsmrTelegram.parse(TELEGRAM)), withoutReceiveTimestamp(third));
+
+        assertNull(pool.parse(bytes, 0, 0));
+        assertEquals(1, pool.available());
+
+        assertThrows(IllegalArgumentException.class, () -> new DSMRTelegramPool(0));
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threadMXBean) {
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    void allocations() throws IOException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        List<byte[]> records = new ArrayList<>();
+        for (String record : readCaptureRecords()) {
+            records.add(record.getBytes(UTF_8));
+        }
+        records.remove(0); // The first one is incomplete and needs the grammar.
+
+        DSMRTelegram target = new DSMRTelegram();
+        long parse = 0;
+        long parseInto = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = allocatedBytes(threadMXBean);
+            for (byte[] record : records) {
+                ParseDsmrTelegram.parse(record, 0, record.length);
+            }
+            parse = allocatedBytes(threadMXBean) - start;
+
+            start = allocatedBytes(threadMXBean);
+            for (byte[] record : records) {
+                ParseDsmrTelegram.parseInto(record, 0, record.length, target);
+            }
+            parseInto = allocatedBytes(threadMXBean) - start;
+        }
+        LOG.info("Allocated bytes per telegram: parse {}, parseInto {}", parse / records.size(), parseInto / records.size());
+        assertTrue(parseInto < parse, "parseInto (" + parseInto + ") should allocate less than parse (" + parse + ")");
+    }
+}
@@ -101,7 +101,7 @@ class TestDsmrParser {
 
 
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
 
         // CHECKSTYLE.OFF: ParenPad
         assertEquals("/ISk5\\2MT382-1000", dsmrTelegram.getRawIdent());
@@ -182,7 +182,7 @@ class TestDsmrParser {
             "!BAD0\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
 
         // CHECKSTYLE.OFF: ParenPad
         assertEquals("/ISk5\\2MT382-1000", dsmrTelegram.getRawIdent());
@@ -252,13 +252,13 @@ class TestDsmrParser {
 
     @Test
     void testEmpty(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse("");
+        DSMRTelegram dsmrTelegram = Utils.parse("");
         assertNull(dsmrTelegram);
     }
 
     @Test
     void testSyntaxNotEmpty(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(" ");
+        DSMRTelegram dsmrTelegram = Utils.parse(" ");
         assertNotNull(dsmrTelegram);
         assertFalse(dsmrTelegram.isValid());
     }
@@ -274,7 +274,7 @@ class TestDsmrParser {
             "!BAD0\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
         assertNotNull(dsmrTelegram);
         assertFalse(dsmrTelegram.isValid());
     }
@@ -292,7 +292,7 @@ class TestDsmrParser {
 
 //        LOG.info("{}", CheckCRC.fixCrc(testcase));
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
         assertNotNull(dsmrTelegram);
         assertTrue(dsmrTelegram.isValid());
     }
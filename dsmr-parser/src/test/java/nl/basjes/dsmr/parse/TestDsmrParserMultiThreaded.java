@@ -0,0 +1,198 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseListener;
+import nl.basjes.dsmr.ParseListeners;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDsmrParserMultiThreaded {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDsmrParserMultiThreaded.class);
+
+    private static final String DSMR5_TELEGRAM = "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.8.2(013315.593*kWh)\r\n" +
+        "1-0:2.8.1(002435.025*kWh)\r\n" +
+        "1-0:2.8.2(006153.962*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:2.7.0(00.098*kW)\r\n" +
+        "0-0:96.7.21(00005)\r\n" +
+        "0-0:96.7.9(00004)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "1-0:32.32.0(00004)\r\n" +
+        "1-0:52.32.0(00003)\r\n" +
+        "1-0:72.32.0(00003)\r\n" +
+        "1-0:32.36.0(00001)\r\n" +
+        "1-0:52.36.0(00001)\r\n" +
+        "1-0:72.36.0(00001)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(238.3*V)\r\n" +
+        "1-0:52.7.0(237.1*V)\r\n" +
+        "1-0:72.7.0(237.7*V)\r\n" +
+        "1-0:31.7.0(000*A)\r\n" +
+        "1-0:51.7.0(003*A)\r\n" +
+        "1-0:71.7.0(003*A)\r\n" +
+        "1-0:21.7.0(00.054*kW)\r\n" +
+        "1-0:41.7.0(00.000*kW)\r\n" +
+        "1-0:61.7.0(00.631*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "1-0:42.7.0(00.842*kW)\r\n" +
+        "1-0:62.7.0(00.000*kW)\r\n" +
+        "!46B4\r\n";
+
+    private static final String DSMR22_TELEGRAM = "/XMX5XMXABCE100103855\r\n" +
+        "\r\n" +
+        "0-0:96.1.1(30313233343536373839)\r\n" +
+        "1-0:1.8.1(03687.771*kWh)\r\n" +
+        "1-0:1.8.2(04456.167*kWh)\r\n" +
+        "1-0:2.8.1(01450.360*kWh)\r\n" +
+        "1-0:2.8.2(03098.554*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(0000.00*kW)\r\n" +
+        "1-0:2.7.0(0000.62*kW)\r\n" +
+        "0-0:96.13.1()\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "0-1:96.1.0(30313233343536373839)\r\n" +
+        "0-1:24.1.0(03)\r\n" +
+        "0-1:24.3.0(190218120000)(00)(60)(1)(0-1:24.2.0)(m3)\r\n" +
+        "(05271.144)\r\n" +
+        "!\r\n";
+
+    private static final String[] TELEGRAMS = {DSMR5_TELEGRAM, DSMR22_TELEGRAM};
+
+    private static final int THREADS    = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int ITERATIONS = 500;
+
+    private long parseAll(ExecutorService executor, int threads, List<String> expected)
+        throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            futures.add(executor.submit(() -> {
+                int parsed = 0;
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    for (int i = 0; i < TELEGRAMS.length; i++) {
+                        assertEquals(expected.get(i), withoutReceiveTimestamp(ParseDsmrTelegram.parse(TELEGRAMS[i])));
+                        parsed++;
+                    }
+                }
+                return parsed;
+            }));
+        }
+        long total = 0;
+        for (Future<Integer> future : futures) {
+            total += future.get(); // Rethrows any assertion failure from the worker thread
+        }
+        assertEquals((long) threads * ITERATIONS * TELEGRAMS.length, total);
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    void testConcurrentParsing() throws InterruptedException, ExecutionException {
+        List<String> expected = new ArrayList<>();
+        for (String telegram : TELEGRAMS) {
+            expected.add(withoutReceiveTimestamp(ParseDsmrTelegram.parse(telegram)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            // Warm up the JIT and the shared ANTLR DFA cache.
+            parseAll(executor, THREADS, expected);
+
+            // Every thread does the same amount of work, so without a global lock
+            // the wall clock time should (almost) not increase with the number of threads.
+            // This is only logged because the timing depends on the machine;
+            // use the JMH ParseBenchmarks with -t (see the README) to measure the scaling.
+            long singleThread = parseAll(executor, 1,       expected);
+            long allThreads   = parseAll(executor, THREADS, expected);
+
+            double speedup = (THREADS * (double) singleThread) / allThreads;
+            LOG.info("Parsing with {} threads was {} times the throughput of 1 thread.", THREADS, String.format("%.1f", speedup));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void noGlobalParseLock() throws InterruptedException {
+        // Each thread waits inside its parse until the other thread is inside its parse as well,
+        // with a global parse lock the second thread never gets there and the barrier times out.
+        CyclicBarrier bothParsing = new CyclicBarrier(2);
+        Set<Thread> parsers = ConcurrentHashMap.newKeySet();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ParseListener listener = new ParseListener() {
+            @Override
+            public void onStage(Stage stage, long nanos) {
+                if (parsers.remove(Thread.currentThread())) {
+                    try {
+                        bothParsing.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        };
+
+        ParseListeners.register(listener);
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                Thread thread = new Thread(() -> ParseDsmrTelegram.parse(DSMR5_TELEGRAM));
+                parsers.add(thread);
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            ParseListeners.unregister(listener);
+        }
+        assertTrue(parsers.isEmpty(), "The listener was not called by all threads");
+        assertNull(failure.get(), "The threads were not parsing at the same time: " + failure.get());
+    }
+}
@@ -19,7 +19,6 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,7 +85,7 @@ class TestDsmrParserOnBadTelegram {
             "!34B6\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
 
         assertFalse(dsmrTelegram.isValid());
         assertFalse(dsmrTelegram.isValidCRC());
@@ -19,7 +19,6 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -69,7 +68,7 @@ class TestDsmrParserOnPowerFailure {
             "!46B4\r\n" +
             "\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
 
         assertTrue(dsmrTelegram.isValid());
         assertTrue(dsmrTelegram.isValidCRC());
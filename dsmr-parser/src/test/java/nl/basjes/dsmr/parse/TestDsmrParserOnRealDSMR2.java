@@ -19,7 +19,6 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,7 +38,7 @@ class TestDsmrParserOnRealDSMR2 {
     // As reported https://github.com/nielsbasjes/dsmr-tools/issues/54
     @Test
     void testDSMRTelegramIssue54() {
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/ISk5\\2MT382-1003\r\n" +
             "\r\n" +
             "0-0:96.1.1(5A424556303035313036383434393132)\r\n" +
@@ -98,7 +97,7 @@ class TestDsmrParserOnRealDSMR2 {
 
     @Test
     void testDSMRTelegramIssue54Extra() {
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/ISk5\\2MT382-1003\r\n" +
             "\r\n" +
             "0-0:96.1.1(5A424556303035313036383434393132)\r\n" +
@@ -157,7 +156,7 @@ class TestDsmrParserOnRealDSMR2 {
 
     @Test
     void testDSMR22Telegram1() {
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/XMX5XMXABCE100103855\r\n" +
             "\r\n" +
             "0-0:96.1.1(30313233343536373839)\r\n" +
@@ -213,7 +212,7 @@ class TestDsmrParserOnRealDSMR2 {
     @Test
     void testDSMR22Telegram2() {
         // From https://www.domoticz.com/forum/viewtopic.php?t=10020
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/KMP5 ZABF001551772711\r\n" +
             "\r\n" +
             "0-0:96.1.1(205A4142463030313531373732373131)\r\n" +
@@ -269,7 +268,7 @@ class TestDsmrParserOnRealDSMR2 {
     @Test
     void testDSMR22Telegram3() {
         // From https://github.com/gejanssen/slimmemeter-rpi/blob/master/README.md
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/KMP5 KA6U001660297912\r\n" +
             "\r\n" +
             "0-0:96.1.1(204B413655303031363630323937393132)\r\n" +
@@ -326,7 +325,7 @@ class TestDsmrParserOnRealDSMR2 {
     void testDSMR22Telegram4() {
         // From http://domoticx.com/p1-poort-slimme-meter-hardware/
         // Only replaced the invalid device ids (both were invalid)
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/KMP5 ZABF001587315111\r\n" +
             "0-0:96.1.1(5A424556303035303931323037363132)\r\n" +
             "1-0:1.8.1(00185.000*kWh)\r\n" +
@@ -20,7 +20,6 @@ package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +41,7 @@ class TestDsmrParserOnRealDSMR4 {
     @Test
     void testParseRealTelegramWithGas(){
         // From a Landis+Gyr E350 that also reports about the connected gas meter.
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/XMX5LGBBFG1009325446\r\n" +
             "\r\n" +
             "1-3:0.2.8(42)\r\n" +
@@ -132,7 +131,7 @@ class TestDsmrParserOnRealDSMR4 {
     @Test
     void testDSMR42Telegram(){
         // Output of a Landis+Gyr E350 (DSMR 4.2)
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/XMX5LGBBFG1009089532\r\n" +
             "\r\n" +
             "1-3:0.2.8(42)\r\n" +
@@ -228,7 +227,7 @@ class TestDsmrParserOnRealDSMR4 {
         // From https://github.com/svrooij/smartmeter2mqtt#output---raw-tcp-socket
         // Changed the equipmentId (and CRC) to be parsable
         // This record is obviously constructed/manipulated ... like a power failure that started in 1931.
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/KFM5KAIFA-METER\r\n" +
             "\r\n" +
             "1-3:0.2.8(42)\r\n" +
@@ -20,7 +20,6 @@ package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,7 +38,7 @@ class TestDsmrParserOnRealDSMR5 {
 
     @Test
     void testParseRealTelegram(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/ISK5\\2M550T-1012\r\n" +
             "\r\n" +
             "1-3:0.2.8(50)\r\n" +
@@ -132,7 +131,7 @@ class TestDsmrParserOnRealDSMR5 {
 
     @Test
     void testParseRealTelegram2(){
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/Ene5\\XS210 ESMR 5.0\r\n" +
             "\r\n" +
             "1-3:0.2.8(50)\r\n" +
@@ -174,7 +173,7 @@ class TestDsmrParserOnRealDSMR5 {
     @Test
     void testParseRealTelegramWithSpaceInDeviceName(){
         // From an Enexis/Sagemcom T120D that has a space in the device name
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(
+        DSMRTelegram dsmrTelegram = Utils.parse(
             "/Ene5\\SAGEMCOM CX2000-\r\n" +
             "\r\n" +
             "1-3:0.2.8(50)\r\n" +
@@ -19,7 +19,6 @@
 package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,7 +62,7 @@ class TestDsmrParserOnSpecification30 {
             "0-1:24.4.0(1)\r\n" +
             "!\r\n";
 
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
 
 //        LOG.info("{}", dsmrTelegram);
 
@@ -20,7 +20,6 @@ package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
-import nl.basjes.dsmr.ParseDsmrTelegram;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,7 +104,7 @@ class TestDsmrParserOnSpecification50 {
             "0-1:24.2.1(101209112500W)(12785.123*m3)\r\n" +
             "!EF2F\r\n" +
             "\r\n";
-        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(testcase);
+        DSMRTelegram dsmrTelegram = Utils.parse(testcase);
 
         // CHECKSTYLE.OFF: ParenPad
         assertEquals("/ISk5\\2MT382-1000", dsmrTelegram.getRawIdent());
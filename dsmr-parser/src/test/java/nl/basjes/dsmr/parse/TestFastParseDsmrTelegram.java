@@ -0,0 +1,183 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.FastParseDsmrTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestFastParseDsmrTelegram {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestFastParseDsmrTelegram.class);
+
+    private static final String TELEGRAM = "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.8.2(013315.593*kWh)\r\n" +
+        "1-0:2.8.1(002435.025*kWh)\r\n" +
+        "1-0:2.8.2(006153.962*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:2.7.0(00.098*kW)\r\n" +
+        "0-0:96.7.21(00005)\r\n" +
+        "0-0:96.7.9(00004)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "1-0:32.32.0(00004)\r\n" +
+        "1-0:32.36.0(00001)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(238.3*V)\r\n" +
+        "1-0:31.7.0(000*A)\r\n" +
+        "1-0:21.7.0(00.054*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!60EF\r\n";
+
+    @Test
+    void fastPathIsUsed() {
+        DSMRTelegram dsmrTelegram = FastParseDsmrTelegram.parse(TELEGRAM);
+        assertNotNull(dsmrTelegram);
+        assertEquals(withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(TELEGRAM)), withoutReceiveTimestamp(dsmrTelegram));
+        assertEquals(4029.917, dsmrTelegram.getGasM3(), 0.0001);
+        assertEquals(2, dsmrTelegram.getPowerFailureEventLog().size());
+    }
+
+    private void assertFallback(String telegram) {
+        assertNull(FastParseDsmrTelegram.parse(telegram), "The fast path should not have handled this");
+        assertEquals(
+            withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(telegram)),
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(telegram)));
+    }
+
+    @Test
+    void fallbackToGrammar() {
+        // Unusual but valid spacing
+        assertFallback(TELEGRAM.replace("1-0:1.8.1(", "1-0:1.8.1 ("));
+        // Syntax errors
+        assertFallback(TELEGRAM.replace("(016366.258*kWh)", "(016366.258*kW)"));
+        assertFallback(TELEGRAM.replace("(016366.258*kWh)", "(16366.2581*kWh)"));
+        assertFallback(TELEGRAM.replace("(0001)", "(0001"));
+        assertFallback(TELEGRAM.replace("0-0:96.14.0", "0-0:96.7.19"));
+        assertFallback(TELEGRAM.replace("!60EF", "!60ef"));
+        assertFallback(TELEGRAM + "Trailing garbage");
+        assertFallback("/ISK5\\2M550T-1012\r\n!60EF\r\n");
+        assertFallback("Not a telegram");
+        assertFallback("");
+        assertFallback(null);
+    }
+
+    @Test
+    void fastPathIsStillChecked() {
+        // These are handled by the fast path, the result is still marked as invalid.
+        DSMRTelegram badCrc = Utils.parse(TELEGRAM.replace("!60EF", "!1234"));
+        assertFalse(badCrc.isValid());
+
+        DSMRTelegram wrongGasUnit = Utils.parse(TELEGRAM.replace("*m3)", "*GJ)"));
+        assertFalse(wrongGasUnit.isValid());
+
+        // The CRC is only checked if the telegram starts at the start of a line
+        String validTelegram = CheckCRC.fixCrc(TELEGRAM);
+        assertTrue(Utils.parse(validTelegram).isValid());
+        assertTrue(Utils.parse("\r\n" + validTelegram).isValid());
+        assertFalse(Utils.parse(" " + validTelegram).isValid());
+
+        // An unknown cosem id is ignored
+        String withUnknown = TELEGRAM.replace("0-0:96.14.0(0001)", "0-0:96.14.0(0001)\r\n1-0:99.1.0(1)(2.5)(220528151500S)(453030343430)");
+        assertNotNull(FastParseDsmrTelegram.parse(withUnknown));
+        Utils.parse(withUnknown);
+    }
+
+    @Test
+    void parseFromBytes() {
+        byte[] bytes = TELEGRAM.getBytes(UTF_8);
+        byte[] buffer = new byte[bytes.length + 20];
+        System.arraycopy(bytes, 0, buffer, 10, bytes.length);
+
+        String expected = withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(TELEGRAM));
+        assertEquals(expected, withoutReceiveTimestamp(FastParseDsmrTelegram.parse(buffer, 10, bytes.length)));
+        assertEquals(expected, withoutReceiveTimestamp(ParseDsmrTelegram.parse(buffer, 10, bytes.length)));
+        assertEquals(expected, withoutReceiveTimestamp(ParseDsmrTelegram.parseBuffer(ByteBuffer.wrap(buffer, 10, bytes.length))));
+        assertEquals(expected, withoutReceiveTimestamp(ParseDsmrTelegram.parseBuffer(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip())));
+
+        // Non ASCII input is left to the grammar
+        String withText = TELEGRAM.replace("0-0:96.13.0()", "0-0:96.13.0(C3A9)\r\n0-0:96.13.1(\u00e9)");
+        bytes = withText.getBytes(UTF_8);
+        assertNull(FastParseDsmrTelegram.parse(bytes, 0, bytes.length));
+        assertEquals(
+            withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(withText)),
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(bytes, 0, bytes.length)));
+
+        assertNull(ParseDsmrTelegram.parse((byte[]) null, 0, 0));
+        assertNull(ParseDsmrTelegram.parseBuffer(null));
+        assertNull(ParseDsmrTelegram.parse(buffer, 0, 0));
+    }
+
+    @Test
+    void sameResultsOnRealData() throws IOException {
+        List<String> records = readCaptureRecords();
+        assertTrue(records.size() > 100);
+
+        int fast = 0;
+        for (String record : records) {
+            if (FastParseDsmrTelegram.parse(record) != null) {
+                fast++;
+            }
+            assertEquals(
+                withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(record)),
+                withoutReceiveTimestamp(ParseDsmrTelegram.parse(record)));
+        }
+        LOG.info("The fast path handled {} of the {} records.", fast, records.size());
+        // Only the first record (which is cut off) needs the grammar.
+        assertEquals(records.size() - 1, fast);
+
+        // A rough indication of the speed difference
+        long start = System.nanoTime();
+        for (String record : records) {
+            ParseDsmrTelegram.parseWithGrammar(record);
+        }
+        long grammar = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (String record : records) {
+            ParseDsmrTelegram.parse(record);
+        }
+        long parse = System.nanoTime() - start;
+        LOG.info("Parsing {} records: grammar {} ms, with fast path {} ms", records.size(), grammar / 1_000_000, parse / 1_000_000);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.FastParseDsmrTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestGrammarParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestGrammarParser.class);
+
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.7.0(00.712*kW)\r\n" +
+        "1-0:99.97.0(1)(0-0:96.7.19)(180417201458S)(0000000236*s)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(220525094346S)(0000002936*s)(220526094346S)(0000000010*s)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!0000\r\n");
+
+    @Test
+    void warmUp() {
+        long start = System.nanoTime();
+        ParseDsmrTelegram.warmUp();
+        LOG.info("Warming up took {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Test
+    void onlyTheLastPowerFailureEventLog() {
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parseWithGrammar(TELEGRAM);
+        assertTrue(dsmrTelegram.isValid());
+        assertEquals(2, dsmrTelegram.getPowerFailureEventLogSize());
+        assertEquals(2, dsmrTelegram.getPowerFailureEventLog().size());
+        assertEquals(10, dsmrTelegram.getPowerFailureEventLog().get(1).getDuration().getSeconds());
+        assertEquals(withoutReceiveTimestamp(FastParseDsmrTelegram.parse(TELEGRAM)), withoutReceiveTimestamp(dsmrTelegram));
+    }
+
+    @Test
+    void syntaxErrorUsesFullPrediction() {
+        // The SLL stage gives up on this, the LL stage recovers and still extracts the other fields.
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parseWithGrammar(TELEGRAM.replace("(016366.258*kWh)", "(016366.258*kW)"));
+        assertFalse(dsmrTelegram.isValid());
+        assertEquals(0.712, dsmrTelegram.getElectricityPowerReceived(), 0.0001);
+        assertEquals(4029.917, dsmrTelegram.getGasM3(), 0.0001);
+        assertEquals(2, dsmrTelegram.getPowerFailureEventLog().size());
+    }
+}
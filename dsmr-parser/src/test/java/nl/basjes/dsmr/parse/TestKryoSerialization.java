@@ -0,0 +1,173 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRKryo;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ObisRegistry;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestKryoSerialization {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestKryoSerialization.class);
+
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F)\r\n" +
+        "0-0:96.50.68(12.5)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "0-2:24.1.0(002)\r\n" +
+        "0-2:96.1.0(4530303434303037313331363530363138)\r\n" +
+        "0-2:24.2.1(220528151500W)(00123.456*kWh)\r\n" +
+        "!0000\r\n");
+
+    private static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        DSMRKryo.configureKryo(kryo);
+        return kryo;
+    }
+
+    private static byte[] serialize(Kryo kryo, Object object) {
+        Output output = new Output(1024, -1);
+        kryo.writeClassAndObject(output, object);
+        return output.toBytes();
+    }
+
+    private static Object deserialize(Kryo kryo, byte[] bytes) {
+        return kryo.readClassAndObject(new Input(bytes));
+    }
+
+    private static void assertSameTelegram(DSMRTelegram expected, DSMRTelegram actual) {
+        assertNotSame(expected, actual);
+        assertEquals(DSMRTelegram.class, actual.getClass());
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.getPresentFields(), actual.getPresentFields());
+        assertEquals(expected.getReceiveTimestamp(), actual.getReceiveTimestamp());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+
+    @Test
+    void roundTrip() {
+        Kryo kryo = createKryo();
+        ObisRegistry.register("0-0:96.50.68", (telegram, obisCode, values) -> telegram.putCustomValue(obisCode, Double.valueOf(values.get(0))));
+        try {
+            DSMRTelegram telegram = ParseDsmrTelegram.parse(TELEGRAM);
+            assertTrue(telegram.isValid());
+            assertEquals(2, telegram.getPowerFailureEventLog().size());
+            assertEquals(2, telegram.getMBusEvents().size());
+            assertEquals(1, telegram.getCustomValues().size());
+
+            byte[] bytes = serialize(kryo, telegram);
+            assertSameTelegram(telegram, (DSMRTelegram) deserialize(kryo, bytes));
+            assertSameTelegram(telegram, kryo.copy(telegram));
+
+            // A lazy telegram becomes a normal one
+            DSMRTelegram lazyTelegram = ParseDsmrTelegram.parseLazy(TELEGRAM);
+            assertSameTelegram(lazyTelegram, (DSMRTelegram) deserialize(kryo, serialize(kryo, lazyTelegram)));
+
+            // An empty telegram
+            DSMRTelegram empty = new DSMRTelegram();
+            assertSameTelegram(empty, (DSMRTelegram) deserialize(kryo, serialize(kryo, empty)));
+        } finally {
+            ObisRegistry.unregister("0-0:96.50.68");
+        }
+    }
+
+    @Test
+    void nestedClasses() {
+        Kryo kryo = createKryo();
+        DSMRTelegram telegram = ParseDsmrTelegram.parse(TELEGRAM);
+
+        DSMRTelegram.PowerFailureEvent powerFailureEvent = telegram.getPowerFailureEventLog().get(1);
+        Object copy = deserialize(kryo, serialize(kryo, powerFailureEvent));
+        assertEquals(powerFailureEvent.toString(), copy.toString());
+        assertEquals(powerFailureEvent.toString(), kryo.copy(powerFailureEvent).toString());
+
+        Object mBusEvent = telegram.getMBusEvents().get(2);
+        copy = deserialize(kryo, serialize(kryo, mBusEvent));
+        assertEquals(mBusEvent.toString(), copy.toString());
+        assertEquals(mBusEvent.toString(), kryo.copy(mBusEvent).toString());
+        assertSame(mBusEvent.getClass(), copy.getClass());
+    }
+
+    @Test
+    void comparedToFieldSerializer() throws IOException {
+        List<DSMRTelegram> telegrams = new ArrayList<>();
+        for (String value : readCaptureRecords()) {
+            telegrams.add(ParseDsmrTelegram.parse(value));
+        }
+
+        Kryo kryo = createKryo();
+        Kryo generic = new Kryo();
+        generic.setRegistrationRequired(false);
+
+        long size = 0;
+        long genericSize = 0;
+        for (DSMRTelegram telegram : telegrams) {
+            byte[] bytes = serialize(kryo, telegram);
+            size += bytes.length;
+            assertSameTelegram(telegram, (DSMRTelegram) deserialize(kryo, bytes));
+            genericSize += serialize(generic, telegram).length;
+        }
+        LOG.info("Serialized {} telegrams: {} bytes with DSMRKryo, {} bytes with the FieldSerializer.",
+            telegrams.size(), size, genericSize);
+        assertTrue(size * 2 < genericSize, "Expected to be less than half the size: " + size + " vs " + genericSize);
+
+        // A rough indication of the speed difference
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (DSMRTelegram telegram : telegrams) {
+                deserialize(kryo, serialize(kryo, telegram));
+            }
+            long dsmrKryo = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (DSMRTelegram telegram : telegrams) {
+                deserialize(generic, serialize(generic, telegram));
+            }
+            long fieldSerializer = System.nanoTime() - start;
+            LOG.info("Round trip of {} telegrams: DSMRKryo {} ms, FieldSerializer {} ms",
+                telegrams.size(), dsmrKryo / 1_000_000, fieldSerializer / 1_000_000);
+        }
+    }
+}
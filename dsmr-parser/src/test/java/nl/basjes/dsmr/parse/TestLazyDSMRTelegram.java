@@ -0,0 +1,175 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.LazyDSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.TelegramField;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestLazyDSMRTelegram {
+
+    // The CRC is made valid so the telegram is valid.
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISk5\\2MT382-1000\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(101209113020W)\r\n" +
+        "0-0:96.1.1(4B384547303034303436333935353037)\r\n" +
+        "1-0:1.8.1(123456.789*kWh)\r\n" +
+        "1-0:1.8.2(123456.789*kWh)\r\n" +
+        "1-0:2.8.1(123456.789*kWh)\r\n" +
+        "1-0:2.8.2(123456.789*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(01.193*kW)\r\n" +
+        "1-0:2.7.0(00.000*kW)\r\n" +
+        "0-0:96.7.21(00004)\r\n" +
+        "0-0:96.7.9(00002)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(101208152415W)(0000000240*s)(101208151004W)(0000000301*s)\r\n" +
+        "1-0:32.32.0(00002)\r\n" +
+        "1-0:32.36.0(00000)\r\n" +
+        "0-0:96.13.0(303132333435363738393A3B3C3D3E3F)\r\n" +
+        "1-0:32.7.0(220.1*V)\r\n" +
+        "1-0:31.7.0(001*A)\r\n" +
+        "1-0:21.7.0(01.111*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(3232323241424344313233343536373839)\r\n" +
+        "0-1:24.2.1(101209112500W)(12785.123*m3)\r\n" +
+        "!0000\r\n");
+
+    private static LazyDSMRTelegram lazy(String telegram) {
+        LazyDSMRTelegram lazyTelegram = LazyDSMRTelegram.parse(telegram);
+        assertNotNull(lazyTelegram);
+        return lazyTelegram;
+    }
+
+    // Each value must be the same as in the normal parse, even if it is the first (and only) thing that is requested.
+    private void assertSameValue(Function<DSMRTelegram, Object> getter) {
+        DSMRTelegram expected = ParseDsmrTelegram.parse(TELEGRAM);
+        assertEquals(String.valueOf(getter.apply(expected)), String.valueOf(getter.apply(lazy(TELEGRAM))));
+    }
+
+    @Test
+    void sameValues() {
+        assertTrue(ParseDsmrTelegram.parse(TELEGRAM).isValid());
+        assertSameValue(DSMRTelegram::isValid);
+        assertSameValue(DSMRTelegram::isValidCRC);
+        assertSameValue(DSMRTelegram::getRawIdent);
+        assertSameValue(DSMRTelegram::getIdent);
+        assertSameValue(DSMRTelegram::getEquipmentBrandTag);
+        assertSameValue(DSMRTelegram::getCrc);
+        assertSameValue(DSMRTelegram::getP1Version);
+        assertSameValue(DSMRTelegram::getTimestamp);
+        assertSameValue(DSMRTelegram::getTimestampEpochSecond);
+        assertSameValue(DSMRTelegram::getEquipmentId);
+        assertSameValue(DSMRTelegram::getElectricityTariffIndicator);
+        assertSameValue(DSMRTelegram::getElectricityReceivedLowTariff);
+        assertSameValue(DSMRTelegram::getElectricityPowerReceived);
+        assertSameValue(DSMRTelegram::getPowerFailures);
+        assertSameValue(DSMRTelegram::getPowerFailureEventLogSize);
+        assertSameValue(DSMRTelegram::getPowerFailureEventLog);
+        assertSameValue(DSMRTelegram::getVoltageSagsPhaseL1);
+        assertSameValue(DSMRTelegram::getVoltageL1);
+        assertSameValue(DSMRTelegram::getVoltageL2);
+        assertSameValue(DSMRTelegram::getCurrentL1);
+        assertSameValue(DSMRTelegram::getPowerReceivedL1);
+        assertSameValue(DSMRTelegram::getMessage);
+        assertSameValue(DSMRTelegram::getMessageCodes);
+        assertSameValue(DSMRTelegram::getMBusEvents);
+        assertSameValue(DSMRTelegram::getMBusEventList);
+        assertSameValue(DSMRTelegram::getGasEquipmentId);
+        assertSameValue(DSMRTelegram::getGasTimestamp);
+        assertSameValue(DSMRTelegram::getGasM3);
+        assertSameValue(DSMRTelegram::getSlaveEMeterkWh);
+        assertSameValue(DSMRTelegram::getPresentFields);
+        assertSameValue(t -> t.isPresent(TelegramField.VOLTAGE_L1));
+        assertSameValue(t -> t.isPresent(TelegramField.VOLTAGE_L3));
+        assertSameValue(t -> t.isPresent(TelegramField.GAS_M3));
+        assertSameValue(Utils::withoutReceiveTimestamp);
+    }
+
+    @Test
+    void onlyDecodedWhenRequested() {
+        // A timestamp that is syntactically correct but does not exist.
+        String telegram = TELEGRAM.replace("0-0:1.0.0(101209113020W)", "0-0:1.0.0(101309113020W)");
+        assertThrows(DateTimeException.class, () -> ParseDsmrTelegram.parse(telegram));
+
+        LazyDSMRTelegram lazyTelegram = lazy(telegram);
+        assertEquals(220.1, lazyTelegram.getVoltageL1(), 0.001);
+        assertEquals(12785.123, lazyTelegram.getGasM3(), 0.001);
+        assertThrows(DateTimeException.class, lazyTelegram::getTimestamp);
+    }
+
+    @Test
+    void syntaxErrorsAreFoundImmediately() {
+        // Anything the fast path does not accept is parsed by the grammar.
+        assertNull(LazyDSMRTelegram.parse(TELEGRAM.replace("(220.1*V)", "(220.1*A)")));
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parseLazy(TELEGRAM.replace("(220.1*V)", "(220.1*A)"));
+        assertNotNull(dsmrTelegram);
+        assertFalse(dsmrTelegram instanceof LazyDSMRTelegram);
+        assertFalse(dsmrTelegram.isValid());
+
+        assertNull(LazyDSMRTelegram.parse((String) null));
+        assertNull(LazyDSMRTelegram.parse(""));
+        assertNull(ParseDsmrTelegram.parseLazy((String) null));
+        assertNull(ParseDsmrTelegram.parseLazy(null, 0, 0));
+    }
+
+    @Test
+    void inputIsCopied() {
+        byte[] bytes = TELEGRAM.getBytes(US_ASCII);
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parseLazy(bytes, 0, bytes.length);
+        assertInstanceOf(LazyDSMRTelegram.class, dsmrTelegram);
+        Arrays.fill(bytes, (byte) ' ');
+        assertEquals(220.1, dsmrTelegram.getVoltageL1(), 0.001);
+        assertEquals(withoutReceiveTimestamp(ParseDsmrTelegram.parse(TELEGRAM)), withoutReceiveTimestamp(dsmrTelegram));
+    }
+
+    @Test
+    void sameResultsOnRealData() throws IOException {
+        int records = 0;
+        for (String value : readCaptureRecords()) {
+            records++;
+            DSMRTelegram expected = ParseDsmrTelegram.parse(value);
+            DSMRTelegram lazyTelegram = ParseDsmrTelegram.parseLazy(value);
+            assertEquals(expected.getElectricityPowerReceived(), lazyTelegram.getElectricityPowerReceived());
+            assertEquals(expected.isValid(), lazyTelegram.isValid());
+            assertEquals(withoutReceiveTimestamp(expected), withoutReceiveTimestamp(lazyTelegram));
+        }
+        assertTrue(records > 100);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRParseSession;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.FastParseDsmrTelegram;
+import nl.basjes.dsmr.ObisRegistry;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static nl.basjes.dsmr.ObisRegistry.NOT_AN_OBIS_CODE;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestObisRegistry {
+
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.7.0(00.712*kW)\r\n" +
+        "0-0:96.50.68(12.5)(220528151500S)\r\n" +
+        "1-0:99.1.0(453030343430)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!0000\r\n");
+
+    @Test
+    void packing() {
+        assertNotEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack("1-0:1.8.1"));
+        assertNotEquals(ObisRegistry.pack("1-0:1.8.1"), ObisRegistry.pack("1-0:1.8.2"));
+        assertNotEquals(ObisRegistry.pack("0-1:24.2.1"), ObisRegistry.pack("0-2:24.2.1"));
+        // In a telegram these are different codes
+        assertNotEquals(ObisRegistry.pack("1-0:1.8.1"), ObisRegistry.pack("1-0:01.8.1"));
+
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack(null));
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack(""));
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack("2-0:1.8.1"));
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack("1-0:1.8"));
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack("1-0:1.8.123"));
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack("1-0:1.8.1 "));
+        assertEquals(NOT_AN_OBIS_CODE, ObisRegistry.pack("1-0:1x8.1"));
+
+        assertTrue(ObisRegistry.isKnown("1-0:1.8.1"));
+        assertTrue(ObisRegistry.isKnown("0-4:24.2.1"));
+        assertFalse(ObisRegistry.isKnown("0-5:24.2.1"));
+        assertFalse(ObisRegistry.isKnown("0-0:96.50.68"));
+    }
+
+    @Test
+    void invalidRegistrations() {
+        ObisRegistry.Decoder ignore = (telegram, obisCode, values) -> { };
+        assertThrows(IllegalArgumentException.class, () -> ObisRegistry.register("1-0:1.8.1", ignore));
+        assertThrows(IllegalArgumentException.class, () -> ObisRegistry.register("Not a code", ignore));
+        assertThrows(IllegalArgumentException.class, () -> ObisRegistry.unregister("1-0:1.8.1"));
+        assertThrows(NullPointerException.class, () -> ObisRegistry.register("0-0:96.50.68", null));
+        assertFalse(ObisRegistry.unregister("0-0:96.50.68"));
+    }
+
+    @Test
+    void customDecoder() {
+        // Without a decoder the line is ignored
+        DSMRTelegram dsmrTelegram = FastParseDsmrTelegram.parse(TELEGRAM);
+        assertNotNull(dsmrTelegram);
+        assertTrue(dsmrTelegram.isValid());
+        assertEquals(Collections.emptyMap(), dsmrTelegram.getCustomValues());
+
+        ObisRegistry.register("0-0:96.50.68", (telegram, obisCode, values) -> {
+            telegram.putCustomValue(obisCode, Double.valueOf(values.get(0)));
+            telegram.putCustomValue(obisCode + " timestamp", values.get(1));
+        });
+        try {
+            assertTrue(ObisRegistry.isKnown("0-0:96.50.68"));
+
+            dsmrTelegram = FastParseDsmrTelegram.parse(TELEGRAM);
+            assertNotNull(dsmrTelegram);
+            assertTrue(dsmrTelegram.isValid());
+            assertEquals(12.5, dsmrTelegram.getCustomValues().get("0-0:96.50.68"));
+            assertEquals("220528151500S", dsmrTelegram.getCustomValues().get("0-0:96.50.68 timestamp"));
+            assertEquals(2, dsmrTelegram.getCustomValues().size());
+            assertEquals(4029.917, dsmrTelegram.getGasM3(), 0.0001);
+
+            // Same in the grammar, the lazy and the session based parsers.
+            assertEquals(withoutReceiveTimestamp(dsmrTelegram), withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(TELEGRAM)));
+            assertEquals(dsmrTelegram.getCustomValues(), ParseDsmrTelegram.parseLazy(TELEGRAM).getCustomValues());
+            assertEquals(dsmrTelegram.getCustomValues(), new DSMRParseSession().parse(TELEGRAM).getCustomValues());
+
+            // A refilled telegram does not retain the values.
+            ParseDsmrTelegram.parseInto(TELEGRAM.replace("0-0:96.50.68(12.5)(220528151500S)\r\n", ""), dsmrTelegram);
+            assertEquals(Collections.emptyMap(), dsmrTelegram.getCustomValues());
+        } finally {
+            assertTrue(ObisRegistry.unregister("0-0:96.50.68"));
+        }
+        assertFalse(ObisRegistry.isKnown("0-0:96.50.68"));
+        assertEquals(Collections.emptyMap(), FastParseDsmrTelegram.parse(TELEGRAM).getCustomValues());
+    }
+
+    @Test
+    void manyCodes() {
+        int[] counter = new int[1];
+        ObisRegistry.Decoder count = (telegram, obisCode, values) -> counter[0]++;
+        for (int d = 0; d < 100; d++) {
+            ObisRegistry.register("0-5:96." + d + ".1", count);
+        }
+        try {
+            for (int d = 0; d < 100; d++) {
+                assertTrue(ObisRegistry.isKnown("0-5:96." + d + ".1"));
+                assertFalse(ObisRegistry.isKnown("0-5:96." + d + ".2"));
+            }
+            // The codes of the specification are still there.
+            assertTrue(ObisRegistry.isKnown("1-0:1.8.1"));
+            FastParseDsmrTelegram.parse(TELEGRAM.replace("0-0:96.50.68", "0-5:96.42.1"));
+            assertEquals(1, counter[0]);
+        } finally {
+            for (int d = 0; d < 100; d++) {
+                ObisRegistry.unregister("0-5:96." + d + ".1");
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.JfrParseListener;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseListener;
+import nl.basjes.dsmr.ParseListeners;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static nl.basjes.dsmr.ParseListener.Outcome.CRC_FAILURE;
+import static nl.basjes.dsmr.ParseListener.Outcome.SYNTAX_ERROR;
+import static nl.basjes.dsmr.ParseListener.Outcome.UNKNOWN_COSEM_ID;
+import static nl.basjes.dsmr.ParseListener.Outcome.VALID;
+import static nl.basjes.dsmr.ParseListener.Stage.CRC;
+import static nl.basjes.dsmr.ParseListener.Stage.FAST_PATH;
+import static nl.basjes.dsmr.ParseListener.Stage.LEX;
+import static nl.basjes.dsmr.ParseListener.Stage.PARSE;
+import static nl.basjes.dsmr.ParseListener.Stage.VISIT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParseListener {
+
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.8.2(013315.593*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:32.7.0(238.3*V)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!0000\r\n");
+
+    private static final class Counting implements ParseListener {
+        private final Map<Stage, Integer>   stages   = new EnumMap<>(Stage.class);
+        private final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+
+        @Override
+        public void onStage(Stage stage, long nanos) {
+            assertTrue(nanos >= 0, "Negative time for " + stage);
+            stages.merge(stage, 1, Integer::sum);
+        }
+
+        @Override
+        public void onOutcome(Outcome outcome) {
+            outcomes.merge(outcome, 1, Integer::sum);
+        }
+
+        int stage(Stage stage) {
+            return stages.getOrDefault(stage, 0);
+        }
+
+        int outcome(Outcome outcome) {
+            return outcomes.getOrDefault(outcome, 0);
+        }
+    }
+
+    @AfterEach
+    void noListeners() {
+        while (ParseListeners.current() != null) {
+            ParseListeners.unregister(ParseListeners.current());
+        }
+    }
+
+    @Test
+    void stagesAndOutcomes() {
+        assertNull(ParseListeners.current());
+        Counting counting = new Counting();
+        ParseListeners.register(counting);
+        assertSame(counting, ParseListeners.current());
+
+        // Handled by the fast path
+        assertTrue(ParseDsmrTelegram.parse(TELEGRAM).isValid());
+        assertEquals(1, counting.stage(FAST_PATH));
+        assertEquals(1, counting.stage(CRC));
+        assertEquals(0, counting.stage(LEX));
+        assertEquals(1, counting.outcome(VALID));
+
+        assertFalse(ParseDsmrTelegram.parse(TELEGRAM.replaceAll("![0-9A-F]{4}", "!1234")).isValid());
+        assertEquals(1, counting.outcome(CRC_FAILURE));
+
+        String withUnknown = CheckCRC.fixCrc(TELEGRAM.replace("0-0:96.14.0(0001)", "0-0:96.14.0(0001)\r\n1-0:99.1.0(1)\r\n1-0:99.2.0(2)"));
+        assertTrue(ParseDsmrTelegram.parse(withUnknown).isValid());
+        assertEquals(2, counting.outcome(VALID));
+        assertEquals(2, counting.outcome(UNKNOWN_COSEM_ID));
+
+        // Handled by the grammar (after the fast path gave up)
+        assertFalse(ParseDsmrTelegram.parse(TELEGRAM.replace("(016366.258*kWh)", "(016366.258*kW)")).isValid());
+        assertEquals(4, counting.stage(FAST_PATH));
+        assertEquals(1, counting.stage(LEX));
+        assertEquals(1, counting.stage(PARSE));
+        assertEquals(1, counting.stage(VISIT));
+        assertEquals(1, counting.outcome(SYNTAX_ERROR));
+
+        ParseDsmrTelegram.parseWithGrammar(withUnknown);
+        assertEquals(4, counting.stage(FAST_PATH));
+        assertEquals(2, counting.stage(LEX));
+        assertEquals(3, counting.outcome(VALID));
+        assertEquals(4, counting.outcome(UNKNOWN_COSEM_ID));
+
+        // Two listeners both get everything
+        Counting second = new Counting();
+        ParseListeners.register(second);
+        ParseDsmrTelegram.parse(TELEGRAM);
+        assertEquals(4, counting.outcome(VALID));
+        assertEquals(1, second.outcome(VALID));
+
+        // Nothing is reported after unregistering
+        assertTrue(ParseListeners.unregister(counting));
+        assertFalse(ParseListeners.unregister(counting));
+        assertTrue(ParseListeners.unregister(second));
+        assertNull(ParseListeners.current());
+        ParseDsmrTelegram.parse(TELEGRAM);
+        assertEquals(4, counting.outcome(VALID));
+        assertEquals(1, second.outcome(VALID));
+    }
+
+    @Test
+    void flightRecorderEvents(@TempDir Path directory) throws IOException {
+        ParseListeners.register(new JfrParseListener());
+        Path file = directory.resolve("parse.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("nl.basjes.dsmr.ParseStage");
+            recording.enable("nl.basjes.dsmr.ParseOutcome");
+            recording.start();
+            ParseDsmrTelegram.parse(TELEGRAM);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        long stages = events.stream().filter(e -> e.getEventType().getName().equals("nl.basjes.dsmr.ParseStage")).count();
+        List<RecordedEvent> outcomes = events.stream()
+            .filter(e -> e.getEventType().getName().equals("nl.basjes.dsmr.ParseOutcome"))
+            .collect(Collectors.toList());
+        assertEquals(2, stages);
+        assertEquals(1, outcomes.size());
+        assertEquals("VALID", outcomes.get(0).getString("outcome"));
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.CheckCRC;
+import nl.basjes.dsmr.DSMRParseSession;
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
+import nl.basjes.dsmr.TelegramField;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.dsmr.parse.Utils.readCaptureRecords;
+import static nl.basjes.dsmr.parse.Utils.withoutReceiveTimestamp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParseOptions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestParseOptions.class);
+
+    // The CRC is made valid so the telegram is valid.
+    private static final String TELEGRAM = CheckCRC.fixCrc("/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.8.2(013315.593*kWh)\r\n" +
+        "1-0:2.8.1(002435.025*kWh)\r\n" +
+        "1-0:2.8.2(006153.962*kWh)\r\n" +
+        "0-0:96.14.0(0001)\r\n" +
+        "1-0:1.7.0(00.000*kW)\r\n" +
+        "1-0:2.7.0(00.098*kW)\r\n" +
+        "0-0:96.7.21(00005)\r\n" +
+        "0-0:96.7.9(00004)\r\n" +
+        "1-0:99.97.0(2)(0-0:96.7.19)(180417201458S)(0000000236*s)(220525094346S)(0000002936*s)\r\n" +
+        "1-0:32.32.0(00004)\r\n" +
+        "1-0:32.36.0(00001)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(238.3*V)\r\n" +
+        "1-0:31.7.0(000*A)\r\n" +
+        "1-0:21.7.0(00.054*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!0000\r\n");
+
+    private static final ParseOptions VOLTAGE_AND_GAS = ParseOptions.only(TelegramField.VOLTAGE_L1, TelegramField.GAS_M3);
+
+    // The fast path, the bytes and the grammar must all give the same result
+    private static DSMRTelegram parse(String telegram, ParseOptions options) {
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(telegram, options);
+        // Unusual but valid spacing forces the use of the grammar (the CRC is made valid again if it was)
+        String forGrammar = telegram.replace("1-0:1.8.1(", "1-0:1.8.1 (");
+        if (dsmrTelegram.isValidCRC()) {
+            forGrammar = CheckCRC.fixCrc(forGrammar);
+        }
+        assertEquals(
+            withoutReceiveTimestamp(dsmrTelegram).replaceAll("crc=[0-9A-F]*", ""),
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(forGrammar, options)).replaceAll("crc=[0-9A-F]*", ""),
+            "The grammar produced a different result");
+        byte[] bytes = telegram.getBytes(UTF_8);
+        assertEquals(
+            withoutReceiveTimestamp(dsmrTelegram),
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(bytes, 0, bytes.length, options)),
+            "Parsing the bytes produced a different result");
+        return dsmrTelegram;
+    }
+
+    @Test
+    void onlySelectedFields() {
+        DSMRTelegram full = ParseDsmrTelegram.parse(TELEGRAM);
+        DSMRTelegram dsmrTelegram = parse(TELEGRAM, VOLTAGE_AND_GAS);
+        assertNotNull(dsmrTelegram);
+
+        // Always present
+        assertTrue(dsmrTelegram.isValid());
+        assertTrue(dsmrTelegram.isValidCRC());
+        assertEquals(full.getIdent(),     dsmrTelegram.getIdent());
+        assertEquals(full.getP1Version(), dsmrTelegram.getP1Version());
+        assertEquals(full.getCrc(),       dsmrTelegram.getCrc());
+
+        // The selected fields
+        assertEquals(full.getVoltageL1(),      dsmrTelegram.getVoltageL1());
+        assertEquals(full.getGasM3(),          dsmrTelegram.getGasM3());
+        assertEquals(full.getGasEquipmentId(), dsmrTelegram.getGasEquipmentId());
+        assertEquals(full.getGasTimestamp(),   dsmrTelegram.getGasTimestamp());
+        assertEquals(full.getMBusEvents().toString(), dsmrTelegram.getMBusEvents().toString());
+        assertEquals(TelegramField.VOLTAGE_L1.mask() | TelegramField.GAS_M3.mask() | TelegramField.MBUS_EVENTS.mask(),
+            dsmrTelegram.getPresentFields());
+
+        // The rest was skipped
+        assertNull(dsmrTelegram.getTimestamp());
+        assertNull(dsmrTelegram.getEquipmentId());
+        assertNull(dsmrTelegram.getElectricityReceivedLowTariff());
+        assertNull(dsmrTelegram.getCurrentL1());
+        assertNull(dsmrTelegram.getMessageCodes());
+        assertTrue(dsmrTelegram.getPowerFailureEventLog().isEmpty());
+        assertFalse(dsmrTelegram.isPresent(TelegramField.POWER_FAILURE_EVENT_LOG));
+
+        // Without the MBus events
+        dsmrTelegram = parse(TELEGRAM, ParseOptions.only(TelegramField.POWER_FAILURE_EVENT_LOG));
+        assertTrue(dsmrTelegram.isValid());
+        assertTrue(dsmrTelegram.getMBusEvents().isEmpty());
+        assertNull(dsmrTelegram.getGasM3());
+        assertNull(dsmrTelegram.getVoltageL1());
+        assertEquals(full.getPowerFailureEventLog().toString(), dsmrTelegram.getPowerFailureEventLog().toString());
+        assertEquals(2, dsmrTelegram.getPowerFailureEventLogSize());
+
+        // All is the same as the normal parse
+        assertEquals(withoutReceiveTimestamp(full), withoutReceiveTimestamp(parse(TELEGRAM, ParseOptions.ALL)));
+    }
+
+    @Test
+    void sameValidity() {
+        // A wrong unit for the gas meter makes the telegram invalid, also if the gas is not needed.
+        String wrongGasUnit = CheckCRC.fixCrc(TELEGRAM.replace("*m3)", "*GJ)"));
+        assertFalse(ParseDsmrTelegram.parse(wrongGasUnit).isValid());
+        assertFalse(parse(wrongGasUnit, VOLTAGE_AND_GAS).isValid());
+        assertFalse(parse(wrongGasUnit, ParseOptions.only(TelegramField.VOLTAGE_L1)).isValid());
+
+        String badCrc = TELEGRAM.replaceAll("![0-9A-F]{4}", "!1234");
+        assertFalse(parse(badCrc, ParseOptions.only(TelegramField.VOLTAGE_L1)).isValid());
+
+        // A syntax error in a skipped field
+        String syntaxError = CheckCRC.fixCrc(TELEGRAM.replace("(0001)", "(0001"));
+        assertFalse(ParseDsmrTelegram.parse(syntaxError, ParseOptions.only(TelegramField.VOLTAGE_L1)).isValid());
+    }
+
+    @Test
+    void fromNames() {
+        assertEquals(
+            ParseOptions.only(TelegramField.VOLTAGE_L1, TelegramField.GAS_M3, TelegramField.ELECTRICITY_POWER_RECEIVED).toString(),
+            ParseOptions.forNames(Arrays.asList("voltageL1", "gasTimestamp", "ELECTRICITY_POWER_RECEIVED", "p1Version", "crc")).toString());
+
+        ParseOptions options = ParseOptions.forNames(Arrays.asList("equipmentId", "slaveEMeterEquipmentId"));
+        assertTrue(options.includes(TelegramField.EQUIPMENT_ID));
+        assertTrue(options.includes(TelegramField.SLAVE_E_METER_KWH));
+        assertTrue(options.includesMBus());
+        assertFalse(options.includes(TelegramField.GAS_M3));
+        assertFalse(ParseOptions.forNames(List.of("voltageL1")).includesMBus());
+
+        assertThrows(IllegalArgumentException.class, () -> ParseOptions.forNames(List.of("voltageL9")));
+    }
+
+    @Test
+    void strictMode() {
+        assertEquals("ParseOptions(ALL, STRICT)", ParseOptions.STRICT.toString());
+        assertTrue(VOLTAGE_AND_GAS.strict().isStrict());
+        assertFalse(VOLTAGE_AND_GAS.strict().lenient().isStrict());
+        assertEquals(VOLTAGE_AND_GAS.toString().replace(")", ", STRICT)"), VOLTAGE_AND_GAS.strict().toString());
+
+        // A valid telegram gives the same result (via the fast path, the bytes and the grammar)
+        assertEquals(withoutReceiveTimestamp(ParseDsmrTelegram.parse(TELEGRAM)), withoutReceiveTimestamp(parse(TELEGRAM, ParseOptions.STRICT)));
+
+        // A wrong CRC: lenient still extracts everything, strict does not even look at it
+        String badCrc = TELEGRAM.replace("(238.3*V)", "(238.4*V)");
+        DSMRTelegram lenient = ParseDsmrTelegram.parse(badCrc, ParseOptions.ALL);
+        assertFalse(lenient.isValid());
+        assertEquals(238.4, lenient.getVoltageL1(), 0.0001);
+
+        byte[] bytes = badCrc.getBytes(UTF_8);
+        for (DSMRTelegram strict : Arrays.asList(
+            ParseDsmrTelegram.parse(badCrc, ParseOptions.STRICT),
+            ParseDsmrTelegram.parse(badCrc.replace("1-0:1.8.1(", "1-0:1.8.1 ("), ParseOptions.STRICT), // Needs the grammar
+            ParseDsmrTelegram.parse(badCrc.replace("(0001)", "(\u00e91)"), ParseOptions.STRICT),         // Not ASCII
+            ParseDsmrTelegram.parse(bytes, 0, bytes.length, ParseOptions.STRICT),
+            ParseDsmrTelegram.parseInto(bytes, 0, bytes.length, ParseOptions.STRICT, ParseDsmrTelegram.parse(TELEGRAM)))) {
+            assertNotNull(strict);
+            assertFalse(strict.isValid());
+            assertFalse(strict.isValidCRC());
+            assertNotNull(strict.getReceiveTimestamp());
+            assertNull(strict.getRawIdent());
+            assertNull(strict.getVoltageL1());
+        }
+
+        // Telegrams without a CRC (DSMR 2.2) are still parsed
+        String withoutCrc = TELEGRAM.replaceAll("![0-9A-F]{4}", "!").replace("1-3:0.2.8(50)\r\n", "");
+        assertEquals(
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(withoutCrc)),
+            withoutReceiveTimestamp(ParseDsmrTelegram.parse(withoutCrc, ParseOptions.STRICT)));
+
+        // A session skips the rejected telegram
+        DSMRParseSession session = new DSMRParseSession(ParseOptions.STRICT);
+        assertTrue(session.parse(TELEGRAM).isValid());
+        assertFalse(session.parse(badCrc).isValid());
+        String next = CheckCRC.fixCrc(TELEGRAM.replace("(238.3*V)", "(238.5*V)"));
+        assertEquals(withoutReceiveTimestamp(ParseDsmrTelegram.parse(next)), withoutReceiveTimestamp(session.parse(next)));
+
+        // A rough indication of the speed difference on a noisy line (every fifth telegram is damaged)
+        List<String> noisy = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            noisy.add(i % 5 == 4 ? TELEGRAM.replace("*kWh)", "*kW#)") : TELEGRAM);
+        }
+        for (ParseOptions options : Arrays.asList(ParseOptions.ALL, ParseOptions.STRICT, ParseOptions.ALL, ParseOptions.STRICT)) {
+            long start = System.nanoTime();
+            int valid = 0;
+            for (String telegram : noisy) {
+                if (ParseDsmrTelegram.parse(telegram, options).isValid()) {
+                    valid++;
+                }
+            }
+            assertEquals(800, valid);
+            LOG.info("Parsing {} noisy records with {}: {} ms", noisy.size(), options, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @Test
+    void speedOnRealData() throws IOException {
+        List<String> records = readCaptureRecords();
+
+        ParseOptions options = ParseOptions.only(TelegramField.ELECTRICITY_POWER_RECEIVED, TelegramField.ELECTRICITY_POWER_RETURNED);
+        for (String record : records) {
+            DSMRTelegram full = ParseDsmrTelegram.parse(record);
+            DSMRTelegram projected = ParseDsmrTelegram.parse(record, options);
+            assertEquals(full.isValid(), projected.isValid());
+            assertEquals(full.getElectricityPowerReceived(), projected.getElectricityPowerReceived());
+            assertEquals(full.getElectricityPowerReturned(), projected.getElectricityPowerReturned());
+        }
+
+        // A rough indication of the speed difference
+        long start = System.nanoTime();
+        for (String record : records) {
+            ParseDsmrTelegram.parse(record);
+        }
+        long full = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (String record : records) {
+            ParseDsmrTelegram.parse(record, options);
+        }
+        long projected = System.nanoTime() - start;
+        LOG.info("Parsing {} records: all fields {} ms, only 2 fields {} ms", records.size(), full / 1_000_000, projected / 1_000_000);
+    }
+}
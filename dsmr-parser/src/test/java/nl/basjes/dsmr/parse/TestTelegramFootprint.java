@@ -0,0 +1,131 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.dsmr.parse;
+
+import nl.basjes.dsmr.DSMRTelegram;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.TelegramField;
+import nl.basjes.dsmr.TimestampParser;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZoneOffset;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTelegramFootprint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestTelegramFootprint.class);
+
+    private static final String TELEGRAM = "/ISK5\\2M550T-1012\r\n" +
+        "\r\n" +
+        "1-3:0.2.8(50)\r\n" +
+        "0-0:1.0.0(220528151729S)\r\n" +
+        "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+        "1-0:1.8.1(016366.258*kWh)\r\n" +
+        "1-0:1.8.2(013315.593*kWh)\r\n" +
+        "1-0:2.8.1(002435.025*kWh)\r\n" +
+        "1-0:2.8.2(006153.962*kWh)\r\n" +
+        "0-0:96.14.0(0002)\r\n" +
+        "1-0:1.7.0(00.712*kW)\r\n" +
+        "1-0:2.7.0(00.000*kW)\r\n" +
+        "0-0:96.7.21(00005)\r\n" +
+        "0-0:96.7.9(00004)\r\n" +
+        "1-0:99.97.0(0)(0-0:96.7.19)\r\n" +
+        "1-0:32.32.0(00004)\r\n" +
+        "1-0:52.32.0(00003)\r\n" +
+        "1-0:72.32.0(00003)\r\n" +
+        "1-0:32.36.0(00001)\r\n" +
+        "1-0:52.36.0(00001)\r\n" +
+        "1-0:72.36.0(00001)\r\n" +
+        "0-0:96.13.0()\r\n" +
+        "1-0:32.7.0(231.1*V)\r\n" +
+        "1-0:52.7.0(232.2*V)\r\n" +
+        "1-0:72.7.0(233.3*V)\r\n" +
+        "1-0:31.7.0(001*A)\r\n" +
+        "1-0:51.7.0(002*A)\r\n" +
+        "1-0:71.7.0(003*A)\r\n" +
+        "1-0:21.7.0(00.211*kW)\r\n" +
+        "1-0:41.7.0(00.412*kW)\r\n" +
+        "1-0:61.7.0(00.613*kW)\r\n" +
+        "1-0:22.7.0(00.000*kW)\r\n" +
+        "1-0:42.7.0(00.000*kW)\r\n" +
+        "1-0:62.7.0(00.000*kW)\r\n" +
+        "0-1:24.1.0(003)\r\n" +
+        "0-1:96.1.0(4730303339303031363532303530323136)\r\n" +
+        "0-1:24.2.1(220528151500S)(04029.917*m3)\r\n" +
+        "!0000\r\n";
+
+    @Test
+    void measureFootprint() {
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(TELEGRAM);
+        assertNotNull(dsmrTelegram);
+        assertNotNull(dsmrTelegram.getPowerReturnedL3());
+
+        // The time zones are shared by all telegrams
+        GraphLayout shared = GraphLayout.parseInstance(dsmrTelegram.getReceiveTimestamp().getZone(), ZoneOffset.ofHours(1), ZoneOffset.ofHours(2));
+        GraphLayout layout = GraphLayout.parseInstance(dsmrTelegram).subtract(shared);
+        LOG.info("A three phase telegram with a gas meter retains {} objects with a total of {} bytes.",
+            layout.totalCount(), layout.totalSize());
+        LOG.info("Footprint:\n{}", layout.toFootprint());
+
+        // With boxed values this was 65 objects.
+        assertTrue(layout.totalCount() <= 40, "Too many objects: " + layout.totalCount());
+    }
+
+    @Test
+    void presentFields() {
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(TELEGRAM.replace("1-0:72.7.0(233.3*V)\r\n", ""));
+        assertNotNull(dsmrTelegram);
+
+        assertTrue(dsmrTelegram.isPresent(TelegramField.VOLTAGE_L2));
+        assertEquals(232.2, dsmrTelegram.getVoltageL2(), 0.0001);
+        assertFalse(dsmrTelegram.isPresent(TelegramField.VOLTAGE_L3));
+        assertNull(dsmrTelegram.getVoltageL3());
+        assertFalse(dsmrTelegram.isPresent(TelegramField.SLAVE_E_METER_KWH));
+        assertNull(dsmrTelegram.getSlaveEMeterkWh());
+
+        assertTrue(dsmrTelegram.isPresent(TelegramField.GAS_M3));
+        assertEquals(4029.917, dsmrTelegram.getGasM3(), 0.0001);
+        assertEquals(2L, dsmrTelegram.getElectricityTariffIndicator());
+
+        assertEquals("2022-05-28T15:17:29+02:00", dsmrTelegram.getTimestamp().format(ISO_OFFSET_DATE_TIME));
+        assertEquals(dsmrTelegram.getTimestamp().toEpochSecond(), dsmrTelegram.getTimestampEpochSecond());
+
+        // The toString still shows the values as they were.
+        String asString = dsmrTelegram.toString();
+        assertTrue(asString.contains("timestamp=2022-05-28T15:17:29+02:00,"), asString);
+        assertTrue(asString.contains("voltageL2=232.2,"), asString);
+        assertTrue(asString.contains("voltageL3=null,"), asString);
+
+        // Without a timestamp
+        dsmrTelegram = ParseDsmrTelegram.parse(TELEGRAM.replace("0-0:1.0.0(220528151729S)\r\n", ""));
+        assertNotNull(dsmrTelegram);
+        assertFalse(dsmrTelegram.isPresent(TelegramField.TIMESTAMP));
+        assertNull(dsmrTelegram.getTimestamp());
+        assertEquals(TimestampParser.NO_TIMESTAMP, dsmrTelegram.getTimestampEpochSecond());
+    }
+}
@@ -21,9 +21,19 @@ package nl.basjes.dsmr.parse;
 import nl.basjes.dsmr.TimestampParser;
 import org.junit.jupiter.api.Test;
 
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class TestTimestampParser {
 
@@ -74,4 +84,86 @@ class TestTimestampParser {
         assertNull(timestampParser.parse("Not a date string at all"));
     }
 
+    @Test
+    void testBytes() {
+        TimestampParser timestampParser = new TimestampParser();
+        byte[] bytes = "(180417201458S)(190324151444)".getBytes(US_ASCII);
+        assertEquals("2018-04-17T20:14:58+02:00", timestampParser.parse(bytes, 1, 13).format(ISO_OFFSET_DATE_TIME));
+        assertEquals("2019-03-24T15:14:44+01:00", timestampParser.parse(bytes, 16, 12).format(ISO_OFFSET_DATE_TIME));
+        assertNull(timestampParser.parse(bytes, 0, 0));
+        assertNull(timestampParser.parse(null, 0, 0));
+        assertEquals(TimestampParser.NO_TIMESTAMP, timestampParser.parseEpochSecond(null));
+        assertEquals(TimestampParser.NO_TIMESTAMP, timestampParser.parseEpochSecond(""));
+        assertEquals(TimestampParser.NO_TIMESTAMP, timestampParser.parseEpochSecond("Not a date string at all"));
+        assertEquals(TimestampParser.NO_TIMESTAMP, timestampParser.parseEpochSecond(bytes, 0, 0));
+    }
+
+    // The original regex based implementation
+    private static final Pattern LEGACY_PATTERN =
+        Pattern.compile("([0-9][0-9])([01][0-9])([0-3][0-9])([0-2][0-9])([0-5][0-9])([0-5][0-9])([SsWw]?)");
+
+    private static ZonedDateTime legacyParse(String dsmrTimestamp) {
+        Matcher matcher = LEGACY_PATTERN.matcher(dsmrTimestamp);
+        if (!matcher.find()) {
+            return null;
+        }
+        ZonedDateTime timestamp = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC)
+            .withYear(2000 + Integer.parseInt(matcher.group(1)))
+            .withMonth(Integer.parseInt(matcher.group(2)))
+            .withDayOfMonth(Integer.parseInt(matcher.group(3)))
+            .withHour(Integer.parseInt(matcher.group(4)))
+            .withMinute(Integer.parseInt(matcher.group(5)))
+            .withSecond(Integer.parseInt(matcher.group(6)));
+        switch (matcher.group(7)) {
+            case "S":
+            case "s":
+                return timestamp.withZoneSameLocal(ZoneOffset.of("+02:00"));
+            case "W":
+            case "w":
+                return timestamp.withZoneSameLocal(ZoneOffset.of("+01:00"));
+            default:
+                return timestamp.withZoneSameLocal(ZoneId.of("Europe/Amsterdam"));
+        }
+    }
+
+    private void assertSameAsLegacy(TimestampParser timestampParser, String dsmrTimestamp) {
+        byte[] bytes = dsmrTimestamp.getBytes(US_ASCII);
+        ZonedDateTime expected;
+        try {
+            expected = legacyParse(dsmrTimestamp);
+        } catch (DateTimeException e) {
+            assertThrows(DateTimeException.class, () -> timestampParser.parse(dsmrTimestamp), dsmrTimestamp);
+            assertThrows(DateTimeException.class, () -> timestampParser.parse(bytes, 0, bytes.length), dsmrTimestamp);
+            assertThrows(DateTimeException.class, () -> timestampParser.parseEpochSecond(dsmrTimestamp), dsmrTimestamp);
+            assertThrows(DateTimeException.class, () -> timestampParser.parseEpochSecond(bytes, 0, bytes.length), dsmrTimestamp);
+            return;
+        }
+        assertEquals(expected, timestampParser.parse(dsmrTimestamp), dsmrTimestamp);
+        assertEquals(expected, timestampParser.parse(bytes, 0, bytes.length), dsmrTimestamp);
+        long expectedEpochSecond = expected == null ? TimestampParser.NO_TIMESTAMP : expected.toEpochSecond();
+        assertEquals(expectedEpochSecond, timestampParser.parseEpochSecond(dsmrTimestamp), dsmrTimestamp);
+        assertEquals(expectedEpochSecond, timestampParser.parseEpochSecond(bytes, 0, bytes.length), dsmrTimestamp);
+    }
+
+    @Test
+    void testSameAsLegacy() {
+        TimestampParser timestampParser = new TimestampParser();
+        String[] zones = {"", "S", "s", "W", "w"};
+        for (String date: new String[]{"190101", "190331", "191027", "200229", "210229", "190230", "191131", "190001", "191301", "190100"}) {
+            for (String time: new String[]{"000000", "015959", "020000", "023030", "030000", "235959", "240000", "290000"}) {
+                for (String zone: zones) {
+                    assertSameAsLegacy(timestampParser, date + time + zone);
+                }
+            }
+        }
+
+        // Things only the regex handles
+        assertSameAsLegacy(timestampParser, "190324151444xxx");
+        assertSameAsLegacy(timestampParser, "1903241514440");
+        assertSameAsLegacy(timestampParser, "x190324151444S");
+        assertSameAsLegacy(timestampParser, "190324151464S");
+        assertSameAsLegacy(timestampParser, "19032415144");
+        assertSameAsLegacy(timestampParser, "Not a date string at all");
+    }
+
 }
@@ -20,19 +20,48 @@ package nl.basjes.dsmr.parse;
 
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.MBusEvent;
+import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.parse.ReadUTF8RecordStream;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 final class Utils {
 
+    /** A raw capture of a P1 port (the first telegram is cut off and the '\r' of each line was lost). */
+    public static final String CAPTURE_FILE = "../testfiles/ttyUSB0-raw.txt";
+
     private Utils() {
         // Utility class
     }
 
+    /**
+     * @return The telegrams in the CAPTURE_FILE (without the empty rest at the end of the file).
+     * @throws IOException If the file cannot be read
+     */
+    public static List<String> readCaptureRecords() throws IOException {
+        List<String> records = new ArrayList<>();
+        try (FileInputStream inputStream = new FileInputStream(CAPTURE_FILE)) {
+            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(inputStream, "\r?\n![0-9A-F]{4}\r?\n");
+            String value;
+            while ((value = reader.read()) != null) {
+                if (!value.isEmpty()) {
+                    records.add(value);
+                }
+            }
+        }
+        return records;
+    }
+
     public static void assertPowerFailureEvent(DSMRTelegram.PowerFailureEvent powerFailureEvent, String startTime, String endTime, String duration) {
         String actualStartTime  = powerFailureEvent.getStartTime().toString();
         String actualEndTime    = powerFailureEvent.getEndTime().toString();
@@ -46,6 +75,42 @@ final class Utils {
         }
     }
 
+    /**
+     * The receiveTimestamp is the moment of parsing so that can never be the same for two parses of the same input.
+     * @param dsmrTelegram The telegram to describe
+     * @return The toString of the telegram without the receiveTimestamp.
+     */
+    public static String withoutReceiveTimestamp(DSMRTelegram dsmrTelegram) {
+        if (dsmrTelegram == null) {
+            return null;
+        }
+        return dsmrTelegram.toString().replaceAll("receiveTimestamp=[^,]*, ", "");
+    }
+
+    /**
+     * Parse the telegram and verify that the result is exactly the same as when only the ANTLR grammar is used
+     * and when the telegram is parsed directly from the bytes (also lazily).
+     * @param telegram The telegram to parse
+     * @return The parsed telegram
+     */
+    public static DSMRTelegram parse(String telegram) {
+        DSMRTelegram dsmrTelegram = ParseDsmrTelegram.parse(telegram);
+        String expected = withoutReceiveTimestamp(ParseDsmrTelegram.parseWithGrammar(telegram));
+        assertEquals(expected, withoutReceiveTimestamp(dsmrTelegram), "The fast path and the grammar produced a different result");
+
+        if (telegram == null) {
+            return dsmrTelegram;
+        }
+        byte[] bytes = telegram.getBytes(UTF_8);
+        assertEquals(expected, withoutReceiveTimestamp(ParseDsmrTelegram.parse(bytes, 0, bytes.length)),
+            "Parsing the bytes produced a different result");
+        assertEquals(expected, withoutReceiveTimestamp(ParseDsmrTelegram.parseBuffer(ByteBuffer.wrap(bytes))),
+            "Parsing the ByteBuffer produced a different result");
+        assertEquals(expected, withoutReceiveTimestamp(ParseDsmrTelegram.parseLazy(bytes, 0, bytes.length)),
+            "Parsing lazily produced a different result");
+        return dsmrTelegram;
+    }
+
     public static void checkMbus(DSMRTelegram dsmrTelegram,
                            int mBusId,
                            String timeString,
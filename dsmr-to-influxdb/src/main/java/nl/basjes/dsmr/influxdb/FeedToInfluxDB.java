@@ -25,6 +25,9 @@ import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
 import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseListener;
+import nl.basjes.dsmr.ParseListeners;
+import nl.basjes.dsmr.ParseOptions;
 import nl.basjes.parse.ReadUTF8RecordStream;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -34,9 +37,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
-import static nl.basjes.dsmr.CheckCRC.crcIsValid;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public final class FeedToInfluxDB {
 
@@ -47,6 +56,49 @@ public final class FeedToInfluxDB {
 
     private static volatile boolean running = true;
 
+    // The fields that are written to InfluxDB
+    private static final Map<String, Function<DSMRTelegram, Number>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("electricityReceivedLowTariff",    DSMRTelegram::getElectricityReceivedLowTariff);
+        FIELDS.put("electricityReceivedNormalTariff", DSMRTelegram::getElectricityReceivedNormalTariff);
+        FIELDS.put("electricityReturnedLowTariff",    DSMRTelegram::getElectricityReturnedLowTariff);
+        FIELDS.put("electricityReturnedNormalTariff", DSMRTelegram::getElectricityReturnedNormalTariff);
+        FIELDS.put("electricityTariffIndicator",      DSMRTelegram::getElectricityTariffIndicator);
+        FIELDS.put("electricityPowerReceived",        DSMRTelegram::getElectricityPowerReceived);
+        FIELDS.put("electricityPowerReturned",        DSMRTelegram::getElectricityPowerReturned);
+        FIELDS.put("powerFailures",                   DSMRTelegram::getPowerFailures);
+        FIELDS.put("longPowerFailures",               DSMRTelegram::getLongPowerFailures);
+        FIELDS.put("voltageSagsPhaseL1",              DSMRTelegram::getVoltageSagsPhaseL1);
+        FIELDS.put("voltageSagsPhaseL2",              DSMRTelegram::getVoltageSagsPhaseL2);
+        FIELDS.put("voltageSagsPhaseL3",              DSMRTelegram::getVoltageSagsPhaseL3);
+        FIELDS.put("voltageSwellsPhaseL1",            DSMRTelegram::getVoltageSwellsPhaseL1);
+        FIELDS.put("voltageSwellsPhaseL2",            DSMRTelegram::getVoltageSwellsPhaseL2);
+        FIELDS.put("voltageSwellsPhaseL3",            DSMRTelegram::getVoltageSwellsPhaseL3);
+        FIELDS.put("voltageL1",                       DSMRTelegram::getVoltageL1);
+        FIELDS.put("voltageL2",                       DSMRTelegram::getVoltageL2);
+        FIELDS.put("voltageL3",                       DSMRTelegram::getVoltageL3);
+        FIELDS.put("currentL1",                       DSMRTelegram::getCurrentL1);
+        FIELDS.put("currentL2",                       DSMRTelegram::getCurrentL2);
+        FIELDS.put("currentL3",                       DSMRTelegram::getCurrentL3);
+        FIELDS.put("powerReceivedL1",                 DSMRTelegram::getPowerReceivedL1);
+        FIELDS.put("powerReceivedL2",                 DSMRTelegram::getPowerReceivedL2);
+        FIELDS.put("powerReceivedL3",                 DSMRTelegram::getPowerReceivedL3);
+        FIELDS.put("powerReturnedL1",                 DSMRTelegram::getPowerReturnedL1);
+        FIELDS.put("powerReturnedL2",                 DSMRTelegram::getPowerReturnedL2);
+        FIELDS.put("powerReturnedL3",                 DSMRTelegram::getPowerReturnedL3);
+    }
+
+    // Only the fields that are used (and the tags) need to be decoded.
+    // Strict: a telegram with a wrong CRC is dropped without parsing it.
+    private static final ParseOptions PARSE_OPTIONS;
+
+    static {
+        List<String> needed = new ArrayList<>(FIELDS.keySet());
+        needed.add("equipmentId");
+        PARSE_OPTIONS = ParseOptions.forNames(needed).strict();
+    }
+
     public static void main(String... args) throws IOException {
         final CommandOptions commandlineOptions = new CommandOptions();
         final CmdLineParser  parser             = new CmdLineParser(commandlineOptions);
@@ -91,27 +143,36 @@ public final class FeedToInfluxDB {
     public static void readLoop(ReadUTF8RecordStream reader, WriteApiBlocking writeApi) throws IOException {
         LOG.info("Starting read loop");
 
+        // The telegram is parsed straight from the buffer of the reader into the same instance every time.
+        DSMRTelegram parsedTelegram = new DSMRTelegram();
         while (running) {
-            String telegram = reader.read();
+            ParseListener listener = ParseListeners.current();
+            long splitStart = listener == null ? 0 : System.nanoTime();
+            ByteBuffer telegram = reader.readBytes();
+            if (listener != null) {
+                listener.onStage(ParseListener.Stage.SPLIT, System.nanoTime() - splitStart);
+            }
             if (telegram == null) {
                 running = false;
                 LOG.info("End of stream detected");
                 break;
             }
 
-            if (!crcIsValid(telegram)) {
-                LOG.error("DROPPING INVALID Telegram:\nvvvvvvvvvv\n{}\n^^^^^^^^^^\n", telegram);
-                continue;
-            }
-
             DSMRTelegram dsmrTelegram = null;
             try {
-                dsmrTelegram = ParseDsmrTelegram.parse(telegram);
+                dsmrTelegram = ParseDsmrTelegram.parseInto(
+                    telegram.array(), telegram.arrayOffset() + telegram.position(), telegram.remaining(),
+                    PARSE_OPTIONS, parsedTelegram);
             } catch (Exception e) {
                 System.err.println("Exception: " + e);
                 throw e;
             }
 
+            if (dsmrTelegram != null && !dsmrTelegram.isValidCRC()) {
+                LOG.error("DROPPING INVALID Telegram:\nvvvvvvvvvv\n{}\n^^^^^^^^^^\n", UTF_8.decode(telegram));
+                continue;
+            }
+
             if (dsmrTelegram != null && dsmrTelegram.isValid()) {
                 Point point = Point
                     .measurement("electricity")
@@ -120,35 +181,11 @@ public final class FeedToInfluxDB {
                     .time(Instant.ofEpochSecond(dsmrTelegram.getReceiveTimestamp().toEpochSecond()), WritePrecision.S)
 
                     .addTag("equipmentId",                            dsmrTelegram.getEquipmentId())
-                    .addTag("p1Version",                              dsmrTelegram.getP1Version())
-
-                    .addField("electricityReceivedLowTariff",    dsmrTelegram.getElectricityReceivedLowTariff())
-                    .addField("electricityReceivedNormalTariff", dsmrTelegram.getElectricityReceivedNormalTariff())
-                    .addField("electricityReturnedLowTariff",    dsmrTelegram.getElectricityReturnedLowTariff())
-                    .addField("electricityReturnedNormalTariff", dsmrTelegram.getElectricityReturnedNormalTariff())
-                    .addField("electricityTariffIndicator",      dsmrTelegram.getElectricityTariffIndicator())
-                    .addField("electricityPowerReceived",        dsmrTelegram.getElectricityPowerReceived())
-                    .addField("electricityPowerReturned",        dsmrTelegram.getElectricityPowerReturned())
-                    .addField("powerFailures",                   dsmrTelegram.getPowerFailures())
-                    .addField("longPowerFailures",               dsmrTelegram.getLongPowerFailures())
-                    .addField("voltageSagsPhaseL1",              dsmrTelegram.getVoltageSagsPhaseL1())
-                    .addField("voltageSagsPhaseL2",              dsmrTelegram.getVoltageSagsPhaseL2())
-                    .addField("voltageSagsPhaseL3",              dsmrTelegram.getVoltageSagsPhaseL3())
-                    .addField("voltageSwellsPhaseL1",            dsmrTelegram.getVoltageSwellsPhaseL1())
-                    .addField("voltageSwellsPhaseL2",            dsmrTelegram.getVoltageSwellsPhaseL2())
-                    .addField("voltageSwellsPhaseL3",            dsmrTelegram.getVoltageSwellsPhaseL3())
-                    .addField("voltageL1",                       dsmrTelegram.getVoltageL1())
-                    .addField("voltageL2",                       dsmrTelegram.getVoltageL2())
-                    .addField("voltageL3",                       dsmrTelegram.getVoltageL3())
-                    .addField("currentL1",                       dsmrTelegram.getCurrentL1())
-                    .addField("currentL2",                       dsmrTelegram.getCurrentL2())
-                    .addField("currentL3",                       dsmrTelegram.getCurrentL3())
-                    .addField("powerReceivedL1",                 dsmrTelegram.getPowerReceivedL1())
-                    .addField("powerReceivedL2",                 dsmrTelegram.getPowerReceivedL2())
-                    .addField("powerReceivedL3",                 dsmrTelegram.getPowerReceivedL3())
-                    .addField("powerReturnedL1",                 dsmrTelegram.getPowerReturnedL1())
-                    .addField("powerReturnedL2",                 dsmrTelegram.getPowerReturnedL2())
-                    .addField("powerReturnedL3",                 dsmrTelegram.getPowerReturnedL3());
+                    .addTag("p1Version",                              dsmrTelegram.getP1Version());
+
+                for (Map.Entry<String, Function<DSMRTelegram, Number>> field : FIELDS.entrySet()) {
+                    point.addField(field.getKey(), field.getValue().apply(dsmrTelegram));
+                }
 
                 if (writeApi == null) {
                     LOG.info("{}", point.toLineProtocol());
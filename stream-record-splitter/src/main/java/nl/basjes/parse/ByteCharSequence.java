@@ -0,0 +1,83 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * A part of a byte array as ISO-8859-1 characters (so each index in the text is the same index in the bytes).
+ * For ASCII this is the same text as the UTF-8 bytes without decoding or copying them.
+ */
+final class ByteCharSequence implements CharSequence {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private byte[] bytes;
+    private int    offset;
+    private int    length;
+
+    ByteCharSequence set(byte[] newBytes, int newOffset, int newLength) {
+        bytes  = newBytes;
+        offset = newOffset;
+        length = newLength;
+        return this;
+    }
+
+    /**
+     * @return true if all the bytes in the range are ASCII.
+     */
+    static boolean isAscii(byte[] bytes, int from, int to) {
+        int i = from;
+        // 8 bytes at a time: a non ASCII byte has the highest bit set.
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            if (((long) LONGS.get(bytes, i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[offset + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(bytes, offset + start, end - start, ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, ISO_8859_1);
+    }
+}
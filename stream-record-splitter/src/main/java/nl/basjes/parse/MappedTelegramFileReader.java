@@ -0,0 +1,275 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.parse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the DSMR telegrams from a (possibly very large) raw capture file of a P1 port.
+ * <p>
+ * The file is memory mapped and split into byte ranges. Each range is resynchronized to the first ident line
+ * (a line starting with '/XXX5') and then scanned for the '!XXXX' line that ends the telegram.
+ * A telegram belongs to the range in which it starts. Anything that is not a complete telegram
+ * (i.e. the cut off telegram at the start of a capture) is skipped.
+ * <p>
+ * The telegrams are returned as read only slices of the mapped file (so nothing is copied).
+ * When the stream is made parallel the ranges are scanned by different threads.
+ * <pre>
+ * try (MappedTelegramFileReader reader = new MappedTelegramFileReader(path)) {
+ *     reader.telegrams().parallel().map(ParseDsmrTelegram::parse)...
+ * }
+ * </pre>
+ */
+public final class MappedTelegramFileReader implements Closeable {
+
+    /** A telegram that crosses the end of a range may extend at most this many bytes into the next range. */
+    public static final int  MAX_TELEGRAM_SIZE = 64 * 1024; // 64 KiB
+
+    // A single mapping is limited to 2 GiB.
+    private static final long MAX_RANGE_SIZE   = 1024 * 1024 * 1024L; // 1 GiB
+
+    private final FileChannel channel;
+    private final long        size;
+    private final long[]      rangeStarts;
+
+    /**
+     * Use one range per available processor.
+     * @param file The capture file
+     * @throws IOException If the file cannot be opened
+     */
+    public MappedTelegramFileReader(Path file) throws IOException {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param file The capture file
+     * @param ranges The number of ranges the file is split into (more are used if the file is very large).
+     * @throws IOException If the file cannot be opened
+     */
+    public MappedTelegramFileReader(Path file, int ranges) throws IOException {
+        if (ranges < 1) {
+            throw new IllegalArgumentException("The number of ranges must be at least 1");
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+
+        long count = Math.max(ranges, (size + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+        count = Math.max(1, Math.min(count, size));
+        rangeStarts = new long[(int) count + 1];
+        for (int range = 0; range <= count; range++) {
+            rangeStarts[range] = size * range / count;
+        }
+    }
+
+    /** @return The size of the file in bytes. */
+    public long getSize() {
+        return size;
+    }
+
+    /** @return The number of ranges the file is split into. */
+    public int getRanges() {
+        return rangeStarts.length - 1;
+    }
+
+    /**
+     * All complete telegrams in the file in the order of the file.
+     * The returned buffers remain valid after this reader has been closed.
+     * @return A stream of read only slices of the file, each containing exactly one telegram (including the final line end).
+     */
+    public Stream<ByteBuffer> telegrams() {
+        return IntStream
+            .range(0, getRanges())
+            .boxed()
+            .flatMap(range -> StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(new RangeScanner(range), Spliterator.ORDERED | Spliterator.NONNULL), false));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class RangeScanner implements Iterator<ByteBuffer> {
+        private final ByteBuffer buffer;
+        // The offset in the buffer of the start of the range.
+        // The buffer starts 1 byte earlier (if possible) to see if the range starts at the start of a line.
+        private final int        rangeStart;
+        // The telegrams must start before this offset.
+        private final int        rangeEnd;
+        // Does the buffer end at the end of the file.
+        private final boolean    atEndOfFile;
+
+        private int              pos;
+        private ByteBuffer       next;
+        private boolean          done;
+
+        RangeScanner(int range) {
+            long start = rangeStarts[range];
+            long mapStart = Math.max(0, start - 1);
+            long mapEnd = Math.min(size, rangeStarts[range + 1] + MAX_TELEGRAM_SIZE);
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart).order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to map range " + range + " of the file", e);
+            }
+            rangeStart  = (int) (start - mapStart);
+            rangeEnd    = (int) (rangeStarts[range + 1] - mapStart);
+            atEndOfFile = mapEnd == size;
+            pos         = rangeStart;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = findTelegram();
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more telegrams in this range");
+            }
+            ByteBuffer telegram = next;
+            next = null;
+            return telegram;
+        }
+
+        private ByteBuffer findTelegram() {
+            int limit = buffer.limit();
+            // Resync to the first ident at the start of a line
+            int start = -1;
+            while (pos < rangeEnd) {
+                if (isIdent(pos)) {
+                    start = pos;
+                    break;
+                }
+                int newLine = indexOfNewLine(pos, rangeEnd);
+                if (newLine < 0) {
+                    return null;
+                }
+                pos = newLine + 1;
+            }
+            if (start < 0) {
+                return null;
+            }
+
+            int lineStart = start;
+            while (true) {
+                int newLine = indexOfNewLine(lineStart, limit);
+                if (newLine < 0 || newLine + 1 >= limit) {
+                    return null; // Incomplete telegram
+                }
+                lineStart = newLine + 1;
+                if (isIdent(lineStart)) {
+                    // The previous telegram was cut off
+                    if (lineStart >= rangeEnd) {
+                        return null;
+                    }
+                    start = lineStart;
+                    continue;
+                }
+                if (buffer.get(lineStart) == '!') {
+                    int end = endOfTerminator(lineStart);
+                    if (end >= 0) {
+                        pos = end;
+                        ByteBuffer telegram = buffer.duplicate();
+                        telegram.limit(end).position(start);
+                        return telegram.slice();
+                    }
+                }
+            }
+        }
+
+        // Is there a line starting with '/XXX5' at this offset.
+        private boolean isIdent(int offset) {
+            // Offset 0 is only scanned if the buffer starts at the start of the file.
+            if (offset + 5 > buffer.limit() || buffer.get(offset) != '/' ||
+                (offset > 0 && buffer.get(offset - 1) != '\n')) {
+                return false;
+            }
+            return isAlphaNumeric(buffer.get(offset + 1)) &&
+                   isAlphaNumeric(buffer.get(offset + 2)) &&
+                   isAlphaNumeric(buffer.get(offset + 3)) &&
+                   buffer.get(offset + 4) == '5';
+        }
+
+        // '!' [0-9A-F]{4}? '\r'? '\n' (or the end of the file). Returns -1 if this is not a terminator.
+        private int endOfTerminator(int offset) {
+            int limit = buffer.limit();
+            int end = offset + 1;
+            if (end + 4 <= limit &&
+                isUpperHex(buffer.get(end))     && isUpperHex(buffer.get(end + 1)) &&
+                isUpperHex(buffer.get(end + 2)) && isUpperHex(buffer.get(end + 3))) {
+                end += 4;
+            }
+            if (end < limit && buffer.get(end) == '\r') {
+                end++;
+            }
+            if (end < limit && buffer.get(end) == '\n') {
+                return end + 1;
+            }
+            if (end == limit && atEndOfFile) {
+                return end;
+            }
+            return -1;
+        }
+
+        // Finds the next '\n' by checking 8 bytes at a time. Returns -1 if there is none before the limit.
+        private int indexOfNewLine(int from, int limit) {
+            int i = from;
+            for (; i + 8 <= limit; i += 8) {
+                long word = buffer.getLong(i) ^ 0x0A0A0A0A0A0A0A0AL;
+                long found = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+            for (; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static boolean isAlphaNumeric(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isUpperHex(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F');
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the data of many sources (sockets, pipes, serial devices, files) into records using only a few threads.
+ * <p>
+ * Every source is split on its own (with the same end-of-record regex as ReadUTF8RecordStream) and its records
+ * are passed to the RecordHandler in the order they were received, always from the same thread.
+ * <p>
+ * The selectable channels (like a SocketChannel or a Pipe.SourceChannel) are switched to non-blocking mode and
+ * share the event loops: each event loop is a single thread with a Selector. A channel that cannot be selected
+ * (like the FileChannel of a file or a serial device) is read with a blocking thread of its own.
+ * <pre>
+ * try (MultiSourceRecordReader reader = new MultiSourceRecordReader("\r\n![0-9A-F]{4}\r\n", 2, handler)) {
+ *     reader.register("dongle-1", SocketChannel.open(address));
+ *     ...
+ * }
+ * </pre>
+ */
+public final class MultiSourceRecordReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiSourceRecordReader.class);
+
+    /**
+     * Receives the records (and the end) of all sources.
+     * Calls for the same source are never concurrent, calls for different sources can be.
+     */
+    public interface RecordHandler {
+        /**
+         * @param source The name of the source
+         * @param record The UTF-8 bytes of the record (from position to limit).
+         *               This is a view on the internal buffer that is only valid during this call.
+         */
+        void onRecord(String source, ByteBuffer record);
+
+        /**
+         * The source has ended and its channel has been closed.
+         * This is called only once per source, from the thread that read the source.
+         * @param source The name of the source
+         * @param failure Why the source ended or null if it was the normal end of the stream (or this reader was closed).
+         */
+        default void onEnd(String source, IOException failure) {
+            // Nothing by default
+        }
+    }
+
+    private final String              recordEndRegex;
+    private final long                maxRecordSize;
+    private final RecordHandler       handler;
+    private final List<EventLoop>     eventLoops = new ArrayList<>();
+    private final AtomicInteger       nextEventLoop = new AtomicInteger();
+    // The sources that cannot be selected and the thread that reads each of them.
+    private final Map<Source, Thread> blockingSources = new ConcurrentHashMap<>();
+    // Makes register and close mutually exclusive so no source is added after close has stopped everything.
+    private final Object              registerLock = new Object();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param recordEndRegex The regex that matches the end of a record
+     * @param eventLoopThreads The number of threads that read the selectable channels
+     * @param handler Receives the records of all sources
+     * @throws IOException If a Selector could not be opened
+     */
+    public MultiSourceRecordReader(String recordEndRegex, int eventLoopThreads, RecordHandler handler) throws IOException {
+        this(recordEndRegex, ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE, eventLoopThreads, handler);
+    }
+
+    /**
+     * @param recordEndRegex The regex that matches the end of a record
+     * @param newMaxRecordSize A source fails if it sends more than this many bytes without an end of record
+     *                         (limited in the same way as in ReadUTF8RecordStream).
+     * @param eventLoopThreads The number of threads that read the selectable channels
+     * @param handler Receives the records of all sources
+     * @throws IOException If a Selector could not be opened
+     */
+    public MultiSourceRecordReader(String recordEndRegex, long newMaxRecordSize, int eventLoopThreads, RecordHandler handler)
+        throws IOException {
+        if (eventLoopThreads < 1) {
+            throw new IllegalArgumentException("At least 1 event loop thread is needed");
+        }
+        // Fail early on a bad regex.
+        RecordEndFinder.forRegex(recordEndRegex);
+        this.recordEndRegex = recordEndRegex;
+        this.handler = handler;
+        maxRecordSize = Math.min(
+            Math.max(newMaxRecordSize, ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE),
+            ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE);
+
+        try {
+            for (int i = 0; i < eventLoopThreads; i++) {
+                eventLoops.add(new EventLoop(i));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+    }
+
+    /**
+     * Start reading a source. The channel is closed when the source ends or when this reader is closed.
+     * @param name The name of the source as passed to the RecordHandler
+     * @param channel The channel to read; a SelectableChannel is switched to non-blocking mode.
+     * @throws IOException If the channel could not be switched to non-blocking mode
+     */
+    public void register(String name, ReadableByteChannel channel) throws IOException {
+        synchronized (registerLock) {
+            if (!running) {
+                throw new ClosedChannelException();
+            }
+            Source source = new Source(name, channel);
+            if (channel instanceof SelectableChannel) {
+                ((SelectableChannel) channel).configureBlocking(false);
+                eventLoops.get(Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.size())).add(source);
+            } else {
+                Thread thread = new Thread(() -> readBlocking(source), "MultiSourceRecordReader-" + name);
+                thread.setDaemon(true);
+                blockingSources.put(source, thread);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Stops all event loops, closes all channels and waits until all sources have ended.
+     */
+    @Override
+    public void close() {
+        List<Thread> threads;
+        synchronized (registerLock) {
+            running = false;
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.selector.wakeup();
+            }
+            // Closing the channel ends the blocking read; the reading thread ends the source.
+            for (Source source : blockingSources.keySet()) {
+                source.closeChannel();
+            }
+            threads = new ArrayList<>(blockingSources.values());
+        }
+        // Not holding the lock: a RecordHandler that calls register must not block the threads we wait for.
+        for (EventLoop eventLoop : eventLoops) {
+            threads.add(eventLoop.thread);
+        }
+        for (Thread thread : threads) {
+            if (thread.isAlive() && thread != Thread.currentThread()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void readBlocking(Source source) {
+        try {
+            boolean reading = true;
+            while (reading) {
+                reading = source.read();
+            }
+        } finally {
+            source.end(null); // Only if it has not ended yet
+            blockingSources.remove(source);
+        }
+    }
+
+    /**
+     * A single thread that reads all the channels that have been registered on its Selector.
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector      selector;
+        private final Thread        thread;
+        private final Queue<Source> added = new ConcurrentLinkedQueue<>();
+
+        EventLoop(int number) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "MultiSourceRecordReader-eventloop-" + number);
+            thread.setDaemon(true);
+        }
+
+        void add(Source source) {
+            added.add(source);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerAdded();
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        // A single read per source per round so a busy source cannot starve the others.
+                        if (key.isValid() && !((Source) key.attachment()).read()) {
+                            key.cancel();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("The event loop failed: {}", e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Source) key.attachment()).end(null);
+                }
+                registerAdded(); // Anything added after stopping is only ended.
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+        private void registerAdded() {
+            Source source;
+            while ((source = added.poll()) != null) {
+                if (!running) {
+                    source.end(null);
+                    continue;
+                }
+                try {
+                    ((SelectableChannel) source.channel).register(selector, SelectionKey.OP_READ, source);
+                } catch (IOException e) {
+                    source.end(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single channel with the bytes it has sent that are not a complete record yet.
+     */
+    private final class Source {
+        private final String              name;
+        private final ReadableByteChannel channel;
+        private final RecordBuffer        records;
+        private       boolean             ended;
+
+        Source(String name, ReadableByteChannel channel) {
+            this.name = name;
+            this.channel = channel;
+            records = new RecordBuffer(RecordEndFinder.forRegex(recordEndRegex));
+        }
+
+        /**
+         * Read what is available and hand out all complete records.
+         * @return false if the source has ended.
+         */
+        boolean read() {
+            int bytesRead;
+            try {
+                bytesRead = records.fill(channel);
+            } catch (IOException e) {
+                end(running ? e : null);
+                return false;
+            }
+
+            while (records.nextRecord()) {
+                deliver();
+            }
+
+            if (bytesRead == -1) {
+                // The rest is the last record
+                if (records.pending() > 0) {
+                    records.remainderIsRecord();
+                    deliver();
+                }
+                end(null);
+                return false;
+            }
+
+            final int length = records.pending();
+            if (length > maxRecordSize) {
+                LOG.error("Source {}: After {} bytes the end-of-record pattern  >>>{}<<<  has not been found.",
+                    name, length, StringEscapeUtils.escapeJava(recordEndRegex));
+                end(new IOException("After "+ length +" bytes the end-of-record pattern has not been found yet."));
+                return false;
+            }
+            return true;
+        }
+
+        private void deliver() {
+            try {
+                handler.onRecord(name, records.currentBytes());
+            } catch (RuntimeException e) {
+                LOG.error("Source {}: The record handler failed: {}", name, e.toString());
+            }
+        }
+
+        void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        synchronized void end(IOException failure) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            closeChannel();
+            handler.onEnd(name, failure);
+        }
+    }
+}
@@ -24,22 +24,48 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-public class ReadUTF8RecordStream {
+/**
+ * Splits a stream of UTF-8 text into records that each end with a match of the end-of-record regex.
+ * <p>
+ * The records are found in the bytes as they are received: only the newly arrived bytes are scanned
+ * (see RecordEndFinder for the regexes that are handled this way) and each record is decoded only once.
+ * <p>
+ * A record can be read as a new String (read), as a slice of the internal buffer (readBytes) or decoded into
+ * a reusable buffer (readChars). The last two do not allocate anything per record.
+ * <p>
+ * The records can also be iterated (only once, like a DirectoryStream) or processed as a Stream (records()).
+ * Both are lazy so they can be used on a live device. A parallel stream of a live device waits until a batch of
+ * records has been read, so use records(Path, String) to process a file in parallel.
+ */
+public class ReadUTF8RecordStream implements Iterable<String> {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReadUTF8RecordStream.class);
 
     public static final long MIN_MAX_RECORD_SIZE =         10 * 1024L; //  10 KiB
     public static final long MAX_MAX_RECORD_SIZE = 100 * 1024 * 1024L; // 100 MiB
 
-    private final InputStream inputStream;
-    private final Pattern     endMatcher;
-    private       long        maxRecordSize;
+    private final InputStream     inputStream;
+    private final String          recordEndRegex;
+    private final RecordBuffer    records;
+    private       long            maxRecordSize;
 
     public ReadUTF8RecordStream(InputStream input, String recordEndRegex) {
         this(input, recordEndRegex, MIN_MAX_RECORD_SIZE);
@@ -47,63 +73,244 @@ public class ReadUTF8RecordStream {
 
     public ReadUTF8RecordStream(InputStream input, String recordEndRegex, long newMaxRecordSize) {
         inputStream = input;
-        endMatcher = Pattern.compile("(" + recordEndRegex + ")");
+        this.recordEndRegex = recordEndRegex;
+        records = new RecordBuffer(RecordEndFinder.forRegex(recordEndRegex));
         maxRecordSize = Math.max(newMaxRecordSize, MIN_MAX_RECORD_SIZE);
         maxRecordSize = Math.min(maxRecordSize,    MAX_MAX_RECORD_SIZE);
     }
 
-    private StringBuilder previousLastRecord = new StringBuilder();
+    private boolean endOfStream;
+    private boolean finished;
+    private boolean iterated;
+
+    // Reused for the records in readChars.
+    private final ByteCharSequence asciiChars = new ByteCharSequence();
+    private       CharsetDecoder   decoder;
+    private       CharBuffer       chars;
 
-    // Returns null if end of stream
+    /**
+     * Read the next record as a new String.
+     * @return The next record or null if end of stream.
+     * @throws IOException If reading fails or if a record is longer than the maximum record size.
+     */
     public String read() throws IOException {
-        byte[] readBuffer = new byte[4096];
-        if (previousLastRecord == null) {
+        if (!nextRecord()) {
+            return null;
+        }
+        return records.currentString();
+    }
+
+    /**
+     * Read the next record without copying it: the returned buffer is a view on the internal buffer
+     * (its array can be passed directly to a parser). The same ByteBuffer instance is returned every time.
+     * The content is only valid until the next call to one of the read methods and must not be modified.
+     * @return The UTF-8 bytes of the next record (from position to limit) or null if end of stream.
+     * @throws IOException If reading fails or if a record is longer than the maximum record size.
+     */
+    public ByteBuffer readBytes() throws IOException {
+        if (!nextRecord()) {
             return null;
         }
+        return records.currentBytes();
+    }
 
-        // In case the previous read retrieved multiple records
-        String recordString = extractRecordFromBuffer();
-        if (recordString != null) {
-            return recordString;
+    /**
+     * Read the next record without allocating anything per record.
+     * A record that is pure ASCII (like a DSMR telegram) is not decoded at all: a reused view on the internal
+     * buffer is returned. Any other record is decoded into a reused CharBuffer.
+     * The content is only valid until the next call to one of the read methods; use toString() to keep it.
+     * @return The next record or null if end of stream.
+     * @throws IOException If reading fails or if a record is longer than the maximum record size.
+     */
+    public CharSequence readChars() throws IOException {
+        if (!nextRecord()) {
+            return null;
+        }
+        ByteBuffer bytes = records.currentBytes();
+        int start = bytes.arrayOffset() + bytes.position();
+        int end   = bytes.arrayOffset() + bytes.limit();
+        if (ByteCharSequence.isAscii(bytes.array(), start, end)) {
+            return asciiChars.set(bytes.array(), start, end - start);
         }
 
-        // Keep reading until we have atleast one record in the buffer (sometimes we get multiple records)
-        while (true) {
-            int bytesRead = inputStream.read(readBuffer);
-            if (bytesRead == -1) { // -1 == End of stream
-                String returnValue = previousLastRecord.toString();
-                previousLastRecord = null; // Next call will return null immediately
-                return returnValue;
+        if (decoder == null) {
+            decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        // Decoding UTF-8 never produces more characters than there are bytes.
+        if (chars == null || chars.capacity() < bytes.remaining()) {
+            chars = CharBuffer.allocate(Math.max(bytes.remaining(), RecordBuffer.READ_SIZE));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        return chars;
+    }
+
+    /**
+     * The remaining records (the empty rest at the end of the stream is not a record).
+     * This can only be called once and must not be mixed with the read methods.
+     * @return An iterator that throws an UncheckedIOException if reading fails.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("The records can only be iterated once");
+        }
+        iterated = true;
+        return new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) {
+                    return true;
+                }
+                try {
+                    next = read();
+                    if (next != null && next.isEmpty()) {
+                        next = read();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return next != null;
             }
 
-            previousLastRecord.append(new String(readBuffer, 0, bytesRead, UTF_8));
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
 
-            recordString = extractRecordFromBuffer();
-            if (recordString != null) {
-                return recordString;
+    @Override
+    public Spliterator<String> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * The remaining records as a lazy sequential stream (see iterator()).
+     * @return The stream of records.
+     */
+    public Stream<String> records() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * All records in a file.
+     * The file is read and the ends of all records are found before the stream is returned;
+     * a parallel stream is split at the record boundaries and the records are decoded by the threads of the stream.
+     * @param file The file (at most 2 GiB)
+     * @param recordEndRegex The regex that matches the end of a record
+     * @return The records in the file (the empty rest at the end of the file is not a record).
+     * @throws IOException If the file cannot be read
+     */
+    public static Stream<String> records(Path file, String recordEndRegex) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        RecordEndFinder endFinder = RecordEndFinder.forRegex(recordEndRegex);
+        int[] ends = new int[16];
+        int count = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = endFinder.find(bytes, start, start, bytes.length);
+            if (end <= start) { // Not found (or a regex that matched nothing)
+                end = bytes.length;
             }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = end;
+            start = end;
+        }
+        return StreamSupport.stream(new RecordsSpliterator(bytes, ends, 0, count), false);
+    }
+
+    /**
+     * The records [index, fence) where record i is the bytes [ends[i-1], ends[i]).
+     */
+    private static final class RecordsSpliterator implements Spliterator<String> {
+        private final byte[] bytes;
+        private final int[]  ends;
+        private       int    index;
+        private final int    fence;
+
+        RecordsSpliterator(byte[] bytes, int[] ends, int index, int fence) {
+            this.bytes = bytes;
+            this.ends  = ends;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            if (index >= fence) {
+                return false;
+            }
+            int start = index == 0 ? 0 : ends[index - 1];
+            action.accept(new String(bytes, start, ends[index] - start, UTF_8));
+            index++;
+            return true;
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            int middle = (index + fence) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<String> prefix = new RecordsSpliterator(bytes, ends, index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+        }
+    }
+
+    // Find the next record in the buffer. Returns false if end of stream.
+    private boolean nextRecord() throws IOException {
+        if (finished) {
+            return false;
+        }
 
-            final int length = previousLastRecord.length();
+        // Keep reading until we have at least one record in the buffer (sometimes we get multiple records)
+        while (!records.nextRecord()) {
+            if (endOfStream) {
+                // The rest is the last record
+                records.remainderIsRecord();
+                finished = true; // Next call will return null immediately
+                return true;
+            }
+
+            final int length = records.pending();
             if (length > maxRecordSize) {
                 LOG.error("After {} bytes the end-of-record pattern  >>>{}<<<  has not been found.",
-                    length, StringEscapeUtils.escapeJava(endMatcher.pattern()));
-                previousLastRecord = null;
+                    length, StringEscapeUtils.escapeJava(recordEndRegex));
+                finished = true;
                 throw new IOException("After "+ length +" bytes the end-of-record pattern has not been found yet.");
             }
-        }
-    }
 
-    private String extractRecordFromBuffer() {
-        // In case we now have (one or more) records return the first one.
-        Matcher matcher = endMatcher.matcher(previousLastRecord);
-        if (matcher.find()) {
-            MatchResult matchResult = matcher.toMatchResult();
-            int endOfPartIndex = matchResult.end(1);
-            String result = previousLastRecord.substring(0, endOfPartIndex);
-            previousLastRecord = new StringBuilder(previousLastRecord.substring(endOfPartIndex));
-            return result;
+            if (records.fill(inputStream) == -1) { // -1 == End of stream
+                endOfStream = true;
+            }
         }
-        return null;
+        return true;
     }
 
 }
@@ -0,0 +1,149 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The bytes received from a single source that have not been returned as a record yet.
+ * <p>
+ * The bytes are moved to the start of the buffer when it is full (so a record is always contiguous).
+ * The last record is [currentRecord, recordStart) and stays valid until the buffer is filled again.
+ */
+final class RecordBuffer {
+
+    static final int READ_SIZE = 4096;
+
+    private final RecordEndFinder endFinder;
+
+    // [recordStart, limit) have not been returned yet and [recordStart, scanned) do not contain the end of a record.
+    private byte[] buffer = new byte[2 * READ_SIZE];
+    private int    currentRecord;
+    private int    recordStart;
+    private int    scanned;
+    private int    limit;
+
+    // Reused views on the buffer.
+    private ByteBuffer fillView;
+    private ByteBuffer recordView;
+
+    RecordBuffer(RecordEndFinder endFinder) {
+        this.endFinder = endFinder;
+    }
+
+    /**
+     * @return true if the next complete record has been found (see currentBytes), false if more bytes are needed.
+     */
+    boolean nextRecord() {
+        int end = endFinder.find(buffer, recordStart, scanned, limit);
+        if (end < 0) {
+            scanned = limit;
+            return false;
+        }
+        currentRecord = recordStart;
+        recordStart   = end;
+        scanned       = end;
+        return true;
+    }
+
+    /**
+     * Make all remaining bytes the current record (used at the end of the stream).
+     */
+    void remainderIsRecord() {
+        currentRecord = recordStart;
+        recordStart   = limit;
+    }
+
+    /**
+     * @return The number of received bytes that have not been returned as a record yet.
+     */
+    int pending() {
+        return limit - recordStart;
+    }
+
+    /**
+     * @return The number of bytes read or -1 at the end of the stream.
+     */
+    int fill(InputStream inputStream) throws IOException {
+        makeRoom();
+        int bytesRead = inputStream.read(buffer, limit, buffer.length - limit);
+        if (bytesRead > 0) {
+            limit += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * @return The number of bytes read (0 if nothing is available on a non-blocking channel) or -1 at the end of the stream.
+     */
+    int fill(ReadableByteChannel channel) throws IOException {
+        makeRoom();
+        if (fillView == null || fillView.array() != buffer) {
+            fillView = ByteBuffer.wrap(buffer);
+        }
+        fillView.clear();
+        fillView.position(limit);
+        int bytesRead = channel.read(fillView);
+        if (bytesRead > 0) {
+            limit += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * @return The current record as a view on the buffer (the same instance every time).
+     */
+    ByteBuffer currentBytes() {
+        if (recordView == null || recordView.array() != buffer) {
+            recordView = ByteBuffer.wrap(buffer);
+        }
+        recordView.clear();
+        recordView.limit(recordStart).position(currentRecord);
+        return recordView;
+    }
+
+    String currentString() {
+        return new String(buffer, currentRecord, recordStart - currentRecord, UTF_8);
+    }
+
+    // Make sure at least READ_SIZE bytes can be read after the limit.
+    private void makeRoom() {
+        if (buffer.length - limit >= READ_SIZE) {
+            return;
+        }
+        int pending = limit - recordStart;
+        if (recordStart > 0 && buffer.length - pending >= READ_SIZE) {
+            // Move the incomplete record to the start of the buffer.
+            System.arraycopy(buffer, recordStart, buffer, 0, pending);
+        } else {
+            buffer = Arrays.copyOfRange(buffer, recordStart, Math.max(buffer.length * 2, pending + READ_SIZE));
+        }
+        scanned      -= recordStart;
+        limit         = pending;
+        recordStart   = 0;
+        currentRecord = 0;
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Finds the end of a record directly in the bytes as they were received.
+ * <p>
+ * The common end-of-record patterns are recognized and handled by a specialized scanner that only looks at the
+ * newly arrived bytes (plus the few bytes before them in which a terminator could have started):
+ * <ul>
+ *     <li>The DSMR terminator: a line with '!' and the 4 hex digits of the CRC (like \r\n![0-9A-F]{4}\r\n).</li>
+ *     <li>A literal separator (like \n or ====\n), optionally preceded by \r? (so \r?\n is handled as well).</li>
+ * </ul>
+ * Any other regex is matched against the bytes of the record (each byte being one character) which is the same
+ * as matching the text as long as the regex only uses ASCII and does not count non ASCII characters.
+ */
+abstract class RecordEndFinder {
+
+    /**
+     * Find the end of the first record.
+     * @param buffer The bytes
+     * @param recordStart Where the record starts
+     * @param scanned Up to where the bytes were already searched before (without finding an end)
+     * @param limit Up to where the buffer has been filled
+     * @return The offset just after the end of the first record or -1 if it has not been received (completely) yet.
+     */
+    abstract int find(byte[] buffer, int recordStart, int scanned, int limit);
+
+    // ------------------------------------------
+
+    /**
+     * @param recordEndRegex The regex that matches the end of a record
+     * @return The fastest RecordEndFinder for this regex.
+     */
+    static RecordEndFinder forRegex(String recordEndRegex) {
+        String regex = normalize(recordEndRegex);
+        RecordEndFinder finder = DsmrTerminator.forRegex(regex);
+        if (finder == null) {
+            finder = Literal.forRegex(regex);
+        }
+        if (finder == null) {
+            finder = new Regex(recordEndRegex);
+        }
+        return finder;
+    }
+
+    // The regex with the escapes of the control characters (\r, \n, \t and \f) replaced by the characters themselves
+    // (in Java code the regex often already contains the real characters).
+    static String normalize(String regex) {
+        StringBuilder normalized = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c != '\\' || i + 1 == regex.length()) {
+                normalized.append(c);
+                continue;
+            }
+            char escaped = regex.charAt(++i);
+            switch (escaped) {
+                case 'r':
+                    normalized.append('\r');
+                    break;
+                case 'n':
+                    normalized.append('\n');
+                    break;
+                case 't':
+                    normalized.append('\t');
+                    break;
+                case 'f':
+                    normalized.append('\f');
+                    break;
+                default:
+                    normalized.append(c).append(escaped);
+            }
+        }
+        return normalized.toString();
+    }
+
+    // A leading \r? does not change where the first match ends (only where it starts).
+    private static String withoutOptionalLeadingCR(String regex) {
+        return regex.startsWith("\r?") ? regex.substring(2) : regex;
+    }
+
+    private static boolean isUpperHex(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F');
+    }
+
+    // ------------------------------------------
+
+    /**
+     * The line that ends a DSMR telegram: '\n' '!' [0-9A-F]{4} followed by a line end.
+     */
+    static final class DsmrTerminator extends RecordEndFinder {
+        private static final String CRC = "![0-9A-F]{4}";
+
+        // The line end after the CRC
+        enum LineEnd {
+            CRLF,          // \r\n
+            OPTIONAL_CR,   // \r?\n
+            LF,            // \n
+        }
+
+        // Must the '\n' before the '!' be preceded by a '\r'.
+        private final boolean leadingCR;
+        private final LineEnd lineEnd;
+
+        DsmrTerminator(boolean leadingCR, LineEnd lineEnd) {
+            this.leadingCR = leadingCR;
+            this.lineEnd   = lineEnd;
+        }
+
+        static DsmrTerminator forRegex(String regex) {
+            String rest = withoutOptionalLeadingCR(regex);
+            boolean leadingCR = false;
+            if (rest.startsWith("\r\n")) {
+                leadingCR = true;
+                rest = rest.substring(2);
+            } else if (rest.startsWith("\n")) {
+                rest = rest.substring(1);
+            } else {
+                return null;
+            }
+            if (!rest.startsWith(CRC)) {
+                return null;
+            }
+            switch (rest.substring(CRC.length())) {
+                case "\r\n":
+                    return new DsmrTerminator(leadingCR, LineEnd.CRLF);
+                case "\r?\n":
+                    return new DsmrTerminator(leadingCR, LineEnd.OPTIONAL_CR);
+                case "\n":
+                    return new DsmrTerminator(leadingCR, LineEnd.LF);
+                default:
+                    return null;
+            }
+        }
+
+        // The '!' of a terminator is never more than this many bytes before its end.
+        private static final int MAX_LOOKBACK = 7;
+
+        @Override
+        int find(byte[] buffer, int recordStart, int scanned, int limit) {
+            int first = leadingCR ? recordStart + 2 : recordStart + 1;
+            for (int bang = Math.max(first, scanned - MAX_LOOKBACK); bang < limit; bang++) {
+                if (buffer[bang] != '!' || buffer[bang - 1] != '\n' || (leadingCR && buffer[bang - 2] != '\r')) {
+                    continue;
+                }
+                if (bang + 5 > limit) {
+                    return -1; // The rest has not been received yet
+                }
+                if (!isUpperHex(buffer[bang + 1]) || !isUpperHex(buffer[bang + 2]) ||
+                    !isUpperHex(buffer[bang + 3]) || !isUpperHex(buffer[bang + 4])) {
+                    continue;
+                }
+                int end = endOfLine(buffer, bang + 5, limit);
+                if (end != 0) {
+                    return end;
+                }
+            }
+            return -1;
+        }
+
+        // Returns the end of the line end, 0 if there is none here and -1 if it has not been received yet.
+        private int endOfLine(byte[] buffer, int offset, int limit) {
+            if (offset >= limit) {
+                return -1;
+            }
+            byte b = buffer[offset];
+            switch (lineEnd) {
+                case CRLF:
+                    if (b != '\r') {
+                        return 0;
+                    }
+                    if (offset + 1 >= limit) {
+                        return -1;
+                    }
+                    return buffer[offset + 1] == '\n' ? offset + 2 : 0;
+                case OPTIONAL_CR:
+                    if (b == '\n') {
+                        return offset + 1;
+                    }
+                    if (b != '\r') {
+                        return 0;
+                    }
+                    if (offset + 1 >= limit) {
+                        return -1;
+                    }
+                    return buffer[offset + 1] == '\n' ? offset + 2 : 0;
+                default:
+                    return b == '\n' ? offset + 1 : 0;
+            }
+        }
+    }
+
+    // ------------------------------------------
+
+    /**
+     * A fixed sequence of bytes.
+     */
+    static final class Literal extends RecordEndFinder {
+        private final byte[] separator;
+
+        Literal(byte[] separator) {
+            this.separator = separator;
+        }
+
+        // Only plain characters and escaped punctuation.
+        static Literal forRegex(String regex) {
+            String rest = withoutOptionalLeadingCR(regex);
+            StringBuilder literal = new StringBuilder(rest.length());
+            for (int i = 0; i < rest.length(); i++) {
+                char c = rest.charAt(i);
+                if (c == '\\') {
+                    if (++i == rest.length()) {
+                        return null;
+                    }
+                    char escaped = rest.charAt(i);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        return null; // Like \d, \s or a back reference
+                    }
+                    literal.append(escaped);
+                } else if ("[](){}.*+?^$|".indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() == 0) {
+                return null;
+            }
+            return new Literal(literal.toString().getBytes(UTF_8));
+        }
+
+        @Override
+        int find(byte[] buffer, int recordStart, int scanned, int limit) {
+            byte first = separator[0];
+            int last = limit - separator.length;
+            for (int start = Math.max(recordStart, scanned - separator.length + 1); start <= last; start++) {
+                if (buffer[start] != first) {
+                    continue;
+                }
+                int i = 1;
+                while (i < separator.length && buffer[start + i] == separator[i]) {
+                    i++;
+                }
+                if (i == separator.length) {
+                    return start + separator.length;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // ------------------------------------------
+
+    /**
+     * Any other regex: the entire record received so far is searched every time.
+     */
+    static final class Regex extends RecordEndFinder {
+        private final Pattern          pattern;
+        private final ByteCharSequence characters = new ByteCharSequence();
+        private final Matcher          matcher;
+        // A regex with non ASCII characters is matched against the decoded text.
+        private final boolean          decode;
+
+        Regex(String regex) {
+            pattern = Pattern.compile(regex);
+            matcher = pattern.matcher(characters);
+            decode  = !regex.chars().allMatch(c -> c < 0x80);
+        }
+
+        @Override
+        int find(byte[] buffer, int recordStart, int scanned, int limit) {
+            if (decode) {
+                String text = new String(buffer, recordStart, limit - recordStart, UTF_8);
+                Matcher textMatcher = pattern.matcher(text);
+                return textMatcher.find() ? recordStart + text.substring(0, textMatcher.end()).getBytes(UTF_8).length : -1;
+            }
+            matcher.reset(characters.set(buffer, 0, limit));
+            // The region makes the record start the '^' of the regex (same as when the record was a String).
+            matcher.region(recordStart, limit);
+            return matcher.find() ? matcher.end() : -1;
+        }
+
+        @Override
+        public String toString() {
+            return "Regex(" + pattern.pattern() + ")";
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package nl.basjes.parse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMappedTelegramFileReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestMappedTelegramFileReader.class);
+
+    private static final Path RAW_FILE = Paths.get("../testfiles/ttyUSB0-raw.txt");
+
+    private static String asString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static List<String> readAll(Path file, int ranges, boolean parallel) throws IOException {
+        try (MappedTelegramFileReader reader = new MappedTelegramFileReader(file, ranges)) {
+            if (parallel) {
+                return reader.telegrams().parallel().map(TestMappedTelegramFileReader::asString).collect(Collectors.toList());
+            }
+            return reader.telegrams().map(TestMappedTelegramFileReader::asString).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void sameAsRecordStream() throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (FileInputStream inputStream = new FileInputStream(RAW_FILE.toFile())) {
+            ReadUTF8RecordStream reader = new ReadUTF8RecordStream(inputStream, "\r?\n![0-9A-F]{4}\r?\n");
+            String value;
+            while ((value = reader.read()) != null) {
+                // The first one is cut off and has no ident
+                if (value.startsWith("/")) {
+                    expected.add(value);
+                }
+            }
+        }
+        assertTrue(expected.size() > 100);
+
+        for (int ranges : new int[]{1, 2, 3, 7, 16, 100, 1000}) {
+            assertEquals(expected, readAll(RAW_FILE, ranges, false), "Ranges: " + ranges);
+            assertEquals(expected, readAll(RAW_FILE, ranges, true), "Ranges (parallel): " + ranges);
+        }
+
+        long start = System.nanoTime();
+        long bytes;
+        try (MappedTelegramFileReader reader = new MappedTelegramFileReader(RAW_FILE)) {
+            bytes = reader.telegrams().parallel().mapToLong(ByteBuffer::remaining).sum();
+        }
+        LOG.info("Found {} bytes of telegrams in {} us", bytes, (System.nanoTime() - start) / 1000);
+    }
+
+    @Test
+    void unusualContent(@TempDir Path directory) throws IOException {
+        String first     = "/ISK5\\2M550T-1012\r\n\r\n1-3:0.2.8(50)\r\n!1234\r\n";
+        String noCrc     = "/KFM5KAIFA-METER\n\n0-0:96.1.1(4B384547303034303436333935353037)\n!\n";
+        String cutOff    = "/ISK5\\2M550T-1012\r\n\r\n1-3:0.2.8(50)\r\n1-0:1.8.1(0163\r\n";
+        String notAtEnd  = "/ISK5\\2M550T-1012\r\n\r\n0-0:96.13.0(21!)\r\n!ABCD\r\n";
+        String atEof     = "/ISK5\\2M550T-1012\r\n\r\n1-3:0.2.8(50)\r\n!BEEF";
+        Path file = directory.resolve("capture.txt");
+        Files.write(file, ("garbage\r\n!0000\r\n" + first + "more garbage /ISK5 \r\n" + noCrc + cutOff + notAtEnd + atEof).getBytes(UTF_8));
+
+        List<String> expected = List.of(first, noCrc, notAtEnd, atEof);
+        for (int ranges = 1; ranges < 50; ranges++) {
+            assertEquals(expected, readAll(file, ranges, ranges % 2 == 0), "Ranges: " + ranges);
+        }
+
+        Path empty = directory.resolve("empty.txt");
+        Files.write(empty, new byte[0]);
+        assertEquals(List.of(), readAll(empty, 4, false));
+
+        assertThrows(IllegalArgumentException.class, () -> new MappedTelegramFileReader(file, 0));
+    }
+}
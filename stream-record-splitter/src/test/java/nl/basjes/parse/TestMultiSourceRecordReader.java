@@ -0,0 +1,234 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMultiSourceRecordReader {
+
+    private static final String RECORD_END = "\r\n![0-9A-F]{4}\r\n";
+
+    private static String telegram(String source, int number) {
+        return "/ISK5\\" + source + "\r\n\r\n1-0:1.8.1(" + number + ")\r\n!0A1B\r\n";
+    }
+
+    private static class Collector implements MultiSourceRecordReader.RecordHandler {
+        private final Map<String, List<String>> records = new ConcurrentHashMap<>();
+        private final Map<String, IOException>  failures = new ConcurrentHashMap<>();
+        private final Map<String, Thread>       endThreads = new ConcurrentHashMap<>();
+        private final CountDownLatch            ended;
+
+        Collector(int sources) {
+            ended = new CountDownLatch(sources);
+        }
+
+        @Override
+        public void onRecord(String source, ByteBuffer record) {
+            records.computeIfAbsent(source, s -> new ArrayList<>()).add(UTF_8.decode(record).toString());
+        }
+
+        @Override
+        public void onEnd(String source, IOException failure) {
+            endThreads.put(source, Thread.currentThread());
+            if (failure != null) {
+                failures.put(source, failure);
+            }
+            ended.countDown();
+        }
+    }
+
+    @Test
+    void manySourcesFewThreads() throws Exception {
+        int pipes = 50;
+        int telegrams = 20;
+        Collector collector = new Collector(pipes + 1);
+
+        try (MultiSourceRecordReader reader = new MultiSourceRecordReader(RECORD_END, 2, collector)) {
+            List<Pipe.SinkChannel> sinks = new ArrayList<>();
+            for (int p = 0; p < pipes; p++) {
+                Pipe pipe = Pipe.open();
+                reader.register("pipe-" + p, pipe.source());
+                sinks.add(pipe.sink());
+            }
+
+            // A channel that cannot be selected.
+            StringBuilder stream = new StringBuilder();
+            for (int t = 0; t < telegrams; t++) {
+                stream.append(telegram("stream", t));
+            }
+            reader.register("stream", Channels.newChannel(new ByteArrayInputStream(stream.toString().getBytes(UTF_8))));
+
+            // Write all telegrams in small pieces, interleaved over all pipes.
+            for (int t = 0; t < telegrams; t++) {
+                for (int piece = 0; piece < 3; piece++) {
+                    for (int p = 0; p < pipes; p++) {
+                        byte[] bytes = telegram("pipe-" + p, t).getBytes(UTF_8);
+                        int from = piece * bytes.length / 3;
+                        int to = (piece + 1) * bytes.length / 3;
+                        ByteBuffer buffer = ByteBuffer.wrap(bytes, from, to - from);
+                        while (buffer.hasRemaining()) {
+                            sinks.get(p).write(buffer);
+                        }
+                    }
+                }
+            }
+            for (Pipe.SinkChannel sink : sinks) {
+                sink.close();
+            }
+
+            assertTrue(collector.ended.await(30, TimeUnit.SECONDS), "Not all sources have ended");
+        }
+
+        assertTrue(collector.failures.isEmpty(), "Failures: " + collector.failures);
+        for (String source : collector.records.keySet()) {
+            List<String> records = collector.records.get(source);
+            assertEquals(telegrams, records.size(), "Records of " + source);
+            for (int t = 0; t < telegrams; t++) {
+                assertEquals(telegram(source, t), records.get(t));
+            }
+        }
+        assertEquals(pipes + 1, collector.records.size());
+    }
+
+    @Test
+    void tooLargeRecordEndsOnlyThatSource() throws Exception {
+        Collector collector = new Collector(2);
+        try (MultiSourceRecordReader reader = new MultiSourceRecordReader(RECORD_END, 1, collector)) {
+            Pipe good = Pipe.open();
+            Pipe bad = Pipe.open();
+            reader.register("good", good.source());
+            reader.register("bad", bad.source());
+
+            byte[] garbage = new byte[100 * 1024];
+            ByteBuffer buffer = ByteBuffer.wrap(garbage);
+            bad.sink().configureBlocking(false);
+            // The bad source is closed by the reader so writing it may fail.
+            try {
+                for (int i = 0; i < 1000 && buffer.hasRemaining(); i++) {
+                    bad.sink().write(buffer);
+                    Thread.sleep(1);
+                }
+            } catch (IOException e) {
+                // Expected
+            }
+
+            good.sink().write(ByteBuffer.wrap(telegram("good", 1).getBytes(UTF_8)));
+            good.sink().close();
+            assertTrue(collector.ended.await(30, TimeUnit.SECONDS), "Not all sources have ended");
+        }
+
+        assertNotNull(collector.failures.get("bad"));
+        assertNull(collector.failures.get("good"));
+        assertEquals(List.of(telegram("good", 1)), collector.records.get("good"));
+    }
+
+    @Test
+    void closeEndsAllSources() throws Exception {
+        Collector collector = new Collector(2);
+        MultiSourceRecordReader reader = new MultiSourceRecordReader(RECORD_END, 1, collector);
+        Pipe pipe = Pipe.open();
+        reader.register("pipe", pipe.source());
+        Pipe blocking = Pipe.open();
+        // A blocking read that never returns until the channel is closed.
+        reader.register("blocking", Channels.newChannel(Channels.newInputStream(blocking.source())));
+        blocking.sink().write(ByteBuffer.wrap(telegram("blocking", 1).getBytes(UTF_8)));
+        for (int i = 0; i < 3000 && !collector.records.containsKey("blocking"); i++) {
+            Thread.sleep(10);
+        }
+        reader.close();
+
+        // Close waits until all sources have ended.
+        assertEquals(0, collector.ended.getCount(), "Not all sources have ended");
+        assertTrue(collector.failures.isEmpty(), "Failures: " + collector.failures);
+        assertEquals(List.of(telegram("blocking", 1)), collector.records.get("blocking"));
+        assertFalse(pipe.source().isOpen());
+        // The sources are ended by the threads that read them.
+        assertNotSame(Thread.currentThread(), collector.endThreads.get("pipe"));
+        assertNotSame(Thread.currentThread(), collector.endThreads.get("blocking"));
+    }
+
+    @Test
+    void registerRacesWithClose() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            Collector collector = new Collector(0);
+            MultiSourceRecordReader reader = new MultiSourceRecordReader(RECORD_END, 1, collector);
+            Map<String, Pipe> registered = new ConcurrentHashMap<>();
+            List<Pipe> pipes = new ArrayList<>();
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            CountDownLatch first = new CountDownLatch(1);
+
+            // Alternately a selectable and a blocking source until the reader is closed.
+            Thread registrar = new Thread(() -> {
+                try {
+                    for (int i = 0; ; i++) {
+                        Pipe pipe = Pipe.open();
+                        pipes.add(pipe);
+                        ReadableByteChannel channel = i % 2 == 0 ? pipe.source() : Channels.newChannel(Channels.newInputStream(pipe.source()));
+                        reader.register("source-" + i, channel);
+                        registered.put("source-" + i, pipe);
+                        first.countDown();
+                    }
+                } catch (ClosedChannelException e) {
+                    first.countDown(); // The reader was closed
+                } catch (IOException e) {
+                    failure.set(e);
+                    first.countDown();
+                }
+            });
+            registrar.start();
+            assertTrue(first.await(30, TimeUnit.SECONDS));
+            reader.close();
+            registrar.join();
+
+            assertNull(failure.get());
+            // Every source that was accepted has ended and its channel is closed once close returns.
+            assertEquals(registered.keySet(), collector.endThreads.keySet());
+            for (Pipe pipe : registered.values()) {
+                assertFalse(pipe.source().isOpen());
+            }
+            for (Pipe pipe : pipes) {
+                pipe.sink().close();
+                pipe.source().close();
+            }
+        }
+    }
+}
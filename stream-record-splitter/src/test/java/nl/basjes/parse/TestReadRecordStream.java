@@ -19,10 +19,22 @@
 package nl.basjes.parse;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -121,6 +133,70 @@ class TestReadRecordStream {
         assertTrue(exception.getMessage().matches("After [0-9]+ bytes the end-of-record pattern has not been found yet."));
     }
 
+    private static final Path   RAW_FILE   = Paths.get("../testfiles/ttyUSB0-raw.txt");
+    private static final String RECORD_END = "\r?\n![0-9A-F]{4}\r?\n";
+
+    private static List<String> readAll(InputStream input) throws IOException {
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(input, RECORD_END);
+        List<String> records = new ArrayList<>();
+        String record;
+        while ((record = reader.read()) != null) {
+            if (!record.isEmpty()) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void testIterableAndStream() throws IOException {
+        byte[] bytes = Files.readAllBytes(RAW_FILE);
+        List<String> expected = readAll(new ByteArrayInputStream(bytes));
+        assertTrue(expected.size() > 500);
+
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), RECORD_END);
+        List<String> iterated = new ArrayList<>();
+        for (String record : reader) {
+            iterated.add(record);
+        }
+        assertEquals(expected, iterated);
+        assertThrows(IllegalStateException.class, reader::iterator);
+
+        assertEquals(expected,
+            new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), RECORD_END).records().collect(Collectors.toList()));
+        assertEquals(expected,
+            new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), RECORD_END).records().parallel().collect(Collectors.toList()));
+    }
+
+    @Test
+    void testFileRecords(@TempDir Path directory) throws IOException {
+        List<String> expected = readAll(Files.newInputStream(RAW_FILE));
+
+        try (Stream<String> records = ReadUTF8RecordStream.records(RAW_FILE, RECORD_END)) {
+            assertEquals(expected, records.collect(Collectors.toList()));
+        }
+        try (Stream<String> records = ReadUTF8RecordStream.records(RAW_FILE, RECORD_END)) {
+            assertEquals(expected, records.parallel().collect(Collectors.toList()));
+        }
+        try (Stream<String> records = ReadUTF8RecordStream.records(RAW_FILE, RECORD_END)) {
+            Spliterator<String> spliterator = records.spliterator();
+            assertEquals(expected.size(), spliterator.getExactSizeIfKnown());
+            Spliterator<String> prefix = spliterator.trySplit();
+            assertEquals(expected.size(), prefix.estimateSize() + spliterator.estimateSize());
+        }
+
+        // The rest without an end of record is the last record.
+        Path file = directory.resolve("records.txt");
+        Files.write(file, "one\ntwo\nthr\u00e9e".getBytes(UTF_8));
+        try (Stream<String> records = ReadUTF8RecordStream.records(file, "\n")) {
+            assertEquals(Arrays.asList("one\n", "two\n", "thr\u00e9e"), records.parallel().collect(Collectors.toList()));
+        }
+        Files.write(file, new byte[0]);
+        try (Stream<String> records = ReadUTF8RecordStream.records(file, "\n")) {
+            assertEquals(0, records.count());
+        }
+    }
+
     volatile boolean keepRunning = true;
 
     void testRecordReassemblyInBurstyStream(String[] recordFragments, String[] records, String endPattern)
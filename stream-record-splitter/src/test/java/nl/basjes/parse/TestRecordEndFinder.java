@@ -0,0 +1,258 @@
+/*
+ * Dutch Smart Meter Requirements (DSMR) Toolkit
+ * Copyright (C) 2019-2024 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package nl.basjes.parse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestRecordEndFinder {
+
+    private static final List<String> REGEXES = Arrays.asList(
+        "\r\n![0-9A-F]{4}\r\n",
+        "\r?\n![0-9A-F]{4}\r?\n",
+        "\n![0-9A-F]{4}\n",
+        "\r\n![0-9A-F]{4}\r?\n",
+        "\n",
+        "\r?\n",
+        "====\n",
+        "\\$\\$\r\n",
+        "!\r\n",
+        "E[N]D[0-9]*\n",
+        "^!",
+        "\\r?\\n![0-9A-F]{4}\\r\\n",
+        "\\\\n",
+        "\u00e9\n"
+    );
+
+    @Test
+    void specializedFinders() {
+        assertEquals(RecordEndFinder.DsmrTerminator.class, RecordEndFinder.forRegex("\r\n![0-9A-F]{4}\r\n").getClass());
+        assertEquals(RecordEndFinder.DsmrTerminator.class, RecordEndFinder.forRegex("\r?\n![0-9A-F]{4}\r?\n").getClass());
+        assertEquals(RecordEndFinder.DsmrTerminator.class, RecordEndFinder.forRegex("\\r\\n![0-9A-F]{4}\\r\\n").getClass());
+        assertEquals(RecordEndFinder.Literal.class,        RecordEndFinder.forRegex("\\r?\\n").getClass());
+        assertEquals(RecordEndFinder.Literal.class,        RecordEndFinder.forRegex("\n").getClass());
+        assertEquals(RecordEndFinder.Literal.class,        RecordEndFinder.forRegex("\r?\n").getClass());
+        assertEquals(RecordEndFinder.Literal.class,        RecordEndFinder.forRegex("====\n").getClass());
+        assertEquals(RecordEndFinder.Literal.class,        RecordEndFinder.forRegex("\\$\\$\r\n").getClass());
+        assertEquals(RecordEndFinder.Regex.class,          RecordEndFinder.forRegex("E[N]D[0-9]*\n").getClass());
+        assertEquals(RecordEndFinder.Regex.class,          RecordEndFinder.forRegex("\\d\n").getClass());
+        assertEquals(RecordEndFinder.Regex.class,          RecordEndFinder.forRegex("\n![0-9A-F]{4}\n?").getClass());
+    }
+
+    // How the records were split before: the regex is matched against the text.
+    private static List<String> splitWithRegex(String input, String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        List<String> records = new ArrayList<>();
+        String rest = input;
+        while (true) {
+            Matcher matcher = pattern.matcher(rest);
+            if (!matcher.find()) {
+                records.add(rest);
+                return records;
+            }
+            records.add(rest.substring(0, matcher.end()));
+            rest = rest.substring(matcher.end());
+        }
+    }
+
+    // Returns the bytes in chunks of random sizes.
+    private static final class ChunkedInputStream extends InputStream {
+        private final byte[] bytes;
+        private final Random random;
+        private       int    pos;
+
+        ChunkedInputStream(byte[] bytes, Random random) {
+            this.bytes  = bytes;
+            this.random = random;
+        }
+
+        @Override
+        public int read() {
+            return pos < bytes.length ? bytes[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (pos == bytes.length) {
+                return -1;
+            }
+            int chunk = Math.min(Math.min(length, 1 + random.nextInt(random.nextBoolean() ? 10 : 5000)), bytes.length - pos);
+            System.arraycopy(bytes, pos, buffer, offset, chunk);
+            pos += chunk;
+            return chunk;
+        }
+    }
+
+    private static final String[] PIECES = {
+        "a", "b", "0", "1", "F", "E", "ND", "=", "====", "$", "!", "\r", "\n", "\r\n", "\u00e9", "\u20ac", "!12AB", "!12ab", "\r\n!CAFE\r\n",
+    };
+
+    @Test
+    void sameAsRegexOnText() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            StringBuilder input = new StringBuilder();
+            int pieces = random.nextInt(3000);
+            for (int i = 0; i < pieces; i++) {
+                input.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            for (String regex : REGEXES) {
+                List<String> expected = splitWithRegex(input.toString(), regex);
+                ReadUTF8RecordStream reader = new ReadUTF8RecordStream(
+                    new ChunkedInputStream(input.toString().getBytes(UTF_8), random), regex, Integer.MAX_VALUE);
+                List<String> records = new ArrayList<>();
+                String record;
+                while ((record = reader.read()) != null) {
+                    records.add(record);
+                }
+                assertEquals(expected, records, "Different records for regex " + regex);
+            }
+        }
+    }
+
+    @Test
+    void manyRecordsInOneRead() throws IOException {
+        int count = 200_000;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            input.append("/ISK5\r\n1-0:1.8.1(").append(i).append(")\r\n!0A1B\r\n");
+        }
+        byte[] bytes = input.toString().getBytes(UTF_8);
+        // Every read returns many records
+        InputStream inputStream = new ByteArrayInputStream(bytes);
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(inputStream, "\r\n![0-9A-F]{4}\r\n");
+        for (int i = 0; i < count; i++) {
+            assertEquals("/ISK5\r\n1-0:1.8.1(" + i + ")\r\n!0A1B\r\n", reader.read());
+        }
+        assertEquals("", reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    void slicesHaveTheSameContentAsStrings() throws IOException {
+        StringBuilder input = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            // Some records are larger than the initial buffer so it must grow.
+            int length = random.nextInt(i % 100 == 0 ? 20000 : 200);
+            for (int c = 0; c < length; c++) {
+                input.append(c % 50 == 0 ? "\u20ac" : "x");
+            }
+            input.append("\n!0A1B\n");
+        }
+        input.append("tail \u00e9");
+        byte[] bytes = input.toString().getBytes(UTF_8);
+        String regex = "\n![0-9A-F]{4}\n";
+
+        ReadUTF8RecordStream stringReader = new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), regex, 100000);
+        ReadUTF8RecordStream bytesReader  = new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), regex, 100000);
+        ReadUTF8RecordStream charsReader  = new ReadUTF8RecordStream(new ByteArrayInputStream(bytes), regex, 100000);
+
+        ByteBuffer   previousBytes = null;
+        CharSequence previousChars = null;
+        String expected;
+        while ((expected = stringReader.read()) != null) {
+            ByteBuffer slice = bytesReader.readBytes();
+            assertEquals(expected, UTF_8.decode(slice.duplicate()).toString());
+            assertTrue(slice.hasArray());
+            if (previousBytes != null && previousBytes.array() == slice.array()) {
+                assertSame(previousBytes, slice);
+            }
+            previousBytes = slice;
+
+            CharSequence chars = charsReader.readChars();
+            assertEquals(expected, chars.toString());
+            // Larger records need a larger buffer
+            if (previousChars != null && previousChars.getClass() == chars.getClass() && slice.remaining() <= 4096) {
+                assertSame(previousChars, chars);
+            }
+            previousChars = chars;
+        }
+        assertNull(bytesReader.readBytes());
+        assertNull(charsReader.readChars());
+    }
+
+    @Test
+    void multiByteCharacterOverReadBoundary() throws IOException {
+        // The 2 bytes of the e-acute are returned by different reads.
+        String input = "caf\u00e9\nthe \u20ac\n";
+        byte[] bytes = input.getBytes(UTF_8);
+        InputStream inputStream = new InputStream() {
+            private int pos;
+
+            @Override
+            public int read() {
+                return pos < bytes.length ? bytes[pos++] & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                int value = read();
+                if (value == -1) {
+                    return -1;
+                }
+                buffer[offset] = (byte) value;
+                return 1;
+            }
+        };
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(inputStream, "\n");
+        assertEquals("caf\u00e9\n", reader.read());
+        assertEquals("the \u20ac\n", reader.read());
+        assertEquals("", reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    void readCharsOnlyDecodesNonAscii() throws IOException {
+        String input = "/ISK5\r\n!0A1B\r\ncaf\u00e9 \u20ac\r\n!0A1B\r\n/ISK5\r\n!0A1B\r\n";
+        ReadUTF8RecordStream reader = new ReadUTF8RecordStream(new ByteArrayInputStream(input.getBytes(UTF_8)), "\r\n![0-9A-F]{4}\r\n");
+
+        CharSequence ascii = reader.readChars();
+        assertTrue(ascii instanceof ByteCharSequence);
+        assertEquals("/ISK5\r\n!0A1B\r\n", ascii.toString());
+        assertEquals('/', ascii.charAt(0));
+        assertEquals("ISK5", ascii.subSequence(1, 5).toString());
+
+        CharSequence decoded = reader.readChars();
+        assertTrue(decoded instanceof CharBuffer);
+        assertEquals("caf\u00e9 \u20ac\r\n!0A1B\r\n", decoded.toString());
+
+        assertSame(ascii, reader.readChars());
+        assertEquals("/ISK5\r\n!0A1B\r\n", ascii.toString());
+        assertEquals(0, reader.readChars().length());
+        assertNull(reader.readChars());
+    }
+}
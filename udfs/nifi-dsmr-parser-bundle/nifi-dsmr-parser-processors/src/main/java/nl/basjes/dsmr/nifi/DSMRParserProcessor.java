@@ -21,6 +21,7 @@ import nl.basjes.dsmr.DSMRTelegram;
 import nl.basjes.dsmr.DSMRTelegram.PowerFailureEvent;
 import nl.basjes.dsmr.MBusEvent;
 import nl.basjes.dsmr.ParseDsmrTelegram;
+import nl.basjes.dsmr.ParseOptions;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.behavior.SideEffectFree;
@@ -29,7 +30,10 @@ import org.apache.nifi.annotation.behavior.WritesAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.AbstractProcessor;
 import org.apache.nifi.processor.ProcessContext;
@@ -40,6 +44,7 @@ import org.apache.nifi.stream.io.StreamUtils;
 
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -47,7 +52,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 
 @Tags({"iot", "dsmr"})
@@ -72,8 +76,28 @@ public class DSMRParserProcessor extends AbstractProcessor {
         .description("Incomplete records / Parsing failed")
         .build();
 
+    private static final Validator OUTPUT_FIELDS_VALIDATOR = (subject, input, context) -> {
+        ValidationResult.Builder result = new ValidationResult.Builder().subject(subject).input(input);
+        try {
+            parseOptions(input);
+            return result.valid(true).build();
+        } catch (IllegalArgumentException e) {
+            return result.valid(false).explanation(e.getMessage()).build();
+        }
+    };
+
+    public static final PropertyDescriptor OUTPUT_FIELDS = new PropertyDescriptor.Builder()
+        .name("Output fields")
+        .description("A comma separated list of the fields (i.e. timestamp, electricityPowerReceived, gasM3) that must be output. " +
+            "Only these fields are decoded which makes parsing a lot faster. If empty all fields are output.")
+        .required(false)
+        .addValidator(OUTPUT_FIELDS_VALIDATOR)
+        .build();
+
     private Set<Relationship> relationships;
 
+    private volatile ParseOptions parseOptions = ParseOptions.ALL;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final Set<Relationship> relationshipSet = new HashSet<>();
@@ -83,6 +107,18 @@ public class DSMRParserProcessor extends AbstractProcessor {
         this.relationships = Collections.unmodifiableSet(relationshipSet);
     }
 
+    static ParseOptions parseOptions(String outputFields) {
+        if (outputFields == null || outputFields.trim().isEmpty()) {
+            return ParseOptions.ALL;
+        }
+        return ParseOptions.forNames(Arrays.asList(outputFields.split(",")));
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        parseOptions = parseOptions(context.getProperty(OUTPUT_FIELDS).getValue());
+    }
+
     @Override
     public Set<Relationship> getRelationships() {
         return this.relationships;
@@ -90,7 +126,7 @@ public class DSMRParserProcessor extends AbstractProcessor {
 
     @Override
     public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
-        return Collections.emptyList();
+        return Collections.singletonList(OUTPUT_FIELDS);
     }
 
     private static final String ATTRIBUTE_PREFIX = "dsmr.";
@@ -152,11 +188,10 @@ public class DSMRParserProcessor extends AbstractProcessor {
         final byte[] byteBuffer = new byte[(int)size];
         session.read(flowFile, in -> StreamUtils.fillBuffer(in, byteBuffer, false));
         final long len = Math.min(byteBuffer.length, flowFile.getSize());
-        String contentString = new String(byteBuffer, 0, (int) len, UTF_8);
 
         // This ONLY returns null iff the content is either null or empty.
         // At this point this can no longer be the case because of the size check earlier.
-        DSMRTelegram record = ParseDsmrTelegram.parse(contentString);
+        DSMRTelegram record = ParseDsmrTelegram.parse(byteBuffer, 0, (int) len, parseOptions);
 
         if (record.getRawIdent() == null) {
             session.transfer(flowFile, BAD_RECORDS);
@@ -17,6 +17,7 @@
  */
 package nl.basjes.dsmr.nifi;
 
+import nl.basjes.dsmr.CheckCRC;
 import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
@@ -452,6 +453,43 @@ class DSMRParserProcessorTest {
         assertEquals(1, badresults.size());
     }
 
+    @Test
+    void testOnlyOutputFields() {
+        String content = CheckCRC.fixCrc(
+            "/ISK5\\2M550T-1012\r\n" +
+            "\r\n" +
+            "1-3:0.2.8(50)\r\n" +
+            "0-0:1.0.0(190324150541W)\r\n" +
+            "0-0:96.1.1(4530303434303037313331363530363138)\r\n" +
+            "1-0:1.8.1(003432.829*kWh)\r\n" +
+            "1-0:1.7.0(00.433*kW)\r\n" +
+            "1-0:32.7.0(236.7*V)\r\n" +
+            "0-2:24.1.0(003)\r\n" +
+            "0-2:96.1.0(5f5f5f5f54574f5f5f5f5f)\r\n" +
+            "0-2:24.2.1(101209112200W)(12785.222*m3)\r\n" +
+            "!0000\r\n");
+
+        runner.setProperty(DSMRParserProcessor.OUTPUT_FIELDS, "electricityPowerReceived, gasM3");
+        runner.enqueue(content);
+        runner.run(1);
+        runner.assertQueueEmpty();
+
+        List<MockFlowFile> results = runner.getFlowFilesForRelationship(VALID);
+        assertEquals(1, results.size());
+        MockFlowFile result = results.get(0);
+
+        assertAttributeEquals(result, "dsmr.p1Version",                    "5.0");
+        assertAttributeEquals(result, "dsmr.electricityPowerReceived",     "0.433");
+        assertAttributeEquals(result, "dsmr.gasM3",                        "12785.222");
+
+        // Not decoded
+        assertAttributeEquals(result, "dsmr.timestamp",                    null);
+        assertAttributeEquals(result, "dsmr.voltageL1",                    null);
+        assertAttributeEquals(result, "dsmr.electricityReceivedLowTariff", null);
+
+        runner.setProperty(DSMRParserProcessor.OUTPUT_FIELDS, "electricityPowerReceived, noSuchField");
+        runner.assertNotValid();
+    }
 
     void assertAttributeEquals(MockFlowFile flowFile, String attributeName, String expectedValue) {
         assertEquals(expectedValue, flowFile.getAttribute(attributeName),
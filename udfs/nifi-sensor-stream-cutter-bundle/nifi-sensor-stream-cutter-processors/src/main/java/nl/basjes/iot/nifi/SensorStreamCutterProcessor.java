@@ -38,13 +38,13 @@ import org.apache.nifi.processor.util.StandardValidators;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static nl.basjes.parse.ReadUTF8RecordStream.MAX_MAX_RECORD_SIZE;
 import static nl.basjes.parse.ReadUTF8RecordStream.MIN_MAX_RECORD_SIZE;
 import static org.apache.nifi.annotation.behavior.InputRequirement.Requirement.INPUT_FORBIDDEN;
@@ -144,9 +144,10 @@ public class SensorStreamCutterProcessor extends AbstractProcessor {
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
-        String content;
+        // Only valid until the next read: it is written to the flowfile before that.
+        ByteBuffer content;
         try {
-            content = reader.read();
+            content = reader.readBytes();
         } catch (IOException e) {
             throw new ProcessException(e);
         }
@@ -154,7 +155,7 @@ public class SensorStreamCutterProcessor extends AbstractProcessor {
         FlowFile flowFile = session.create();
         flowFile = session.write(flowFile, out -> {
             if (content != null) {
-                out.write(content.getBytes(UTF_8));
+                out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
             }
         });
 